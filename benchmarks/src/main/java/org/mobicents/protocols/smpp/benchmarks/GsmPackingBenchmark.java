@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.mobicents.protocols.smpp.encoding.DefaultAlphabetEncoding;
+
+/**
+ * Measures packing and unpacking GSM default alphabet text. The bodies
+ * are a single segment of 160 characters and a ten segment concatenated
+ * message of 1530 characters. The text is either plain ASCII or has
+ * extension table characters, which need an escape, throughout.
+ * <pre>
+ * java -jar target/benchmarks.jar GsmPackingBenchmark -prof gc
+ * java -jar target/benchmarks.jar GsmPackingBenchmark -p length=1530 -p text=ascii
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsmPackingBenchmark {
+
+    private static final String ASCII =
+        "Your verification code is 482913. It expires in 10 minutes, "
+        + "do not share it with anyone. Reply STOP to opt out! ";
+
+    private static final String ESCAPED =
+        "Balance: 12.50\u20ac [card ending 4417] {ref AB-99} ~ thanks | ";
+
+    /** The number of characters in the message. */
+    @Param({"160", "1530"})
+    public int length;
+
+    /** Plain ASCII text, or text with extension table characters. */
+    @Param({"ascii", "escaped"})
+    public String text;
+
+    private DefaultAlphabetEncoding encoding;
+    private String message;
+    private byte[] unpacked;
+    private byte[] packed;
+    private byte[] packedBuffer;
+    private char[] decoded;
+    private int septets;
+
+    @Setup
+    public void setUp() {
+        encoding = new DefaultAlphabetEncoding();
+        String source = "ascii".equals(text) ? ASCII : ESCAPED;
+        StringBuilder buf = new StringBuilder(length + source.length());
+        while (buf.length() < length) {
+            buf.append(source);
+        }
+        message = buf.substring(0, length);
+        unpacked = encoding.encode(message);
+        packed = encoding.pack(unpacked);
+        septets = unpacked.length;
+        packedBuffer = new byte[DefaultAlphabetEncoding.getPackedLength(septets)];
+        decoded = new char[septets];
+    }
+
+    /**
+     * Encode and pack in two passes, through an intermediate array.
+     */
+    @Benchmark
+    public byte[] encodeThenPack() {
+        return encoding.pack(encoding.encode(message));
+    }
+
+    /**
+     * Encode and pack in a single pass into a re-used array.
+     */
+    @Benchmark
+    public int encodePacked() {
+        return encoding.encodePacked(message, packedBuffer, 0);
+    }
+
+    @Benchmark
+    public byte[] pack() {
+        return encoding.pack(unpacked);
+    }
+
+    @Benchmark
+    public byte[] unpack() {
+        return encoding.unpack(packed);
+    }
+
+    /**
+     * Unpack and decode in a single pass into a re-used array.
+     */
+    @Benchmark
+    public int decodePacked() {
+        return encoding.decodePacked(packed, 0, septets, decoded, 0);
+    }
+}
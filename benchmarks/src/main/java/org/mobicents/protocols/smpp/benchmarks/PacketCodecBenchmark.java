@@ -0,0 +1,159 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.util.BufferPool;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketDecoder;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketEncoder;
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.util.PacketFactory;
+
+/**
+ * Measures encoding and decoding of every command type the
+ * <code>PacketFactory</code> knows, plus the payloads that dominate
+ * real traffic. Each benchmark covers the whole of
+ * <code>writeTo</code> or <code>readFrom</code>: the header, the
+ * mandatory parameters and the TLV table.
+ * <p>
+ * Results are in operations per second. Run with
+ * <code>-prof gc</code> to get the allocation rate per operation as well,
+ * for example:
+ * </p>
+ * <pre>
+ * java -jar target/benchmarks.jar PacketCodecBenchmark -prof gc
+ * java -jar target/benchmarks.jar PacketCodecBenchmark -p packetType=submit_multi_255 -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketCodecBenchmark {
+
+    /**
+     * The packet to encode and decode. See {@link Payloads} for what each
+     * one holds.
+     */
+    @Param({
+        "generic_nack",
+        "bind_receiver", "bind_receiver_resp",
+        "bind_transmitter", "bind_transmitter_resp",
+        "bind_transceiver", "bind_transceiver_resp",
+        "query_sm", "query_sm_resp",
+        "submit_sm_gsm7", "submit_sm_ucs2", "submit_sm_resp",
+        "deliver_sm", "deliver_sm_receipt", "deliver_sm_resp",
+        "unbind", "unbind_resp",
+        "replace_sm", "replace_sm_resp",
+        "cancel_sm", "cancel_sm_resp",
+        "outbind",
+        "enquire_link", "enquire_link_resp",
+        "submit_multi", "submit_multi_255", "submit_multi_resp",
+        "param_retrieve", "param_retrieve_resp",
+        "query_last_msgs", "query_last_msgs_resp",
+        "query_msg_details", "query_msg_details_resp",
+        "alert_notification",
+        "data_sm", "data_sm_tlv", "data_sm_resp",
+        "broadcast_sm", "broadcast_sm_resp",
+        "query_broadcast_sm", "query_broadcast_sm_resp",
+        "cancel_broadcast_sm", "cancel_broadcast_sm_resp"})
+    public String packetType;
+
+    private final PacketFactory factory = new PacketFactory();
+    private SMPPPacket packet;
+    private int commandId;
+    private byte[] frame;
+    private ByteBuffer frameBuffer;
+    private ByteArrayOutputStream stream;
+    private PacketEncoderImpl streamEncoder;
+    private BufferPool pool;
+    private ByteBufferPacketEncoder bufferEncoder;
+    private ByteBufferPacketDecoder bufferDecoder;
+
+    @Setup
+    public void setUp() throws IOException {
+        packet = Payloads.create(packetType);
+        commandId = packet.getCommandId();
+        stream = new ByteArrayOutputStream(4096);
+        streamEncoder = new PacketEncoderImpl(stream);
+        packet.writeTo(streamEncoder, true);
+        frame = stream.toByteArray();
+        frameBuffer = ByteBuffer.wrap(frame);
+        pool = new BufferPool(16);
+        bufferEncoder = new ByteBufferPacketEncoder(pool);
+        bufferDecoder = new ByteBufferPacketDecoder();
+    }
+
+    @Benchmark
+    public byte[] encodeStream() throws IOException {
+        stream.reset();
+        packet.writeTo(streamEncoder, true);
+        return stream.toByteArray();
+    }
+
+    @Benchmark
+    public int encodeBuffer() throws IOException {
+        bufferEncoder.acquireBuffer(BufferPool.MIN_CAPACITY);
+        packet.writeTo(bufferEncoder, true);
+        ByteBuffer buffer = bufferEncoder.getBuffer();
+        int length = buffer.position();
+        pool.release(buffer);
+        return length;
+    }
+
+    @Benchmark
+    public SMPPPacket decodeArray() {
+        SMPPPacket decoded = factory.newInstance(commandId);
+        decoded.readFrom(new PacketDecoderImpl(frame));
+        return decoded;
+    }
+
+    @Benchmark
+    public SMPPPacket decodeBuffer() {
+        frameBuffer.clear();
+        bufferDecoder.setBuffer(frameBuffer);
+        SMPPPacket decoded = factory.newInstance(commandId);
+        decoded.readFrom(bufferDecoder);
+        return decoded;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.SubmitSMResp;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.BufferPool;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketEncoder;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.util.SMPPDate;
+
+/**
+ * Compares encoding a packet with the stream based
+ * {@link PacketEncoderImpl} against the single pass
+ * {@link ByteBufferPacketEncoder}. Both produce a complete frame ready to
+ * be handed to a link: the stream encoder writes to a re-used
+ * <code>ByteArrayOutputStream</code> and copies the result out, the buffer
+ * encoder writes to a pooled buffer that is released again afterwards.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketEncoderBenchmark {
+
+    /**
+     * The packet to encode: a bare submit_sm_resp, a typical submit_sm and
+     * a submit_sm carrying a 1KB message_payload.
+     */
+    @Param({"submit_sm_resp", "submit_sm", "submit_sm_payload"})
+    public String packetType;
+
+    private SMPPPacket packet;
+    private ByteArrayOutputStream stream;
+    private PacketEncoderImpl streamEncoder;
+    private BufferPool pool;
+    private ByteBufferPacketEncoder bufferEncoder;
+
+    @Setup
+    public void setUp() {
+        if ("submit_sm_resp".equals(packetType)) {
+            SubmitSMResp resp = new SubmitSMResp();
+            resp.setMessageId("0123456789abcdef");
+            packet = resp;
+        } else {
+            SubmitSM submit = new SubmitSM();
+            submit.setServiceType("CMT");
+            submit.setSource(new Address(1, 1, "447700900123"));
+            submit.setDestination(new Address(1, 1, "447700900456"));
+            submit.setExpiryTime(SMPPDate.getAbsoluteInstance(Calendar.getInstance()));
+            submit.setRegistered(1);
+            if ("submit_sm_payload".equals(packetType)) {
+                submit.setTLV(Tag.MESSAGE_PAYLOAD, new byte[1024]);
+            } else {
+                submit.setMessage("The quick brown fox jumps over the lazy dog".getBytes());
+            }
+            submit.setTLV(Tag.SOURCE_PORT, new Integer(1234));
+            submit.setTLV(Tag.DESTINATION_PORT, new Integer(5678));
+            packet = submit;
+        }
+        packet.setSequenceNum(42L);
+        stream = new ByteArrayOutputStream(1024);
+        streamEncoder = new PacketEncoderImpl(stream);
+        pool = new BufferPool(16);
+        bufferEncoder = new ByteBufferPacketEncoder(pool);
+    }
+
+    @Benchmark
+    public byte[] packetEncoderImpl() throws IOException {
+        stream.reset();
+        packet.writeTo(streamEncoder, true);
+        return stream.toByteArray();
+    }
+
+    @Benchmark
+    public int byteBufferPacketEncoder() throws IOException {
+        bufferEncoder.acquireBuffer(BufferPool.MIN_CAPACITY);
+        packet.writeTo(bufferEncoder, true);
+        ByteBuffer frame = bufferEncoder.getBuffer();
+        frame.flip();
+        int length = frame.remaining();
+        pool.release(frame);
+        return length;
+    }
+}
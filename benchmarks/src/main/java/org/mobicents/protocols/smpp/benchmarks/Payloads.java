@@ -0,0 +1,391 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Calendar;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.ErrorAddress;
+import org.mobicents.protocols.smpp.Npi;
+import org.mobicents.protocols.smpp.Ton;
+import org.mobicents.protocols.smpp.encoding.DefaultAlphabetEncoding;
+import org.mobicents.protocols.smpp.encoding.UCS2Encoding;
+import org.mobicents.protocols.smpp.message.AlertNotification;
+import org.mobicents.protocols.smpp.message.Bind;
+import org.mobicents.protocols.smpp.message.BindReceiver;
+import org.mobicents.protocols.smpp.message.BindReceiverResp;
+import org.mobicents.protocols.smpp.message.BindTransceiver;
+import org.mobicents.protocols.smpp.message.BindTransceiverResp;
+import org.mobicents.protocols.smpp.message.BindTransmitter;
+import org.mobicents.protocols.smpp.message.BindTransmitterResp;
+import org.mobicents.protocols.smpp.message.BroadcastSM;
+import org.mobicents.protocols.smpp.message.BroadcastSMResp;
+import org.mobicents.protocols.smpp.message.CancelBroadcastSM;
+import org.mobicents.protocols.smpp.message.CancelBroadcastSMResp;
+import org.mobicents.protocols.smpp.message.CancelSM;
+import org.mobicents.protocols.smpp.message.CancelSMResp;
+import org.mobicents.protocols.smpp.message.DataSM;
+import org.mobicents.protocols.smpp.message.DataSMResp;
+import org.mobicents.protocols.smpp.message.DeliverSM;
+import org.mobicents.protocols.smpp.message.DeliverSMResp;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.EnquireLinkResp;
+import org.mobicents.protocols.smpp.message.GenericNack;
+import org.mobicents.protocols.smpp.message.MessageState;
+import org.mobicents.protocols.smpp.message.Outbind;
+import org.mobicents.protocols.smpp.message.ParamRetrieve;
+import org.mobicents.protocols.smpp.message.ParamRetrieveResp;
+import org.mobicents.protocols.smpp.message.QueryBroadcastSM;
+import org.mobicents.protocols.smpp.message.QueryBroadcastSMResp;
+import org.mobicents.protocols.smpp.message.QueryLastMsgs;
+import org.mobicents.protocols.smpp.message.QueryLastMsgsResp;
+import org.mobicents.protocols.smpp.message.QueryMsgDetails;
+import org.mobicents.protocols.smpp.message.QueryMsgDetailsResp;
+import org.mobicents.protocols.smpp.message.QuerySM;
+import org.mobicents.protocols.smpp.message.QuerySMResp;
+import org.mobicents.protocols.smpp.message.ReplaceSM;
+import org.mobicents.protocols.smpp.message.ReplaceSMResp;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitMulti;
+import org.mobicents.protocols.smpp.message.SubmitMultiResp;
+import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.SubmitSMResp;
+import org.mobicents.protocols.smpp.message.Unbind;
+import org.mobicents.protocols.smpp.message.UnbindResp;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.SMPPDate;
+
+/**
+ * Builds the packets the codec benchmarks work on. There is one entry
+ * for every command type the <code>PacketFactory</code> knows, filled in
+ * the way a real application would fill it, plus variants for the
+ * payloads that dominate real traffic: full-length GSM 7-bit and UCS-2
+ * bodies, delivery receipts, TLV-heavy <code>data_sm</code> and a
+ * <code>submit_multi</code> to 255 destinations.
+ */
+final class Payloads {
+    private static final String GSM7_TEXT =
+        "The quick brown fox jumps over the lazy dog. Pack my box with five "
+        + "dozen liquor jugs! How vexingly quick daft zebras jump; sphinx of "
+        + "black quartz, judge my vow @ 10:45";
+    private static final String UCS2_TEXT =
+        "\u041f\u0440\u0438\u0432\u0435\u0442, \u043c\u0438\u0440! "
+        + "\u4f60\u597d\u4e16\u754c \u0645\u0631\u062d\u0628\u0627 "
+        + "Your code is 482915, valid for 10 min.";
+    private static final String RECEIPT_TEXT =
+        "id:7f3a9c0012 sub:001 dlvrd:001 submit date:1702251530 "
+        + "done date:1702251531 stat:DELIVRD err:000 text:The quick brown f";
+
+    private Payloads() {
+    }
+
+    /**
+     * Create the packet for a benchmark parameter.
+     * @param name The benchmark parameter naming the packet.
+     * @return A new, fully populated packet.
+     */
+    static SMPPPacket create(String name) {
+        SMPPPacket packet = newPacket(name);
+        packet.setSequenceNum(0x1234567L);
+        return packet;
+    }
+
+    private static SMPPPacket newPacket(String name) {
+        Calendar now = Calendar.getInstance();
+        if ("generic_nack".equals(name)) {
+            return new GenericNack();
+        } else if ("bind_receiver".equals(name)) {
+            BindReceiver bind = new BindReceiver();
+            populateBind(bind);
+            return bind;
+        } else if ("bind_receiver_resp".equals(name)) {
+            BindReceiverResp resp = new BindReceiverResp();
+            resp.setSystemId("SMSC01");
+            resp.setTLV(Tag.SC_INTERFACE_VERSION, new Integer(0x34));
+            return resp;
+        } else if ("bind_transmitter".equals(name)) {
+            BindTransmitter bind = new BindTransmitter();
+            populateBind(bind);
+            return bind;
+        } else if ("bind_transmitter_resp".equals(name)) {
+            BindTransmitterResp resp = new BindTransmitterResp();
+            resp.setSystemId("SMSC01");
+            resp.setTLV(Tag.SC_INTERFACE_VERSION, new Integer(0x34));
+            return resp;
+        } else if ("bind_transceiver".equals(name)) {
+            BindTransceiver bind = new BindTransceiver();
+            populateBind(bind);
+            return bind;
+        } else if ("bind_transceiver_resp".equals(name)) {
+            BindTransceiverResp resp = new BindTransceiverResp();
+            resp.setSystemId("SMSC01");
+            resp.setTLV(Tag.SC_INTERFACE_VERSION, new Integer(0x34));
+            return resp;
+        } else if ("query_sm".equals(name)) {
+            QuerySM query = new QuerySM();
+            query.setMessageId("7f3a9c0012");
+            query.setSource(shortCode());
+            return query;
+        } else if ("query_sm_resp".equals(name)) {
+            QuerySMResp resp = new QuerySMResp();
+            resp.setMessageId("7f3a9c0012");
+            resp.setFinalDate(SMPPDate.getAbsoluteInstance(now));
+            resp.setMessageState(MessageState.DELIVERED);
+            return resp;
+        } else if ("submit_sm".equals(name) || "submit_sm_gsm7".equals(name)) {
+            SubmitSM submit = newSubmit();
+            submit.setDataCoding(0);
+            submit.setMessage(new DefaultAlphabetEncoding().encode(GSM7_TEXT));
+            return submit;
+        } else if ("submit_sm_ucs2".equals(name)) {
+            SubmitSM submit = newSubmit();
+            submit.setDataCoding(8);
+            submit.setMessage(ucs2(UCS2_TEXT));
+            return submit;
+        } else if ("submit_sm_resp".equals(name)) {
+            SubmitSMResp resp = new SubmitSMResp();
+            resp.setMessageId("7f3a9c0012");
+            return resp;
+        } else if ("deliver_sm".equals(name)) {
+            DeliverSM deliver = new DeliverSM();
+            deliver.setSource(mobile("447700900456"));
+            deliver.setDestination(shortCode());
+            deliver.setDataCoding(0);
+            deliver.setMessage(new DefaultAlphabetEncoding().encode("STOP"));
+            return deliver;
+        } else if ("deliver_sm_receipt".equals(name)) {
+            DeliverSM receipt = new DeliverSM();
+            receipt.setSource(mobile("447700900456"));
+            receipt.setDestination(shortCode());
+            receipt.setEsmClass(0x04);
+            receipt.setMessage(RECEIPT_TEXT.getBytes());
+            receipt.setTLV(Tag.RECEIPTED_MESSAGE_ID, "7f3a9c0012");
+            receipt.setTLV(Tag.MESSAGE_STATE, new Integer(MessageState.DELIVERED.getValue()));
+            receipt.setTLV(Tag.NETWORK_ERROR_CODE, new byte[] {3, 0, 0});
+            return receipt;
+        } else if ("deliver_sm_resp".equals(name)) {
+            return new DeliverSMResp();
+        } else if ("unbind".equals(name)) {
+            return new Unbind();
+        } else if ("unbind_resp".equals(name)) {
+            return new UnbindResp();
+        } else if ("replace_sm".equals(name)) {
+            ReplaceSM replace = new ReplaceSM();
+            replace.setMessageId("7f3a9c0012");
+            replace.setSource(shortCode());
+            replace.setExpiryTime(SMPPDate.getRelativeInstance(0, 0, 1, 0, 0, 0));
+            replace.setRegistered(1);
+            replace.setMessage(new DefaultAlphabetEncoding().encode(GSM7_TEXT));
+            return replace;
+        } else if ("replace_sm_resp".equals(name)) {
+            return new ReplaceSMResp();
+        } else if ("cancel_sm".equals(name)) {
+            CancelSM cancel = new CancelSM();
+            cancel.setServiceType("CMT");
+            cancel.setMessageId("7f3a9c0012");
+            cancel.setSource(shortCode());
+            cancel.setDestination(mobile("447700900456"));
+            return cancel;
+        } else if ("cancel_sm_resp".equals(name)) {
+            return new CancelSMResp();
+        } else if ("outbind".equals(name)) {
+            Outbind outbind = new Outbind();
+            outbind.setSystemId("SMSC01");
+            outbind.setPassword("secret");
+            return outbind;
+        } else if ("enquire_link".equals(name)) {
+            return new EnquireLink();
+        } else if ("enquire_link_resp".equals(name)) {
+            return new EnquireLinkResp();
+        } else if ("submit_multi".equals(name) || "submit_multi_255".equals(name)) {
+            SubmitMulti multi = new SubmitMulti();
+            multi.setServiceType("CMT");
+            multi.setSource(shortCode());
+            multi.setRegistered(1);
+            multi.setMessage(new DefaultAlphabetEncoding().encode(GSM7_TEXT));
+            int count = "submit_multi_255".equals(name) ? 255 : 2;
+            for (int i = 0; i < count; i++) {
+                multi.addDestination(mobile(String.valueOf(447700900000L + i)));
+            }
+            return multi;
+        } else if ("submit_multi_resp".equals(name)) {
+            SubmitMultiResp resp = new SubmitMultiResp();
+            resp.setMessageId("7f3a9c0012");
+            resp.add(new ErrorAddress(1, 1, "447700900001", 0x0b));
+            return resp;
+        } else if ("param_retrieve".equals(name)) {
+            ParamRetrieve retrieve = new ParamRetrieve();
+            retrieve.setParamName("max_validity");
+            return retrieve;
+        } else if ("param_retrieve_resp".equals(name)) {
+            ParamRetrieveResp resp = new ParamRetrieveResp();
+            resp.setParamValue("000007000000000R");
+            return resp;
+        } else if ("query_last_msgs".equals(name)) {
+            QueryLastMsgs query = new QueryLastMsgs();
+            query.setSource(shortCode());
+            query.setMsgCount(10);
+            return query;
+        } else if ("query_last_msgs_resp".equals(name)) {
+            QueryLastMsgsResp resp = new QueryLastMsgsResp();
+            for (int i = 0; i < 10; i++) {
+                resp.addMessageId("7f3a9c00" + (10 + i));
+            }
+            return resp;
+        } else if ("query_msg_details".equals(name)) {
+            QueryMsgDetails query = new QueryMsgDetails();
+            query.setMessageId("7f3a9c0012");
+            query.setSource(shortCode());
+            query.setSmLength(160);
+            return query;
+        } else if ("query_msg_details_resp".equals(name)) {
+            QueryMsgDetailsResp resp = new QueryMsgDetailsResp();
+            resp.setServiceType("CMT");
+            resp.setSource(shortCode());
+            resp.addDestination(mobile("447700900456"));
+            resp.setDeliveryTime(SMPPDate.getAbsoluteInstance(now));
+            resp.setExpiryTime(SMPPDate.getAbsoluteInstance(now));
+            resp.setFinalDate(SMPPDate.getAbsoluteInstance(now));
+            resp.setMessageId("7f3a9c0012");
+            resp.setMessageStatus(MessageState.DELIVERED);
+            resp.setMessage(new DefaultAlphabetEncoding().encode(GSM7_TEXT));
+            return resp;
+        } else if ("alert_notification".equals(name)) {
+            AlertNotification alert = new AlertNotification();
+            alert.setSource(mobile("447700900456"));
+            alert.setDestination(shortCode());
+            alert.setTLV(Tag.MS_AVAILABILITY_STATUS, new Integer(0));
+            return alert;
+        } else if ("data_sm".equals(name)) {
+            DataSM data = newDataSM();
+            data.setTLV(Tag.MESSAGE_PAYLOAD, new DefaultAlphabetEncoding().encode("STOP"));
+            return data;
+        } else if ("data_sm_tlv".equals(name)) {
+            DataSM data = newDataSM();
+            data.setTLV(Tag.SOURCE_PORT, new Integer(9200));
+            data.setTLV(Tag.DESTINATION_PORT, new Integer(2948));
+            data.setTLV(Tag.SAR_MSG_REF_NUM, new Integer(0x1234));
+            data.setTLV(Tag.SAR_TOTAL_SEGMENTS, new Integer(3));
+            data.setTLV(Tag.SAR_SEGMENT_SEQNUM, new Integer(2));
+            data.setTLV(Tag.USER_MESSAGE_REFERENCE, new Integer(77));
+            data.setTLV(Tag.PAYLOAD_TYPE, new Integer(1));
+            data.setTLV(Tag.QOS_TIME_TO_LIVE, new Long(86400L));
+            data.setTLV(Tag.PRIVACY_INDICATOR, new Integer(1));
+            data.setTLV(Tag.LANGUAGE_INDICATOR, new Integer(1));
+            data.setTLV(Tag.MORE_MESSAGES_TO_SEND, new Integer(1));
+            data.setTLV(Tag.SOURCE_SUBADDRESS, new byte[] {(byte) 0x80, 1, 2, 3});
+            data.setTLV(Tag.CALLBACK_NUM, "\u0001\u0001\u0001447700900123".getBytes());
+            data.setTLV(Tag.MESSAGE_PAYLOAD, new byte[140]);
+            return data;
+        } else if ("data_sm_resp".equals(name)) {
+            DataSMResp resp = new DataSMResp();
+            resp.setMessageId("7f3a9c0012");
+            return resp;
+        } else if ("broadcast_sm".equals(name)) {
+            BroadcastSM broadcast = new BroadcastSM();
+            broadcast.setServiceType("CBS");
+            broadcast.setSource(shortCode());
+            broadcast.setMessageId("7f3a9c0012");
+            broadcast.setDeliveryTime(SMPPDate.getAbsoluteInstance(now));
+            broadcast.setExpiryTime(SMPPDate.getRelativeInstance(0, 0, 0, 6, 0, 0));
+            broadcast.setTLV(Tag.BROADCAST_AREA_IDENTIFIER, new byte[] {0, 0x23, 0x45, 0x67});
+            broadcast.setTLV(Tag.BROADCAST_CONTENT_TYPE, new byte[] {0, 0, 1});
+            broadcast.setTLV(Tag.BROADCAST_REP_NUM, new Integer(3));
+            broadcast.setTLV(Tag.BROADCAST_FREQUENCY_INTERVAL, new byte[] {9, 0, 30});
+            broadcast.setTLV(Tag.MESSAGE_PAYLOAD, new DefaultAlphabetEncoding().encode(GSM7_TEXT));
+            return broadcast;
+        } else if ("broadcast_sm_resp".equals(name)) {
+            BroadcastSMResp resp = new BroadcastSMResp();
+            resp.setMessageId("7f3a9c0012");
+            return resp;
+        } else if ("query_broadcast_sm".equals(name)) {
+            QueryBroadcastSM query = new QueryBroadcastSM();
+            query.setMessageId("7f3a9c0012");
+            query.setSource(shortCode());
+            return query;
+        } else if ("query_broadcast_sm_resp".equals(name)) {
+            QueryBroadcastSMResp resp = new QueryBroadcastSMResp();
+            resp.setMessageId("7f3a9c0012");
+            resp.setTLV(Tag.MESSAGE_STATE, new Integer(MessageState.EN_ROUTE.getValue()));
+            resp.setTLV(Tag.BROADCAST_AREA_IDENTIFIER, new byte[] {0, 0x23, 0x45, 0x67});
+            resp.setTLV(Tag.BROADCAST_AREA_SUCCESS, new Integer(100));
+            return resp;
+        } else if ("cancel_broadcast_sm".equals(name)) {
+            CancelBroadcastSM cancel = new CancelBroadcastSM();
+            cancel.setServiceType("CBS");
+            cancel.setMessageId("7f3a9c0012");
+            cancel.setSource(shortCode());
+            return cancel;
+        } else if ("cancel_broadcast_sm_resp".equals(name)) {
+            return new CancelBroadcastSMResp();
+        }
+        throw new IllegalArgumentException("Unknown packet: " + name);
+    }
+
+    private static void populateBind(Bind bind) {
+        bind.setSystemId("esme01");
+        bind.setPassword("secret");
+        bind.setSystemType("VMA");
+        bind.setAddressTon(Ton.UNKNOWN);
+        bind.setAddressNpi(Npi.UNKNOWN);
+        bind.setAddressRange("8443[0-9]");
+    }
+
+    private static SubmitSM newSubmit() {
+        SubmitSM submit = new SubmitSM();
+        submit.setServiceType("CMT");
+        submit.setSource(shortCode());
+        submit.setDestination(mobile("447700900456"));
+        submit.setRegistered(1);
+        submit.setExpiryTime(SMPPDate.getRelativeInstance(0, 0, 2, 0, 0, 0));
+        return submit;
+    }
+
+    private static DataSM newDataSM() {
+        DataSM data = new DataSM();
+        data.setServiceType("WAP");
+        data.setSource(shortCode());
+        data.setDestination(mobile("447700900456"));
+        data.setEsmClass(0x40);
+        data.setRegistered(1);
+        data.setDataCoding(4);
+        return data;
+    }
+
+    private static Address shortCode() {
+        return new Address(Ton.NETWORK, Npi.UNKNOWN, "84433");
+    }
+
+    private static Address mobile(String number) {
+        return new Address(Ton.INTERNATIONAL, Npi.ISDN, number);
+    }
+
+    private static byte[] ucs2(String text) {
+        try {
+            return new UCS2Encoding().encode(text);
+        } catch (UnsupportedEncodingException x) {
+            throw new IllegalStateException(x.toString());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.event.LinkDeadEvent;
+import org.mobicents.protocols.smpp.message.CommandId;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.util.HashedWheelTimer;
+import org.mobicents.protocols.smpp.util.SequenceNumberScheme;
+import org.mobicents.protocols.smpp.util.Timeout;
+
+/**
+ * Sends enquire_link requests on a bound session that has been idle and
+ * declares the link dead when too many go unanswered.
+ * <p>
+ * A check runs on the shared {@link HashedWheelTimer}. If nothing has been
+ * received from the SMSC for the keepalive interval and no probe is
+ * outstanding, an <code>EnquireLink</code> is sent. Any packet received
+ * from the SMSC counts as traffic, so a busy link is never probed. A probe
+ * that is not answered within the response timeout is a miss, unless other
+ * packets arrived while it was outstanding. Once the maximum number of
+ * consecutive misses is reached a
+ * {@link org.mobicents.protocols.smpp.event.LinkDeadEvent} is sent to the
+ * session&apos;s observers and the keepalive stops.
+ * </p>
+ * <p>
+ * Probes are written, and link dead events delivered, on pooled daemon
+ * threads so that a blocking link or observer can never hold up the timer,
+ * nor the probes of other sessions. The response
+ * timeout only starts once the probe has been written, so a probe stuck
+ * behind a slow link is not counted as missed.
+ * </p>
+ */
+final class KeepAlive implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(KeepAlive.class);
+
+    private static ExecutorService sender;
+
+    private final Session session;
+    private final long intervalNanos;
+    private final long responseTimeoutNanos;
+    private final int maxMissed;
+    private volatile long lastReceived;
+    /**
+     * Whether a probe is outstanding. Kept apart from the probe&apos;s
+     * sequence number, which is -1 when the session has no sequence
+     * numbering scheme.
+     */
+    private volatile boolean probeOutstanding;
+    private volatile long probeSequence;
+    private volatile long probeSent;
+    private volatile boolean probeWritten;
+    private volatile long lastLatency = -1L;
+    private int missed;
+    private Timeout task;
+    private volatile boolean stopped;
+
+    /**
+     * Create a new keepalive.
+     * @param session The session to probe.
+     * @param interval The idle time, in milliseconds, after which a probe
+     * is sent.
+     * @param responseTimeout The time, in milliseconds, to wait for a
+     * probe&apos;s response before counting it as missed.
+     * @param maxMissed The number of consecutive misses after which the link
+     * is declared dead.
+     */
+    KeepAlive(Session session, long interval, long responseTimeout, int maxMissed) {
+        this.session = session;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.responseTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(responseTimeout);
+        this.maxMissed = maxMissed;
+        this.lastReceived = System.nanoTime();
+        this.probeSent = lastReceived;
+    }
+
+    /**
+     * Start checking the link.
+     */
+    synchronized void start() {
+        long period = Math.min(intervalNanos, responseTimeoutNanos);
+        task = HashedWheelTimer.getShared().scheduleAtFixedRate(
+                this, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop checking the link. A probe that is still outstanding is
+     * forgotten.
+     */
+    synchronized void stop() {
+        stopped = true;
+        probeOutstanding = false;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Get the round trip time of the last answered probe.
+     * @return The latency in milliseconds, or -1 if no probe has been
+     * answered yet.
+     */
+    long getLastLatency() {
+        long latency = lastLatency;
+        return latency < 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(latency);
+    }
+
+    /**
+     * Record a packet received from the SMSC. Called by the receiver for
+     * every packet, so it must be cheap.
+     * @param packet The received packet.
+     */
+    void packetReceived(SMPPPacket packet) {
+        long now = System.nanoTime();
+        lastReceived = now;
+        if (probeOutstanding
+                && packet.getCommandId() == CommandId.ENQUIRE_LINK_RESP
+                && packet.getSequenceNum() == probeSequence) {
+            lastLatency = now - probeSent;
+            probeOutstanding = false;
+            LOG.debug("enquire_link answered in {}ns", Long.valueOf(lastLatency));
+        }
+    }
+
+    /**
+     * Periodic check, run on the timer thread.
+     */
+    public void run() {
+        int missedCount;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (probeOutstanding) {
+                if (!probeWritten || now - probeSent < responseTimeoutNanos) {
+                    return;
+                }
+                probeMissed();
+                if (missed < maxMissed) {
+                    return;
+                }
+                missedCount = missed;
+                stop();
+            } else {
+                if (lastReceived - probeSent > 0L) {
+                    missed = 0;
+                }
+                if (now - lastReceived >= intervalNanos) {
+                    sendProbe(now);
+                }
+                return;
+            }
+        }
+        LOG.warn("Link is dead: {} consecutive enquire_links unanswered",
+                Integer.valueOf(missedCount));
+        // Observers may block or close the link, so they are not run on
+        // the shared timer thread.
+        final LinkDeadEvent event =
+            new LinkDeadEvent(session, missedCount, getLastLatency());
+        getSender().execute(new Runnable() {
+            public void run() {
+                session.getEventDispatcher().notifyObservers(session, event);
+            }
+        });
+    }
+
+    private void probeMissed() {
+        if (lastReceived - probeSent > 0L) {
+            // The response went astray but the SMSC is still talking.
+            missed = 0;
+        } else {
+            missed++;
+            LOG.debug("enquire_link {} unanswered ({} of {})", new Object[] {
+                    Long.valueOf(probeSequence), Integer.valueOf(missed),
+                    Integer.valueOf(maxMissed), });
+        }
+        probeOutstanding = false;
+    }
+
+    private void sendProbe(long now) {
+        final EnquireLink probe = new EnquireLink();
+        SequenceNumberScheme numberScheme = session.getSequenceNumberScheme();
+        if (numberScheme != null) {
+            probe.setSequenceNum(numberScheme.nextNumber());
+        }
+        probeSent = now;
+        probeWritten = false;
+        probeSequence = probe.getSequenceNum();
+        probeOutstanding = true;
+        getSender().execute(new Runnable() {
+            public void run() {
+                if (stopped) {
+                    return;
+                }
+                try {
+                    session.sendKeepAlive(probe);
+                } catch (IOException x) {
+                    LOG.debug("Could not send enquire_link", x);
+                } catch (RuntimeException x) {
+                    LOG.debug("Could not send enquire_link", x);
+                } finally {
+                    probeWritten(probe.getSequenceNum());
+                }
+            }
+        });
+    }
+
+    /**
+     * Start the response timeout for a probe once it has been written, or
+     * has failed to be.
+     */
+    private synchronized void probeWritten(long sequence) {
+        if (probeOutstanding && probeSequence == sequence) {
+            probeSent = System.nanoTime();
+            probeWritten = true;
+        }
+    }
+
+    private static synchronized ExecutorService getSender() {
+        if (sender == null) {
+            sender = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "SMPP-KeepAlive");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sender;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.event.ReceiverExceptionEvent;
+import org.mobicents.protocols.smpp.event.ReceiverExitEvent;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.NioLink;
+import org.mobicents.protocols.smpp.net.PacketListener;
+import org.mobicents.protocols.smpp.net.ReadTimeoutException;
+import org.mobicents.protocols.smpp.net.SmscLink;
+import org.mobicents.protocols.smpp.util.APIConfig;
+import org.mobicents.protocols.smpp.util.APIConfigFactory;
+
+/**
+ * Receiver for sessions running over a {@link NioLink}. Instead of owning
+ * a thread, this receiver listens for packets pushed up by the link&apos;s
+ * I/O thread and processes them exactly as {@link ReceiverThread} would:
+ * the session updates its state from the packet, and the packet is then
+ * handed to the session&apos;s event dispatcher.
+ */
+public class NioReceiver implements Receiver, PacketListener {
+    private static final Logger LOG = LoggerFactory.getLogger(NioReceiver.class);
+
+    private String name;
+    private Session session;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private int ioExceptions;
+    private int ioExceptionLimit;
+
+    public NioReceiver() {
+    }
+    
+    public NioReceiver(Session session) {
+        this.session = session;
+    }
+    
+    public Session getSession() {
+        return session;
+    }
+    
+    public void setSession(Session session) {
+        this.session = session;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    public void start() {
+        LOG.debug("Receiver {} starting.", name);
+        APIConfig config = APIConfigFactory.getConfig();
+        ioExceptionLimit = config.getInt(APIConfig.TOO_MANY_IO_EXCEPTIONS, 5);
+        ioExceptions = 0;
+        started.set(true);
+        getLink().setPacketListener(this);
+    }
+
+    public void stop() {
+        exit(new ReceiverExitEvent(session));
+    }
+
+    public void packetReceived(SmscLink link, SMPPPacket packet) {
+        if (!started.get()) {
+            return;
+        }
+        session.processReceivedPacket(packet);
+        if (session.filterReceivedPacket(packet)) {
+            session.getEventDispatcher().notifyObservers(session, packet);
+        }
+        ioExceptions = 0;
+        if (session.getState() == SessionState.UNBOUND) {
+            exit(new ReceiverExitEvent(session));
+        }
+    }
+
+    public void readTimeout(SmscLink link) {
+        if (!started.get()) {
+            return;
+        }
+        // The bind timeout is run by the session's timer, so read
+        // timeouts only matter once bound.
+        if (session.getState() == SessionState.BOUND) {
+            LOG.debug("Read timeout occurred.");
+            session.getEventDispatcher().notifyObservers(session,
+                    new ReceiverExceptionEvent(session, new ReadTimeoutException()));
+        }
+    }
+
+    public void linkError(SmscLink link, Exception error) {
+        if (!started.get()) {
+            return;
+        }
+        LOG.debug("Exception in receiver", error);
+        if (session.isBindTimedOut()) {
+            // The session closed the link because the bind timed out.
+            ReceiverExitEvent exitEvent =
+                new ReceiverExitEvent(session, null, SessionState.BINDING);
+            exitEvent.setReason(ReceiverExitEvent.BIND_TIMEOUT);
+            exit(exitEvent);
+            return;
+        }
+        SessionState state = session.getState();
+        if (error instanceof IOException) {
+            // The link is closed once it reports an I/O error, so there is
+            // no point waiting for more.
+            ioExceptions++;
+            if (ioExceptions >= ioExceptionLimit || !link.isConnected()) {
+                ReceiverExitEvent exitEvent =
+                    new ReceiverExitEvent(session, error, state);
+                exit(exitEvent);
+            }
+        } else {
+            LOG.error("Error in receiver", error);
+            exit(new ReceiverExitEvent(session, error, state));
+        }
+    }
+
+    private NioLink getLink() {
+        return (NioLink) session.getSmscLink();
+    }
+
+    /**
+     * Stop receiving and report the exit. Only the first caller, whether
+     * <code>stop</code> or the loop thread, gets past the guard.
+     */
+    private void exit(ReceiverExitEvent exitEvent) {
+        if (!started.compareAndSet(true, false)) {
+            return;
+        }
+        getLink().setPacketListener(null);
+        session.receiverExited(exitEvent.getException());
+        session.getEventDispatcher().notifyObservers(session, exitEvent);
+        LOG.debug("Destroying event dispatcher.");
+        session.getEventDispatcher().destroy();
+        LOG.debug("Receiver {} exiting.", name);
+    }
+}
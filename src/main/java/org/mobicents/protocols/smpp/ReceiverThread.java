@@ -29,7 +29,6 @@ import org.slf4j.LoggerFactory;
 
 import org.mobicents.protocols.smpp.event.ReceiverExceptionEvent;
 import org.mobicents.protocols.smpp.event.ReceiverExitEvent;
-import org.mobicents.protocols.smpp.event.SMPPEvent;
 import org.mobicents.protocols.smpp.message.SMPPPacket;
 import org.mobicents.protocols.smpp.net.ReadTimeoutException;
 import org.mobicents.protocols.smpp.util.APIConfig;
@@ -85,7 +84,7 @@ public class ReceiverThread implements Receiver, Runnable {
     
     public void run() {
         LOG.debug("Receiver thread starting.");
-        SMPPEvent exitEvent = null;
+        ReceiverExitEvent exitEvent = null;
         try {
             running = true;
             exitEvent = processPackets();
@@ -93,6 +92,7 @@ public class ReceiverThread implements Receiver, Runnable {
         	LOG.error("Error in receiver thread", x);
             exitEvent = new ReceiverExitEvent(session, x);
         }
+        session.receiverExited(exitEvent.getException());
         session.getEventDispatcher().notifyObservers(session, exitEvent);
         LOG.debug("Destroying event dispatcher.");
         session.getEventDispatcher().destroy();
@@ -127,18 +127,14 @@ public class ReceiverThread implements Receiver, Runnable {
                     continue;
                 }
                 session.processReceivedPacket(packet);
-                session.getEventDispatcher().notifyObservers(session, packet);
+                if (session.filterReceivedPacket(packet)) {
+                    session.getEventDispatcher().notifyObservers(session, packet);
+                }
                 ioExceptions = 0;
             } catch (ReadTimeoutException x) {
+                // The bind timeout is run by the session's timer, so read
+                // timeouts only matter once bound.
                 SessionState state = session.getState();
-                
-                if (state == SessionState.BINDING) {
-                    LOG.debug("Bind timeout occurred.");
-                    exitEvent = new ReceiverExitEvent(session, null, state);
-                    exitEvent.setReason(ReceiverExitEvent.BIND_TIMEOUT);
-                    break;
-                }
-                
                 if (state == SessionState.BOUND) {
                 	LOG.debug("Read timeout occurred.");
                 	excpEvent = new ReceiverExceptionEvent(session, x);
@@ -156,7 +152,12 @@ public class ReceiverThread implements Receiver, Runnable {
             }
         }
         if (exitEvent == null) {
-            exitEvent = new ReceiverExitEvent(session);
+            if (session.isBindTimedOut()) {
+                exitEvent = new ReceiverExitEvent(session, null, SessionState.BINDING);
+                exitEvent.setReason(ReceiverExitEvent.BIND_TIMEOUT);
+            } else {
+                exitEvent = new ReceiverExitEvent(session);
+            }
         }
         return exitEvent;
     }
@@ -0,0 +1,184 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.ReadTimeoutException;
+import org.mobicents.protocols.smpp.util.ConcurrentLongHashMap;
+import org.mobicents.protocols.smpp.util.HashedWheelTimer;
+import org.mobicents.protocols.smpp.util.Timeout;
+
+/**
+ * Tracks the requests a session has sent asynchronously and not yet had
+ * a response to. The number of such requests is limited to the window
+ * size. Responses are matched to their request by sequence number.
+ * Response timeouts run on the shared {@link HashedWheelTimer}.
+ */
+final class RequestWindow {
+    private final int size;
+    private final Semaphore slots;
+    private final ConcurrentLongHashMap<ResponseFuture> pending;
+
+    /**
+     * Create a new window.
+     * @param size The maximum number of outstanding requests.
+     */
+    RequestWindow(int size) {
+        this.size = size;
+        this.slots = new Semaphore(size);
+        this.pending = new ConcurrentLongHashMap<ResponseFuture>(size, 16);
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Take a slot in the window for a request.
+     * @param request The request, which must already have its sequence
+     * number.
+     * @param block <code>true</code> to wait for a slot if the window is
+     * full, <code>false</code> to fail immediately.
+     * @param timeout How long, in milliseconds, to wait for a slot if
+     * <code>block</code> is set. Zero or less means wait forever.
+     * @return The future for the request&apos;s response.
+     * @throws WindowFullException If no slot was available in time.
+     * @throws IllegalStateException If a request with the same sequence
+     * number is already outstanding.
+     * @throws IOException If the caller is interrupted waiting for a slot.
+     */
+    ResponseFuture add(SMPPPacket request, boolean block, long timeout) throws IOException {
+        acquireSlot(block, timeout);
+        final ResponseFuture future = new ResponseFuture(request, this);
+        if (pending.putIfAbsent(future.getSequenceNum(), future) != null) {
+            slots.release();
+            throw new IllegalStateException("Sequence number "
+                    + future.getSequenceNum() + " is already awaiting a response");
+        }
+        return future;
+    }
+
+    /**
+     * Start the response timeout for a request, once it has been written.
+     * @param future The request&apos;s future.
+     * @param timeout How long, in milliseconds, to wait for the response.
+     * Zero or less means wait forever.
+     */
+    void startTimeout(final ResponseFuture future, final long timeout) {
+        if (timeout <= 0L) {
+            return;
+        }
+        Timeout timeoutTask = HashedWheelTimer.getShared().schedule(new Runnable() {
+            public void run() {
+                if (remove(future)) {
+                    future.fail(new ReadTimeoutException("No response to request "
+                            + future.getSequenceNum() + " within "
+                            + timeout + "ms"));
+                }
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        future.setTimeoutTask(timeoutTask);
+        if (pending.get(future.getSequenceNum()) != future) {
+            // The response beat the timeout being set.
+            timeoutTask.cancel();
+        }
+    }
+
+    /**
+     * Complete the request a response belongs to.
+     * @param response The response packet.
+     * @return <code>true</code> if a request was waiting on the response.
+     */
+    boolean complete(SMPPPacket response) {
+        ResponseFuture future = pending.remove(response.getSequenceNum());
+        if (future == null) {
+            return false;
+        }
+        release(future);
+        future.complete(response);
+        return true;
+    }
+
+    /**
+     * Take a request out of the window without completing it.
+     * @param future The request&apos;s future.
+     * @return <code>true</code> if the request was still in the window.
+     */
+    boolean remove(ResponseFuture future) {
+        if (pending.remove(future.getSequenceNum(), future)) {
+            release(future);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fail every outstanding request.
+     * @param cause The exception to fail them with.
+     */
+    void failAll(Throwable cause) {
+        for (ResponseFuture future : pending.values()) {
+            if (remove(future)) {
+                future.fail(cause);
+            }
+        }
+    }
+
+    private void acquireSlot(boolean block, long timeout) throws IOException {
+        if (slots.tryAcquire()) {
+            return;
+        }
+        if (!block) {
+            throw new WindowFullException("All " + size + " window slots are in use");
+        }
+        try {
+            if (timeout > 0L) {
+                if (!slots.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new WindowFullException("No window slot became free within "
+                            + timeout + "ms");
+                }
+            } else {
+                slots.acquire();
+            }
+        } catch (InterruptedException x) {
+            throw new InterruptedIOException("Interrupted waiting for a window slot");
+        }
+    }
+
+    private void release(ResponseFuture future) {
+        Timeout timeoutTask = future.getTimeoutTask();
+        if (timeoutTask != null) {
+            timeoutTask.cancel();
+        }
+        slots.release();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.util.Timeout;
+
+/**
+ * The pending result of a request sent with
+ * {@link Session#sendRequest(SMPPPacket)}. The future completes when the
+ * response with the request&apos;s sequence number arrives. It fails with
+ * a {@link org.mobicents.protocols.smpp.net.ReadTimeoutException} if the
+ * session&apos;s request timeout expires first, or with an
+ * <code>IOException</code> if the session&apos;s receiver exits while the
+ * request is outstanding. In both cases {@link #get()} throws an
+ * <code>ExecutionException</code> whose cause is that exception.
+ * <p>
+ * Cancelling the future frees its slot in the session&apos;s window. It
+ * does not, and cannot, stop the SMSC from processing the request.
+ * </p>
+ */
+public class ResponseFuture implements Future<SMPPPacket> {
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseFuture.class);
+
+    private final SMPPPacket request;
+    private final long sequenceNum;
+    private final RequestWindow window;
+    private boolean done;
+    private boolean cancelled;
+    private SMPPPacket response;
+    private Throwable failure;
+    private List<ResponseListener> listeners;
+    private volatile Timeout timeoutTask;
+
+    ResponseFuture(SMPPPacket request, RequestWindow window) {
+        this.request = request;
+        this.sequenceNum = request.getSequenceNum();
+        this.window = window;
+    }
+
+    /**
+     * Get the request this future is waiting on a response to.
+     * @return The request packet.
+     */
+    public SMPPPacket getRequest() {
+        return request;
+    }
+
+    /**
+     * Get the sequence number of the request.
+     * @return The request&apos;s sequence number.
+     */
+    public long getSequenceNum() {
+        return sequenceNum;
+    }
+
+    /**
+     * Add a listener to be called when this request completes. If it has
+     * already completed, the listener is called immediately on the calling
+     * thread.
+     * @param listener The listener to add.
+     */
+    public void addListener(ResponseListener listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null) {
+                    listeners = new ArrayList<ResponseListener>(1);
+                }
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (finish(null, null, true)) {
+            window.remove(this);
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isCancelled() {
+        synchronized (this) {
+            return cancelled;
+        }
+    }
+
+    public boolean isDone() {
+        synchronized (this) {
+            return done;
+        }
+    }
+
+    /**
+     * Wait for the response to the request.
+     * @return The response packet.
+     * @throws InterruptedException If the calling thread is interrupted
+     * while waiting.
+     * @throws ExecutionException If the request timed out or the session
+     * failed before the response arrived.
+     * @throws CancellationException If the future was cancelled.
+     */
+    public SMPPPacket get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (!done) {
+                wait();
+            }
+            return report();
+        }
+    }
+
+    /**
+     * Wait at most the given time for the response to the request.
+     * @param timeout The maximum time to wait.
+     * @param unit The unit of <code>timeout</code>.
+     * @return The response packet.
+     * @throws InterruptedException If the calling thread is interrupted
+     * while waiting.
+     * @throws ExecutionException If the request timed out or the session
+     * failed before the response arrived.
+     * @throws TimeoutException If the wait timed out. The request is still
+     * outstanding.
+     * @throws CancellationException If the future was cancelled.
+     */
+    public SMPPPacket get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!done) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return report();
+        }
+    }
+
+    public String toString() {
+        StringBuilder buffer = new StringBuilder("ResponseFuture(seq=");
+        buffer.append(sequenceNum);
+        synchronized (this) {
+            if (cancelled) {
+                buffer.append(",cancelled");
+            } else if (failure != null) {
+                buffer.append(",failed=").append(failure);
+            } else if (done) {
+                buffer.append(",response=").append(response);
+            }
+        }
+        return buffer.append(')').toString();
+    }
+
+    /**
+     * Complete the future with its response.
+     * @return <code>true</code> if this call completed the future,
+     * <code>false</code> if it was already complete.
+     */
+    boolean complete(SMPPPacket response) {
+        return finish(response, null, false);
+    }
+
+    /**
+     * Complete the future with an error.
+     * @return <code>true</code> if this call completed the future,
+     * <code>false</code> if it was already complete.
+     */
+    boolean fail(Throwable cause) {
+        return finish(null, cause, false);
+    }
+
+    Timeout getTimeoutTask() {
+        return timeoutTask;
+    }
+
+    void setTimeoutTask(Timeout timeoutTask) {
+        this.timeoutTask = timeoutTask;
+    }
+
+    private boolean finish(SMPPPacket response, Throwable failure, boolean cancelled) {
+        List<ResponseListener> toNotify;
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            this.done = true;
+            this.response = response;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            toNotify = listeners;
+            listeners = null;
+            notifyAll();
+        }
+        if (toNotify != null) {
+            for (ResponseListener listener : toNotify) {
+                notifyListener(listener);
+            }
+        }
+        return true;
+    }
+
+    private void notifyListener(ResponseListener listener) {
+        try {
+            listener.requestComplete(this);
+        } catch (RuntimeException x) {
+            LOG.warn("Response listener threw an exception", x);
+        }
+    }
+
+    private SMPPPacket report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException(
+                    "Request " + sequenceNum + " was cancelled");
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure.getMessage(), failure);
+        }
+        return response;
+    }
+}
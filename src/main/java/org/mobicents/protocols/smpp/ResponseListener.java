@@ -0,0 +1,39 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+/**
+ * Callback for applications that want to be told when an asynchronous
+ * request completes, rather than blocking on its {@link ResponseFuture}.
+ * @see ResponseFuture#addListener(ResponseListener)
+ */
+public interface ResponseListener {
+    /**
+     * Called once the request is complete: either its response has
+     * arrived, it timed out, it was cancelled or the session failed. This is
+     * called on whichever thread completed the request, which is usually
+     * the session&apos;s receiver, so implementations should not block.
+     * @param future The completed request.
+     */
+    void requestComplete(ResponseFuture future);
+}
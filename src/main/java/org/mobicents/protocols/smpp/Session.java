@@ -25,6 +25,7 @@ package org.mobicents.protocols.smpp;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -32,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.mobicents.protocols.smpp.event.EventDispatcher;
+import org.mobicents.protocols.smpp.event.PacketFilter;
 import org.mobicents.protocols.smpp.event.SessionObserver;
 import org.mobicents.protocols.smpp.event.SimpleEventDispatcher;
 import org.mobicents.protocols.smpp.message.Bind;
@@ -40,17 +42,21 @@ import org.mobicents.protocols.smpp.message.BindResp;
 import org.mobicents.protocols.smpp.message.BindTransceiver;
 import org.mobicents.protocols.smpp.message.BindTransmitter;
 import org.mobicents.protocols.smpp.message.CommandId;
+import org.mobicents.protocols.smpp.message.EnquireLink;
 import org.mobicents.protocols.smpp.message.SMPPPacket;
 import org.mobicents.protocols.smpp.message.Unbind;
 import org.mobicents.protocols.smpp.message.UnbindResp;
 import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.net.NioLink;
 import org.mobicents.protocols.smpp.net.SmscLink;
 import org.mobicents.protocols.smpp.net.TcpLink;
 import org.mobicents.protocols.smpp.util.APIConfig;
 import org.mobicents.protocols.smpp.util.APIConfigFactory;
 import org.mobicents.protocols.smpp.util.DefaultSequenceScheme;
+import org.mobicents.protocols.smpp.util.HashedWheelTimer;
 import org.mobicents.protocols.smpp.util.PropertyNotFoundException;
 import org.mobicents.protocols.smpp.util.SequenceNumberScheme;
+import org.mobicents.protocols.smpp.util.Timeout;
 import org.mobicents.protocols.smpp.version.SMPPVersion;
 import org.mobicents.protocols.smpp.version.VersionException;
 import org.mobicents.protocols.smpp.version.VersionFactory;
@@ -62,6 +68,9 @@ import org.mobicents.protocols.smpp.version.VersionFactory;
  */
 public class Session {
     private static final AtomicInteger SESSION_ID = new AtomicInteger(1);
+    private static final int DEFAULT_WINDOW_SIZE = 100;
+    private static final long DEFAULT_REQUEST_TIMEOUT = 60000L;
+    private static final int DEFAULT_ENQUIRE_LINK_MAX_MISSED = 3;
     
     private final Logger log;
     private String sessionId;
@@ -72,9 +81,20 @@ public class Session {
     private SmscLink smscLink;
     private SequenceNumberScheme numberScheme = new DefaultSequenceScheme();
     private EventDispatcher eventDispatcher;
+    private volatile PacketFilter packetFilter;
     private Receiver receiver;
     private boolean useOptionalParams = version.isSupportTLV();
     private boolean validating = true;
+    private RequestWindow window;
+    private long requestTimeout;
+    private boolean blockWhenWindowFull = true;
+    private volatile Timeout bindTimeout;
+    private volatile boolean bindTimedOut;
+    private long enquireLinkInterval;
+    private long enquireLinkTimeout;
+    private int enquireLinkMaxMissed = DEFAULT_ENQUIRE_LINK_MAX_MISSED;
+    private volatile KeepAlive keepAlive;
+    private volatile boolean smscSide;
     
     public Session(SmscLink link) {
         sessionId = "Session-" + SESSION_ID.getAndIncrement();
@@ -103,6 +123,20 @@ public class Session {
         return smscLink;
     }
     
+    public PacketFilter getPacketFilter() {
+        return packetFilter;
+    }
+    
+    /**
+     * Set the filter which decides whether a received packet is passed on
+     * to this session&apos;s observers.
+     * @param packetFilter The filter to use, or <code>null</code> to deliver
+     * every received packet.
+     */
+    public void setPacketFilter(PacketFilter packetFilter) {
+        this.packetFilter = packetFilter;
+    }
+    
     public EventDispatcher getEventDispatcher() {
         return eventDispatcher;
     }
@@ -190,12 +224,66 @@ public class Session {
         if (!smscLink.isConnected()) {
             smscLink.connect();
         }
-        setLinkTimeout(APIConfig.BIND_TIMEOUT);
+        // The bind timeout is run by the timer rather than the link, so
+        // the link gets its normal read timeout straight away.
+        setLinkTimeout(APIConfig.LINK_TIMEOUT);
+        bindTimedOut = false;
         log.debug("Sending bind packet to the SMSC..");
         sendPacketInternal(bindRequest);
+        startBindTimer();
+        receiver.start();
+    }
+
+    /**
+     * Start servicing an inbound connection from an ESME. The session takes
+     * the SMSC&apos;s side of the protocol: it waits in the
+     * {@link SessionState#BINDING} state for a bind request, and becomes
+     * bound when a successful bind response is sent back. If no bind
+     * arrives within the bind timeout, the link is closed.
+     * <p>
+     * Observers should be added before calling this method, as the first
+     * packet may be received before it returns.
+     * </p>
+     * @throws IOException If the link is not connected.
+     * @see org.mobicents.protocols.smpp.server.SmscServer
+     */
+    public void accept() throws IOException {
+        if (receiver == null) {
+            initReceiver();
+        }
+        if (getState() != SessionState.UNBOUND) {
+            throw new IllegalStateException("Already binding or bound.");
+        }
+        if (!smscLink.isConnected()) {
+            throw new IOException("Link is not connected.");
+        }
+        smscSide = true;
+        setLinkTimeout(APIConfig.LINK_TIMEOUT);
+        bindTimedOut = false;
+        setState(SessionState.UNBOUND, SessionState.BINDING);
+        startBindTimer();
         receiver.start();
     }
 
+    /**
+     * Determine if this session is the SMSC side of its link.
+     * @return <code>true</code> if the session was started with
+     * {@link #accept()}.
+     */
+    public boolean isSmscSide() {
+        return smscSide;
+    }
+
+    /**
+     * Get the type of bind this session was bound (or is binding) as.
+     * On the SMSC side, this is the type the ESME was successfully bound as.
+     * @return The session type, or <code>null</code> if no bind has been
+     * sent or received.
+     */
+    public SessionType getSessionType() {
+        return type;
+    }
+
     public void unbind() throws IOException {
         sendPacketInternal(new Unbind());
     }
@@ -209,19 +297,235 @@ public class Session {
             bind((Bind) packet);
             return;
         }
-        if (type == SessionType.RECEIVER) {
-            // We allow the receiver to send any response type but a very
-            // limited set of requests.
-            if (packet.isRequest()
-                    && !(commandId == CommandId.UNBIND
-                            || commandId == CommandId.ENQUIRE_LINK)) {
-                throw new UnsupportedOperationException(
-                        "Receiver connection cannot send command " + commandId);
-            }
-        }
+        checkReceiverCanSend(packet);
         sendPacketInternal(packet);
     }
 
+    /**
+     * Send a request without waiting for its response. The returned future
+     * completes when the response with the request&apos;s sequence number is
+     * received. Responses are still delivered to the session&apos;s
+     * observers as usual.
+     * <p>
+     * At most {@link #getWindowSize()} requests may be awaiting a response
+     * at once. When the window is full, this method either waits for a slot
+     * to free up or throws a {@link WindowFullException}, depending on
+     * {@link #isBlockWhenWindowFull()}. A blocked caller waits no longer
+     * than the request timeout, if one is set.
+     * </p>
+     * @param request The request to send. Bind requests must be sent with
+     * {@link #bind(Bind)}.
+     * @return A future for the request&apos;s response.
+     * @throws IOException If the request cannot be written to the link.
+     * @throws WindowFullException If the window is full and the session is
+     * not set to block, or no slot frees up within the request timeout.
+     * @see #sendRequest(SMPPPacket, long)
+     */
+    public ResponseFuture sendRequest(SMPPPacket request) throws IOException {
+        return sendRequest(request, requestTimeout);
+    }
+
+    /**
+     * Send a request without waiting for its response, using its own
+     * response timeout rather than the session&apos;s. This allows, for
+     * example, a bulk submission to be given a longer deadline than a
+     * query. The timeout starts once the request has been handed to the
+     * link. Otherwise this behaves exactly as
+     * {@link #sendRequest(SMPPPacket)}.
+     * @param request The request to send. Bind requests must be sent with
+     * {@link #bind(Bind)}.
+     * @param timeout The time, in milliseconds, to wait for the response,
+     * and for a window slot when the window is full. Zero means wait
+     * forever.
+     * @return A future for the request&apos;s response.
+     * @throws IOException If the request cannot be written to the link.
+     * @throws WindowFullException If the window is full and the session is
+     * not set to block, or no slot frees up within <code>timeout</code>.
+     */
+    public ResponseFuture sendRequest(SMPPPacket request, long timeout)
+            throws IOException {
+        int commandId = request.getCommandId();
+        if (request.isResponse()
+                || commandId == CommandId.BIND_TRANSMITTER
+                || commandId == CommandId.BIND_TRANSCEIVER
+                || commandId == CommandId.BIND_RECEIVER) {
+            throw new UnsupportedOperationException(
+                    "Cannot send command " + commandId + " asynchronously");
+        }
+        checkReceiverCanSend(request);
+        if (request.getSequenceNum() < 0L && numberScheme != null) {
+            request.setSequenceNum(numberScheme.nextNumber());
+        }
+        RequestWindow currentWindow = getWindow();
+        ResponseFuture future =
+            currentWindow.add(request, blockWhenWindowFull, timeout);
+        try {
+            sendPacketInternal(request);
+        } catch (IOException x) {
+            currentWindow.remove(future);
+            future.fail(x);
+            throw x;
+        } catch (RuntimeException x) {
+            currentWindow.remove(future);
+            future.fail(x);
+            throw x;
+        }
+        currentWindow.startTimeout(future, timeout);
+        return future;
+    }
+
+    /**
+     * Get the maximum number of requests sent with
+     * {@link #sendRequest(SMPPPacket)} that may await a response at once.
+     * @return The window size.
+     */
+    public int getWindowSize() {
+        return getWindow().getSize();
+    }
+
+    /**
+     * Set the maximum number of requests sent with
+     * {@link #sendRequest(SMPPPacket)} that may await a response at once.
+     * @param windowSize The new window size.
+     * @throws IllegalStateException If any requests are outstanding.
+     */
+    public synchronized void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        if (window != null && window.getPendingCount() > 0) {
+            throw new IllegalStateException(
+                    "Cannot resize the window while requests are outstanding");
+        }
+        window = new RequestWindow(windowSize);
+    }
+
+    /**
+     * Get the number of requests sent with {@link #sendRequest(SMPPPacket)}
+     * that are awaiting a response.
+     * @return The number of outstanding requests.
+     */
+    public int getPendingRequestCount() {
+        return getWindow().getPendingCount();
+    }
+
+    /**
+     * Get the time, in milliseconds, to wait for the response to a request
+     * sent with {@link #sendRequest(SMPPPacket)}.
+     * @return The request timeout. Zero means wait forever.
+     */
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Set the time, in milliseconds, to wait for the response to a request
+     * sent with {@link #sendRequest(SMPPPacket)}. When it expires, the
+     * request&apos;s future fails with a
+     * {@link org.mobicents.protocols.smpp.net.ReadTimeoutException}.
+     * @param requestTimeout The request timeout. Zero means wait forever.
+     */
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Determine what {@link #sendRequest(SMPPPacket)} does when the window
+     * is full.
+     * @return <code>true</code> if it waits for a free slot,
+     * <code>false</code> if it throws a {@link WindowFullException}.
+     */
+    public boolean isBlockWhenWindowFull() {
+        return blockWhenWindowFull;
+    }
+
+    /**
+     * Set what {@link #sendRequest(SMPPPacket)} does when the window is
+     * full.
+     * @param blockWhenWindowFull <code>true</code> to wait for a free slot,
+     * <code>false</code> to throw a {@link WindowFullException}.
+     */
+    public void setBlockWhenWindowFull(boolean blockWhenWindowFull) {
+        this.blockWhenWindowFull = blockWhenWindowFull;
+    }
+
+    /**
+     * Get the idle time after which an <code>EnquireLink</code> is sent to
+     * check the link.
+     * @return The keepalive interval in milliseconds. Zero means the
+     * keepalive is disabled.
+     */
+    public long getEnquireLinkInterval() {
+        return enquireLinkInterval;
+    }
+
+    /**
+     * Set the idle time after which an <code>EnquireLink</code> is sent to
+     * check the link. Only packets received from the SMSC count as
+     * traffic. The new value takes effect the next time the session binds.
+     * @param enquireLinkInterval The keepalive interval in milliseconds.
+     * Zero disables the keepalive.
+     */
+    public void setEnquireLinkInterval(long enquireLinkInterval) {
+        this.enquireLinkInterval = enquireLinkInterval;
+    }
+
+    /**
+     * Get the time to wait for an <code>EnquireLinkResp</code> before the
+     * probe counts as missed.
+     * @return The response timeout in milliseconds. Zero means the
+     * keepalive interval is used.
+     */
+    public long getEnquireLinkTimeout() {
+        return enquireLinkTimeout;
+    }
+
+    /**
+     * Set the time to wait for an <code>EnquireLinkResp</code> before the
+     * probe counts as missed. The new value takes effect the next time the
+     * session binds.
+     * @param enquireLinkTimeout The response timeout in milliseconds. Zero
+     * means the keepalive interval is used.
+     */
+    public void setEnquireLinkTimeout(long enquireLinkTimeout) {
+        this.enquireLinkTimeout = enquireLinkTimeout;
+    }
+
+    /**
+     * Get the number of consecutive unanswered <code>EnquireLink</code>
+     * requests after which the link is declared dead.
+     * @return The maximum number of missed responses.
+     */
+    public int getEnquireLinkMaxMissed() {
+        return enquireLinkMaxMissed;
+    }
+
+    /**
+     * Set the number of consecutive unanswered <code>EnquireLink</code>
+     * requests after which the link is declared dead and a
+     * {@link org.mobicents.protocols.smpp.event.LinkDeadEvent} is sent to
+     * the observers. The new value takes effect the next time the session
+     * binds.
+     * @param enquireLinkMaxMissed The maximum number of missed responses.
+     */
+    public void setEnquireLinkMaxMissed(int enquireLinkMaxMissed) {
+        if (enquireLinkMaxMissed < 1) {
+            throw new IllegalArgumentException("Max missed must be at least 1");
+        }
+        this.enquireLinkMaxMissed = enquireLinkMaxMissed;
+    }
+
+    /**
+     * Get the round trip time of the last <code>EnquireLink</code> sent
+     * by the keepalive.
+     * @return The latency in milliseconds, or -1 if the keepalive is not
+     * running or none of its probes has been answered yet.
+     */
+    public long getEnquireLinkLatency() {
+        KeepAlive current = keepAlive;
+        return current != null ? current.getLastLatency() : -1L;
+    }
+
     public void closeLink() throws IOException {
         if (getState() == SessionState.UNBOUND || getState() == SessionState.UNBINDING) {
             smscLink.disconnect();
@@ -246,13 +550,41 @@ public class Session {
         this.receiver = receiver;
     }
     
+    /**
+     * Ask the packet filter, if one is set, whether a received packet should
+     * be delivered to this session&apos;s observers.
+     * @param packet The packet received.
+     * @return <code>true</code> if the packet should be delivered.
+     */
+    boolean filterReceivedPacket(SMPPPacket packet) {
+        PacketFilter currentFilter = packetFilter;
+        return currentFilter == null || currentFilter.accept(this, packet);
+    }
+    
     public void processReceivedPacket(SMPPPacket packet) {
+        KeepAlive currentKeepAlive = keepAlive;
+        if (currentKeepAlive != null) {
+            currentKeepAlive.packetReceived(packet);
+        }
+        if (packet.isResponse()) {
+            RequestWindow currentWindow = window;
+            if (currentWindow != null) {
+                currentWindow.complete(packet);
+            }
+        }
         switch (packet.getCommandId()) {
         case CommandId.BIND_TRANSMITTER_RESP:
         case CommandId.BIND_RECEIVER_RESP:
         case CommandId.BIND_TRANSCEIVER_RESP:
             processReceivedBindResponse((BindResp) packet);
             break;
+        case CommandId.BIND_TRANSMITTER:
+        case CommandId.BIND_RECEIVER:
+        case CommandId.BIND_TRANSCEIVER:
+            if (smscSide && getState() == SessionState.BINDING) {
+                processReceivedBind((Bind) packet);
+            }
+            break;
         case CommandId.UNBIND:
             processReceivedUnbind((Unbind) packet);
             break;
@@ -264,6 +596,122 @@ public class Session {
         }
     }
 
+    /**
+     * Determine if the last bind attempt was abandoned because the
+     * SMSC did not respond within the bind timeout.
+     * @return <code>true</code> if the bind timed out.
+     */
+    boolean isBindTimedOut() {
+        return bindTimedOut;
+    }
+
+    /**
+     * Called by the receiver when it stops. Any requests still awaiting a
+     * response will never get one, so their futures are failed.
+     * @param cause The exception that stopped the receiver, if any.
+     */
+    void receiverExited(Throwable cause) {
+        cancelBindTimer();
+        stopKeepAlive();
+        RequestWindow currentWindow = window;
+        if (currentWindow != null && currentWindow.getPendingCount() > 0) {
+            IOException x = new IOException("Receiver exited before the response arrived");
+            if (cause != null) {
+                x.initCause(cause);
+            }
+            currentWindow.failAll(x);
+        }
+    }
+
+    /**
+     * Send a keepalive probe. Called by the keepalive on its own thread.
+     * @param enquireLink The probe, with its sequence number already set.
+     * @throws IOException If the probe cannot be written to the link.
+     */
+    void sendKeepAlive(EnquireLink enquireLink) throws IOException {
+        if (getState() == SessionState.BOUND) {
+            sendPacketInternal(enquireLink);
+        }
+    }
+
+    private void startKeepAlive() {
+        stopKeepAlive();
+        if (enquireLinkInterval > 0L) {
+            long timeout = enquireLinkTimeout > 0L
+                ? enquireLinkTimeout : enquireLinkInterval;
+            KeepAlive newKeepAlive = new KeepAlive(
+                    this, enquireLinkInterval, timeout, enquireLinkMaxMissed);
+            keepAlive = newKeepAlive;
+            newKeepAlive.start();
+        }
+    }
+
+    private void stopKeepAlive() {
+        KeepAlive current = keepAlive;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    private void startBindTimer() {
+        long timeout = APIConfigFactory.getConfig().getLong(APIConfig.BIND_TIMEOUT, 0L);
+        if (timeout > 0L) {
+            bindTimeout = HashedWheelTimer.getShared().schedule(new Runnable() {
+                public void run() {
+                    bindTimerExpired();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelBindTimer() {
+        Timeout timeout = bindTimeout;
+        if (timeout != null) {
+            timeout.cancel();
+            bindTimeout = null;
+        }
+    }
+
+    /**
+     * Give up on a bind that the SMSC has not answered. The link is
+     * closed, which makes the receiver exit with a bind timeout reason.
+     * Runs on the timer thread.
+     */
+    private void bindTimerExpired() {
+        if (state.compareAndSet(SessionState.BINDING, SessionState.UNBOUND)) {
+            log.debug("Bind timeout occurred.");
+            bindTimedOut = true;
+            try {
+                smscLink.disconnect();
+            } catch (IOException x) {
+                log.debug("Error closing link after bind timeout", x);
+            }
+        }
+    }
+
+    private synchronized RequestWindow getWindow() {
+        if (window == null) {
+            int windowSize = APIConfigFactory.getConfig().getInt(
+                    APIConfig.WINDOW_SIZE, DEFAULT_WINDOW_SIZE);
+            window = new RequestWindow(windowSize);
+        }
+        return window;
+    }
+
+    private void checkReceiverCanSend(SMPPPacket packet) {
+        if (type == SessionType.RECEIVER && !smscSide) {
+            // We allow the receiver to send any response type but a very
+            // limited set of requests.
+            int commandId = packet.getCommandId();
+            if (packet.isRequest()
+                    && !(commandId == CommandId.UNBIND
+                            || commandId == CommandId.ENQUIRE_LINK)) {
+                throw new UnsupportedOperationException(
+                        "Receiver connection cannot send command " + commandId);
+            }
+        }
+    }
+
     private void setState(SessionState fromState, SessionState toState) {
         if (!state.compareAndSet(fromState, toState)) {
             log.error("Race condition in setting state - expected {} but is {}. New value is "+ toState,
@@ -283,10 +731,20 @@ public class Session {
             dispatcher = new SimpleEventDispatcher();
         }
         setEventDispatcher(dispatcher);
+        requestTimeout = config.getLong(APIConfig.REQUEST_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+        blockWhenWindowFull = config.getBoolean(APIConfig.WINDOW_BLOCK, true);
+        enquireLinkInterval = config.getLong(APIConfig.ENQUIRE_LINK_INTERVAL, 0L);
+        enquireLinkTimeout = config.getLong(APIConfig.ENQUIRE_LINK_TIMEOUT, 0L);
+        enquireLinkMaxMissed = config.getInt(
+                APIConfig.ENQUIRE_LINK_MAX_MISSED, DEFAULT_ENQUIRE_LINK_MAX_MISSED);
     }
 
     private void initReceiver() {
-        receiver = new ReceiverThread(this);
+        if (smscLink instanceof NioLink) {
+            receiver = new NioReceiver(this);
+        } else {
+            receiver = new ReceiverThread(this);
+        }
         receiver.setName(sessionId + "-Receiver");
     }
 
@@ -308,8 +766,16 @@ public class Session {
         if (validating) {
             packet.validate(version);
         }
-        smscLink.write(packet, useOptionalParams);
+        // Update the state before writing: a link that reads on its own
+        // threads can process the response before write returns.
+        SessionState stateBeforeSend = getState();
         processSentPacket(packet);
+        try {
+            smscLink.write(packet, useOptionalParams);
+        } catch (IOException x) {
+            state.set(stateBeforeSend);
+            throw x;
+        }
     }
 
     private void processSentPacket(SMPPPacket packet) {
@@ -325,6 +791,13 @@ public class Session {
         case CommandId.UNBIND_RESP:
             processSentUnbindResponse((UnbindResp) packet);
             break;
+        case CommandId.BIND_TRANSMITTER_RESP:
+        case CommandId.BIND_RECEIVER_RESP:
+        case CommandId.BIND_TRANSCEIVER_RESP:
+            if (smscSide) {
+                processSentBindResponse((BindResp) packet);
+            }
+            break;
         default:
         }
     }
@@ -333,7 +806,23 @@ public class Session {
         setState(SessionState.UNBOUND, SessionState.BINDING);
     }
     
+    private void processSentBindResponse(BindResp bindResponse) {
+        if (bindResponse.getCommandStatus() == 0) {
+            if (bindResponse.getCommandId() == CommandId.BIND_TRANSMITTER_RESP) {
+                type = SessionType.TRANSMITTER;
+            } else if (bindResponse.getCommandId() == CommandId.BIND_RECEIVER_RESP) {
+                type = SessionType.RECEIVER;
+            } else {
+                type = SessionType.TRANSCEIVER;
+            }
+            cancelBindTimer();
+            setState(SessionState.BINDING, SessionState.BOUND);
+            startKeepAlive();
+        }
+    }
+
     private void processSentUnbind(Unbind unbindRequest) {
+        stopKeepAlive();
         setState(SessionState.BOUND, SessionState.UNBINDING);
     }
     
@@ -345,17 +834,28 @@ public class Session {
     }
     
     private void processReceivedBindResponse(BindResp bindResponse) {
+        cancelBindTimer();
         int status = bindResponse.getCommandStatus();
         if (status == 0) {
             setState(SessionState.BINDING, SessionState.BOUND);
             negotiateVersion(bindResponse);
             setLinkTimeout(APIConfig.LINK_TIMEOUT);
+            startKeepAlive();
         } else {
             log.warn("Received a bind response with status {}", status);
             setState(SessionState.BINDING, SessionState.UNBOUND);
         }
     }
     
+    private void processReceivedBind(Bind bindRequest) {
+        SMPPVersion esmeVersion = bindRequest.getVersion();
+        if (esmeVersion != null && esmeVersion.isOlderThan(version)) {
+            log.info("ESME states its version as {}", esmeVersion);
+            version = esmeVersion;
+            useOptionalParams = version.isSupportTLV();
+        }
+    }
+
     private void negotiateVersion(BindResp bindResponse) {
         if (!bindResponse.isSet(Tag.SC_INTERFACE_VERSION)) {
             log.info("SMSC did not supply SC_INTERFACE_VERSION."
@@ -380,6 +880,7 @@ public class Session {
     }
     
     private void processReceivedUnbind(Unbind unbindRequest) {
+        stopKeepAlive();
         setState(SessionState.BOUND, SessionState.UNBINDING);
     }
     
@@ -0,0 +1,459 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.event.LinkDeadEvent;
+import org.mobicents.protocols.smpp.event.SMPPEvent;
+import org.mobicents.protocols.smpp.event.SessionObserver;
+import org.mobicents.protocols.smpp.message.Bind;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+
+/**
+ * A fixed set of sessions to the same SMSC, bound with the same
+ * credentials, that outgoing requests are spread across.
+ * <p>
+ * Each request is routed to one of the bound sessions according to the
+ * pool&apos;s {@link Policy}. Sessions that are not
+ * {@link SessionState#BOUND}, whose receiver has exited or whose keepalive
+ * has declared the link dead are skipped. Ties are broken round-robin, so
+ * an idle pool spreads requests evenly.
+ * </p>
+ * <p>
+ * Requests should be sent with {@link #sendRequest(SMPPPacket)} so that the
+ * pool can see how many are in flight on each session and how long their
+ * responses take. Incoming packets are still delivered to observers of the
+ * individual sessions; {@link #addObserver(SessionObserver)} registers an
+ * observer with all of them.
+ * </p>
+ */
+public class SessionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionPool.class);
+
+    /**
+     * Weight given to each new latency sample in a session&apos;s moving
+     * average, as a right shift: a shift of 3 gives the new sample 1/8.
+     */
+    private static final int LATENCY_SHIFT = 3;
+
+    /**
+     * How the pool picks the session for a request.
+     */
+    public enum Policy {
+        /**
+         * Pick the session with the fewest requests awaiting a response.
+         */
+        LEAST_PENDING,
+        
+        /**
+         * Pick the session with the lowest recent response latency,
+         * weighted by the number of requests it already has in flight so
+         * that a single fast session is not swamped.
+         */
+        LOWEST_LATENCY
+    }
+
+    private final Member[] members;
+    private final List<Session> sessions;
+    private final Bind bindTemplate;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong responseCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile Policy policy = Policy.LEAST_PENDING;
+
+    /**
+     * Create a pool of <code>size</code> sessions, each with its own TCP
+     * link to the SMSC.
+     * @param host The SMSC host.
+     * @param port The SMSC port.
+     * @param size The number of sessions.
+     * @param bindTemplate The bind request that each session is bound with.
+     * @throws UnknownHostException If the host cannot be resolved.
+     */
+    public SessionPool(String host, int port, int size, Bind bindTemplate)
+            throws UnknownHostException {
+        this(createSessions(host, port, size), bindTemplate);
+    }
+
+    /**
+     * Create a pool from existing, unbound sessions.
+     * @param sessions The sessions to pool.
+     * @param bindTemplate The bind request that each session is bound with.
+     */
+    public SessionPool(List<Session> sessions, Bind bindTemplate) {
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("A pool needs at least one session");
+        }
+        this.bindTemplate = bindTemplate;
+        this.sessions = Collections.unmodifiableList(new ArrayList<Session>(sessions));
+        this.members = new Member[sessions.size()];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new Member(this.sessions.get(i));
+            members[i].session.addObserver(members[i]);
+        }
+    }
+
+    /**
+     * Get the sessions in this pool.
+     * @return An unmodifiable list of the pooled sessions.
+     */
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Get the policy used to pick the session for each request.
+     * @return The routing policy. Defaults to {@link Policy#LEAST_PENDING}.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set the policy used to pick the session for each request.
+     * @param policy The routing policy.
+     */
+    public void setPolicy(Policy policy) {
+        if (policy == null) {
+            throw new NullPointerException("policy");
+        }
+        this.policy = policy;
+    }
+
+    /**
+     * Add an observer to every session in the pool.
+     * @param observer The observer to add.
+     */
+    public void addObserver(SessionObserver observer) {
+        for (Member member : members) {
+            member.session.addObserver(observer);
+        }
+    }
+
+    /**
+     * Remove an observer from every session in the pool.
+     * @param observer The observer to remove.
+     */
+    public void removeObserver(SessionObserver observer) {
+        for (Member member : members) {
+            member.session.removeObserver(observer);
+        }
+    }
+
+    /**
+     * Send a copy of the bind template on every session that is not
+     * already bound or binding. Bind responses arrive asynchronously; a
+     * session takes requests once its bind has succeeded.
+     * @return The number of bind requests sent.
+     * @throws IOException If no bind request could be sent. Failures on
+     * individual sessions are logged as long as at least one succeeds.
+     */
+    public int bind() throws IOException {
+        int sent = 0;
+        IOException lastError = null;
+        for (Member member : members) {
+            if (member.session.getState() != SessionState.UNBOUND) {
+                continue;
+            }
+            try {
+                member.available = true;
+                member.session.bind(copyBindTemplate());
+                sent++;
+            } catch (IOException x) {
+                LOG.warn("Could not bind session {}: {}",
+                        member.session.getSessionId(), x.getMessage());
+                member.available = false;
+                lastError = x;
+            }
+        }
+        if (sent == 0 && lastError != null) {
+            throw lastError;
+        }
+        return sent;
+    }
+
+    /**
+     * Unbind every bound session.
+     */
+    public void unbind() {
+        for (Member member : members) {
+            member.available = false;
+            if (member.session.getState() == SessionState.BOUND) {
+                try {
+                    member.session.unbind();
+                } catch (IOException x) {
+                    LOG.debug("Error unbinding session "
+                            + member.session.getSessionId(), x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a request on the best available session without waiting for
+     * its response.
+     * @param request The request to send.
+     * @return A future for the request&apos;s response.
+     * @throws IOException If the request cannot be written to the link.
+     * @throws IllegalStateException If no session in the pool is bound.
+     * @see Session#sendRequest(SMPPPacket)
+     */
+    public ResponseFuture sendRequest(SMPPPacket request) throws IOException {
+        Member member = select();
+        final long start = System.nanoTime();
+        ResponseFuture future = member.session.sendRequest(request);
+        requestCount.incrementAndGet();
+        final Member target = member;
+        future.addListener(new ResponseListener() {
+            public void requestComplete(ResponseFuture completed) {
+                responseComplete(target, completed, System.nanoTime() - start);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Send a packet on the best available session. Responses to requests
+     * sent this way are not tracked by the pool.
+     * @param packet The packet to send.
+     * @return The session the packet was sent on.
+     * @throws IOException If the packet cannot be written to the link.
+     * @throws IllegalStateException If no session in the pool is bound.
+     */
+    public Session sendPacket(SMPPPacket packet) throws IOException {
+        Session session = select().session;
+        session.sendPacket(packet);
+        return session;
+    }
+
+    /**
+     * Get the number of sessions that can currently take requests.
+     * @return The number of bound, live sessions.
+     */
+    public int getAvailableCount() {
+        int count = 0;
+        for (Member member : members) {
+            if (member.isUsable()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the total number of requests awaiting a response across all
+     * sessions.
+     * @return The number of pending requests.
+     */
+    public int getPendingRequestCount() {
+        int count = 0;
+        for (Member member : members) {
+            count += member.session.getPendingRequestCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of requests sent through
+     * {@link #sendRequest(SMPPPacket)}.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Get the number of requests that have received a response.
+     */
+    public long getResponseCount() {
+        return responseCount.get();
+    }
+
+    /**
+     * Get the number of requests that timed out, were cancelled or were
+     * lost with their session.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Get the number of requests that were refused because no session was
+     * available.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Get the recent response latency of a pooled session.
+     * @param session A session in this pool.
+     * @return The moving average latency in milliseconds, or -1 if no
+     * response has been received on the session.
+     */
+    public long getLatency(Session session) {
+        for (Member member : members) {
+            if (member.session == session) {
+                long latency = member.latency;
+                return latency < 0L ? -1L : latency / 1000000L;
+            }
+        }
+        throw new IllegalArgumentException("Session is not in this pool");
+    }
+
+    private Member select() {
+        int size = members.length;
+        int start = (next.getAndIncrement() & 0x7fffffff) % size;
+        long defaultLatency = policy == Policy.LOWEST_LATENCY ? averageLatency() : 0L;
+        Member best = null;
+        long bestScore = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            Member member = members[(start + i) % size];
+            if (!member.isUsable()) {
+                continue;
+            }
+            long score = member.session.getPendingRequestCount();
+            if (defaultLatency > 0L) {
+                // Sessions with no samples yet are assumed to be average.
+                long latency = member.latency;
+                score = (score + 1) * (latency < 0L ? defaultLatency : latency + 1);
+            }
+            if (score < bestScore) {
+                best = member;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            rejectedCount.incrementAndGet();
+            throw new IllegalStateException("No bound session available in the pool");
+        }
+        return best;
+    }
+
+    private long averageLatency() {
+        long total = 0L;
+        int count = 0;
+        for (Member member : members) {
+            long latency = member.latency;
+            if (latency >= 0L) {
+                total += latency + 1;
+                count++;
+            }
+        }
+        return count > 0 ? total / count : 1L;
+    }
+
+    private void responseComplete(Member member, ResponseFuture future, long elapsed) {
+        try {
+            future.get();
+        } catch (Exception x) {
+            failedCount.incrementAndGet();
+            return;
+        }
+        responseCount.incrementAndGet();
+        member.addLatencySample(elapsed);
+    }
+
+    private Bind copyBindTemplate() {
+        try {
+            Bind bind = (Bind) bindTemplate.clone();
+            bind.setSequenceNum(-1L);
+            return bind;
+        } catch (CloneNotSupportedException x) {
+            throw new SMPPRuntimeException("Cannot copy the bind template", x);
+        }
+    }
+
+    private static List<Session> createSessions(String host, int port, int size)
+            throws UnknownHostException {
+        if (size < 1) {
+            throw new IllegalArgumentException("A pool needs at least one session");
+        }
+        List<Session> sessions = new ArrayList<Session>(size);
+        for (int i = 0; i < size; i++) {
+            sessions.add(new Session(host, port));
+        }
+        return sessions;
+    }
+
+    /**
+     * A pooled session and its routing state. Also watches the session for
+     * events that make it unusable.
+     */
+    private static final class Member implements SessionObserver {
+        private final Session session;
+        private volatile boolean available = true;
+        private volatile long latency = -1L;
+
+        Member(Session session) {
+            this.session = session;
+        }
+
+        boolean isUsable() {
+            return available && session.getState() == SessionState.BOUND;
+        }
+
+        synchronized void addLatencySample(long sample) {
+            long current = latency;
+            if (current < 0L) {
+                latency = sample;
+            } else {
+                latency = current + ((sample - current) >> LATENCY_SHIFT);
+            }
+        }
+
+        public void packetReceived(Session source, SMPPPacket packet) {
+        }
+
+        public void update(Session source, SMPPEvent event) {
+            switch (event.getType()) {
+            case SMPPEvent.RECEIVER_EXIT:
+                available = false;
+                break;
+            case SMPPEvent.LINK_DEAD:
+                LinkDeadEvent lde = (LinkDeadEvent) event;
+                LOG.warn("Removing session {} from the pool: {} enquire_links unanswered",
+                        source.getSessionId(), Integer.valueOf(lde.getMissedCount()));
+                available = false;
+                try {
+                    source.getSmscLink().disconnect();
+                } catch (IOException x) {
+                    LOG.debug("Error closing dead link", x);
+                }
+                break;
+            default:
+            }
+        }
+    }
+}
@@ -23,6 +23,16 @@
 package org.mobicents.protocols.smpp.encoding;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 
 import org.mobicents.protocols.smpp.SMPPRuntimeException;
 
@@ -30,9 +40,31 @@ import org.mobicents.protocols.smpp.SMPPRuntimeException;
  * SMS Alphabet to Java String mapping interface. Implementations of this
  * interface convert Java Unicode strings into a series of bytes representing
  * the String in a particular SMS alphabet.
+ * <p>
+ * Implementations backed by a JVM character set resolve it once, in
+ * {@link #setCharset}, and keep a character set encoder and decoder for
+ * each thread that uses them. Malformed input and unmappable characters
+ * are replaced, exactly as <code>String.getBytes</code> and the
+ * <code>String</code> constructors do.
+ * </p>
  */
 public class AlphabetEncoding extends AbstractMessageEncoding<String> {
+    /**
+     * Size of the buffer used to count the encoded size of a string for
+     * character sets that are not a fixed width.
+     */
+    private static final int SCRATCH_SIZE = 256;
+
     private String charset;
+    
+    private Charset resolvedCharset;
+    
+    /**
+     * Number of bytes each character encodes to, or 0 if it varies.
+     */
+    private int bytesPerChar;
+
+    private ThreadLocal<Coder> coders;
 
     /**
      * Create a new alphabet encoding.
@@ -73,16 +105,51 @@ public class AlphabetEncoding extends AbstractMessageEncoding<String> {
      * @throws NullPointerException If <tt>data</tt> is <tt>null</tt>.
      */
     public String decode(byte[] data, int offset, int length) {
-        try {
-            if (data != null) {
-                return new String(data, offset, length, charset);
-            } else {
-                throw new NullPointerException("Data cannot be null");
+        if (data == null) {
+            throw new NullPointerException("Data cannot be null");
+        }
+        CharsetDecoder decoder = getCoder().decoder;
+        char[] chars = new char[(int) Math.ceil(length * decoder.maxCharsPerByte())];
+        CharBuffer out = CharBuffer.wrap(chars);
+        if (!decode(decoder, ByteBuffer.wrap(data, offset, length), out)) {
+            // Not possible unless the decoder breaks its own contract.
+            throw new BufferOverflowException();
+        }
+        return new String(chars, 0, out.position());
+    }
+
+    /**
+     * Decode SMS message text into a caller-supplied buffer.
+     * @param src The bytes to decode. All of its remaining bytes are
+     * decoded and its position is advanced past them.
+     * @param dest The buffer to store the characters in. Its position is
+     * advanced past the stored characters.
+     * @return The number of characters stored.
+     * @throws BufferOverflowException If <code>dest</code> does not have room
+     * for the decoded characters. The positions of both buffers are left
+     * unchanged.
+     */
+    public int decode(ByteBuffer src, CharBuffer dest) {
+        if (resolvedCharset == null) {
+            byte[] data = new byte[src.remaining()];
+            int start = src.position();
+            src.get(data);
+            String decoded = decode(data, 0, data.length);
+            if (dest.remaining() < decoded.length()) {
+                src.position(start);
+                throw new BufferOverflowException();
             }
-        } catch (UnsupportedEncodingException x) {
-            // Shouldn't happen - setCharset should have detected this.
-            throw new RuntimeException();
+            dest.put(decoded);
+            return decoded.length();
+        }
+        int srcStart = src.position();
+        int destStart = dest.position();
+        if (!decode(getCoder().decoder, src, dest)) {
+            src.position(srcStart);
+            dest.position(destStart);
+            throw new BufferOverflowException();
         }
+        return dest.position() - destStart;
     }
 
     /**
@@ -91,28 +158,88 @@ public class AlphabetEncoding extends AbstractMessageEncoding<String> {
      * such cases, a byte array of length 0 will be returned.
      */
     public byte[] encode(String string) {
-        try {
-            if (string != null) {
-                return string.getBytes(charset);
-            }
-        } catch (UnsupportedEncodingException x) {
-            // Shouldn't happen - setCharset should have detected this.
-            throw new RuntimeException();
+        if (string == null) {
+            return new byte[0];
+        }
+        CharsetEncoder encoder = getCoder().encoder;
+        int size;
+        if (bytesPerChar > 0) {
+            size = getFixedWidthSize(string);
+        } else {
+            size = (int) Math.ceil(string.length() * encoder.maxBytesPerChar());
+        }
+        byte[] bytes = new byte[size];
+        ByteBuffer out = ByteBuffer.wrap(bytes);
+        if (!encode(encoder, CharBuffer.wrap(string), out)) {
+            // Not possible unless the encoder breaks its own contract.
+            throw new BufferOverflowException();
+        }
+        if (out.position() == size) {
+            return bytes;
+        }
+        byte[] encoded = new byte[out.position()];
+        System.arraycopy(bytes, 0, encoded, 0, encoded.length);
+        return encoded;
+    }
+
+    /**
+     * Encode characters into a caller-supplied buffer.
+     * @param s The characters to encode.
+     * @param dest The buffer to store the encoded bytes in. Its position is
+     * advanced past the stored bytes.
+     * @return The number of bytes stored.
+     * @throws BufferOverflowException If <code>dest</code> does not have room
+     * for the encoded bytes. Its position is left unchanged.
+     */
+    public int encode(CharSequence s, ByteBuffer dest) {
+        if (resolvedCharset == null) {
+            byte[] encoded = encode(s.toString());
+            dest.put(encoded);
+            return encoded.length;
+        }
+        int start = dest.position();
+        if (!encode(getCoder().encoder, CharBuffer.wrap(s), dest)) {
+            dest.position(start);
+            throw new BufferOverflowException();
         }
-        return new byte[0];
+        return dest.position() - start;
     }
 
     /**
      * Get the number of bytes a particular string would encode as on the
-     * wire.
+     * wire. For single-byte character sets and UTF-16 this is worked out
+     * from the characters alone. Other character sets are encoded into a
+     * small scratch buffer to count the bytes.
      * @return The number of bytes <code>string</code> would encode to.
      */
     public int getEncodedSize(String string) {
-        if (string != null) {
-            return encode(string).length;
-        } else {
+        if (string == null) {
             return 0;
         }
+        if (resolvedCharset == null) {
+            return encode(string).length;
+        }
+        if (bytesPerChar > 0) {
+            return getFixedWidthSize(string);
+        }
+        Coder coder = getCoder();
+        CharsetEncoder encoder = coder.encoder;
+        ByteBuffer scratch = coder.scratch;
+        CharBuffer in = CharBuffer.wrap(string);
+        int size = 0;
+        CoderResult result;
+        encoder.reset();
+        do {
+            scratch.clear();
+            result = encoder.encode(in, scratch, true);
+            size += scratch.position();
+        } while (result.isOverflow());
+        do {
+            scratch.clear();
+            result = encoder.flush(scratch);
+            size += scratch.position();
+        } while (result.isOverflow());
+        return size;
     }
     
     /**
@@ -128,7 +255,100 @@ public class AlphabetEncoding extends AbstractMessageEncoding<String> {
         if (this.charset != null) {
             throw new SMPPRuntimeException("Cannot change charset.");
         }
-        new String("probe").getBytes(charset);
+        final Charset resolved;
+        try {
+            resolved = Charset.forName(charset);
+        } catch (IllegalCharsetNameException x) {
+            throw new UnsupportedEncodingException(charset);
+        } catch (UnsupportedCharsetException x) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        if (!resolved.canEncode()) {
+            throw new UnsupportedEncodingException(charset);
+        }
+        CharsetEncoder encoder = resolved.newEncoder();
+        String name = resolved.name();
+        if (encoder.maxBytesPerChar() == 1.0f) {
+            bytesPerChar = 1;
+        } else if (name.equals("UTF-16BE") || name.equals("UTF-16LE")) {
+            bytesPerChar = 2;
+        }
+        coders = new ThreadLocal<Coder>() {
+            protected Coder initialValue() {
+                return new Coder(resolved);
+            }
+        };
+        this.resolvedCharset = resolved;
         this.charset = charset;
     }
+
+    /**
+     * Get the encoded size of a string in a fixed width character set.
+     * Single-byte character sets encode a surrogate pair as one
+     * replacement byte.
+     */
+    private int getFixedWidthSize(CharSequence s) {
+        int length = s.length();
+        if (bytesPerChar != 1) {
+            return length * bytesPerChar;
+        }
+        int size = length;
+        for (int i = 0; i < length - 1; i++) {
+            if (Character.isHighSurrogate(s.charAt(i))
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                size--;
+                i++;
+            }
+        }
+        return size;
+    }
+
+    private Coder getCoder() {
+        return coders.get();
+    }
+
+    /**
+     * Run a complete decoding operation.
+     * @return <code>false</code> if <code>out</code> overflowed.
+     */
+    private static boolean decode(CharsetDecoder decoder, ByteBuffer in, CharBuffer out) {
+        decoder.reset();
+        CoderResult result = decoder.decode(in, out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        return result.isUnderflow();
+    }
+
+    /**
+     * Run a complete encoding operation.
+     * @return <code>false</code> if <code>out</code> overflowed.
+     */
+    private static boolean encode(CharsetEncoder encoder, CharBuffer in, ByteBuffer out) {
+        encoder.reset();
+        CoderResult result = encoder.encode(in, out, true);
+        if (result.isUnderflow()) {
+            result = encoder.flush(out);
+        }
+        return result.isUnderflow();
+    }
+
+    /**
+     * Per-thread encoder, decoder and scratch space. Character set coders
+     * are not thread safe.
+     */
+    private static final class Coder {
+        private final CharsetEncoder encoder;
+        private final CharsetDecoder decoder;
+        private final ByteBuffer scratch = ByteBuffer.allocate(SCRATCH_SIZE);
+
+        private Coder(Charset charset) {
+            encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+    }
 }
@@ -22,12 +22,23 @@
 
 package org.mobicents.protocols.smpp.encoding;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * This class encodes and decodes Java Strings to and from the SMS default
  * alphabet. It also supports the default extension table. The default alphabet
  * and it's extension table is defined in GSM 03.38.
+ * <p>
+ * Characters are encoded using a reverse lookup table that is built from
+ * the character tables when the encoding is created, so encoding takes
+ * constant time per character. As well as the String-based methods, there
+ * are methods that encode into, and decode from, arrays and buffers
+ * supplied by the caller. {@link #encodePacked(CharSequence, byte[], int)}
+ * encodes and packs septets in a single pass, without an intermediate
+ * unpacked array.
+ * </p>
  * @version $Id: DefaultAlphabetEncoding.java 452 2009-01-15 16:56:36Z orank $
  */
 public class DefaultAlphabetEncoding extends AlphabetEncoding {
@@ -38,7 +49,10 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
     /** Page break (extended table). */
     public static final int PAGE_BREAK = 0x0a;
 
-    protected final char[] CHAR_TABLE = {
+    /**
+     * The GSM default alphabet.
+     */
+    static final char[] DEFAULT_CHAR_TABLE = {
         '@',      '\u00a3', '$',      '\u00a5', '\u00e8', '\u00e9', '\u00f9', '\u00ec',
         '\u00f2', '\u00c7', '\n',     '\u00d8', '\u00f8', '\r',     '\u00c5', '\u00e5',
         '\u0394', '_',      '\u03a6', '\u0393', '\u039b', '\u03a9', '\u03a0', '\u03a8',
@@ -58,13 +72,11 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
     };
 
     /**
-     * Extended character table. Characters in this table are accessed by the
-     * 'escape' character in the base table. It is important that none of the
-     * 'inactive' characters ever be matchable with a valid base-table
-     * character as this breaks the encoding loop.
+     * The default extension table. Characters in this table are accessed by
+     * the 'escape' character in the base table.
      * @see #EXTENDED_ESCAPE
      */
-    protected final char[] EXT_CHAR_TABLE = {
+    static final char[] DEFAULT_EXT_CHAR_TABLE = {
             0, 0, 0, 0, 0, 0, 0, 0,
             0, 0, 0, 0, 0, 0, 0, 0,
             0, 0, 0, 0, '^', 0, 0, 0,
@@ -83,13 +95,96 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
             0, 0, 0, 0, 0, 0, 0, 0,
     };
 
+    /**
+     * Number of characters, starting from 0, that are looked up by index
+     * in {@link #lowCodes}.
+     */
+    private static final int LOW_CHARS = 0x100;
+
+    /**
+     * Flag set in a reverse lookup entry for a character that is in the
+     * extension table.
+     */
+    private static final int EXTENDED = 0x80;
+
     /**
      * @see #setUnknownCharReplacement(int)
      */
     private int unknownCharReplacement = 0x3f;
+
+    /**
+     * Code point of each character below {@link #LOW_CHARS}, or
+     * <code>-1</code> if the character cannot be encoded. Characters in the
+     * extension table have the {@link #EXTENDED} flag set.
+     */
+    private final short[] lowCodes = new short[LOW_CHARS];
+
+    /**
+     * Characters at or above {@link #LOW_CHARS} that can be encoded, in
+     * ascending order.
+     */
+    private final char[] highChars;
+
+    /**
+     * Code point of each character in {@link #highChars}, in the same form
+     * as {@link #lowCodes}.
+     */
+    private final short[] highCodes;
+    
+    /**
+     * Base character table in use by this encoding.
+     */
+    private final char[] charTable;
+
+    /**
+     * Extended character table in use by this encoding.
+     * @see #EXTENDED_ESCAPE
+     */
+    private final char[] extCharTable;
     
     public DefaultAlphabetEncoding() {
+        this(DEFAULT_CHAR_TABLE, DEFAULT_EXT_CHAR_TABLE);
+    }
+
+    /**
+     * Create an encoding that uses a different pair of 7-bit character
+     * tables, such as a national language locking and single shift table.
+     * @param charTable The 128-character base table.
+     * @param extCharTable The 128-character extension table, accessed
+     * through the escape character. Unused positions must be 0.
+     */
+    protected DefaultAlphabetEncoding(char[] charTable, char[] extCharTable) {
         super(DCS);
+        this.charTable = charTable;
+        this.extCharTable = extCharTable;
+        char[] chars = new char[charTable.length * 2];
+        short[] codes = new short[chars.length];
+        int count = 0;
+        Arrays.fill(lowCodes, (short) -1);
+        // Where a character appears more than once, the base table wins
+        // over the extension table, then the lowest code point wins.
+        for (int search = 0; search < charTable.length; search++) {
+            if (search != EXTENDED_ESCAPE) {
+                count = addCode(charTable[search], search, chars, codes, count);
+            }
+        }
+        for (int search = 0; search < extCharTable.length; search++) {
+            if (search != EXTENDED_ESCAPE) {
+                count = addCode(extCharTable[search], EXTENDED | search, chars, codes, count);
+            }
+        }
+        highChars = new char[count];
+        highCodes = new short[count];
+        for (int i = 0; i < count; i++) {
+            int j = i;
+            while (j > 0 && highChars[j - 1] > chars[i]) {
+                highChars[j] = highChars[j - 1];
+                highCodes[j] = highCodes[j - 1];
+                j--;
+            }
+            highChars[j] = chars[i];
+            highCodes[j] = codes[i];
+        }
     }
 
     /**
@@ -130,25 +225,95 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
         if (data == null) {
             throw new NullPointerException("Data cannot be null");
         }
-        char[] table = CHAR_TABLE;
-        StringBuffer buf = new StringBuffer();
+        char[] chars = new char[length];
+        int count = decode(data, offset, length, chars, 0);
+        return new String(chars, 0, count);
+    }
 
+    /**
+     * Decode unpacked default alphabet septets into a character array.
+     * @param data The bytes to decode, one septet per byte.
+     * @param offset The offset within <code>data</code> to begin decoding.
+     * @param length The number of bytes to decode.
+     * @param dest The array to store the characters in. At most
+     * <code>length</code> characters are stored.
+     * @param destOffset The offset within <code>dest</code> to store the
+     * first character at.
+     * @return The number of characters stored.
+     */
+    public int decode(byte[] data, int offset, int length, char[] dest, int destOffset) {
+        char[] table = charTable;
+        int pos = destOffset;
         for (int i = offset; i < (offset + length); i++) {
             int code = (int) data[i] & 0x000000ff;
             if (code == EXTENDED_ESCAPE) {
                 // take next char from extension table
-                table = EXT_CHAR_TABLE;
+                table = extCharTable;
             } else {
                 if (code >= table.length) {
                     code = unknownCharReplacement;
                 }
-                buf.append(table[code]);
+                dest[pos++] = table[code];
                 // Go back to the default table.
-                table = CHAR_TABLE;
+                table = charTable;
             }
         }
+        return pos - destOffset;
+    }
 
-        return buf.toString();
+    /**
+     * Decode packed default alphabet septets into a character array.
+     * @param packed The packed septets.
+     * @param offset The offset within <code>packed</code> of the first
+     * septet.
+     * @param septets The number of septets to decode. Since the final
+     * octet of a packed string may have room for one more septet than
+     * it holds, the count cannot be worked out from the number of octets.
+     * @param dest The array to store the characters in. At most
+     * <code>septets</code> characters are stored.
+     * @param destOffset The offset within <code>dest</code> to store the
+     * first character at.
+     * @return The number of characters stored.
+     * @see #pack(byte[])
+     */
+    public int decodePacked(byte[] packed, int offset, int septets,
+            char[] dest, int destOffset) {
+        char[] table = charTable;
+        int pos = destOffset;
+        int i = 0;
+        // Eight septets at a time from seven octets, then the remainder
+        // one septet at a time.
+        for (; i + 8 <= septets; i += 8) {
+            long word = getWord(packed, offset);
+            offset += 7;
+            for (int k = 0; k < 56; k += 7) {
+                int code = (int) (word >>> k) & 0x7f;
+                if (code == EXTENDED_ESCAPE) {
+                    table = extCharTable;
+                } else {
+                    dest[pos++] = table[code];
+                    table = charTable;
+                }
+            }
+        }
+        int bits = 0;
+        int acc = 0;
+        for (; i < septets; i++) {
+            if (bits < 7) {
+                acc |= ((int) packed[offset++] & 0xff) << bits;
+                bits += 8;
+            }
+            int code = acc & 0x7f;
+            acc >>>= 7;
+            bits -= 7;
+            if (code == EXTENDED_ESCAPE) {
+                table = extCharTable;
+            } else {
+                dest[pos++] = table[code];
+                table = charTable;
+            }
+        }
+        return pos - destOffset;
     }
 
     /**
@@ -159,34 +324,203 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
         if (s == null) {
             return new byte[0];
         }
+        byte[] buffer = new byte[s.length() * 2];
+        int length = encode(s, buffer, 0);
+        if (length == buffer.length) {
+            return buffer;
+        }
+        byte[] encoded = new byte[length];
+        System.arraycopy(buffer, 0, encoded, 0, length);
+        return encoded;
+    }
 
-        char[] c = s.toCharArray();
-        ByteArrayOutputStream enc = new ByteArrayOutputStream(256);
-
-        for (int loop = 0; loop < c.length; loop++) {
-            int search = 0;
-            for (; search < CHAR_TABLE.length; search++) {
-                if (search == EXTENDED_ESCAPE) {
-                    continue;
-                }
+    /**
+     * Encode characters into unpacked default alphabet septets, one per
+     * byte.
+     * @param s The characters to encode.
+     * @param dest The array to store the septets in. It must have room
+     * for {@link #countSeptets(CharSequence)} bytes.
+     * @param offset The offset within <code>dest</code> to store the first
+     * septet at.
+     * @return The number of bytes stored.
+     */
+    public int encode(CharSequence s, byte[] dest, int offset) {
+        int pos = offset;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            int code = lookup(s.charAt(i));
+            if (code >= EXTENDED) {
+                dest[pos++] = (byte) EXTENDED_ESCAPE;
+                code &= 0x7f;
+            }
+            dest[pos++] = (byte) code;
+        }
+        return pos - offset;
+    }
 
-                if (c[loop] == CHAR_TABLE[search]) {
-                    enc.write((byte) search);
+    /**
+     * Encode characters and pack the septets in a single pass. The
+     * result is the same as passing the output of {@link #encode(String)}
+     * to {@link #pack(byte[])}.
+     * @param s The characters to encode.
+     * @param dest The array to store the packed septets in. It must have
+     * room for <code>getPackedLength(countSeptets(s))</code> bytes.
+     * @param offset The offset within <code>dest</code> to store the first
+     * byte at.
+     * @return The number of septets encoded. The number of bytes stored
+     * is {@link #getPackedLength(int)} of this.
+     */
+    public int encodePacked(CharSequence s, byte[] dest, int offset) {
+        int pos = offset;
+        int bits = 0;
+        int acc = 0;
+        int septets = 0;
+        int length = s.length();
+        int i = 0;
+        while (i < length) {
+            // While on an octet boundary, pack eight characters at a time
+            // as one word until one of them is not in the base table.
+            while (bits == 0 && length - i >= 8) {
+                long word = packWord(s, i);
+                if (word < 0L) {
                     break;
-               }
+                }
+                putWord(dest, pos, word);
+                pos += 7;
+                septets += 8;
+                i += 8;
+            }
+            if (i == length) {
+                break;
+            }
+            int code = lookup(s.charAt(i++));
+            if (code >= EXTENDED) {
+                acc |= EXTENDED_ESCAPE << bits;
+                septets++;
+                if (bits >= 1) {
+                    dest[pos++] = (byte) acc;
+                    acc >>>= 8;
+                    bits -= 1;
+                } else {
+                    bits += 7;
+                }
+                code &= 0x7f;
+            }
+            acc |= code << bits;
+            septets++;
+            if (bits >= 1) {
+                dest[pos++] = (byte) acc;
+                acc >>>= 8;
+                bits -= 1;
+            } else {
+                bits += 7;
+            }
+        }
+        if (bits > 0) {
+            dest[pos] = (byte) acc;
+        }
+        return septets;
+    }
 
-                if (c[loop] == EXT_CHAR_TABLE[search]) {
-                    enc.write((byte) EXTENDED_ESCAPE);
-                    enc.write((byte) search);
-                    break;
-               }
+    /**
+     * Encode characters and pack the septets into a buffer in a single
+     * pass.
+     * @param s The characters to encode.
+     * @param dest The buffer to store the packed septets in. Its position
+     * is advanced past the stored bytes.
+     * @return The number of septets encoded.
+     * @throws java.nio.BufferOverflowException If <code>dest</code> does
+     * not have room for the packed septets.
+     * @see #encodePacked(CharSequence, byte[], int)
+     */
+    public int encodePacked(CharSequence s, ByteBuffer dest) {
+        if (dest.hasArray()) {
+            int septets = countSeptets(s);
+            int length = getPackedLength(septets);
+            if (dest.remaining() < length) {
+                throw new BufferOverflowException();
             }
-            if (search == CHAR_TABLE.length) {
-                enc.write((byte) unknownCharReplacement);
+            encodePacked(s, dest.array(), dest.arrayOffset() + dest.position());
+            dest.position(dest.position() + length);
+            return septets;
+        }
+        int bits = 0;
+        int acc = 0;
+        int septets = 0;
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            int code = lookup(s.charAt(i));
+            if (code >= EXTENDED) {
+                acc |= EXTENDED_ESCAPE << bits;
+                septets++;
+                if (bits >= 1) {
+                    dest.put((byte) acc);
+                    acc >>>= 8;
+                    bits -= 1;
+                } else {
+                    bits += 7;
+                }
+                code &= 0x7f;
+            }
+            acc |= code << bits;
+            septets++;
+            if (bits >= 1) {
+                dest.put((byte) acc);
+                acc >>>= 8;
+                bits -= 1;
+            } else {
+                bits += 7;
             }
         }
+        if (bits > 0) {
+            dest.put((byte) acc);
+        }
+        return septets;
+    }
 
-        return enc.toByteArray();
+    /**
+     * Count the septets a sequence of characters encodes to. Characters
+     * from the extension table take two septets.
+     * @param s The characters to count.
+     * @return The number of septets.
+     */
+    public int countSeptets(CharSequence s) {
+        int length = s.length();
+        int septets = length;
+        for (int i = 0; i < length; i++) {
+            if (lookup(s.charAt(i)) >= EXTENDED) {
+                septets++;
+            }
+        }
+        return septets;
+    }
+
+    /**
+     * Get the number of septets a single character encodes to.
+     * @param c The character.
+     * @return 1 for a character in the base table, 2 for a character in
+     * the extension table or 0 if the character cannot be encoded.
+     */
+    public int getSeptetCount(char c) {
+        int code = codeOf(c);
+        if (code < 0) {
+            return 0;
+        }
+        return code >= EXTENDED ? 2 : 1;
+    }
+
+    /**
+     * Get the number of bytes a number of septets takes once packed.
+     * @param septets The number of septets.
+     * @return The packed length in bytes.
+     */
+    public static int getPackedLength(int septets) {
+        return (septets * 7 + 7) / 8;
+    }
+
+    @Override
+    public int getEncodedSize(String string) {
+        return string != null ? countSeptets(string) : 0;
     }
 
     public int getCharSize() {
@@ -213,26 +547,36 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
      * alphabet in its unpacked form. As such, you will be unlikely to
      * need this method.
      * </p>
-     * @param unpacked The unpacked byte array. 
+     * @param unpacked The unpacked byte array. Only the low seven bits of
+     * each byte are used.
      * @return A new byte array containing the bytes in their packed form.
      */
     public byte[] pack(byte[] unpacked) {
-        int packedLen = unpacked.length - (unpacked.length / 8);
-        byte[] packed = new byte[packedLen];
-        if (unpacked.length == 0) {
-            return packed;
-        }
-        for (int i = 0, j = -1; i < packed.length; i++, j++) {
-            int shiftRight = i % 7;
-            int shiftLeft = 8 - (shiftRight + 1);
-            if (shiftRight == 0) {
-                j++;
+        byte[] packed = new byte[unpacked.length - (unpacked.length / 8)];
+        int pos = 0;
+        int i = 0;
+        for (; i + 8 <= unpacked.length; i += 8) {
+            long word = 0L;
+            for (int k = 0; k < 8; k++) {
+                word |= (long) (unpacked[i + k] & 0x7f) << (k * 7);
             }
-            int b = ((int) unpacked[j] & 0xff) >>> shiftRight;
-            if (j + 1 < unpacked.length) {
-                b |= (((int) unpacked[j + 1]) & 0xff) << shiftLeft;
+            putWord(packed, pos, word);
+            pos += 7;
+        }
+        int bits = 0;
+        int acc = 0;
+        for (; i < unpacked.length; i++) {
+            acc |= ((int) unpacked[i] & 0x7f) << bits;
+            if (bits >= 1) {
+                packed[pos++] = (byte) acc;
+                acc >>>= 8;
+                bits -= 1;
+            } else {
+                bits += 7;
             }
-            packed[i] = (byte) b;
+        }
+        if (pos < packed.length) {
+            packed[pos] = (byte) acc;
         }
         return packed;
     }
@@ -246,26 +590,113 @@ public class DefaultAlphabetEncoding extends AlphabetEncoding {
      * @return A new byte array containing the unpacked bytes.
      */
     public byte[] unpack(byte[] packed) {
-        int unpackedLen = (packed.length * 8) / 7;
-        byte[] unpacked = new byte[unpackedLen];
-        if (packed.length == 0) {
-            return unpacked;
+        byte[] unpacked = new byte[(packed.length * 8) / 7];
+        int pos = 0;
+        int i = 0;
+        for (; i + 7 <= packed.length; i += 7) {
+            long word = getWord(packed, i);
+            for (int k = 0; k < 56; k += 7) {
+                unpacked[pos++] = (byte) ((int) (word >>> k) & 0x7f);
+            }
         }
-        for (int i = 0, j = 0; i < packed.length; i++, j++) {
-            int shiftLeft = i % 7;
-            int shiftRight = 8 - shiftLeft;
-            if (shiftLeft == 0) {
-                unpacked[j] = (byte) ((int) packed[i] & 0x7f);
-            } else {
-                int b = ((int) packed[i - 1] & 0xff) >>> shiftRight;
-                b |= ((int) packed[i] << shiftLeft) & 0x7f;
-                unpacked[j] = (byte) b;
-                if (shiftLeft == 6) {
-                    j++;
-                    unpacked[j] = (byte) (((int) packed[i] & 0xff) >>> 1);
-                }
+        int bits = 0;
+        int acc = 0;
+        for (; i < packed.length; i++) {
+            acc |= ((int) packed[i] & 0xff) << bits;
+            bits += 8;
+            while (bits >= 7) {
+                unpacked[pos++] = (byte) (acc & 0x7f);
+                acc >>>= 7;
+                bits -= 7;
             }
         }
         return unpacked;
     }
+
+    /**
+     * Pack eight characters into the low 56 bits of a word, the first
+     * character in the lowest bits. The code points are checked once for
+     * the whole word rather than one character at a time.
+     * @return The packed word, or <code>-1</code> if any of the characters
+     * is not in the base table.
+     */
+    private long packWord(CharSequence s, int index) {
+        long word = 0L;
+        int flags = 0;
+        for (int k = 0; k < 56; k += 7) {
+            char c = s.charAt(index++);
+            int code = c < LOW_CHARS ? lowCodes[c] : codeOf(c);
+            flags |= code;
+            word |= (long) (code & 0x7f) << k;
+        }
+        return (flags & ~0x7f) == 0 ? word : -1L;
+    }
+
+    /**
+     * Store the low 56 bits of a word as seven octets, least significant
+     * first.
+     */
+    private static void putWord(byte[] dest, int pos, long word) {
+        dest[pos] = (byte) word;
+        dest[pos + 1] = (byte) (word >>> 8);
+        dest[pos + 2] = (byte) (word >>> 16);
+        dest[pos + 3] = (byte) (word >>> 24);
+        dest[pos + 4] = (byte) (word >>> 32);
+        dest[pos + 5] = (byte) (word >>> 40);
+        dest[pos + 6] = (byte) (word >>> 48);
+    }
+
+    /**
+     * Read seven octets, least significant first, into the low 56 bits of
+     * a word.
+     */
+    private static long getWord(byte[] src, int pos) {
+        return ((long) src[pos] & 0xff)
+            | ((long) src[pos + 1] & 0xff) << 8
+            | ((long) src[pos + 2] & 0xff) << 16
+            | ((long) src[pos + 3] & 0xff) << 24
+            | ((long) src[pos + 4] & 0xff) << 32
+            | ((long) src[pos + 5] & 0xff) << 40
+            | ((long) src[pos + 6] & 0xff) << 48;
+    }
+
+    /**
+     * Look up the code point for a character.
+     * @return The code point, with the {@link #EXTENDED} flag set if it is
+     * in the extension table, or the unknown character replacement.
+     */
+    private int lookup(char c) {
+        int code = codeOf(c);
+        return code >= 0 ? code : unknownCharReplacement;
+    }
+
+    /**
+     * Look up the code point for a character.
+     * @return The code point, with the {@link #EXTENDED} flag set if it is
+     * in the extension table, or <code>-1</code> if it cannot be encoded.
+     */
+    private int codeOf(char c) {
+        if (c < LOW_CHARS) {
+            return lowCodes[c];
+        }
+        int index = Arrays.binarySearch(highChars, c);
+        return index >= 0 ? highCodes[index] : -1;
+    }
+
+    private int addCode(char c, int code, char[] chars, short[] codes, int count) {
+        if (c < LOW_CHARS) {
+            if (lowCodes[c] < 0) {
+                lowCodes[c] = (short) code;
+            }
+            return count;
+        }
+        for (int i = 0; i < count; i++) {
+            if (chars[i] == c) {
+                return count;
+            }
+        }
+        chars[count] = c;
+        codes[count] = (short) code;
+        return count + 1;
+    }
 }
@@ -22,7 +22,10 @@
 
 package org.mobicents.protocols.smpp.encoding;
 
-import java.io.ByteArrayOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
 /**
  * Encoding class representing the HP-Roman8 character set.
@@ -72,6 +75,54 @@ public final class HPRoman8Encoding extends AlphabetEncoding {
         '\u00bd', '\u00aa', '\u00ba', '\u00ab', '\u25a0', '\u00bb', '\u00b1',
     };
 
+    /**
+     * Code point of each character below U+0100, or -1 if HP-Roman8 has no
+     * code point for it.
+     */
+    private static final short[] LOW_CODES = new short[0x100];
+
+    /**
+     * Characters at or above U+0100 in the character table, sorted for
+     * binary search.
+     */
+    private static final char[] HIGH_CHARS;
+
+    /**
+     * Code point of each character in {@link #HIGH_CHARS}.
+     */
+    private static final short[] HIGH_CODES;
+
+    static {
+        Arrays.fill(LOW_CODES, (short) -1);
+        int highCount = 0;
+        // Search from the end so that the lowest code point wins where a
+        // character appears more than once.
+        for (int code = CHAR_TABLE.length - 1; code >= 0; code--) {
+            char c = CHAR_TABLE[code];
+            if (c < LOW_CODES.length) {
+                if (c != 0 || code == 0) {
+                    LOW_CODES[c] = (short) code;
+                }
+            } else {
+                highCount++;
+            }
+        }
+        HIGH_CHARS = new char[highCount];
+        for (int code = 0, i = 0; code < CHAR_TABLE.length; code++) {
+            if (CHAR_TABLE[code] >= LOW_CODES.length) {
+                HIGH_CHARS[i++] = CHAR_TABLE[code];
+            }
+        }
+        Arrays.sort(HIGH_CHARS);
+        HIGH_CODES = new short[highCount];
+        for (int code = 0; code < CHAR_TABLE.length; code++) {
+            int index = Arrays.binarySearch(HIGH_CHARS, CHAR_TABLE[code]);
+            if (index >= 0) {
+                HIGH_CODES[index] = (short) code;
+            }
+        }
+    }
+
     private int unknownCharReplacement = 0x3f;
     
     public HPRoman8Encoding() {
@@ -116,29 +167,59 @@ public final class HPRoman8Encoding extends AlphabetEncoding {
         return buf.toString();
     }
     
+    @Override
+    public int decode(ByteBuffer src, CharBuffer dest) {
+        int length = src.remaining();
+        if (dest.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < length; i++) {
+            dest.put(CHAR_TABLE[src.get() & 0xff]);
+        }
+        return length;
+    }
+    
     @Override
     public byte[] encode(String s) {
         if (s == null) {
             return new byte[0];
         }
+        int length = s.length();
+        byte[] encoded = new byte[length];
+        for (int i = 0; i < length; i++) {
+            encoded[i] = (byte) lookup(s.charAt(i));
+        }
+        return encoded;
+    }
 
-        char[] c = s.toCharArray();
-        ByteArrayOutputStream enc = new ByteArrayOutputStream(256);
-
-        for (int loop = 0; loop < c.length; loop++) {
+    @Override
+    public int encode(CharSequence s, ByteBuffer dest) {
+        int length = s.length();
+        if (dest.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < length; i++) {
+            dest.put((byte) lookup(s.charAt(i)));
+        }
+        return length;
+    }
 
-            int search = 0;
-            for (; search < CHAR_TABLE.length; search++) {
+    /**
+     * Every character encodes to exactly one byte.
+     */
+    @Override
+    public int getEncodedSize(String string) {
+        return string != null ? string.length() : 0;
+    }
 
-                if (c[loop] == CHAR_TABLE[search]) {
-                    enc.write((byte) search);
-                    break;
-               }
-            }
-            if (search == CHAR_TABLE.length) {
-                enc.write(unknownCharReplacement);
-            }
+    private int lookup(char c) {
+        int code;
+        if (c < LOW_CODES.length) {
+            code = LOW_CODES[c];
+        } else {
+            int index = Arrays.binarySearch(HIGH_CHARS, c);
+            code = index >= 0 ? HIGH_CODES[index] : -1;
         }
-        return enc.toByteArray();
+        return code >= 0 ? code : unknownCharReplacement;
     }
 }
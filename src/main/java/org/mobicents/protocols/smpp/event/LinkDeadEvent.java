@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.event;
+
+import org.mobicents.protocols.smpp.Session;
+
+/**
+ * Event generated when the SMSC fails to answer a number of consecutive
+ * enquire_link requests sent by the session&apos;s keepalive. The API
+ * does not close the link itself; applications (or a session pool) should
+ * treat the session as dead and reconnect.
+ */
+public class LinkDeadEvent extends SMPPEvent {
+    /**
+     * The number of consecutive enquire_link requests that went unanswered.
+     */
+    private int missedCount;
+
+    /**
+     * The round trip time of the last answered enquire_link, in
+     * milliseconds.
+     */
+    private long lastLatency;
+
+    /**
+     * Create a new LinkDeadEvent.
+     * 
+     * @param source The source Connection of this event.
+     * @param missedCount The number of consecutive unanswered enquire_links.
+     * @param lastLatency The round trip time, in milliseconds, of the last
+     * answered enquire_link, or -1 if none was ever answered.
+     */
+    public LinkDeadEvent(Session source, int missedCount, long lastLatency) {
+        super(LINK_DEAD, source);
+        this.missedCount = missedCount;
+        this.lastLatency = lastLatency;
+    }
+
+    /**
+     * Get the number of consecutive enquire_link requests that went
+     * unanswered.
+     */
+    public int getMissedCount() {
+        return missedCount;
+    }
+
+    /**
+     * Get the round trip time, in milliseconds, of the last enquire_link
+     * that was answered.
+     * @return The latency, or -1 if no enquire_link was ever answered.
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.event;
+
+import org.mobicents.protocols.smpp.Session;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+
+/**
+ * Sees every packet a session receives before the session&apos;s observers
+ * do, and decides whether they see it at all. The filter is called on the
+ * receiving thread regardless of the event dispatcher in use, which for
+ * a {@link org.mobicents.protocols.smpp.net.NioLink} is an I/O thread, so
+ * it must never block.
+ * @see Session#setPacketFilter
+ */
+public interface PacketFilter {
+    /**
+     * Called when a packet has been received and processed by the session,
+     * before it is passed to the event dispatcher.
+     * @param source The session which received the packet.
+     * @param packet The packet received.
+     * @return <code>true</code> to deliver the packet to the session&apos;s
+     * observers, <code>false</code> to drop it.
+     */
+    boolean accept(Session source, SMPPPacket packet);
+}
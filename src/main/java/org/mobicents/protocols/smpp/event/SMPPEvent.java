@@ -39,6 +39,9 @@ public abstract class SMPPEvent {
     /** ReceiverExceptionEvent enumeration type. */
     public static final int RECEIVER_EXCEPTION = 4;
 
+    /** LinkDeadEvent enumeration type. */
+    public static final int LINK_DEAD = 5;
+
     /** The source Connection of this event. */
     private Session source;
 
@@ -66,6 +69,7 @@ public abstract class SMPPEvent {
      * 
      * @see #RECEIVER_EXIT
      * @see #RECEIVER_EXCEPTION
+     * @see #LINK_DEAD
      */
     public int getType() {
         return type;
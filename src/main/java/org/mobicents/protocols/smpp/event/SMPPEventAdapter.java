@@ -89,6 +89,10 @@ public abstract class SMPPEventAdapter implements SessionObserver {
                 receiverException(source, (ReceiverExceptionEvent) event);
                 break;
 
+            case SMPPEvent.LINK_DEAD:
+                linkDead(source, (LinkDeadEvent) event);
+                break;
+
             default:
                 userEvent(source, event);
             }
@@ -180,6 +184,22 @@ public abstract class SMPPEventAdapter implements SessionObserver {
         // default: do nothing
     }
 
+    /**
+     * The SMSC has stopped answering enquire_link probes. This method is
+     * called when the session&apos;s keepalive has seen the configured
+     * number of probes go unanswered. The session is not closed by the API;
+     * handling code should assume the link is dead, close it and either
+     * exit or reconnect and re-bind.
+     * 
+     * @param source
+     *            the source connection of the event.
+     * @param lde
+     *            the link dead event received from the API.
+     */
+    public void linkDead(Session source, LinkDeadEvent lde) {
+        // default: do nothing
+    }
+
     /**
      * PLACEHOLDER. This method will currently never be called.
      */
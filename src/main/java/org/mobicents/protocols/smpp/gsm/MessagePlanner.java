@@ -0,0 +1,334 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.gsm;
+
+import org.mobicents.protocols.smpp.encoding.DefaultAlphabetEncoding;
+
+/**
+ * Works out how a text message will be sent without encoding it: which
+ * alphabet it needs, how long it is once encoded and how many segments
+ * it takes.
+ * <p>
+ * {@link #plan} makes a single pass over the text and allocates nothing.
+ * The alphabet chosen is the one that needs the fewest segments out of
+ * those that can represent every character: the GSM default alphabet,
+ * Latin-1 (which can be disabled) and UCS2, preferred in that order when
+ * they need the same number of segments. Segment counts follow the same
+ * rules as an SMS encoder: a GSM escape sequence or a UTF-16 surrogate
+ * pair is never split across two segments.
+ * </p>
+ * <p>
+ * The limits assume 140-octet user data. A single segment holds 160
+ * septets or 140 octets. Once concatenation is needed each segment holds
+ * 153 septets or 134 octets with 8-bit reference numbers, and 152 septets
+ * or 133 octets with 16-bit reference numbers. Room for other header
+ * elements can be reserved with {@link #setHeaderLength}.
+ * </p>
+ * <p>
+ * A planner keeps the result of the last call to {@link #plan}, so each
+ * thread should use its own.
+ * </p>
+ */
+public final class MessagePlanner {
+    /**
+     * The alphabets a message can be planned for.
+     */
+    public enum Alphabet {
+        GSM7(0),
+        LATIN1(3),
+        UCS2(8);
+
+        private int dataCoding;
+
+        private Alphabet(int dataCoding) {
+            this.dataCoding = dataCoding;
+        }
+
+        /**
+         * Get the <code>data_coding</code> value for this alphabet.
+         * @return The data coding value.
+         */
+        public int getDataCoding() {
+            return dataCoding;
+        }
+    }
+
+    private static final int USER_DATA_OCTETS = 140;
+    private static final int CONCAT_8_LENGTH = 5;
+    private static final int CONCAT_16_LENGTH = 6;
+
+    private final DefaultAlphabetEncoding gsm;
+    private boolean latin1Allowed = true;
+    private int headerLength;
+
+    private int septetsSingle;
+    private int septetsConcat8;
+    private int septetsConcat16;
+    private int octetsSingle;
+    private int octetsConcat8;
+    private int octetsConcat16;
+
+    private Alphabet alphabet = Alphabet.GSM7;
+    private int encodedLength;
+    private int segments8 = 1;
+    private int segments16 = 1;
+
+    /**
+     * Create a planner that uses the standard GSM default alphabet.
+     */
+    public MessagePlanner() {
+        this(new DefaultAlphabetEncoding());
+    }
+
+    /**
+     * Create a planner that uses a particular 7-bit alphabet to decide
+     * which characters can be sent as septets.
+     * @param gsm The 7-bit alphabet.
+     */
+    public MessagePlanner(DefaultAlphabetEncoding gsm) {
+        this.gsm = gsm;
+        setHeaderLength(0);
+    }
+
+    /**
+     * Determine if Latin-1 may be chosen.
+     * @return <code>true</code> if Latin-1 may be chosen.
+     */
+    public boolean isLatin1Allowed() {
+        return latin1Allowed;
+    }
+
+    /**
+     * Set whether Latin-1 may be chosen. Not every SMSC and handset
+     * supports it, in which case text that is not in the GSM default
+     * alphabet is planned as UCS2. The default is <code>true</code>.
+     * @param latin1Allowed <code>false</code> to never choose Latin-1.
+     */
+    public void setLatin1Allowed(boolean latin1Allowed) {
+        this.latin1Allowed = latin1Allowed;
+    }
+
+    /**
+     * Get the number of header octets reserved in every segment.
+     * @return The header length.
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * Reserve room in every segment for header elements other than the
+     * concatenation element, such as port addressing.
+     * @param headerLength The total length of the elements, including
+     * each element&apos;s identifier and length octets but not the user
+     * data header length octet.
+     * @throws IllegalArgumentException If <code>headerLength</code> is
+     * negative or leaves no room for any user data.
+     */
+    public void setHeaderLength(int headerLength) {
+        int concat16 = udhLength(headerLength + CONCAT_16_LENGTH);
+        if (headerLength < 0 || concat16 >= USER_DATA_OCTETS - 1) {
+            throw new IllegalArgumentException(
+                    "Invalid header length: " + headerLength);
+        }
+        this.headerLength = headerLength;
+        int single = udhLength(headerLength);
+        int concat8 = udhLength(headerLength + CONCAT_8_LENGTH);
+        septetsSingle = septetCapacity(single);
+        septetsConcat8 = septetCapacity(concat8);
+        septetsConcat16 = septetCapacity(concat16);
+        octetsSingle = USER_DATA_OCTETS - single;
+        octetsConcat8 = USER_DATA_OCTETS - concat8;
+        octetsConcat16 = USER_DATA_OCTETS - concat16;
+    }
+
+    /**
+     * Plan a message.
+     * @param text The text of the message.
+     * @return This planner, from which the results can be read.
+     */
+    public MessagePlanner plan(CharSequence text) {
+        int length = text.length();
+        boolean gsmOk = true;
+        boolean latin1Ok = latin1Allowed;
+        int septets = 0;
+        int octets = 0;
+        // Each of these tracks the number of segments needed, and how
+        // full the last of them is, if the message is split using one
+        // of the concatenation header sizes.
+        int gsmSegments8 = 1;
+        int gsmUsed8 = 0;
+        int gsmSegments16 = 1;
+        int gsmUsed16 = 0;
+        int ucs2Segments8 = 1;
+        int ucs2Used8 = 0;
+        int ucs2Segments16 = 1;
+        int ucs2Used16 = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (gsmOk) {
+                int cost = gsm.getSeptetCount(c);
+                if (cost == 0) {
+                    gsmOk = false;
+                } else {
+                    septets += cost;
+                    if (gsmUsed8 + cost > septetsConcat8) {
+                        gsmSegments8++;
+                        gsmUsed8 = cost;
+                    } else {
+                        gsmUsed8 += cost;
+                    }
+                    if (gsmUsed16 + cost > septetsConcat16) {
+                        gsmSegments16++;
+                        gsmUsed16 = cost;
+                    } else {
+                        gsmUsed16 += cost;
+                    }
+                }
+            }
+            if (c > 0xff) {
+                latin1Ok = false;
+            }
+            int cost = 2;
+            if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                cost = 4;
+                i++;
+            }
+            octets += cost;
+            if (ucs2Used8 + cost > octetsConcat8) {
+                ucs2Segments8++;
+                ucs2Used8 = cost;
+            } else {
+                ucs2Used8 += cost;
+            }
+            if (ucs2Used16 + cost > octetsConcat16) {
+                ucs2Segments16++;
+                ucs2Used16 = cost;
+            } else {
+                ucs2Used16 += cost;
+            }
+        }
+        if (gsmOk) {
+            alphabet = Alphabet.GSM7;
+            encodedLength = septets;
+            if (septets <= septetsSingle) {
+                segments8 = 1;
+                segments16 = 1;
+            } else {
+                segments8 = gsmSegments8;
+                segments16 = gsmSegments16;
+            }
+        }
+        if (latin1Ok) {
+            // Every character is one octet, so nothing can straddle a
+            // segment boundary.
+            int latin1Length = length;
+            int latin1Segments8 = 1;
+            int latin1Segments16 = 1;
+            if (latin1Length > octetsSingle) {
+                latin1Segments8 = (latin1Length + octetsConcat8 - 1) / octetsConcat8;
+                latin1Segments16 = (latin1Length + octetsConcat16 - 1) / octetsConcat16;
+            }
+            if (!gsmOk || latin1Segments8 < segments8) {
+                alphabet = Alphabet.LATIN1;
+                encodedLength = latin1Length;
+                segments8 = latin1Segments8;
+                segments16 = latin1Segments16;
+            }
+        } else if (!gsmOk) {
+            alphabet = Alphabet.UCS2;
+            encodedLength = octets;
+            if (octets <= octetsSingle) {
+                segments8 = 1;
+                segments16 = 1;
+            } else {
+                segments8 = ucs2Segments8;
+                segments16 = ucs2Segments16;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Get the alphabet chosen for the last message planned.
+     * @return The alphabet.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * Get the <code>data_coding</code> value for the alphabet chosen for
+     * the last message planned.
+     * @return The data coding value.
+     */
+    public int getDataCoding() {
+        return alphabet.getDataCoding();
+    }
+
+    /**
+     * Get the encoded length of the last message planned. This is a number
+     * of septets, including escape characters, for the GSM default
+     * alphabet and a number of octets otherwise. It does not include any
+     * header.
+     * @return The encoded length.
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    /**
+     * Get the number of segments needed for the last message planned,
+     * using 8-bit concatenation reference numbers.
+     * @return The number of segments.
+     */
+    public int getSegmentCount() {
+        return segments8;
+    }
+
+    /**
+     * Get the number of segments needed for the last message planned.
+     * @param useConcat16 <code>true</code> for the number needed with
+     * 16-bit concatenation reference numbers, <code>false</code> for 8-bit.
+     * @return The number of segments.
+     */
+    public int getSegmentCount(boolean useConcat16) {
+        return useConcat16 ? segments16 : segments8;
+    }
+
+    /**
+     * Get the length of a user data header, including its length octet.
+     */
+    private static int udhLength(int elementsLength) {
+        return elementsLength > 0 ? elementsLength + 1 : 0;
+    }
+
+    /**
+     * Get the number of septets that fit in the user data after a header.
+     * The header is padded to a septet boundary.
+     */
+    private static int septetCapacity(int udhLength) {
+        return (USER_DATA_OCTETS * 8 - ((udhLength * 8 + 6) / 7) * 7) / 7;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.gsm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mobicents.protocols.smpp.encoding.NationalLanguageEncoding;
+
+/**
+ * Chooses the national language shift tables that send a text message
+ * in the fewest segments.
+ * <p>
+ * The candidates are the default GSM alphabet and, for each language
+ * given to the constructor, its single shift table, its locking shift
+ * table and both together. Every shift table costs three octets of user
+ * data header in each segment, so a candidate is only chosen over one
+ * with a shorter header if it needs fewer segments. Text that none of
+ * the candidates can represent must be sent as UCS2.
+ * </p>
+ * <p>
+ * A selector keeps the result of the last call to {@link #select}, so
+ * each thread should use its own.
+ * </p>
+ * @see UserDataUtil#addNationalLanguageShifts
+ */
+public final class NationalLanguageSelector {
+    private static final int SHIFT_ELEMENT_LENGTH = 3;
+
+    private final NationalLanguageEncoding[] encodings;
+    private final MessagePlanner[] planners;
+    private final int[] shiftLengths;
+    private int headerLength;
+    private boolean useConcat16;
+
+    private NationalLanguageEncoding selected;
+    private int segmentCount;
+    private int encodedLength;
+
+    /**
+     * Create a selector.
+     * @param languages The national language identifiers whose tables may
+     * be chosen, in order of preference.
+     * @throws IllegalArgumentException If a language has neither a
+     * supported single shift nor a supported locking shift table.
+     */
+    public NationalLanguageSelector(int... languages) {
+        List<NationalLanguageEncoding> candidates =
+            new ArrayList<NationalLanguageEncoding>();
+        candidates.add(new NationalLanguageEncoding(
+                NationalLanguageEncoding.DEFAULT, NationalLanguageEncoding.DEFAULT));
+        for (int language : languages) {
+            boolean single = language != NationalLanguageEncoding.DEFAULT
+                && NationalLanguageEncoding.isSingleShiftSupported(language);
+            boolean locking = language != NationalLanguageEncoding.DEFAULT
+                && NationalLanguageEncoding.isLockingShiftSupported(language);
+            if (!single && !locking) {
+                throw new IllegalArgumentException(
+                        "Unsupported national language " + language);
+            }
+            if (single) {
+                candidates.add(new NationalLanguageEncoding(
+                        NationalLanguageEncoding.DEFAULT, language));
+            }
+            if (locking) {
+                candidates.add(new NationalLanguageEncoding(
+                        language, NationalLanguageEncoding.DEFAULT));
+            }
+        }
+        for (int language : languages) {
+            if (NationalLanguageEncoding.isSingleShiftSupported(language)
+                    && NationalLanguageEncoding.isLockingShiftSupported(language)) {
+                candidates.add(new NationalLanguageEncoding(language, language));
+            }
+        }
+        int count = candidates.size();
+        encodings = candidates.toArray(new NationalLanguageEncoding[count]);
+        planners = new MessagePlanner[count];
+        shiftLengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            NationalLanguageEncoding encoding = encodings[i];
+            if (encoding.getLockingShift() != NationalLanguageEncoding.DEFAULT) {
+                shiftLengths[i] += SHIFT_ELEMENT_LENGTH;
+            }
+            if (encoding.getSingleShift() != NationalLanguageEncoding.DEFAULT) {
+                shiftLengths[i] += SHIFT_ELEMENT_LENGTH;
+            }
+            planners[i] = new MessagePlanner(encoding);
+            planners[i].setLatin1Allowed(false);
+        }
+        setHeaderLength(0);
+    }
+
+    /**
+     * Get the number of header octets reserved in every segment for
+     * elements other than concatenation and the shift tables.
+     * @return The header length.
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * Reserve room in every segment for header elements other than
+     * concatenation and the shift tables.
+     * @param headerLength The total length of the elements.
+     * @throws IllegalArgumentException If <code>headerLength</code> is
+     * negative or leaves no room for any user data.
+     * @see MessagePlanner#setHeaderLength
+     */
+    public void setHeaderLength(int headerLength) {
+        for (int i = 0; i < planners.length; i++) {
+            planners[i].setHeaderLength(headerLength + shiftLengths[i]);
+        }
+        this.headerLength = headerLength;
+    }
+
+    /**
+     * Determine if segments are counted with 16-bit concatenation
+     * reference numbers.
+     * @return <code>true</code> for 16-bit reference numbers.
+     */
+    public boolean isUseConcat16() {
+        return useConcat16;
+    }
+
+    /**
+     * Set whether segments are counted with 16-bit concatenation
+     * reference numbers. The default is <code>false</code>.
+     * @param useConcat16 <code>true</code> for 16-bit reference numbers.
+     */
+    public void setUseConcat16(boolean useConcat16) {
+        this.useConcat16 = useConcat16;
+    }
+
+    /**
+     * Choose the tables for a message.
+     * @param text The text of the message.
+     * @return The encoding that sends <code>text</code> in the fewest
+     * segments, or <code>null</code> if no candidate can represent every
+     * character.
+     */
+    public NationalLanguageEncoding select(CharSequence text) {
+        selected = null;
+        segmentCount = 0;
+        encodedLength = 0;
+        // Candidates are in order of header length, so the first one
+        // that fits in a single segment cannot be beaten.
+        for (int i = 0; i < planners.length && segmentCount != 1; i++) {
+            MessagePlanner planner = planners[i].plan(text);
+            if (planner.getAlphabet() != MessagePlanner.Alphabet.GSM7) {
+                continue;
+            }
+            int segments = planner.getSegmentCount(useConcat16);
+            if (selected == null || segments < segmentCount) {
+                selected = encodings[i];
+                segmentCount = segments;
+                encodedLength = planner.getEncodedLength();
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Get the encoding chosen for the last message.
+     * @return The encoding, or <code>null</code> if none could be used.
+     */
+    public NationalLanguageEncoding getEncoding() {
+        return selected;
+    }
+
+    /**
+     * Get the number of segments the last message needs with the chosen
+     * encoding.
+     * @return The number of segments, or 0 if no encoding could be used.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Get the number of septets, including escape characters, the last
+     * message encodes to with the chosen encoding.
+     * @return The encoded length, or 0 if no encoding could be used.
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.gsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * National language single shift. 3GPP TS 23.040 9.2.3.24.15. Identifies the
+ * single shift table, which replaces the extension table of the GSM 7-bit
+ * default alphabet for the message. It is repeated in every segment.
+ * @see org.mobicents.protocols.smpp.encoding.NationalLanguageEncoding
+ */
+public class NationalLanguageSingleShift extends RecurringHeaderElement {
+
+    private int language;
+
+    public NationalLanguageSingleShift(int language) {
+        super(true);
+        setLanguage(language);
+    }
+
+    public int getLength() {
+        return 1;
+    }
+
+    @Override
+    protected boolean doWrite(int segmentNum, ByteBuffer buffer) {
+        buffer.put((byte) 0x24);
+        buffer.put((byte) 1);
+        buffer.put((byte) language);
+        return true;
+    }
+
+    public int getLanguage() {
+        return language;
+    }
+
+    public void setLanguage(int language) {
+        if (language < 0 || language > 0xff) {
+            throw new IllegalArgumentException(
+                    "Language must be 0 <= language <= 0xff");
+        }
+        this.language = language;
+    }
+}
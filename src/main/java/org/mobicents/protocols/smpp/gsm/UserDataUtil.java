@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.encoding.NationalLanguageEncoding;
 import org.mobicents.protocols.smpp.message.DataSM;
 import org.mobicents.protocols.smpp.message.DeliverSM;
 import org.mobicents.protocols.smpp.message.SubmitSM;
@@ -114,4 +115,23 @@ public final class UserDataUtil {
         }
         return packets.toArray(new DataSM[packets.size()]);
     }
+    
+    /**
+     * Add the national language shift elements that identify the tables
+     * used by an encoding. Nothing is added for the default tables.
+     * @param userData The user data to add the elements to.
+     * @param encoding The encoding the message text was encoded with.
+     */
+    public static void addNationalLanguageShifts(
+            UserData userData,
+            NationalLanguageEncoding encoding) {
+        if (encoding.getLockingShift() != NationalLanguageEncoding.DEFAULT) {
+            userData.addHeaderElement(
+                    new NationalLanguageLockingShift(encoding.getLockingShift()));
+        }
+        if (encoding.getSingleShift() != NationalLanguageEncoding.DEFAULT) {
+            userData.addHeaderElement(
+                    new NationalLanguageSingleShift(encoding.getSingleShift()));
+        }
+    }
 }
@@ -53,58 +53,77 @@ public class DataSM extends SMPPPacket {
     }
 
     public int getDataCoding() {
+        ensureDecoded();
         return dataCoding;
     }
 
     public void setDataCoding(int dataCoding) {
+        modified();
         this.dataCoding = dataCoding;
     }
 
     public Address getDestination() {
+        ensureDecoded();
         return destination;
     }
 
     public void setDestination(Address destination) {
+        modified();
         this.destination = destination;
     }
 
     public int getEsmClass() {
+        ensureDecoded();
         return esmClass;
     }
 
     public void setEsmClass(int esmClass) {
+        modified();
         this.esmClass = esmClass;
     }
 
     public String getServiceType() {
+        ensureDecoded();
         return serviceType;
     }
 
     public void setServiceType(String serviceType) {
+        modified();
         this.serviceType = serviceType;
     }
 
     public Address getSource() {
+        ensureDecoded();
         return source;
     }
 
     public void setSource(Address source) {
+        modified();
         this.source = source;
     }
 
     public int getRegistered() {
+        ensureDecoded();
         return registered;
     }
 
     public void setRegistered(int registered) {
+        modified();
         this.registered = registered;
     }
 
+    @Override
+    public boolean isLazyDecodingSupported() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
+        ensureDecoded();
         boolean equals = super.equals(obj);
         if (equals) {
             DataSM other = (DataSM) obj;
+            other.ensureDecoded();
             equals |= safeCompare(serviceType, other.serviceType);
             equals |= safeCompare(source, other.source);
             equals |= safeCompare(destination, other.destination);
@@ -117,6 +136,7 @@ public class DataSM extends SMPPPacket {
     
     @Override
     public int hashCode() {
+        ensureDecoded();
         int hc = super.hashCode();
         hc += (serviceType != null) ? serviceType.hashCode() : 0;
         hc += (source != null) ? source.hashCode() : 0;
@@ -169,6 +189,7 @@ public class DataSM extends SMPPPacket {
     
     @Override
     protected int getMandatorySize() {
+        ensureDecoded();
         int l = 4;
         l += sizeOf(serviceType);
         l += sizeOf(source);
@@ -57,18 +57,27 @@ public class DeliverSMResp extends SMPPPacket {
     }
 
     public String getMessageId() {
+        ensureDecoded();
         return messageId;
     }
 
     public void setMessageId(String messageId) {
+        modified();
         this.messageId = messageId;
     }
 
+    @Override
+    public boolean isLazyDecodingSupported() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
+        ensureDecoded();
         boolean equals = super.equals(obj);
         if (equals) {
             DeliverSMResp other = (DeliverSMResp) obj;
+            other.ensureDecoded();
             equals |= safeCompare(messageId, other.messageId);
         }
         return equals;
@@ -76,6 +85,7 @@ public class DeliverSMResp extends SMPPPacket {
     
     @Override
     public int hashCode() {
+        ensureDecoded();
         int hc = super.hashCode();
         hc += (messageId != null) ? messageId.hashCode() : 0;
         return hc;
@@ -103,6 +113,7 @@ public class DeliverSMResp extends SMPPPacket {
     
     @Override
     protected int getMandatorySize() {
+        ensureDecoded();
         return 1 + sizeOf(messageId);
     }
 }
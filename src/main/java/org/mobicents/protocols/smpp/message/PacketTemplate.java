@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.SMPPRuntimeException;
+import org.mobicents.protocols.smpp.message.tlv.TLVTable;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketEncoder;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.version.SMPPVersion;
+
+/**
+ * Pre-encoded template for sending the same message to many recipients.
+ * <p>
+ * A template is built from a prototype <code>submit_sm</code>,
+ * <code>deliver_sm</code> or <code>data_sm</code>. The prototype is
+ * validated and encoded once, and the encoded bytes either side of its
+ * destination address are kept. Each frame produced by the template is
+ * then assembled by copying those bytes around a new header, destination
+ * address and, optionally, extra per-recipient TLVs. Only the destination
+ * address is validated for each recipient.
+ * </p>
+ * <p>
+ * {@link #newPacket} wraps a frame in a packet of the prototype&apos;s
+ * type, which can be sent through a
+ * {@link org.mobicents.protocols.smpp.Session} like any other packet. The
+ * session assigns its sequence number as usual, the packet skips
+ * validation and its body is written out by copying the frame. Accessing
+ * the packet&apos;s fields decodes them from the frame, and modifying the
+ * packet makes it encode and validate normally again.
+ * {@link #newFrame} produces the raw bytes, for applications that write
+ * to the network themselves.
+ * </p>
+ * <p>
+ * Templates are immutable and may be shared between threads. Later
+ * changes to the prototype do not affect the template.
+ * </p>
+ */
+public final class PacketTemplate {
+    private final SMPPPacket prototype;
+    private final SMPPVersion version;
+
+    /**
+     * The command ID of the frames produced.
+     */
+    private final int commandId;
+
+    /**
+     * Encoded body of the prototype before its destination address.
+     */
+    private final byte[] prefix;
+
+    /**
+     * Encoded body of the prototype after its destination address,
+     * including any TLVs it has.
+     */
+    private final byte[] suffix;
+
+    /**
+     * Create a template from a <code>submit_sm</code> or
+     * <code>deliver_sm</code>.
+     * @param prototype The packet to use as a template. Its destination
+     * address and sequence number are ignored.
+     * @param version The SMPP version to validate and encode against. TLVs
+     * are left out of the frames if the version does not support them.
+     * @throws org.mobicents.protocols.smpp.version.VersionException If the
+     * prototype is not valid for <code>version</code>.
+     */
+    public PacketTemplate(SubmitSM prototype, SMPPVersion version) {
+        this(prototype, version, prototype.getServiceType(),
+                prototype.getSource(), prototype.getDestination());
+    }
+
+    /**
+     * Create a template from a <code>data_sm</code>.
+     * @param prototype The packet to use as a template. Its destination
+     * address and sequence number are ignored.
+     * @param version The SMPP version to validate and encode against. TLVs
+     * are left out of the frames if the version does not support them.
+     * @throws org.mobicents.protocols.smpp.version.VersionException If the
+     * prototype is not valid for <code>version</code>.
+     */
+    public PacketTemplate(DataSM prototype, SMPPVersion version) {
+        this(prototype, version, prototype.getServiceType(),
+                prototype.getSource(), prototype.getDestination());
+    }
+
+    private PacketTemplate(SMPPPacket prototype, SMPPVersion version,
+            String serviceType, Address source, Address destination) {
+        prototype.validate(version);
+        byte[] encoded;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            prototype.writeTo(new PacketEncoderImpl(out), version.isSupportTLV());
+            encoded = out.toByteArray();
+        } catch (IOException x) {
+            throw new SMPPRuntimeException("Could not encode the prototype", x);
+        }
+        int start = 16 + prototype.sizeOf(serviceType) + 1
+                + prototype.sizeOf(source);
+        int end = start + prototype.sizeOf(destination);
+        try {
+            this.prototype = (SMPPPacket) prototype.clone();
+        } catch (CloneNotSupportedException x) {
+            throw new SMPPRuntimeException("Could not copy the prototype", x);
+        }
+        this.version = version;
+        this.commandId = prototype.getCommandId();
+        this.prefix = new byte[start - 16];
+        this.suffix = new byte[encoded.length - end];
+        System.arraycopy(encoded, 16, prefix, 0, prefix.length);
+        System.arraycopy(encoded, end, suffix, 0, suffix.length);
+    }
+
+    /**
+     * Get the version this template was validated against.
+     * @return The SMPP version.
+     */
+    public SMPPVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Create a packet for a recipient. The packet&apos;s sequence number
+     * is <code>-1</code>, so a session will assign one when it is sent.
+     * @param destination The recipient&apos;s address.
+     * @return A new packet of the same type as the prototype.
+     * @throws org.mobicents.protocols.smpp.version.VersionException If the
+     * destination is not valid for this template&apos;s version.
+     */
+    public SMPPPacket newPacket(Address destination) {
+        return newPacket(destination, null);
+    }
+
+    /**
+     * Create a packet for a recipient with extra TLVs.
+     * @param destination The recipient&apos;s address.
+     * @param tlvs TLVs to add to those of the prototype. These should not
+     * repeat any of the prototype&apos;s TLVs. May be <code>null</code>.
+     * @return A new packet of the same type as the prototype.
+     * @throws org.mobicents.protocols.smpp.version.VersionException If the
+     * destination is not valid for this template&apos;s version.
+     * @see #newPacket(Address)
+     */
+    public SMPPPacket newPacket(Address destination, TLVTable tlvs) {
+        SMPPPacket packet;
+        try {
+            packet = (SMPPPacket) prototype.clone();
+        } catch (CloneNotSupportedException x) {
+            throw new SMPPRuntimeException("Could not copy the prototype", x);
+        }
+        packet.readValidatedFrame(newFrame(-1L, destination, tlvs));
+        return packet;
+    }
+
+    /**
+     * Create the encoded frame for a recipient.
+     * @param sequenceNum The sequence number to put in the header.
+     * @param destination The recipient&apos;s address.
+     * @return The frame, ready to be written to the network.
+     * @throws org.mobicents.protocols.smpp.version.VersionException If the
+     * destination is not valid for this template&apos;s version.
+     */
+    public byte[] newFrame(long sequenceNum, Address destination) {
+        return newFrame(sequenceNum, destination, null);
+    }
+
+    /**
+     * Create the encoded frame for a recipient with extra TLVs.
+     * @param sequenceNum The sequence number to put in the header.
+     * @param destination The recipient&apos;s address.
+     * @param tlvs TLVs to add to those of the prototype. These should not
+     * repeat any of the prototype&apos;s TLVs. May be <code>null</code>,
+     * and are left out if this template&apos;s version does not support
+     * TLVs.
+     * @return The frame, ready to be written to the network.
+     * @throws org.mobicents.protocols.smpp.version.VersionException If the
+     * destination is not valid for this template&apos;s version.
+     */
+    public byte[] newFrame(long sequenceNum, Address destination, TLVTable tlvs) {
+        version.validateAddress(destination);
+        if (tlvs != null && (tlvs.isEmpty() || !version.isSupportTLV())) {
+            tlvs = null;
+        }
+        String address = destination.getAddress();
+        int addressLength = address != null ? address.length() : 0;
+        int tlvLength = tlvs != null ? tlvs.getLength() : 0;
+        int length = 16 + prefix.length + 3 + addressLength
+                + suffix.length + tlvLength;
+        byte[] frame = new byte[length];
+        putInt(frame, 0, length);
+        putInt(frame, 4, commandId);
+        putInt(frame, 8, 0);
+        putInt(frame, 12, (int) sequenceNum);
+        System.arraycopy(prefix, 0, frame, 16, prefix.length);
+        int pos = 16 + prefix.length;
+        frame[pos++] = (byte) destination.getTON();
+        frame[pos++] = (byte) destination.getNPI();
+        for (int i = 0; i < addressLength; i++) {
+            char c = address.charAt(i);
+            frame[pos++] = (byte) (c < 0x80 ? c : '?');
+        }
+        frame[pos++] = 0;
+        System.arraycopy(suffix, 0, frame, pos, suffix.length);
+        pos += suffix.length;
+        if (tlvs != null) {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            buffer.position(pos);
+            try {
+                tlvs.writeTo(new ByteBufferPacketEncoder(buffer));
+            } catch (IOException x) {
+                throw new SMPPRuntimeException("Could not encode the TLVs", x);
+            }
+        }
+        return frame;
+    }
+
+    private static void putInt(byte[] array, int pos, int value) {
+        array[pos] = (byte) (value >>> 24);
+        array[pos + 1] = (byte) (value >>> 16);
+        array[pos + 2] = (byte) (value >>> 8);
+        array[pos + 3] = (byte) value;
+    }
+}
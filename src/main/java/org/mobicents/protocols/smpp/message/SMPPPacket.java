@@ -27,10 +27,13 @@ import java.io.Serializable;
 
 import org.mobicents.protocols.smpp.Address;
 import org.mobicents.protocols.smpp.SMPPRuntimeException;
+import org.mobicents.protocols.smpp.message.tlv.CompactTLVTable;
+import org.mobicents.protocols.smpp.message.tlv.LazyTLVTable;
 import org.mobicents.protocols.smpp.message.tlv.TLVTable;
-import org.mobicents.protocols.smpp.message.tlv.TLVTableImpl;
 import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketEncoder;
 import org.mobicents.protocols.smpp.util.PacketDecoder;
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
 import org.mobicents.protocols.smpp.util.PacketEncoder;
 import org.mobicents.protocols.smpp.util.SMPPDate;
 import org.mobicents.protocols.smpp.version.SMPPVersion;
@@ -53,9 +56,41 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
     protected long sequenceNum = -1;
 
     /**
-     * TLV table.
+     * TLV table. Packets without optional parameters share the immutable
+     * {@link CompactTLVTable#EMPTY} table, which is replaced by a table of
+     * their own the first time a parameter is set. Sub-classes should use
+     * {@link #getTLVTable} to modify the table.
      */
-    protected TLVTable tlvTable = new TLVTableImpl();
+    protected TLVTable tlvTable = CompactTLVTable.EMPTY;
+
+    /**
+     * The raw bytes this packet was read from by {@link #readLazily}.
+     * <code>null</code> once the packet has been modified, or if it was
+     * not read lazily.
+     */
+    private byte[] frame;
+
+    /**
+     * Offset into <code>frame</code> of the first TLV. Only valid once
+     * the mandatory parameters have been decoded.
+     */
+    private int tlvOffset;
+
+    /**
+     * The mandatory parameters are still to be decoded from the frame. Only
+     * cleared once they have been, so that a reader on another thread which
+     * sees it clear also sees the decoded fields.
+     */
+    private volatile boolean mandatoryPending;
+
+    /**
+     * The TLV table is still to be decoded from the frame. Cleared in the
+     * same way as <code>mandatoryPending</code>.
+     */
+    private volatile boolean tlvPending;
+
+    /** The frame was built from an already validated packet. */
+    private boolean frameValidated;
 
     /**
      * Create a new SMPPPacket with the specified Id. This version of the
@@ -139,12 +174,16 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
     }
 
     /**
-     * Get the optional parameter (TLV) table.
+     * Get the optional parameter (TLV) table. If this packet was read
+     * lazily, its optional parameters are written from the table rather
+     * than copied from the frame from now on, so changes made to the table
+     * are always encoded.
      * 
      * @see org.mobicents.protocols.smpp.message.tlv.TLVTable
      */
     public TLVTable getTLVTable() {
-        return tlvTable;
+        decodeTLVTable();
+        return writableTLVTable();
     }
 
     /**
@@ -160,7 +199,8 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * @see TLVTable#put
      */
     public Object setTLV(Tag tag, Object value) {
-        return tlvTable.put(tag, value);
+        modified();
+        return writableTLVTable().put(tag, value);
     }
     
     /**
@@ -169,6 +209,7 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * @param tag the tag of the TLV parameter to get.
      */
     public Object getTLV(Tag tag) {
+        decodeTLVTable();
         return tlvTable.get(tag);
     }
 
@@ -179,6 +220,7 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * @return The TLV, if it was set or <code>null</code> if it wasn't.
      */
     public Object removeTLV(Tag tag) {
+        modified();
         return tlvTable.remove(tag);
     }
     
@@ -192,6 +234,7 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * @return true if the parameter is set, false if it is not.
      */
     public boolean isSet(Tag tag) {
+        decodeTLVTable();
         return tlvTable.containsKey(tag);
     }
 
@@ -201,6 +244,9 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * network.
      */
     public final int getLength() {
+        if (frame != null) {
+            return frameLength(true);
+        }
         return 16 + getMandatorySize() + tlvTable.getLength();
     }
     
@@ -229,6 +275,12 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      */
     public final void writeTo(PacketEncoder encoder, boolean withOptional)
             throws IOException {
+        if (frame != null) {
+            synchronized (encoder) {
+                writeFrame(encoder, withOptional);
+            }
+            return;
+        }
         int commandLen = 16 + getMandatorySize();
         if (withOptional) {
             commandLen += tlvTable.getLength();
@@ -245,6 +297,41 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
 		}
     }
 
+    /**
+     * Write this SMPP packet to a buffer in a single pass. Rather than
+     * calculating the packet&apos;s size before writing it, a placeholder
+     * <code>command_length</code> is written and then filled in once the
+     * rest of the packet has been written.
+     * 
+     * @param encoder
+     *            The encoder to write to. Its buffer is grown from its pool
+     *            if the packet does not fit.
+     * @param withOptional
+     *            true to send optional parameters over the link, false to only
+     *            write the mandatory parameters.
+     * @throws IOException
+     *             if there's an error encoding the packet.
+     */
+    public final void writeTo(ByteBufferPacketEncoder encoder, boolean withOptional)
+            throws IOException {
+        synchronized (encoder) {
+            if (frame != null) {
+                writeFrame(encoder, withOptional);
+                return;
+            }
+            encoder.writeInt4(0);
+            int start = encoder.getPosition() - 4;
+            encoder.writeInt4(commandId);
+            encoder.writeInt4(commandStatus);
+            encoder.writeUInt4(sequenceNum);
+            writeMandatory(encoder);
+            if (withOptional) {
+                tlvTable.writeTo(encoder);
+            }
+            encoder.putInt4(start, encoder.getPosition() - start);
+        }
+    }
+
     /**
      * Decode an SMPP packet from a byte array.
      * 
@@ -261,6 +348,10 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * <code>BindTransceiver</code> packet).
      */
     public void readFrom(PacketDecoder decoder) throws SMPPProtocolException {
+        frame = null;
+        mandatoryPending = false;
+        tlvPending = false;
+        frameValidated = false;
         tlvTable.clear();
         int startPos = decoder.getParsePosition();
         int commandLen = readHeader(decoder);
@@ -268,7 +359,199 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
             readMandatory(decoder);
             int tlvLength = commandLen - (decoder.getParsePosition() - startPos);
             if (tlvLength > 0) {
-                tlvTable.readFrom(decoder, tlvLength);
+                writableTLVTable().readFrom(decoder, tlvLength);
+            }
+        }
+    }
+
+    /**
+     * Read an SMPP packet from a complete frame, deferring the decoding of
+     * its body until it is first needed. Only the header is parsed here;
+     * the mandatory parameters are decoded the first time one of them is
+     * accessed and the TLV table the first time a TLV is. The TLV table is
+     * a {@link LazyTLVTable}, so even then only the values asked for are
+     * decoded. Until the packet is modified,
+     * {@link #writeTo(PacketEncoder)} writes the body back from the
+     * original frame. Changing the status or sequence number does
+     * not count as a modification, so a lazily-read packet can be
+     * forwarded under a new sequence number without ever being decoded.
+     * <p>
+     * Packet types that do not support lazy decoding (see
+     * {@link #isLazyDecodingSupported}) are decoded in full immediately.
+     * Note that when a body is decoded lazily, an error in its encoding
+     * is not reported until the field is first accessed. Also, changes
+     * made to mutable objects returned by the getters, such as addresses
+     * or message byte arrays, are not detected; use the setters instead.
+     * </p>
+     * @param frame The bytes of exactly one packet. The array is kept by
+     * this packet and must not be modified afterwards.
+     * @throws SMPPProtocolException If the header is invalid or the
+     * command length does not match the size of <code>frame</code>.
+     * @throws SMPPRuntimeException If the command ID in the frame does not
+     * match the command ID of the implementing class.
+     */
+    public final void readLazily(byte[] frame) throws SMPPProtocolException {
+        PacketDecoderImpl decoder = new PacketDecoderImpl(frame);
+        if (!isLazyDecodingSupported()) {
+            readFrom(decoder);
+            return;
+        }
+        tlvTable = CompactTLVTable.EMPTY;
+        int commandLen = readHeader(decoder);
+        if (commandLen != frame.length) {
+            throw new SMPPProtocolException("Command length " + commandLen
+                    + " does not match the frame size " + frame.length);
+        }
+        this.frame = frame;
+        frameValidated = false;
+        mandatoryPending = commandStatus == 0;
+        tlvPending = mandatoryPending;
+        tlvOffset = 16;
+    }
+
+    /**
+     * Read a frame built from a packet that has already been validated.
+     * Until this packet is modified, {@link #validate} does nothing.
+     * @param frame The bytes of exactly one packet.
+     * @see PacketTemplate
+     */
+    final void readValidatedFrame(byte[] frame) {
+        readLazily(frame);
+        frameValidated = true;
+    }
+
+    /**
+     * Determine if this packet type can defer the decoding of its body
+     * in {@link #readLazily}. Sub-classes that support it must call
+     * {@link #ensureDecoded} before reading any of their mandatory
+     * parameter fields and {@link #modified} before changing any of them.
+     * This default implementation returns <code>false</code>.
+     * @return <code>true</code> if this packet type can be read lazily.
+     */
+    public boolean isLazyDecodingSupported() {
+        return false;
+    }
+
+    /**
+     * Determine if this packet still holds the frame it was lazily read
+     * from, in which case its mandatory parameters will be written back
+     * out verbatim. Its optional parameters are too, unless the TLV table
+     * has been fetched with {@link #getTLVTable}.
+     * @return <code>true</code> if the mandatory parameters have not been
+     * modified since the packet was read by {@link #readLazily}.
+     */
+    public boolean isFrameIntact() {
+        return frame != null;
+    }
+
+    /**
+     * Decode the mandatory parameters from the frame this packet was
+     * lazily read from, if that has not already been done. Sub-classes
+     * that support lazy decoding call this before reading any of their
+     * mandatory parameter fields.
+     * @throws SMPPProtocolException If the mandatory parameters cannot be
+     * decoded.
+     */
+    protected final void ensureDecoded() {
+        if (mandatoryPending) {
+            decodeMandatory();
+        }
+    }
+
+    private synchronized void decodeMandatory() {
+        if (mandatoryPending) {
+            PacketDecoderImpl decoder = new PacketDecoderImpl(frame, 16);
+            readMandatory(decoder);
+            tlvOffset = decoder.getParsePosition();
+            mandatoryPending = false;
+        }
+    }
+
+    /**
+     * Decode the whole packet from its frame, if it was read lazily, and
+     * discard the frame so that it is encoded from its fields from now on.
+     * Sub-classes that support lazy decoding call this before changing
+     * any of their mandatory parameter fields.
+     */
+    protected final void modified() {
+        decodeTLVTable();
+        frame = null;
+    }
+
+    /**
+     * Decode the TLV table from the frame, if it has not already been done.
+     */
+    private void decodeTLVTable() {
+        if (tlvPending) {
+            decodeTLVs();
+        }
+    }
+
+    private synchronized void decodeTLVs() {
+        if (tlvPending) {
+            ensureDecoded();
+            int tlvLength = frame.length - tlvOffset;
+            if (tlvLength > 0) {
+                LazyTLVTable table = new LazyTLVTable();
+                table.readFrom(
+                        new PacketDecoderImpl(frame, tlvOffset), tlvLength);
+                tlvTable = table;
+            }
+            tlvPending = false;
+        }
+    }
+
+    /**
+     * Get the TLV table, replacing the shared empty table with one of this
+     * packet&apos;s own if necessary.
+     */
+    private TLVTable writableTLVTable() {
+        if (tlvTable == CompactTLVTable.EMPTY) {
+            tlvTable = new CompactTLVTable();
+        }
+        return tlvTable;
+    }
+
+    /**
+     * Determine if the whole body can be copied from the frame. Once the
+     * TLV table has been decoded, only the mandatory parameters are.
+     */
+    private boolean isBodyIntact(boolean withOptional) {
+        return commandStatus != 0 || (withOptional && tlvPending);
+    }
+
+    /**
+     * Get the length of this packet as written from its frame.
+     */
+    private int frameLength(boolean withOptional) {
+        if (isBodyIntact(withOptional)) {
+            return frame.length;
+        }
+        ensureDecoded();
+        if (withOptional) {
+            return tlvOffset + tlvTable.getLength();
+        }
+        return tlvOffset;
+    }
+
+    /**
+     * Write the header from the current field values followed by the
+     * body copied from the frame. If the TLV table has been decoded, it
+     * is written from the table instead.
+     */
+    private void writeFrame(PacketEncoder encoder, boolean withOptional)
+            throws IOException {
+        boolean bodyIntact = isBodyIntact(withOptional);
+        encoder.writeInt4(bodyIntact ? frame.length : frameLength(withOptional));
+        encoder.writeInt4(commandId);
+        encoder.writeInt4(commandStatus);
+        encoder.writeUInt4(sequenceNum);
+        if (bodyIntact) {
+            encoder.writeBytes(frame, 16, frame.length - 16);
+        } else {
+            encoder.writeBytes(frame, 16, tlvOffset - 16);
+            if (withOptional) {
+                tlvTable.writeTo(encoder);
             }
         }
     }
@@ -290,6 +573,10 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      */
     public final void validate(SMPPVersion smppVersion) {
         // TODO: you need to remove the isSupported from Versioning.
+        if (frame != null && frameValidated && tlvPending) {
+            return;
+        }
+        decodeTLVTable();
         validateMandatory(smppVersion);
         if (smppVersion.isNewerThan(SMPPVersion.VERSION_5_0)) {
             if (!validateTLVTable(smppVersion)) {
@@ -305,6 +592,7 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
      * @return A string representation of this packet.
      */
     public String toString() {
+        decodeTLVTable();
         String packetName = getClass().getSimpleName();
         StringBuilder buffer = new StringBuilder();
         buffer.append(packetName)
@@ -358,6 +646,8 @@ public abstract class SMPPPacket implements Serializable, Cloneable {
     
     @Override
     public Object clone() throws CloneNotSupportedException {
+        // Clones share the TLV table, so it must be complete beforehand.
+        decodeTLVTable();
         return super.clone();
     }
     
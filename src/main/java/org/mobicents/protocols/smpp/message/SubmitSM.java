@@ -65,114 +65,147 @@ public class SubmitSM extends SMPPPacket {
 	}
 
 	public int getDataCoding() {
+		ensureDecoded();
 		return dataCoding;
 	}
 
 	public void setDataCoding(int dataCoding) {
+		modified();
 		this.dataCoding = dataCoding;
 	}
 
 	public int getDefaultMsg() {
+		ensureDecoded();
 		return defaultMsg;
 	}
 
 	public void setDefaultMsg(int defaultMsg) {
+		modified();
 		this.defaultMsg = defaultMsg;
 	}
 
 	public SMPPDate getDeliveryTime() {
+		ensureDecoded();
 		return deliveryTime;
 	}
 
 	public void setDeliveryTime(SMPPDate deliveryTime) {
+		modified();
 		this.deliveryTime = deliveryTime;
 	}
 
 	public Address getDestination() {
+		ensureDecoded();
 		return destination;
 	}
 
 	public void setDestination(Address destination) {
+		modified();
 		this.destination = destination;
 	}
 
 	public int getEsmClass() {
+		ensureDecoded();
 		return esmClass;
 	}
 
 	public void setEsmClass(int esmClass) {
+		modified();
 		this.esmClass = esmClass;
 	}
 
 	public SMPPDate getExpiryTime() {
+		ensureDecoded();
 		return expiryTime;
 	}
 
 	public void setExpiryTime(SMPPDate expiryTime) {
+		modified();
 		this.expiryTime = expiryTime;
 	}
 
 	public byte[] getMessage() {
+		ensureDecoded();
 		return message;
 	}
 
 	public void setMessage(byte[] message) {
+		modified();
 		this.message = message;
 	}
 
 	public int getPriority() {
+		ensureDecoded();
 		return priority;
 	}
 
 	public void setPriority(int priority) {
+		modified();
 		this.priority = priority;
 	}
 
 	public int getProtocolID() {
+		ensureDecoded();
 		return protocolID;
 	}
 
 	public void setProtocolID(int protocolID) {
+		modified();
 		this.protocolID = protocolID;
 	}
 
 	public int getRegistered() {
+		ensureDecoded();
 		return registered;
 	}
 
 	public void setRegistered(int registered) {
+		modified();
 		this.registered = registered;
 	}
 
 	public int getReplaceIfPresent() {
+		ensureDecoded();
 		return replaceIfPresent;
 	}
 
 	public void setReplaceIfPresent(int replaceIfPresent) {
+		modified();
 		this.replaceIfPresent = replaceIfPresent;
 	}
 
 	public String getServiceType() {
+		ensureDecoded();
 		return serviceType;
 	}
 
 	public void setServiceType(String serviceType) {
+		modified();
 		this.serviceType = serviceType;
 	}
 
 	public Address getSource() {
+		ensureDecoded();
 		return source;
 	}
 
 	public void setSource(Address source) {
+		modified();
 		this.source = source;
 	}
 
+	@Override
+	public boolean isLazyDecodingSupported() {
+		return true;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
+		ensureDecoded();
 		boolean equals = super.equals(obj);
 		if (equals) {
 			SubmitSM other = (SubmitSM) obj;
+			other.ensureDecoded();
 			equals |= safeCompare(serviceType, other.serviceType);
 			equals |= safeCompare(source, other.source);
 			equals |= safeCompare(destination, other.destination);
@@ -192,6 +225,7 @@ public class SubmitSM extends SMPPPacket {
 
 	@Override
 	public int hashCode() {
+		ensureDecoded();
 		int hc = super.hashCode();
 		hc += (serviceType != null) ? serviceType.hashCode() : 0;
 		hc += (source != null) ? source.hashCode() : 0;
@@ -222,6 +256,7 @@ public class SubmitSM extends SMPPPacket {
 	 * @return the number of bytes this packet would encode as.
 	 */
 	public int getMandatorySize() {
+		ensureDecoded();
 		int len = ((serviceType != null) ? serviceType.length() : 0)
 				+ ((source != null) ? source.getLength() : 3)
 				+ ((destination != null) ? destination.getLength() : 3)
@@ -58,18 +58,27 @@ public class SubmitSMResp extends SMPPPacket {
     }
 
     public String getMessageId() {
+        ensureDecoded();
         return messageId;
     }
 
     public void setMessageId(String messageId) {
+        modified();
         this.messageId = messageId;
     }
     
+    @Override
+    public boolean isLazyDecodingSupported() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
+        ensureDecoded();
         boolean equals = super.equals(obj);
         if (equals) {
             SubmitSMResp other = (SubmitSMResp) obj;
+            other.ensureDecoded();
             equals |= safeCompare(messageId, other.messageId);
         }
         return equals;
@@ -77,6 +86,7 @@ public class SubmitSMResp extends SMPPPacket {
     
     @Override
     public int hashCode() {
+        ensureDecoded();
         int hc = super.hashCode();
         hc += (messageId != null) ? messageId.hashCode() : 0;
         return hc;
@@ -104,6 +114,7 @@ public class SubmitSMResp extends SMPPPacket {
     
     @Override
     protected int getMandatorySize() {
+        ensureDecoded();
         return 1 + sizeOf(messageId);
     }
 }
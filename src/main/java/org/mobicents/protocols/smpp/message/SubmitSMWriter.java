@@ -0,0 +1,463 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.IllegalStateException;
+import org.mobicents.protocols.smpp.message.tlv.InvalidSizeForValueException;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.net.FrameLink;
+import org.mobicents.protocols.smpp.net.SmscLink;
+import org.mobicents.protocols.smpp.util.SMPPDate;
+import org.mobicents.protocols.smpp.util.SMPPDateCodec;
+import org.mobicents.protocols.smpp.version.MandatoryParameter;
+import org.mobicents.protocols.smpp.version.SMPPVersion;
+import org.mobicents.protocols.smpp.version.VersionException;
+
+/**
+ * Flyweight writer that encodes <code>submit_sm</code> packets straight
+ * into a caller&apos;s buffer, without creating a {@link SubmitSM} or any
+ * of its field objects.
+ * <p>
+ * A frame is started with {@link #wrap}, its fields are written in the
+ * order they appear in a <code>submit_sm</code>, and it is completed by
+ * {@link #finish}, which fills in the header:
+ * </p>
+ * <pre>
+ * writer.wrap(buffer)
+ *     .serviceType("CMT")
+ *     .source(Ton.ALPHANUMERIC, Npi.UNKNOWN, "Shop")
+ *     .destination(Ton.INTERNATIONAL, Npi.ISDN, "447700900123")
+ *     .registeredDelivery(1)
+ *     .message(text, 0, text.length)
+ *     .finish(sequenceNum);
+ * </pre>
+ * <p>
+ * Any field that is skipped is written with its default, nul, value. A
+ * field cannot be written once a later one has been, and each field is
+ * checked against the writer&apos;s SMPP version before anything is put
+ * in the buffer. TLVs go after the mandatory fields and may be repeated.
+ * If the buffer runs out of room a
+ * <code>java.nio.BufferOverflowException</code> is thrown; the frame can
+ * then be abandoned with {@link #reset}.
+ * </p>
+ * <p>
+ * Since {@link #finish} leaves the buffer positioned after the frame,
+ * several frames can be written one after another into the same buffer
+ * and sent with a single write. Alternatively, each finished frame can be
+ * passed to a link with {@link #writeTo(SmscLink)}. The writer does not
+ * assign sequence numbers; that is up to the caller.
+ * </p>
+ * <p>
+ * Writers hold per-frame state and are not thread safe, but one writer
+ * can be re-used for any number of frames.
+ * </p>
+ */
+public final class SubmitSMWriter {
+    private static final int UNWRAPPED = -1;
+    private static final int HEADER = 0;
+    private static final int SERVICE_TYPE = 1;
+    private static final int SOURCE = 2;
+    private static final int DESTINATION = 3;
+    private static final int ESM_CLASS = 4;
+    private static final int PROTOCOL_ID = 5;
+    private static final int PRIORITY = 6;
+    private static final int SCHEDULE_DELIVERY_TIME = 7;
+    private static final int VALIDITY_PERIOD = 8;
+    private static final int REGISTERED_DELIVERY = 9;
+    private static final int REPLACE_IF_PRESENT = 10;
+    private static final int DATA_CODING = 11;
+    private static final int DEFAULT_MSG = 12;
+    private static final int SHORT_MESSAGE = 13;
+    private static final int TLV = 14;
+
+    private static final String[] FIELD_NAMES = {
+        "header", "service_type", "source_addr", "destination_addr",
+        "esm_class", "protocol_id", "priority_flag",
+        "schedule_delivery_time", "validity_period",
+        "registered_delivery", "replace_if_present_flag", "data_coding",
+        "sm_default_msg_id", "short_message", "TLV",
+    };
+
+    /**
+     * Encoded size of each field when it is left at its default. Every
+     * default is encoded as nul bytes.
+     */
+    private static final int[] DEFAULT_SIZES = {
+        16, 1, 3, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0,
+    };
+
+    private final SMPPVersion version;
+    private final int maxMessageLength;
+    private final Address address = new Address();
+    private final byte[] dateBytes = new byte[SMPPDateCodec.MAX_LENGTH];
+    private ByteBuffer buffer;
+    private int start;
+    private int field = UNWRAPPED;
+    private int frameStart = -1;
+    private int frameLength;
+
+    /**
+     * Create a new writer.
+     * @param version The SMPP version to check fields against.
+     */
+    public SubmitSMWriter(SMPPVersion version) {
+        this.version = version;
+        this.maxMessageLength = Math.min(0xff,
+                version.getMaxLength(MandatoryParameter.SHORT_MESSAGE));
+    }
+
+    /**
+     * Get the version this writer checks fields against.
+     * @return The SMPP version.
+     */
+    public SMPPVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Start a new frame at the current position of a buffer. Space for the
+     * header is reserved; it is filled in by {@link #finish}. Any frame
+     * that was started but not finished is abandoned.
+     * @param buffer The buffer to write to.
+     * @return This writer.
+     */
+    public SubmitSMWriter wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.start = buffer.position();
+        this.field = UNWRAPPED;
+        this.frameStart = -1;
+        fillTo(HEADER);
+        return this;
+    }
+
+    /**
+     * Abandon the frame being written, moving the buffer back to where
+     * the frame started.
+     */
+    public void reset() {
+        if (field != UNWRAPPED) {
+            buffer.position(start);
+            field = UNWRAPPED;
+        }
+    }
+
+    public SubmitSMWriter serviceType(String serviceType) {
+        version.validateServiceType(serviceType);
+        advance(SERVICE_TYPE);
+        putCString(serviceType);
+        return this;
+    }
+
+    public SubmitSMWriter source(int ton, int npi, String address) {
+        checkAddress(ton, npi, address);
+        advance(SOURCE);
+        putAddress(ton, npi, address);
+        return this;
+    }
+
+    public SubmitSMWriter destination(int ton, int npi, String address) {
+        checkAddress(ton, npi, address);
+        advance(DESTINATION);
+        putAddress(ton, npi, address);
+        return this;
+    }
+
+    public SubmitSMWriter esmClass(int esmClass) {
+        version.validateEsmClass(esmClass);
+        advance(ESM_CLASS);
+        buffer.put((byte) esmClass);
+        return this;
+    }
+
+    public SubmitSMWriter protocolId(int protocolId) {
+        version.validateProtocolID(protocolId);
+        advance(PROTOCOL_ID);
+        buffer.put((byte) protocolId);
+        return this;
+    }
+
+    public SubmitSMWriter priority(int priority) {
+        version.validatePriorityFlag(priority);
+        advance(PRIORITY);
+        buffer.put((byte) priority);
+        return this;
+    }
+
+    public SubmitSMWriter scheduleDeliveryTime(SMPPDate date) {
+        int length = SMPPDateCodec.format(date, dateBytes, 0);
+        advance(SCHEDULE_DELIVERY_TIME);
+        buffer.put(dateBytes, 0, length).put((byte) 0);
+        return this;
+    }
+
+    public SubmitSMWriter validityPeriod(SMPPDate date) {
+        int length = SMPPDateCodec.format(date, dateBytes, 0);
+        advance(VALIDITY_PERIOD);
+        buffer.put(dateBytes, 0, length).put((byte) 0);
+        return this;
+    }
+
+    public SubmitSMWriter registeredDelivery(int registered) {
+        version.validateRegisteredDelivery(registered);
+        advance(REGISTERED_DELIVERY);
+        buffer.put((byte) registered);
+        return this;
+    }
+
+    public SubmitSMWriter replaceIfPresent(int replaceIfPresent) {
+        version.validateReplaceIfPresent(replaceIfPresent);
+        advance(REPLACE_IF_PRESENT);
+        buffer.put((byte) replaceIfPresent);
+        return this;
+    }
+
+    public SubmitSMWriter dataCoding(int dataCoding) {
+        version.validateDataCoding(dataCoding);
+        advance(DATA_CODING);
+        buffer.put((byte) dataCoding);
+        return this;
+    }
+
+    public SubmitSMWriter defaultMsg(int defaultMsg) {
+        version.validateDefaultMsg(defaultMsg);
+        advance(DEFAULT_MSG);
+        buffer.put((byte) defaultMsg);
+        return this;
+    }
+
+    /**
+     * Write the <code>sm_length</code> and <code>short_message</code>
+     * fields.
+     * @param message The array holding the message. May be
+     * <code>null</code> if <code>length</code> is 0.
+     * @param offset The offset of the message in <code>message</code>.
+     * @param length The length of the message.
+     * @return This writer.
+     * @throws VersionException If the message is longer than the
+     * writer&apos;s version allows.
+     */
+    public SubmitSMWriter message(byte[] message, int offset, int length) {
+        if (length > maxMessageLength) {
+            throw new VersionException("Message is too long: " + length);
+        }
+        advance(SHORT_MESSAGE);
+        buffer.put((byte) length);
+        if (length > 0) {
+            buffer.put(message, offset, length);
+        }
+        return this;
+    }
+
+    /**
+     * Write an integer TLV. The value is written using the length defined
+     * for the tag.
+     * @param tag The tag to write.
+     * @param value The value of the parameter.
+     * @return This writer.
+     * @throws InvalidSizeForValueException If the tag does not have a
+     * length of 1, 2 or 4.
+     * @throws VersionException If the writer&apos;s version does not
+     * support TLVs.
+     */
+    public SubmitSMWriter tlv(Tag tag, int value) {
+        int length = tag.getLength();
+        if (length != 1 && length != 2 && length != 4) {
+            throw new InvalidSizeForValueException("Tag "
+                    + tag.toHexString() + " does not take an integer value");
+        }
+        checkTLV();
+        advance(TLV);
+        buffer.putShort((short) tag.intValue());
+        buffer.putShort((short) length);
+        if (length == 1) {
+            buffer.put((byte) value);
+        } else if (length == 2) {
+            buffer.putShort((short) value);
+        } else {
+            buffer.putInt(value);
+        }
+        return this;
+    }
+
+    /**
+     * Write a TLV whose value is already encoded.
+     * @param tag The tag to write.
+     * @param value The array holding the encoded value.
+     * @param offset The offset of the value in <code>value</code>.
+     * @param length The length of the value.
+     * @return This writer.
+     * @throws InvalidSizeForValueException If <code>length</code> is
+     * outside of the range allowed for the tag.
+     * @throws VersionException If the writer&apos;s version does not
+     * support TLVs.
+     */
+    public SubmitSMWriter tlv(Tag tag, byte[] value, int offset, int length) {
+        int min = tag.getMinLength();
+        int max = tag.getMaxLength();
+        if ((min > -1 && length < min) || (max > -1 && length > max)
+                || length > 0xffff) {
+            throw new InvalidSizeForValueException("Tag "
+                    + tag.toHexString()
+                    + " must have a length in the range " + min
+                    + " <= len <= " + max);
+        }
+        checkTLV();
+        advance(TLV);
+        buffer.putShort((short) tag.intValue());
+        buffer.putShort((short) length);
+        if (length > 0) {
+            buffer.put(value, offset, length);
+        }
+        return this;
+    }
+
+    /**
+     * Complete the frame. Any mandatory fields not yet written are written
+     * with their defaults, then the header is filled in. The buffer is
+     * left positioned after the frame.
+     * @param sequenceNum The sequence number to put in the header.
+     * @return The length of the frame.
+     */
+    public int finish(long sequenceNum) {
+        checkWrapped();
+        fillTo(SHORT_MESSAGE);
+        int length = buffer.position() - start;
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, CommandId.SUBMIT_SM);
+        buffer.putInt(start + 8, 0);
+        buffer.putInt(start + 12, (int) sequenceNum);
+        frameStart = start;
+        frameLength = length;
+        field = UNWRAPPED;
+        return length;
+    }
+
+    /**
+     * Send the most recently finished frame over a link. If the link is a
+     * {@link FrameLink} the bytes are handed to it directly. Otherwise they
+     * are wrapped in a <code>SubmitSM</code>, which is written by copying
+     * the frame rather than by encoding its fields again. The frame is
+     * read from the buffer, so it must not have been overwritten since
+     * {@link #finish} was called.
+     * @param link The link to write to.
+     * @throws IOException If the link fails to write the frame.
+     * @throws IllegalStateException If no frame has been finished since
+     * the last call to {@link #wrap}.
+     */
+    public void writeTo(SmscLink link) throws IOException {
+        if (frameStart < 0) {
+            throw new IllegalStateException("No frame has been finished");
+        }
+        int position = buffer.position();
+        int limit = buffer.limit();
+        buffer.limit(frameStart + frameLength);
+        buffer.position(frameStart);
+        try {
+            if (link instanceof FrameLink) {
+                ((FrameLink) link).writeFrame(buffer);
+            } else {
+                byte[] frame = new byte[frameLength];
+                buffer.get(frame);
+                SubmitSM packet = new SubmitSM();
+                packet.readValidatedFrame(frame);
+                link.write(packet, true);
+            }
+        } finally {
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+    }
+
+    private void advance(int next) {
+        checkWrapped();
+        if (next < field || (next == field && next != TLV)) {
+            throw new IllegalStateException("Cannot write "
+                    + FIELD_NAMES[next] + " after " + FIELD_NAMES[field]);
+        }
+        fillTo(next - 1);
+        field = next;
+    }
+
+    /**
+     * Write the defaults of every field after the current one, up to and
+     * including <code>last</code>.
+     */
+    private void fillTo(int last) {
+        for (int f = field + 1; f <= last; f++) {
+            for (int i = DEFAULT_SIZES[f]; i > 0; i--) {
+                buffer.put((byte) 0);
+            }
+        }
+        if (last > field) {
+            field = last;
+        }
+    }
+
+    private void checkWrapped() {
+        if (field == UNWRAPPED) {
+            throw new IllegalStateException("No frame has been started");
+        }
+    }
+
+    private void checkTLV() {
+        if (!version.isSupportTLV()) {
+            throw new VersionException(version + " does not support TLVs");
+        }
+    }
+
+    private void checkAddress(int ton, int npi, String addr) {
+        address.setTON(ton);
+        address.setNPI(npi);
+        address.setAddress(addr);
+        version.validateAddress(address);
+    }
+
+    private void putAddress(int ton, int npi, String addr) {
+        buffer.put((byte) ton);
+        buffer.put((byte) npi);
+        putCString(addr);
+    }
+
+    private void putCString(String value) {
+        if (value != null) {
+            int length = value.length();
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else {
+                    if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(value.charAt(i + 1))) {
+                        i++;
+                    }
+                    buffer.put((byte) '?');
+                }
+            }
+        }
+        buffer.put((byte) 0);
+    }
+}
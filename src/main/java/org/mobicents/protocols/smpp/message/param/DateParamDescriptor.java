@@ -27,11 +27,9 @@ import java.io.IOException;
 import org.mobicents.protocols.smpp.util.PacketDecoder;
 import org.mobicents.protocols.smpp.util.PacketEncoder;
 import org.mobicents.protocols.smpp.util.SMPPDate;
-import org.mobicents.protocols.smpp.util.SMPPDateFormat;
 
 public class DateParamDescriptor extends AbstractDescriptor {
     private static final long serialVersionUID = 2L;
-    private static final SMPPDateFormat DATE_FORMAT = new SMPPDateFormat();
     
     public int getLengthSpecifier() {
         return -1;
@@ -39,8 +37,7 @@ public class DateParamDescriptor extends AbstractDescriptor {
     
     public int sizeOf(Object obj) {
         if (obj != null) {
-            String str = DATE_FORMAT.format((SMPPDate) obj);
-            return str.length() + 1;
+            return ((SMPPDate) obj).getLength();
         } else {
             return 1;
         }
@@ -0,0 +1,523 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message.tlv;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.mobicents.protocols.smpp.message.param.IntegerParamDescriptor;
+import org.mobicents.protocols.smpp.message.param.ParamDescriptor;
+import org.mobicents.protocols.smpp.util.PacketDecoder;
+import org.mobicents.protocols.smpp.util.PacketEncoder;
+
+/**
+ * Compact implementation of the TLVTable interface.
+ * <p>
+ * Parameters are held in small parallel arrays rather than in a hash map,
+ * which suits the handful of parameters a packet usually carries. Integer
+ * values of integer-typed tags are stored unboxed, and the encoded size of
+ * each immutable value is calculated once when it is set. Byte array and
+ * bit mask values remain owned by the caller, who may change them after
+ * they are set, so their size is calculated each time the table is
+ * measured or written. No arrays are allocated until the first parameter
+ * is set.
+ * </p>
+ * <p>
+ * {@link #EMPTY} is a shared, immutable table for packets with no optional
+ * parameters. As with {@link TLVTableImpl}, the order in which parameters
+ * were added is maintained. Unlike it, unknown tags read by
+ * {@link #readFrom} are not defined in the global {@link Tag} table.
+ * </p>
+ */
+public class CompactTLVTable extends AbstractMap<Tag, Object>
+        implements TLVTable, Serializable {
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Shared empty table. Attempts to add parameters to it throw an
+     * <code>UnsupportedOperationException</code>.
+     */
+    public static final CompactTLVTable EMPTY = new CompactTLVTable(true);
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final boolean immutable;
+
+    private Tag[] tags;
+
+    /**
+     * Parameter values. <code>null</code> for a value held in
+     * <code>ints</code>, as null values are not allowed.
+     */
+    private Object[] values;
+
+    private int[] ints;
+
+    /**
+     * Encoded size of each value, or <code>-1</code> for a value whose
+     * size can change after it is set.
+     */
+    private int[] sizes;
+
+    private int size;
+
+    /**
+     * Encoded length of the whole table, excluding the values whose size
+     * can change after they are set.
+     */
+    private int length;
+
+    public CompactTLVTable() {
+        this(false);
+    }
+
+    private CompactTLVTable(boolean immutable) {
+        this.immutable = immutable;
+    }
+
+    /**
+     * Decode a full set of optional parameters from a byte array.
+     */
+    public void readFrom(PacketDecoder decoder, int length) {
+        checkMutable();
+        int endIndex = decoder.getParsePosition() + length;
+        while (decoder.getParsePosition() + 4 <= endIndex) {
+            Tag tag = Tag.lookupTag(decoder.readUInt2());
+            int valueLen = decoder.readUInt2();
+            ParamDescriptor descriptor = tag.getParamDescriptor();
+            if (descriptor instanceof IntegerParamDescriptor
+                    && descriptor.sizeOf(null) <= 2) {
+                int value;
+                if (descriptor.sizeOf(null) == 2) {
+                    value = decoder.readUInt2();
+                } else {
+                    value = decoder.readUInt1();
+                }
+                put(tag, value);
+            } else {
+                put(tag, descriptor.readObject(decoder, valueLen));
+            }
+        }
+    }
+
+    /**
+     * Encode all the optional parameters in this table.
+     * @param encoder The encoder to write the parameters to.
+     * @throws java.io.IOException If an error occurs writing to the encoder.
+     */
+    public void writeTo(PacketEncoder encoder) throws IOException {
+        for (int i = 0; i < size; i++) {
+            encoder.writeUInt2(tags[i].intValue());
+            encoder.writeUInt2(sizeAt(i));
+            if (values[i] != null) {
+                tags[i].getParamDescriptor().writeObject(values[i], encoder);
+            } else {
+                switch (sizes[i]) {
+                case 8:
+                    encoder.writeInt8(ints[i]);
+                    break;
+                case 4:
+                    encoder.writeUInt4(ints[i]);
+                    break;
+                case 2:
+                    encoder.writeUInt2(ints[i]);
+                    break;
+                default:
+                    encoder.writeUInt1(ints[i]);
+                    break;
+                }
+            }
+        }
+    }
+
+    public int getLength() {
+        int total = length;
+        for (int i = 0; i < size; i++) {
+            if (sizes[i] < 0) {
+                total += sizeAt(i);
+            }
+        }
+        return total;
+    }
+
+    public Object get(int tag) {
+        int i = indexOf(tag);
+        return i >= 0 ? valueAt(i) : null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int i = indexOf(key);
+        return i >= 0 ? valueAt(i) : null;
+    }
+
+    public String getString(Tag tag) {
+        Object obj = get(tag);
+        return obj != null ? obj.toString() : null;
+    }
+
+    public int getInt(Tag tag) {
+        int i = indexOf(tag);
+        if (i < 0) {
+            return -1;
+        } else if (values[i] == null) {
+            return ints[i];
+        } else {
+            return ((Number) values[i]).intValue();
+        }
+    }
+
+    public long getLong(Tag tag) {
+        int i = indexOf(tag);
+        if (i < 0) {
+            return -1L;
+        } else if (values[i] == null) {
+            return ints[i];
+        } else {
+            return ((Number) values[i]).longValue();
+        }
+    }
+
+    public BitSet getBitmask(Tag tag) {
+        return (BitSet) get(tag);
+    }
+
+    public byte[] getBytes(Tag tag) {
+        return (byte[]) get(tag);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Set the value of a TLV.
+     * @param tag The tag of the parameter to set.
+     * @param value The tag&apos;s value.
+     * @throws BadValueTypeException If <code>tag</code> does not accept
+     * the type that <code>value</code> is.
+     * @throws InvalidSizeForValueException If <code>value</code>
+     * exceeds either the minimum or maximum size allowed by <code>tag</code>.
+     */
+    @Override
+    public Object put(Tag tag, Object value) {
+        ParamDescriptor descriptor = tag.getParamDescriptor();
+        if (value instanceof Integer
+                && descriptor instanceof IntegerParamDescriptor) {
+            return put(tag, ((Integer) value).intValue());
+        }
+        checkType(tag, descriptor, value);
+        int valueSize = descriptor.sizeOf(value);
+        checkSize(tag, valueSize);
+        Object previous = get(tag);
+        if (value instanceof byte[] || value instanceof BitSet) {
+            valueSize = -1;
+        }
+        int i = slotFor(tag, valueSize);
+        values[i] = value;
+        return previous;
+    }
+
+    public Object put(Tag tag, char value) {
+        return put(tag, Character.valueOf(value));
+    }
+
+    public Object put(Tag tag, short value) {
+        return put(tag, Short.valueOf(value));
+    }
+
+    public Object put(Tag tag, int value) {
+        ParamDescriptor descriptor = tag.getParamDescriptor();
+        if (!(descriptor instanceof IntegerParamDescriptor)) {
+            return put(tag, Integer.valueOf(value));
+        }
+        int valueSize = descriptor.sizeOf(null);
+        checkSize(tag, valueSize);
+        Object previous = get(tag);
+        int i = slotFor(tag, valueSize);
+        values[i] = null;
+        ints[i] = value;
+        return previous;
+    }
+
+    public Object put(Tag tag, long value) {
+        return put(tag, Long.valueOf(value));
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return null;
+        }
+        Object previous = valueAt(i);
+        removeAt(i);
+        return previous;
+    }
+
+    public void remove(int tag) {
+        int i = indexOf(tag);
+        if (i >= 0) {
+            removeAt(i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            tags[i] = null;
+            values[i] = null;
+        }
+        size = 0;
+        length = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<Tag, Object>> entrySet() {
+        return new EntrySet();
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        for (int i = 0; i < size; i++) {
+            buffer.append('{')
+            .append(tags[i].toHexString())
+            .append(',').append(sizeAt(i))
+            .append(',').append(valueAt(i))
+            .append('}');
+        }
+        return buffer.toString();
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        return immutable ? EMPTY : this;
+    }
+
+    private void checkMutable() {
+        if (immutable) {
+            throw new UnsupportedOperationException(
+                    "The empty TLV table cannot be modified.");
+        }
+    }
+
+    private void checkType(Tag tag, ParamDescriptor descriptor, Object value) {
+        if (descriptor.equals(BasicDescriptors.NULL) && value != null) {
+            throw new BadValueTypeException(
+                    "Tag " + tag + " does not accept any value.");
+        } else if (value == null) {
+            throw new BadValueTypeException(
+                    "Tag " + tag + " does not accept a null value.");
+        }
+    }
+
+    private void checkSize(Tag tag, int actual) {
+        int min = tag.getMinLength();
+        int max = tag.getMaxLength();
+        if ((min > -1 && actual < min) || (max > -1 && actual > max)) {
+            throw new InvalidSizeForValueException("Tag "
+                    + tag.toHexString()
+                    + " must have a length in the range " + min
+                    + " <= len <= " + max);
+        }
+    }
+
+    /**
+     * Find or create the slot for a tag, updating the table length for
+     * the new size of its value. A <code>valueSize</code> of
+     * <code>-1</code> marks a value that is measured when it is written.
+     */
+    private int slotFor(Tag tag, int valueSize) {
+        checkMutable();
+        int i = indexOf(tag.intValue());
+        if (i >= 0) {
+            length += Math.max(valueSize, 0) - Math.max(sizes[i], 0);
+            tags[i] = tag;
+        } else {
+            if (tags == null) {
+                tags = new Tag[INITIAL_CAPACITY];
+                values = new Object[INITIAL_CAPACITY];
+                ints = new int[INITIAL_CAPACITY];
+                sizes = new int[INITIAL_CAPACITY];
+            } else if (size == tags.length) {
+                int capacity = size * 2;
+                Tag[] newTags = new Tag[capacity];
+                Object[] newValues = new Object[capacity];
+                int[] newInts = new int[capacity];
+                int[] newSizes = new int[capacity];
+                System.arraycopy(tags, 0, newTags, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                System.arraycopy(ints, 0, newInts, 0, size);
+                System.arraycopy(sizes, 0, newSizes, 0, size);
+                tags = newTags;
+                values = newValues;
+                ints = newInts;
+                sizes = newSizes;
+            }
+            i = size++;
+            tags[i] = tag;
+            length += 4 + Math.max(valueSize, 0);
+        }
+        sizes[i] = valueSize;
+        return i;
+    }
+
+    private int sizeAt(int i) {
+        if (sizes[i] >= 0) {
+            return sizes[i];
+        }
+        return tags[i].getParamDescriptor().sizeOf(values[i]);
+    }
+
+    private Object valueAt(int i) {
+        Object value = values[i];
+        return value != null ? value : Integer.valueOf(ints[i]);
+    }
+
+    private int indexOf(Object key) {
+        if (key instanceof Tag) {
+            return indexOf(((Tag) key).intValue());
+        }
+        return -1;
+    }
+
+    private int indexOf(int tag) {
+        for (int i = 0; i < size; i++) {
+            if (tags[i].intValue() == tag) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int i) {
+        length -= 4 + Math.max(sizes[i], 0);
+        int moved = size - i - 1;
+        if (moved > 0) {
+            System.arraycopy(tags, i + 1, tags, i, moved);
+            System.arraycopy(values, i + 1, values, i, moved);
+            System.arraycopy(ints, i + 1, ints, i, moved);
+            System.arraycopy(sizes, i + 1, sizes, i, moved);
+        }
+        size--;
+        tags[size] = null;
+        values[size] = null;
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<Tag, Object>> {
+        @Override
+        public Iterator<Map.Entry<Tag, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<Tag, Object>> {
+        private int next;
+        private int last = -1;
+
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        public Map.Entry<Tag, Object> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return new Entry(tags[last], valueAt(last));
+        }
+
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+    private class Entry implements Map.Entry<Tag, Object> {
+        private final Tag key;
+        private Object value;
+
+        Entry(Tag key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public Tag getKey() {
+            return key;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public Object setValue(Object value) {
+            Object previous = this.value;
+            put(key, value);
+            this.value = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+            return key.equals(other.getKey())
+                    && value.equals(other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() ^ value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message.tlv;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.mobicents.protocols.smpp.message.SMPPProtocolException;
+import org.mobicents.protocols.smpp.message.param.ParamDescriptor;
+import org.mobicents.protocols.smpp.util.PacketDecoder;
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
+import org.mobicents.protocols.smpp.util.PacketEncoder;
+
+/**
+ * TLV table which decodes parameter values only when they are requested.
+ * <p>
+ * {@link #readFrom} keeps a single copy of the encoded parameters and
+ * records where each one starts. A value is decoded the first time it is
+ * fetched, and only that value. Parameters that are never touched are
+ * written back out byte-for-byte by {@link #writeTo}, which makes this
+ * table well suited to proxies that forward parameters they never read.
+ * Unknown tags are kept as raw octet strings and, unlike
+ * {@link TLVTableImpl}, are not defined in the global {@link Tag} table.
+ * </p>
+ * <p>
+ * Looking up, adding or removing a single parameter leaves the others
+ * encoded, as does {@link #size}. Operations that need every value, such
+ * as iterating over the table, comparing it or converting it to a string,
+ * decode all remaining parameters first. Untouched parameters are written
+ * in the order they were read, ahead of any that have been decoded or
+ * set since.
+ * </p>
+ * <p>
+ * Since fetching a value changes the table, the methods of this table are
+ * synchronized so that a received packet&apos;s parameters can be read from
+ * more than one thread.
+ * </p>
+ */
+public class LazyTLVTable extends TLVTableImpl {
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * The encoded parameters, as read by {@link #readFrom}.
+     */
+    private byte[] data;
+
+    /**
+     * Tag value of each encoded parameter.
+     */
+    private int[] tags;
+
+    /**
+     * Offset into <code>data</code> of each encoded parameter&apos;s tag.
+     */
+    private int[] offsets;
+
+    /**
+     * Length of each encoded parameter&apos;s value.
+     */
+    private int[] lengths;
+
+    /**
+     * Whether each encoded parameter is still undecoded. Once a parameter
+     * is decoded, replaced or removed its entry in <code>data</code> is
+     * no longer used.
+     */
+    private boolean[] pending;
+
+    /**
+     * Number of encoded parameters.
+     */
+    private int count;
+
+    /**
+     * Number of encoded parameters that are still pending.
+     */
+    private int pendingCount;
+
+    public LazyTLVTable() {
+    }
+
+    /**
+     * Record the position of each optional parameter in the decoder,
+     * without decoding any values.
+     * @throws SMPPProtocolException If a parameter&apos;s length runs past
+     * the end of the optional parameters.
+     */
+    @Override
+    public synchronized void readFrom(PacketDecoder decoder, int length) {
+        clear();
+        byte[] bytes = decoder.readBytes(length);
+        int capacity = Math.max(1, length / 5);
+        int[] newTags = new int[capacity];
+        int[] newOffsets = new int[capacity];
+        int[] newLengths = new int[capacity];
+        int n = 0;
+        int pos = 0;
+        while (pos + 4 <= length) {
+            int tagValue = ((bytes[pos] & 0xff) << 8) | (bytes[pos + 1] & 0xff);
+            int valueLen = ((bytes[pos + 2] & 0xff) << 8) | (bytes[pos + 3] & 0xff);
+            if (pos + 4 + valueLen > length) {
+                throw new SMPPProtocolException("Optional parameter 0x"
+                        + Integer.toHexString(tagValue) + " of length "
+                        + valueLen + " overruns the packet");
+            }
+            if (n == newTags.length) {
+                newTags = grow(newTags);
+                newOffsets = grow(newOffsets);
+                newLengths = grow(newLengths);
+            }
+            newTags[n] = tagValue;
+            newOffsets[n] = pos;
+            newLengths[n] = valueLen;
+            n++;
+            pos += 4 + valueLen;
+        }
+        data = bytes;
+        tags = newTags;
+        offsets = newOffsets;
+        lengths = newLengths;
+        pending = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            // A repeated tag replaces the earlier value.
+            int previous = indexOf(newTags[i], i);
+            if (previous >= 0) {
+                pending[previous] = false;
+                pendingCount--;
+            }
+            pending[i] = true;
+            pendingCount++;
+        }
+        count = n;
+    }
+
+    /**
+     * Encode all the optional parameters in this table. Parameters which
+     * have not been decoded are copied from the bytes they were read from.
+     * @param encoder The encoder to write the parameters to.
+     * @throws java.io.IOException If an error occurs writing to the encoder.
+     */
+    @Override
+    public synchronized void writeTo(PacketEncoder encoder) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (pending[i]) {
+                encoder.writeBytes(data, offsets[i], 4 + lengths[i]);
+            }
+        }
+        for (Map.Entry<Tag, Object> entry : super.entrySet()) {
+            Tag tag = entry.getKey();
+            Object value = entry.getValue();
+            ParamDescriptor descriptor = tag.getParamDescriptor();
+            encoder.writeUInt2(tag.intValue());
+            encoder.writeUInt2(descriptor.sizeOf(value));
+            descriptor.writeObject(value, encoder);
+        }
+    }
+
+    @Override
+    public synchronized int getLength() {
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            if (pending[i]) {
+                length += 4 + lengths[i];
+            }
+        }
+        for (Map.Entry<Tag, Object> entry : super.entrySet()) {
+            Tag tag = entry.getKey();
+            length += 4 + tag.getParamDescriptor().sizeOf(entry.getValue());
+        }
+        return length;
+    }
+
+    /**
+     * Get the value for a tag. Unlike {@link TLVTableImpl#get(int)}, this
+     * does not define <code>tag</code> if it is unknown.
+     * @param tag The tag&apos;s integer value.
+     */
+    @Override
+    public Object get(int tag) {
+        return get(Tag.lookupTag(tag));
+    }
+
+    @Override
+    public synchronized Object get(Object key) {
+        decode(key);
+        return super.get(key);
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        if (key instanceof Tag && indexOf(((Tag) key).intValue(), count) >= 0) {
+            return true;
+        }
+        return super.containsKey(key);
+    }
+
+    @Override
+    public synchronized Object put(Tag tag, Object value) {
+        decode(tag);
+        return super.put(tag, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends Tag, ? extends Object> map) {
+        for (Map.Entry<? extends Tag, ? extends Object> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Remove (or un-set) a tag/value from this table. Unlike
+     * {@link TLVTableImpl#remove(int)}, this does not define
+     * <code>tag</code> if it is unknown.
+     * @param tag The tag to remove from the table.
+     */
+    @Override
+    public void remove(int tag) {
+        remove(Tag.lookupTag(tag));
+    }
+
+    @Override
+    public synchronized Object remove(Object key) {
+        decode(key);
+        return super.remove(key);
+    }
+
+    @Override
+    public synchronized int size() {
+        return pendingCount + super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public synchronized void clear() {
+        data = null;
+        tags = null;
+        offsets = null;
+        lengths = null;
+        pending = null;
+        count = 0;
+        pendingCount = 0;
+        super.clear();
+    }
+
+    @Override
+    public synchronized boolean containsValue(Object value) {
+        decodeAll();
+        return super.containsValue(value);
+    }
+
+    @Override
+    public synchronized Set<Map.Entry<Tag, Object>> entrySet() {
+        decodeAll();
+        return super.entrySet();
+    }
+
+    @Override
+    public synchronized Set<Tag> keySet() {
+        decodeAll();
+        return super.keySet();
+    }
+
+    @Override
+    public synchronized Collection<Object> values() {
+        decodeAll();
+        return super.values();
+    }
+
+    /**
+     * Find the pending parameter for a tag value.
+     * @param tagValue The tag value to look for.
+     * @param end The index to stop searching at.
+     * @return The index of the parameter, or <code>-1</code> if no
+     * parameter with that tag is pending.
+     */
+    private int indexOf(int tagValue, int end) {
+        if (pendingCount > 0) {
+            for (int i = 0; i < end; i++) {
+                if (pending[i] && tags[i] == tagValue) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decode the pending parameter for a key, if there is one.
+     */
+    private void decode(Object key) {
+        if (key instanceof Tag) {
+            int i = indexOf(((Tag) key).intValue(), count);
+            if (i >= 0) {
+                decode(i, (Tag) key);
+            }
+        }
+    }
+
+    private void decodeAll() {
+        for (int i = 0; i < count && pendingCount > 0; i++) {
+            if (pending[i]) {
+                decode(i, Tag.lookupTag(tags[i]));
+            }
+        }
+    }
+
+    private void decode(int i, Tag tag) {
+        pending[i] = false;
+        pendingCount--;
+        PacketDecoderImpl decoder = new PacketDecoderImpl(data, offsets[i] + 4);
+        Object value = tag.getParamDescriptor().readObject(decoder, lengths[i]);
+        super.put(tag, value);
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
@@ -253,10 +253,21 @@ public final class Tag implements java.io.Serializable {
             ParamDescriptor paramDescriptor,
             int minLength,
             int maxLength) throws TagDefinedException {
+        this(tag, paramDescriptor, minLength, maxLength, true);
+    }
+
+    private Tag(int tag,
+            ParamDescriptor paramDescriptor,
+            int minLength,
+            int maxLength,
+            boolean register) throws TagDefinedException {
         this.tag = new Integer(tag);
         this.paramDescriptor = paramDescriptor;
         this.minLength = minLength;
         this.maxLength = maxLength;
+        if (!register) {
+            return;
+        }
         synchronized (tagTable) {
             if (tagTable.containsKey(this.tag)) {
                 throw new TagDefinedException(tag, "Tag 0x"
@@ -398,6 +409,23 @@ public final class Tag implements java.io.Serializable {
         }
     }
 
+    /**
+     * Get the Tag object that represents tag <code>tagValue</code> without
+     * defining it. Unlike {@link #getTag}, if the tag is not known a fresh,
+     * unregistered instance using an octet-string type is returned, so
+     * unknown tags seen on the wire do not accumulate in the global table.
+     * @param tagValue The integer value of the tag.
+     * @return The Tag object representing the tag <code>tagValue</code>.
+     */
+    static Tag lookupTag(int tagValue) {
+        Tag t = tagTable.get(new Integer(tagValue));
+        if (t == null) {
+            return new Tag(tagValue, BasicDescriptors.BYTES, -1, -1, false);
+        } else {
+            return t;
+        }
+    }
+
     /**
      * Define a new tag type which has a fixed length.
      * @param tagValue The integer value of the tag.
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,13 +35,11 @@ import org.slf4j.LoggerFactory;
 import org.mobicents.protocols.smpp.message.SMPPPacket;
 import org.mobicents.protocols.smpp.util.APIConfig;
 import org.mobicents.protocols.smpp.util.APIConfigFactory;
-import org.mobicents.protocols.smpp.util.PacketDecoder;
-import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
-import org.mobicents.protocols.smpp.util.PacketEncoder;
-import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketDecoder;
+import org.mobicents.protocols.smpp.util.CStringCache;
+import org.mobicents.protocols.smpp.util.FrameDecoder;
 import org.mobicents.protocols.smpp.util.PacketFactory;
 import org.mobicents.protocols.smpp.util.PropertyNotFoundException;
-import org.mobicents.protocols.smpp.util.SMPPIO;
 
 /**
  * Abstract base implementation of the {@link org.mobicents.protocols.smpp.net.SmscLink}
@@ -56,25 +55,48 @@ import org.mobicents.protocols.smpp.util.SMPPIO;
  * {@link SmscLink#connect()} operation in order to set up instances of
  * this class properly.
  * </p>
+ * <p>
+ * Incoming bytes are read straight into the backing array of a single
+ * <code>ByteBuffer</code> that is re-used for the life of the connection.
+ * Packets are decoded in place from that buffer, so there is no per-packet
+ * copy of the raw bytes. The initial size of the buffer is taken from the
+ * <code>smppapi.net.buffersize_in</code> API property. It grows if a
+ * larger packet arrives.
+ * </p>
+ * <p>
+ * Outgoing packets are encoded by the sending thread into a pooled buffer
+ * and handed to the output stream with a single write.
+ * </p>
+ * <p>
+ * If asynchronous writing is enabled, using the
+ * <code>smppapi.net.async_write</code> API property or
+ * {@link #setAsyncWrite(boolean)}, packets are encoded on the sending
+ * thread and written to the output stream by a dedicated writer thread,
+ * which flushes the stream itself. See
+ * {@link org.mobicents.protocols.smpp.util.APIConfig} for the properties
+ * that control when it flushes.
+ * </p>
  * @version $Id: AbstractStreamLink.java 457 2009-01-15 17:37:42Z orank $
  * 
  * @author amit bhayani
  * @author orank
  */
-public abstract class AbstractStreamLink implements SmscLink {
+public abstract class AbstractStreamLink implements FrameLink {
     private static final String END_OF_STREAM_ERR = "EOS reached. No data available";
     private static final String LINK_NOT_UP_ERR = "Link not established.";
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final long WRITER_SHUTDOWN_TIMEOUT = 5000L;
     private static final Logger LOG = LoggerFactory.getLogger(SmscLink.class);
 
-    private byte[] buffer;
+    private ByteBuffer buffer;
     private InputStream in;
     private OutputStream out;
     private OutputStream snoopIn;
     private OutputStream snoopOut;
-    private PacketEncoder encoder;
-    private PacketDecoder decoder;
-    private PacketEncoder snoopOutEncoder;
+    private ByteBufferPacketDecoder decoder;
+    private final Object writeLock = new Object();
     private PacketFactory packetFactory = new PacketFactory();
+    private AsyncPacketWriter writer;
 
     /**
      * Set to automatically flush the output stream after every packet. Default
@@ -82,18 +104,47 @@ public abstract class AbstractStreamLink implements SmscLink {
      */
     private boolean autoFlush;
 
+    /**
+     * Set to write packets from a dedicated writer thread.
+     */
+    private boolean asyncWrite;
+
+    /**
+     * Set to defer decoding the body of message packets until first access.
+     */
+    private boolean lazyDecode;
+
+    /**
+     * Cache to look decoded C-strings up in, if any.
+     */
+    private CStringCache cStringCache;
+
+    /**
+     * Largest command length accepted from the SMSC.
+     */
+    private int maxCommandLength;
+
     /**
      * Create a new unconnected SmscLink.
      */
     public AbstractStreamLink() {
+        APIConfig config = APIConfigFactory.getConfig();
         try {
-            APIConfig config = APIConfigFactory.getConfig();
             autoFlush = config.getBoolean(APIConfig.LINK_AUTO_FLUSH);
         } catch (PropertyNotFoundException x) {
             autoFlush = true;
         } finally {
             LOG.debug("autoFlush set to {}", autoFlush);
         }
+        asyncWrite = config.getBoolean(APIConfig.LINK_ASYNC_WRITE, false);
+        lazyDecode = config.getBoolean(APIConfig.LINK_LAZY_DECODE, false);
+        maxCommandLength = config.getInt(
+                APIConfig.LINK_MAX_COMMAND_LENGTH, FrameDecoder.DEFAULT_MAX_COMMAND_LENGTH);
+        int cacheSize = config.getInt(APIConfig.LINK_CSTRING_CACHE_SIZE, 0);
+        if (cacheSize > 0) {
+            cStringCache =
+                new CStringCache(cacheSize, CStringCache.DEFAULT_MAX_LENGTH);
+        }
     }
 
     /**
@@ -107,10 +158,10 @@ public abstract class AbstractStreamLink implements SmscLink {
      *             If an exception occurs while closing the connection.
      */
     public void disconnect() throws IOException {
+        shutdownWriter();
         out = null;
         in = null;
         buffer = null;
-        encoder = null;
         decoder = null;
         if (isAutoCloseSnoop()) {
             closeQuietly(snoopOut);
@@ -137,27 +188,76 @@ public abstract class AbstractStreamLink implements SmscLink {
         if (out == null) {
             throw new IOException(LINK_NOT_UP_ERR);
         }
-        pak.writeTo(encoder, withOptional);
+        if (writer != null) {
+            writer.write(pak, withOptional);
+            return;
+        }
+        ByteBuffer frame = FrameEncoder.encode(pak, withOptional);
+        try {
+            writeOut(frame);
+        } finally {
+            FrameEncoder.release(frame);
+        }
+    }
+
+    /**
+     * Send an encoded packet to the SMSC.
+     * @param frame A buffer whose remaining bytes are exactly one packet.
+     * Its position is not changed.
+     * @throws java.io.IOException
+     *             if an exception occurs during writing or if the connection is
+     *             not open.
+     * @see FrameLink#writeFrame(ByteBuffer)
+     */
+    public void writeFrame(ByteBuffer frame) throws IOException {
+        if (out == null) {
+            throw new IOException(LINK_NOT_UP_ERR);
+        }
+        if (writer != null) {
+            writer.write(FrameEncoder.copy(frame));
+        } else if (frame.hasArray()) {
+            writeOut(frame);
+        } else {
+            ByteBuffer copy = FrameEncoder.copy(frame);
+            try {
+                writeOut(copy);
+            } finally {
+                FrameEncoder.release(copy);
+            }
+        }
+    }
+
+    private void writeOut(ByteBuffer frame) throws IOException {
+        byte[] array = frame.array();
+        int offset = frame.arrayOffset() + frame.position();
+        int length = frame.remaining();
+        synchronized (writeLock) {
+            out.write(array, offset, length);
+            if (autoFlush) {
+                out.flush();
+            }
+        }
         try {
-            if (snoopOutEncoder != null) {
-                pak.writeTo(snoopOutEncoder, withOptional);
+            if (snoopOut != null) {
+                snoopOut.write(array, offset, length);
             }
         } catch (IOException x) {
             LOG.warn("IOException writing to snoop output stream.", x);
         }
-        if (autoFlush) {
-            out.flush();
-        }
     }
 
     /**
-     * Flush the output stream of the SMSC link.
+     * Flush the output stream of the SMSC link. With asynchronous writing
+     * enabled, this waits until every packet the calling thread has written
+     * is flushed.
      * 
      * @throws java.io.IOException
      *             If an exception occurs while flushing the output stream.
      */
     public void flush() throws IOException {
-        if (out != null) {
+        if (writer != null) {
+            writer.flush();
+        } else if (out != null) {
             out.flush();
         }
     }
@@ -185,15 +285,75 @@ public abstract class AbstractStreamLink implements SmscLink {
         this.autoFlush = flush;
     }
 
+    /**
+     * Determine if this link writes packets from a dedicated writer thread.
+     * @return <code>true</code> if asynchronous writing is enabled.
+     * @see #setAsyncWrite
+     */
+    public boolean isAsyncWrite() {
+        return asyncWrite;
+    }
+
+    /**
+     * Enable or disable writing packets from a dedicated writer thread. The
+     * setting takes effect the next time the link is connected. When
+     * enabled, {@link #write} returns once the packet has been encoded and
+     * queued. The auto flush setting is ignored, as the writer thread
+     * decides when to flush. {@link #flush} waits for everything queued so
+     * far to be written and flushed.
+     * @param asyncWrite <code>true</code> to enable asynchronous writing.
+     */
+    public void setAsyncWrite(boolean asyncWrite) {
+        this.asyncWrite = asyncWrite;
+    }
+
+    /**
+     * Determine if this link reads message packets lazily.
+     * @return <code>true</code> if lazy decoding is enabled.
+     * @see #setLazyDecode
+     */
+    public boolean isLazyDecode() {
+        return lazyDecode;
+    }
+
+    /**
+     * Enable or disable lazy decoding of received packets. When enabled,
+     * packet types that support it are read with
+     * {@link SMPPPacket#readLazily}, so only their header is decoded by
+     * {@link #read}.
+     * @param lazyDecode <code>true</code> to enable lazy decoding.
+     */
+    public void setLazyDecode(boolean lazyDecode) {
+        this.lazyDecode = lazyDecode;
+    }
+
+    /**
+     * Get the cache this link looks up decoded C-strings in.
+     * @return The cache, or <code>null</code> if there is none.
+     */
+    public CStringCache getCStringCache() {
+        return cStringCache;
+    }
+
+    /**
+     * Set the cache this link looks up decoded C-strings in. A cache may
+     * be shared between links.
+     * @param cStringCache The cache to use, or <code>null</code> for
+     * none.
+     */
+    public void setCStringCache(CStringCache cStringCache) {
+        this.cStringCache = cStringCache;
+        if (decoder != null) {
+            decoder.setCStringCache(cStringCache);
+        }
+    }
+
     /**
      * Read the next SMPP packet from the SMSC. This method will block until a
-     * full packet can be read from the SMSC. The caller should pass in a byte
-     * array to read the packet into. If the passed in byte array is too small,
-     * a new one will be allocated and returned to the caller.
+     * full packet can be read from the SMSC. Any bytes read beyond the end of
+     * the packet are kept for the next call.
      * 
-     * @param array
-     *            a byte array buffer to read the packet into.
-     * @return the handle to the passed in buffer or the reallocated one.
+     * @return the next packet.
      * @throws java.io.EOFException
      *             If the end of stream is reached before a full packet can be
      *             read.
@@ -205,27 +365,31 @@ public abstract class AbstractStreamLink implements SmscLink {
         if (in == null) {
             throw new IOException(LINK_NOT_UP_ERR);
         }
-        int count = 0;
+        int cmdLen;
         try {
-            count = readBytes(buffer, 0, 4, 16);
-            int cmdLen = SMPPIO.readInt4(buffer, 0);
-            if (cmdLen > buffer.length) {
-                byte[] newbuf = new byte[cmdLen];
-                System.arraycopy(buffer, 0, newbuf, 0, count);
-                buffer = newbuf;
-                decoder = new PacketDecoderImpl(buffer);
-            }
-            int remaining = cmdLen - count;
-            readBytes(buffer, count, remaining, remaining);
-            int commandId = SMPPIO.readInt4(buffer, 4);
-            SMPPPacket packet = packetFactory.newInstance(commandId);
-            decoder.setParsePosition(0);
-            packet.readFrom(decoder);
-            return packet;
+            cmdLen = fillFrame();
         } catch (SocketTimeoutException x) {
             throw new ReadTimeoutException(x);
+        }
+        int start = buffer.position();
+        int end = start + cmdLen;
+        int limit = buffer.limit();
+        try {
+            buffer.limit(end);
+            SMPPPacket packet = packetFactory.newInstance(buffer.getInt(start + 4));
+            if (lazyDecode && packet.isLazyDecodingSupported()) {
+                byte[] frame = new byte[cmdLen];
+                System.arraycopy(buffer.array(),
+                        buffer.arrayOffset() + start, frame, 0, cmdLen);
+                packet.readLazily(frame);
+            } else {
+                packet.readFrom(decoder);
+            }
+            return packet;
         } finally {
-            dump(snoopIn, buffer, 0, count);
+            buffer.limit(limit);
+            buffer.position(end);
+            dump(snoopIn, buffer.array(), buffer.arrayOffset() + start, cmdLen);
         }
     }
 
@@ -234,7 +398,7 @@ public abstract class AbstractStreamLink implements SmscLink {
      */
     public final int available() {
         try {
-            return (in != null) ? in.available() : 0;
+            return (in != null) ? buffer.remaining() + in.available() : 0;
         } catch (IOException x) {
             LOG.debug("IOException in available", x);
             return 0;
@@ -257,45 +421,92 @@ public abstract class AbstractStreamLink implements SmscLink {
     public void setSnoopStreams(OutputStream snoopIn, OutputStream snoopOut) {
         this.snoopIn = snoopIn;
         this.snoopOut = snoopOut;
-        snoopOutEncoder = new PacketEncoderImpl(snoopOut);
+        if (writer != null) {
+            writer.setSnoopStream(snoopOut);
+        }
     }
 
     protected void setInputStream(InputStream inputStream) {
         this.in = inputStream;
-        buffer = new byte[512];
-        this.decoder = new PacketDecoderImpl(buffer);
+        APIConfig config = APIConfigFactory.getConfig();
+        buffer = ByteBuffer.allocate(
+                config.getInt(APIConfig.LINK_BUFFERSIZE_IN, DEFAULT_BUFFER_SIZE));
+        buffer.flip();
+        this.decoder = new ByteBufferPacketDecoder(buffer);
+        decoder.setCStringCache(cStringCache);
     }
     
     protected void setOutputStream(OutputStream outputStream) {
+        shutdownWriter();
         this.out = outputStream;
-        this.encoder = new PacketEncoderImpl(this.out);
+        if (asyncWrite) {
+            APIConfig config = APIConfigFactory.getConfig();
+            int flushBytes = config.getInt(APIConfig.LINK_FLUSH_BYTES, DEFAULT_BUFFER_SIZE);
+            long flushDelay = config.getLong(APIConfig.LINK_FLUSH_DELAY, 1L);
+            writer = new AsyncPacketWriter(out, flushBytes, flushDelay, "SMPP-Writer");
+            writer.setSnoopStream(snoopOut);
+        }
+    }
+
+    /**
+     * Stop the writer thread, if there is one, once it has written out
+     * any packets still queued. Implementations that close their
+     * underlying connection without calling {@link #disconnect} must call
+     * this first.
+     */
+    protected void shutdownWriter() {
+        if (writer != null) {
+            writer.shutdown(WRITER_SHUTDOWN_TIMEOUT);
+            writer = null;
+        }
     }
     
     /**
-     * Attempt to read the bytes for an SMPP packet from the inbound stream.
-     * @param buf The buffer to read bytes in to.
-     * @param offset The offset into buffer to begin writing bytes from.
-     * @param maxLen The maximum number of bytes to read in.
-     * @param minimum The minimum number of bytes to read before returning. Once
-     * this method has read at least this number of bytes, it will return.
-     * @return The number of bytes read by this method.
+     * Make sure the buffer holds at least one complete packet, reading from
+     * the input stream as necessary. On return, the packet starts at the
+     * buffer&apos;s position.
+     * @return The command length of the packet at the buffer&apos;s position.
      * @throws IOException
      */
-    private int readBytes(byte[] buf, int offset, int minimum, int maxLen) throws IOException {
-        int ptr = in.read(buf, offset, maxLen);
-        if (ptr < minimum) {
-            if (ptr == -1) {
+    private int fillFrame() throws IOException {
+        while (true) {
+            if (buffer.remaining() >= 4) {
+                int cmdLen = buffer.getInt(buffer.position());
+                if (cmdLen < 16 || cmdLen > maxCommandLength) {
+                    throw new IOException("Invalid command_length " + cmdLen);
+                }
+                if (buffer.remaining() >= cmdLen) {
+                    return cmdLen;
+                }
+                if (cmdLen > buffer.capacity()) {
+                    ByteBuffer newBuffer = ByteBuffer.allocate(cmdLen);
+                    newBuffer.put(buffer);
+                    newBuffer.flip();
+                    buffer = newBuffer;
+                    decoder.setBuffer(buffer);
+                }
+            }
+            readBytes();
+        }
+    }
+
+    /**
+     * Read as many bytes as are available from the input stream straight
+     * into the free space at the end of the buffer.
+     * @throws IOException
+     */
+    private void readBytes() throws IOException {
+        buffer.compact();
+        try {
+            int count = in.read(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (count < 0) {
                 throw new EOFException(END_OF_STREAM_ERR);
             }
-            while (ptr < minimum) {
-                int count = in.read(buf, offset + ptr, maxLen - ptr);
-                if (count < 0) {
-                    throw new EOFException(END_OF_STREAM_ERR);
-                }
-                ptr += count;
-           }
+            buffer.position(buffer.position() + count);
+        } finally {
+            buffer.flip();
         }
-        return ptr;
     }
     
     /**
@@ -0,0 +1,364 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+
+/**
+ * Writes packets to a stream from a dedicated thread. Sending threads
+ * encode their packet into a buffer of their own, without taking any lock,
+ * and hand the bytes to a queue that is drained by the writer thread.
+ * Only the hand-off itself is done under a lock, which gives every frame a
+ * ticket in queue order. {@link #flush()} waits for the ticket of the last
+ * frame the calling thread queued, so it is never held up by other
+ * threads&apos; traffic.
+ * <p>
+ * The writer does not flush after every packet. It flushes when the queue
+ * runs dry, or once <code>flushBytes</code> bytes or
+ * <code>flushDelay</code> milliseconds worth of packets are waiting to be
+ * flushed, whichever comes first. Under a burst of traffic, many packets
+ * therefore go out in each socket write without a lone packet ever being
+ * held back.
+ * </p>
+ * <p>
+ * Once more than a megabyte is queued, senders wait for the writer to
+ * catch up. Frames are only accepted while the writer is running, so a
+ * frame is either written or its sender gets an exception.
+ * </p>
+ */
+class AsyncPacketWriter implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncPacketWriter.class);
+    private static final String WRITER_CLOSED_ERR = "Writer has been shut down.";
+
+    /**
+     * Number of queued bytes at which senders are made to wait for the
+     * writer to catch up.
+     */
+    private static final long MAX_PENDING_BYTES = 1024L * 1024L;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> queue =
+        new ConcurrentLinkedQueue<ByteBuffer>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    /**
+     * Guards the hand-off of frames to the queue, and changes to
+     * <code>running</code> and <code>failure</code>.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    /**
+     * The ticket of the last frame each thread queued.
+     */
+    private final ThreadLocal<long[]> lastTicket = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    private final OutputStream out;
+    private final int flushBytes;
+    private final long flushDelayNanos;
+    private final Thread thread;
+    private long queuedCount;
+    private volatile OutputStream snoop;
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+    private volatile int waitingSenders;
+    private volatile boolean flushWaiting;
+    private volatile long flushedCount;
+    private volatile IOException failure;
+
+    /**
+     * Create a new writer and start its thread.
+     * @param out The stream to write packets to.
+     * @param flushBytes Flush once this many bytes are waiting to be
+     * flushed.
+     * @param flushDelay Flush once the oldest unflushed packet has been
+     * waiting this many milliseconds.
+     * @param name The name for the writer thread.
+     */
+    AsyncPacketWriter(OutputStream out, int flushBytes, long flushDelay, String name) {
+        this.out = out;
+        this.flushBytes = flushBytes;
+        this.flushDelayNanos = flushDelay * 1000000L;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void setSnoopStream(OutputStream snoop) {
+        this.snoop = snoop;
+    }
+
+    /**
+     * Queue a packet for writing. The packet is encoded on the calling
+     * thread before this method returns.
+     * @param packet The packet to write.
+     * @param withOptional <code>true</code> to write the optional parameters.
+     * @return The packet&apos;s ticket, for {@link #flush(long)}.
+     * @throws IOException If the writer has failed or been shut down, or
+     * the packet cannot be encoded.
+     */
+    long write(SMPPPacket packet, boolean withOptional) throws IOException {
+        checkRunning();
+        return enqueue(FrameEncoder.encode(packet, withOptional));
+    }
+
+    /**
+     * Queue an already encoded frame for writing.
+     * @param frame A buffer obtained from {@link FrameEncoder}. The writer
+     * takes ownership of it and releases it once written.
+     * @return The frame&apos;s ticket, for {@link #flush(long)}.
+     * @throws IOException If the writer has failed or been shut down.
+     */
+    long write(ByteBuffer frame) throws IOException {
+        return enqueue(frame);
+    }
+
+    private long enqueue(ByteBuffer frame) throws IOException {
+        int length = frame.remaining();
+        long ticket;
+        lock.lock();
+        try {
+            checkRunning();
+            if (pendingBytes.get() >= MAX_PENDING_BYTES) {
+                awaitRoom();
+            }
+            pendingBytes.addAndGet(length);
+            queue.offer(frame);
+            ticket = ++queuedCount;
+        } catch (IOException x) {
+            FrameEncoder.release(frame);
+            throw x;
+        } finally {
+            lock.unlock();
+        }
+        lastTicket.get()[0] = ticket;
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+        return ticket;
+    }
+
+    /**
+     * Wait for the writer to drain the queue below its limit. Called with
+     * the lock held.
+     */
+    private void awaitRoom() throws IOException {
+        waitingSenders++;
+        try {
+            while (pendingBytes.get() >= MAX_PENDING_BYTES) {
+                notFull.await();
+                checkRunning();
+            }
+        } catch (InterruptedException x) {
+            throw new InterruptedIOException("Interrupted waiting to write");
+        } finally {
+            waitingSenders--;
+        }
+    }
+
+    /**
+     * Block until every packet the calling thread has queued has been
+     * written and flushed.
+     * @throws IOException If the writer fails before that happens.
+     */
+    void flush() throws IOException {
+        flush(lastTicket.get()[0]);
+    }
+
+    /**
+     * Block until the frame with the given ticket, and every frame queued
+     * before it, has been written and flushed.
+     * @param ticket A ticket returned by one of the <code>write</code>
+     * methods.
+     * @throws IOException If the writer fails before that happens.
+     */
+    void flush(long ticket) throws IOException {
+        if (flushedCount >= ticket) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (true) {
+                flushWaiting = true;
+                if (flushedCount >= ticket) {
+                    return;
+                }
+                checkFailure();
+                flushed.await();
+            }
+        } catch (InterruptedException x) {
+            throw new InterruptedIOException("Interrupted waiting for flush");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write out anything still queued, then stop the writer thread.
+     * @param timeout Milliseconds to wait for the queue to drain.
+     */
+    void shutdown(long timeout) {
+        lock.lock();
+        try {
+            running = false;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeout);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            LOG.warn("Writer thread did not finish within {}ms", timeout);
+        }
+    }
+
+    public void run() {
+        LOG.debug("Writer thread starting.");
+        long written = 0L;
+        int unflushedBytes = 0;
+        long firstUnflushed = 0L;
+        try {
+            while (true) {
+                ByteBuffer frame = queue.poll();
+                if (frame == null) {
+                    if (unflushedBytes > 0) {
+                        flushOut(written);
+                        unflushedBytes = 0;
+                    }
+                    if (!running) {
+                        // Frames are only queued while running, so once
+                        // it is clear the queue can be checked for good.
+                        if (queue.isEmpty()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    sleeping = true;
+                    if (queue.isEmpty() && running) {
+                        LockSupport.park();
+                    }
+                    sleeping = false;
+                    continue;
+                }
+                int length = frame.remaining();
+                out.write(frame.array(), frame.arrayOffset() + frame.position(), length);
+                if (pendingBytes.addAndGet(-length) < MAX_PENDING_BYTES
+                        && waitingSenders > 0) {
+                    signal(notFull);
+                }
+                written++;
+                dump(frame, length);
+                FrameEncoder.release(frame);
+                if (unflushedBytes == 0) {
+                    firstUnflushed = System.nanoTime();
+                }
+                unflushedBytes += length;
+                if (unflushedBytes >= flushBytes
+                        || System.nanoTime() - firstUnflushed >= flushDelayNanos) {
+                    flushOut(written);
+                    unflushedBytes = 0;
+                }
+            }
+        } catch (IOException x) {
+            LOG.debug("Writer thread failed", x);
+            lock.lock();
+            try {
+                failure = x;
+                running = false;
+                queue.clear();
+                pendingBytes.set(0L);
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            flushWaiting = false;
+            signal(flushed);
+        }
+        LOG.debug("Writer thread exiting.");
+    }
+
+    private void flushOut(long written) throws IOException {
+        out.flush();
+        flushedCount = written;
+        if (flushWaiting) {
+            flushWaiting = false;
+            signal(flushed);
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            IOException x = new IOException("Writer thread failed: " + failure.getMessage());
+            x.initCause(failure);
+            throw x;
+        }
+    }
+
+    private void checkRunning() throws IOException {
+        checkFailure();
+        if (!running) {
+            throw new IOException(WRITER_CLOSED_ERR);
+        }
+    }
+
+    private void dump(ByteBuffer frame, int length) {
+        OutputStream snoopOut = snoop;
+        if (snoopOut != null) {
+            try {
+                snoopOut.write(frame.array(), frame.arrayOffset() + frame.position(), length);
+            } catch (IOException x) {
+                LOG.warn("IOException writing to snoop output stream.", x);
+            }
+        }
+    }
+}
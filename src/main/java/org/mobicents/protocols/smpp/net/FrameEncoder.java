@@ -0,0 +1,103 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.util.BufferPool;
+import org.mobicents.protocols.smpp.util.ByteBufferPacketEncoder;
+
+/**
+ * Encodes packets into complete frames using an encoder that belongs to
+ * the calling thread. Links use this to encode outside of any lock shared
+ * with other sending threads.
+ * <p>
+ * Each frame is written in a single pass into a buffer from the shared
+ * {@link BufferPool}. Once the frame has been written out, the link must
+ * hand the buffer back using {@link #release(ByteBuffer)}.
+ * </p>
+ */
+final class FrameEncoder {
+    private static final ThreadLocal<ByteBufferPacketEncoder> ENCODERS =
+        new ThreadLocal<ByteBufferPacketEncoder>() {
+            protected ByteBufferPacketEncoder initialValue() {
+                return new ByteBufferPacketEncoder(BufferPool.getShared());
+            }
+        };
+
+    private FrameEncoder() {
+    }
+
+    /**
+     * Encode a packet using the calling thread&apos;s encoder.
+     * @param packet The packet to encode.
+     * @param withOptional <code>true</code> to encode the optional
+     * parameters.
+     * @return A pooled buffer, flipped so that its remaining bytes are
+     * exactly the bytes of the packet.
+     * @throws IOException If encoding fails.
+     */
+    static ByteBuffer encode(SMPPPacket packet, boolean withOptional) throws IOException {
+        ByteBufferPacketEncoder encoder = ENCODERS.get();
+        encoder.acquireBuffer(BufferPool.MIN_CAPACITY);
+        try {
+            packet.writeTo(encoder, withOptional);
+            ByteBuffer frame = encoder.getBuffer();
+            frame.flip();
+            return frame;
+        } catch (IOException x) {
+            BufferPool.getShared().release(encoder.getBuffer());
+            throw x;
+        } catch (RuntimeException x) {
+            BufferPool.getShared().release(encoder.getBuffer());
+            throw x;
+        } finally {
+            encoder.setBuffer(null);
+        }
+    }
+
+    /**
+     * Copy an already encoded frame into a pooled buffer, so that it can be
+     * queued in the same way as a frame from {@link #encode}.
+     * @param frame The frame to copy. Its remaining bytes are copied and
+     * its position is left unchanged.
+     * @return A pooled buffer, flipped so that its remaining bytes are
+     * exactly the bytes of the frame.
+     */
+    static ByteBuffer copy(ByteBuffer frame) {
+        ByteBuffer copy = BufferPool.getShared().acquire(frame.remaining());
+        copy.put(frame.duplicate());
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Return a buffer obtained from {@link #encode} or {@link #copy} to the pool.
+     * @param frame The buffer to release.
+     */
+    static void release(ByteBuffer frame) {
+        BufferPool.getShared().release(frame);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Implemented by links that can send a packet which has already been
+ * encoded. This allows applications that encode their own frames, such as
+ * with {@link org.mobicents.protocols.smpp.message.SubmitSMWriter}, to
+ * send them without first building a packet object.
+ */
+public interface FrameLink extends SmscLink {
+    /**
+     * Send an encoded packet to the SMSC. The frame is written as-is, so
+     * it must hold exactly one complete packet, including its header. The
+     * link does not keep a reference to <code>frame</code>; the caller may
+     * re-use it as soon as this method returns. The position of
+     * <code>frame</code> is not changed.
+     * @param frame A buffer whose remaining bytes are the frame to send.
+     * @throws IOException If the link is not connected or the write fails.
+     */
+    void writeFrame(ByteBuffer frame) throws IOException;
+}
@@ -0,0 +1,211 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single I/O thread that multiplexes any number of non-blocking channels
+ * over one {@link Selector}. Channels are attached to the loop along with
+ * a {@link SelectorHandler} that is called back, on the loop thread, when
+ * the channel becomes ready.
+ * <p>
+ * Work that must touch the selector or a registered channel&apos;s
+ * interest set from another thread should be handed to the loop using
+ * {@link #execute(Runnable)}.
+ * </p>
+ * @see NioEventLoopGroup
+ */
+public class NioEventLoop implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(NioEventLoop.class);
+
+    /**
+     * Interval, in milliseconds, at which handlers are ticked.
+     */
+    private static final long TICK_INTERVAL = 250L;
+
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> tasks =
+        new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean running = true;
+    private long lastTick;
+
+    /**
+     * Create a new event loop and start its thread.
+     * @param name The name to give the loop thread.
+     * @throws IOException If the selector cannot be opened.
+     */
+    public NioEventLoop(String name) throws IOException {
+        selector = Selector.open();
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Determine if the calling thread is this loop&apos;s thread.
+     * @return <code>true</code> if called from the event loop.
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Determine if this loop is still running.
+     * @return <code>true</code> if the loop has not been shut down.
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Schedule a task to run on the loop thread. Tasks run in the order
+     * they were submitted.
+     * @param task The task to run.
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop()) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Register a channel with this loop. The registration takes place
+     * asynchronously on the loop thread, after which
+     * {@link SelectorHandler#registered(SelectionKey)} is called.
+     * @param channel The channel to register. It must already be in
+     * non-blocking mode.
+     * @param ops The initial interest set.
+     * @param handler The handler to call back for the channel.
+     */
+    public void register(final SelectableChannel channel,
+            final int ops,
+            final SelectorHandler handler) {
+        execute(new Runnable() {
+            public void run() {
+                try {
+                    SelectionKey key = channel.register(selector, ops, handler);
+                    handler.registered(key);
+                } catch (ClosedChannelException x) {
+                    LOG.debug("Channel closed before it could be registered.");
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop this loop. All channels still registered with the loop are
+     * closed once the loop thread exits.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    public void run() {
+        LOG.debug("Event loop {} starting.", thread.getName());
+        while (running) {
+            try {
+                selector.select(TICK_INTERVAL);
+                runTasks();
+                processSelectedKeys();
+                long now = System.currentTimeMillis();
+                if (now - lastTick >= TICK_INTERVAL) {
+                    lastTick = now;
+                    tickHandlers(now);
+                }
+            } catch (IOException x) {
+                LOG.error("I/O error in event loop " + thread.getName(), x);
+            }
+        }
+        closeSelector();
+        LOG.debug("Event loop {} exiting.", thread.getName());
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException x) {
+                LOG.error("Event loop task failed", x);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Set<SelectionKey> selected = selector.selectedKeys();
+        for (Iterator<SelectionKey> iter = selected.iterator(); iter.hasNext();) {
+            SelectionKey key = iter.next();
+            iter.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            try {
+                ((SelectorHandler) key.attachment()).ready(key);
+            } catch (RuntimeException x) {
+                LOG.error("Selector handler failed", x);
+            }
+        }
+    }
+
+    private void tickHandlers(long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (!key.isValid()) {
+                continue;
+            }
+            try {
+                ((SelectorHandler) key.attachment()).tick(now);
+            } catch (RuntimeException x) {
+                LOG.error("Selector handler failed", x);
+            }
+        }
+    }
+
+    private void closeSelector() {
+        for (SelectionKey key : selector.keys()) {
+            try {
+                key.channel().close();
+            } catch (IOException x) {
+                LOG.debug("Exception closing a channel quietly", x);
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException x) {
+            LOG.debug("Exception closing the selector quietly", x);
+        }
+    }
+}
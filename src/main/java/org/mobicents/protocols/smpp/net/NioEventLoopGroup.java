@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.SMPPRuntimeException;
+import org.mobicents.protocols.smpp.util.APIConfig;
+import org.mobicents.protocols.smpp.util.APIConfigFactory;
+
+/**
+ * A fixed-size pool of {@link NioEventLoop}s. Channels are spread across
+ * the loops in round-robin order, so a handful of threads can service
+ * thousands of links.
+ * <p>
+ * Most applications will use the shared group returned by
+ * {@link #getDefault()}, the size of which is controlled by the
+ * <code>smppapi.net.nio.io_threads</code> API property.
+ * </p>
+ * @see APIConfig
+ */
+public class NioEventLoopGroup {
+    private static final Logger LOG = LoggerFactory.getLogger(NioEventLoopGroup.class);
+
+    private static NioEventLoopGroup defaultGroup;
+
+    private final NioEventLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    /**
+     * Create a new group of event loops.
+     * @param threads The number of loops (and therefore threads) to create.
+     * @param name The name prefix for the loop threads.
+     * @throws IOException If a selector cannot be opened.
+     */
+    public NioEventLoopGroup(int threads, String name) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread");
+        }
+        loops = new NioEventLoop[threads];
+        try {
+            for (int i = 0; i < threads; i++) {
+                loops[i] = new NioEventLoop(name + "-" + i);
+            }
+        } catch (IOException x) {
+            shutdown();
+            throw x;
+        }
+    }
+
+    /**
+     * Get the shared event loop group. It is created on first use.
+     * @return The shared event loop group.
+     */
+    public static synchronized NioEventLoopGroup getDefault() {
+        if (defaultGroup == null) {
+            APIConfig config = APIConfigFactory.getConfig();
+            int threads = config.getInt(APIConfig.NIO_IO_THREADS,
+                    Math.min(4, Runtime.getRuntime().availableProcessors()));
+            LOG.debug("Creating the default event loop group with {} threads",
+                    threads);
+            try {
+                defaultGroup = new NioEventLoopGroup(threads, "SMPP-IO");
+            } catch (IOException x) {
+                throw new SMPPRuntimeException(
+                        "Could not create the default event loop group", x);
+            }
+        }
+        return defaultGroup;
+    }
+
+    /**
+     * Get the next loop to assign a channel to.
+     * @return An event loop from this group.
+     */
+    public NioEventLoop next() {
+        int index = (nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length;
+        return loops[index];
+    }
+
+    /**
+     * Get the number of loops in this group.
+     * @return The number of loops in this group.
+     */
+    public int size() {
+        return loops.length;
+    }
+
+    /**
+     * Shut down every loop in this group.
+     */
+    public void shutdown() {
+        for (NioEventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+}
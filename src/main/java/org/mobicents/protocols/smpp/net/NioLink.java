@@ -0,0 +1,664 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.util.APIConfig;
+import org.mobicents.protocols.smpp.util.APIConfigFactory;
+import org.mobicents.protocols.smpp.util.CStringCache;
+import org.mobicents.protocols.smpp.util.FrameDecoder;
+import org.mobicents.protocols.smpp.util.PacketFactory;
+
+/**
+ * Non-blocking implementation of an SMSC link over TCP/IP. Rather than
+ * dedicating a thread to every connection, links of this type register
+ * their <code>SocketChannel</code> with one of the loops in a
+ * {@link NioEventLoopGroup}, which reads and decodes packets as they
+ * arrive.
+ * <p>
+ * Decoded packets are either pushed to a {@link PacketListener}, if one
+ * is set, or queued for collection by {@link #read()}. When a
+ * <code>Session</code> is created around a <code>NioLink</code> it
+ * installs a listener of its own in place of the usual receiver thread, so
+ * packets are handed to the session&apos;s event dispatcher directly from
+ * the I/O thread. Observers that may block should therefore be used with a
+ * dispatcher that hands events off to other threads, such as
+ * {@link org.mobicents.protocols.smpp.event.TaskExecutorEventDispatcher}.
+ * </p>
+ * <p>
+ * Packets are decoded in place from the link&apos;s read buffer, which is a
+ * direct buffer if the <code>smppapi.net.direct_buffers</code> API property
+ * is set, by a {@link FrameDecoder}. Only packets split across reads are
+ * copied out of it.
+ * </p>
+ * <p>
+ * Writes are attempted immediately on the calling thread. Anything the
+ * socket does not accept is queued and written by the I/O thread when the
+ * channel becomes writable. Writers block once more than
+ * <code>smppapi.net.buffersize_out</code> bytes are queued.
+ * </p>
+ * @see NioEventLoopGroup
+ */
+public class NioLink implements FrameLink, SelectorHandler {
+    private static final String END_OF_STREAM_ERR = "EOS reached. No data available";
+    private static final String LINK_NOT_UP_ERR = "Link not established.";
+    private static final String LINK_CLOSED_ERR = "Link closed.";
+    private static final Logger LOG = LoggerFactory.getLogger(NioLink.class);
+
+    /**
+     * Number of unclaimed packets after which reading from the socket is
+     * suspended until {@link #read()} catches up.
+     */
+    private static final int MAX_BACKLOG = 1024;
+
+    private final NioEventLoopGroup group;
+    private InetAddress addr;
+    private int port;
+    private volatile SocketChannel channel;
+    private volatile NioEventLoop loop;
+    private SelectionKey key;
+
+    private ByteBuffer readBuffer;
+    private final int readBufferSize;
+    private final boolean directBuffers;
+    private volatile boolean lazyDecode;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final FrameDecoder.Handler frameHandler = new FrameDecoder.Handler() {
+        public void packetDecoded(SMPPPacket packet) {
+            deliver(packet);
+        }
+
+        public void decodeFailed(RuntimeException x) {
+            LOG.debug("Failed to decode a packet", x);
+            deliver(x);
+        }
+    };
+    private final BlockingQueue<Object> inbound = new LinkedBlockingQueue<Object>();
+    private volatile PacketListener listener;
+    private volatile boolean readSuspended;
+    private volatile long lastReadTime;
+    private volatile int timeout;
+
+    private final Object writeLock = new Object();
+    private final LinkedList<ByteBuffer> writeQueue = new LinkedList<ByteBuffer>();
+    private final int maxPendingBytes;
+    private long pendingBytes;
+
+    private final Runnable drainTask = new Runnable() {
+        public void run() {
+            drainBacklog();
+        }
+    };
+
+    private final Runnable resumeReadTask = new Runnable() {
+        public void run() {
+            if (readSuspended && key != null && key.isValid()) {
+                readSuspended = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+    };
+
+    private final Runnable enableWriteTask = new Runnable() {
+        public void run() {
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+    };
+
+    /**
+     * Create a new NioLink using the default event loop group.
+     * @param address IP address or hostname of the SMSC.
+     * @param port The port number to connect to.
+     * @throws java.net.UnknownHostException If the host is not found.
+     */
+    public NioLink(String address, int port) throws java.net.UnknownHostException {
+        this(InetAddress.getByName(address), port, NioEventLoopGroup.getDefault());
+    }
+
+    /**
+     * Create a new NioLink using the default event loop group.
+     * @param address IP address of the SMSC.
+     * @param port The port number to connect to.
+     */
+    public NioLink(InetAddress address, int port) {
+        this(address, port, NioEventLoopGroup.getDefault());
+    }
+
+    /**
+     * Create a new NioLink.
+     * @param address IP address of the SMSC.
+     * @param port The port number to connect to.
+     * @param group The event loops to service this link from.
+     */
+    public NioLink(InetAddress address, int port, NioEventLoopGroup group) {
+        this.group = group;
+        this.addr = address;
+        if (port < 1) {
+            this.port = TcpLink.DEFAULT_PORT;
+        } else {
+            this.port = port;
+        }
+        APIConfig config = APIConfigFactory.getConfig();
+        readBufferSize = config.getInt(APIConfig.LINK_BUFFERSIZE_IN, 8192);
+        maxPendingBytes = config.getInt(APIConfig.LINK_BUFFERSIZE_OUT, 65536);
+        directBuffers = config.getBoolean(APIConfig.LINK_DIRECT_BUFFERS, false);
+        lazyDecode = config.getBoolean(APIConfig.LINK_LAZY_DECODE, false);
+        frameDecoder.setMaxCommandLength(config.getInt(
+                APIConfig.LINK_MAX_COMMAND_LENGTH, FrameDecoder.DEFAULT_MAX_COMMAND_LENGTH));
+        int cacheSize = config.getInt(APIConfig.LINK_CSTRING_CACHE_SIZE, 0);
+        if (cacheSize > 0) {
+            frameDecoder.setCStringCache(
+                    new CStringCache(cacheSize, CStringCache.DEFAULT_MAX_LENGTH));
+        }
+    }
+
+    /**
+     * Create a new NioLink around an already-connected channel, using the
+     * default event loop group.
+     * @param channel The channel to use for communications.
+     * @throws IOException If the channel cannot be put in non-blocking mode.
+     */
+    public NioLink(SocketChannel channel) throws IOException {
+        this(channel, NioEventLoopGroup.getDefault());
+    }
+
+    /**
+     * Create a new NioLink around an already-connected channel.
+     * @param channel The channel to use for communications.
+     * @param group The event loops to service this link from.
+     * @throws IOException If the channel cannot be put in non-blocking mode.
+     */
+    public NioLink(SocketChannel channel, NioEventLoopGroup group) throws IOException {
+        this(channel.socket().getInetAddress(), channel.socket().getPort(), group);
+        channel.configureBlocking(false);
+        attach(channel);
+    }
+
+    /**
+     * Get the address we're connected (or connecting) to.
+     * @return The address of the SMSC this link is connected to.
+     */
+    public InetAddress getAddress() {
+        return addr;
+    }
+
+    /**
+     * Get the port to connect to at the SMSC.
+     * @return The port at the SMSC to connect to.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Determine if this link reads message packets lazily.
+     * @return <code>true</code> if lazy decoding is enabled.
+     * @see #setLazyDecode
+     */
+    public boolean isLazyDecode() {
+        return lazyDecode;
+    }
+
+    /**
+     * Enable or disable lazy decoding of received packets. When enabled,
+     * packet types that support it are read with
+     * {@link SMPPPacket#readLazily}, so only their header is decoded on
+     * the event loop thread and the rest is decoded by whichever thread
+     * first accesses it.
+     * @param lazyDecode <code>true</code> to enable lazy decoding.
+     */
+    public void setLazyDecode(boolean lazyDecode) {
+        this.lazyDecode = lazyDecode;
+    }
+
+    /**
+     * Get the cache this link looks up decoded C-strings in.
+     * @return The cache, or <code>null</code> if there is none.
+     */
+    public CStringCache getCStringCache() {
+        return frameDecoder.getCStringCache();
+    }
+
+    /**
+     * Set the cache this link looks up decoded C-strings in. A cache may
+     * be shared between links. This should be set before the link is
+     * opened, as packets are decoded on the event loop thread.
+     * @param cStringCache The cache to use, or <code>null</code> for
+     * none.
+     */
+    public void setCStringCache(CStringCache cStringCache) {
+        frameDecoder.setCStringCache(cStringCache);
+    }
+
+    public PacketFactory getPacketFactory() {
+        return frameDecoder.getPacketFactory();
+    }
+
+    public void setPacketFactory(PacketFactory packetFactory) {
+        frameDecoder.setPacketFactory(packetFactory);
+    }
+
+    /**
+     * Get the listener packets are currently being pushed to.
+     * @return The current listener, or <code>null</code> if packets are
+     * being queued for {@link #read()}.
+     */
+    public PacketListener getPacketListener() {
+        return listener;
+    }
+
+    /**
+     * Set the listener to push packets to. Any packets that were queued
+     * before the listener was set are delivered to it first, in order.
+     * Setting the listener to <code>null</code> reverts to queueing
+     * packets for {@link #read()}.
+     * @param listener The listener to push packets to.
+     */
+    public void setPacketListener(PacketListener listener) {
+        this.listener = listener;
+        NioEventLoop currentLoop = loop;
+        if (listener != null && currentLoop != null) {
+            currentLoop.execute(drainTask);
+            if (readSuspended) {
+                currentLoop.execute(resumeReadTask);
+            }
+        }
+    }
+
+    public void connect() throws IOException {
+        if (isConnected()) {
+            return;
+        }
+        LOG.info("Opening TCP channel to {}:{}", addr, port);
+        SocketChannel newChannel = SocketChannel.open();
+        try {
+            newChannel.socket().connect(new InetSocketAddress(addr, port), timeout);
+            newChannel.configureBlocking(false);
+        } catch (IOException x) {
+            closeQuietly(newChannel);
+            throw x;
+        }
+        attach(newChannel);
+    }
+
+    public void disconnect() throws IOException {
+        SocketChannel oldChannel = channel;
+        if (oldChannel != null) {
+            LOG.info("Shutting down channel connection");
+            channel = null;
+            oldChannel.close();
+            linkClosed(new IOException(LINK_CLOSED_ERR));
+        }
+    }
+
+    public boolean isConnected() {
+        SocketChannel current = channel;
+        return current != null && current.isOpen() && current.isConnected();
+    }
+
+    /**
+     * Send a packet to the SMSC. The packet is written straight to the
+     * socket if nothing is already queued ahead of it. Otherwise it is
+     * queued for the I/O thread to write.
+     * @param packet The packet to send.
+     * @param withOptionalParams <code>true</code> to send the packet&apos;s
+     * optional parameters.
+     * @throws IOException If the link is not connected or the write fails.
+     */
+    public void write(SMPPPacket packet, boolean withOptionalParams) throws IOException {
+        if (channel == null) {
+            throw new IOException(LINK_NOT_UP_ERR);
+        }
+        queueWrite(FrameEncoder.encode(packet, withOptionalParams));
+    }
+
+    /**
+     * Send an encoded packet to the SMSC. The frame is copied into a
+     * buffer of the link&apos;s own, then written or queued in the same way
+     * as by {@link #write(SMPPPacket, boolean)}.
+     * @param frame A buffer whose remaining bytes are exactly one packet.
+     * Its position is not changed.
+     * @throws IOException If the link is not connected or the write fails.
+     */
+    public void writeFrame(ByteBuffer frame) throws IOException {
+        if (channel == null) {
+            throw new IOException(LINK_NOT_UP_ERR);
+        }
+        queueWrite(FrameEncoder.copy(frame));
+    }
+
+    /**
+     * Block until every queued byte has been written to the socket. On the
+     * event loop thread, which is the only thread that drains the queue,
+     * this writes what the socket will take and returns without waiting;
+     * the rest is written as the socket becomes writable.
+     * @throws IOException If the link is closed before the queue empties.
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            if (inEventLoop()) {
+                if (!writeQueue.isEmpty() && key != null && key.isValid()) {
+                    writeQueued();
+                }
+                return;
+            }
+            while (!writeQueue.isEmpty()) {
+                if (channel == null) {
+                    throw new IOException(LINK_CLOSED_ERR);
+                }
+                waitForWriter();
+            }
+        }
+    }
+
+    /**
+     * Read the next packet from the SMSC. This method may only be used
+     * while no {@link PacketListener} is set on the link.
+     * @return The next packet.
+     * @throws ReadTimeoutException If no packet arrives within the
+     * link&apos;s timeout period.
+     * @throws IOException If the link is closed.
+     */
+    public SMPPPacket read() throws IOException {
+        if (channel == null && inbound.isEmpty()) {
+            throw new IOException(LINK_NOT_UP_ERR);
+        }
+        Object item;
+        try {
+            if (timeout > 0) {
+                item = inbound.poll(timeout, TimeUnit.MILLISECONDS);
+            } else {
+                item = inbound.take();
+            }
+        } catch (InterruptedException x) {
+            throw new InterruptedIOException("Interrupted waiting for a packet");
+        }
+        if (readSuspended && inbound.size() < MAX_BACKLOG / 2) {
+            NioEventLoop currentLoop = loop;
+            if (currentLoop != null) {
+                currentLoop.execute(resumeReadTask);
+            }
+        }
+        if (item == null) {
+            throw new ReadTimeoutException();
+        } else if (item instanceof IOException) {
+            throw (IOException) item;
+        } else if (item instanceof RuntimeException) {
+            throw (RuntimeException) item;
+        }
+        return (SMPPPacket) item;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the read timeout. While a {@link PacketListener} is set, the
+     * listener is notified each time this period elapses with nothing being
+     * read. Otherwise, {@link #read()} throws a
+     * {@link ReadTimeoutException} after waiting this long. The timeout is
+     * also used as the connect timeout.
+     * @param timeout The timeout, in milliseconds. Zero means no timeout.
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+        this.lastReadTime = System.currentTimeMillis();
+    }
+
+    public boolean isTimeoutSupported() {
+        return true;
+    }
+
+    public void registered(SelectionKey key) {
+        this.key = key;
+    }
+
+    public void ready(SelectionKey key) {
+        try {
+            if (key.isReadable()) {
+                readFrames();
+            }
+            if (key.isValid() && key.isWritable()) {
+                writeQueued();
+            }
+        } catch (IOException x) {
+            LOG.debug("I/O error on channel", x);
+            closeQuietly((SocketChannel) key.channel());
+            if (key.channel() == channel) {
+                channel = null;
+                linkClosed(x);
+            }
+        }
+    }
+
+    public void tick(long now) {
+        PacketListener currentListener = listener;
+        if (currentListener != null && timeout > 0
+                && now - lastReadTime >= timeout) {
+            lastReadTime = now;
+            currentListener.readTimeout(this);
+        }
+    }
+
+    private void attach(SocketChannel newChannel) {
+        readBuffer = allocate(readBufferSize);
+        frameDecoder.reset();
+        inbound.clear();
+        readSuspended = false;
+        synchronized (writeLock) {
+            writeQueue.clear();
+            pendingBytes = 0L;
+        }
+        lastReadTime = System.currentTimeMillis();
+        key = null;
+        channel = newChannel;
+        loop = group.next();
+        loop.register(newChannel, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Read whatever is available from the channel and decode every complete
+     * packet it holds. Called on the I/O thread.
+     */
+    private void readFrames() throws IOException {
+        SocketChannel current = (SocketChannel) key.channel();
+        if (current.read(readBuffer) < 0) {
+            throw new EOFException(END_OF_STREAM_ERR);
+        }
+        lastReadTime = System.currentTimeMillis();
+        readBuffer.flip();
+        try {
+            frameDecoder.setLazyDecode(lazyDecode);
+            frameDecoder.decode(readBuffer, frameHandler);
+        } finally {
+            readBuffer.clear();
+        }
+        if (inbound.size() >= MAX_BACKLOG && listener == null) {
+            LOG.debug("Suspending reads until the backlog is collected.");
+            readSuspended = true;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        if (directBuffers) {
+            return ByteBuffer.allocateDirect(capacity);
+        } else {
+            return ByteBuffer.allocate(capacity);
+        }
+    }
+
+    private void deliver(Object item) {
+        PacketListener currentListener = listener;
+        if (currentListener != null && inbound.isEmpty()) {
+            dispatch(currentListener, item);
+        } else {
+            inbound.add(item);
+            if (currentListener != null) {
+                drainBacklog();
+            }
+        }
+    }
+
+    private void drainBacklog() {
+        PacketListener currentListener;
+        while ((currentListener = listener) != null) {
+            Object item = inbound.poll();
+            if (item == null) {
+                break;
+            }
+            dispatch(currentListener, item);
+        }
+    }
+
+    private void dispatch(PacketListener target, Object item) {
+        if (item instanceof SMPPPacket) {
+            target.packetReceived(this, (SMPPPacket) item);
+        } else {
+            target.linkError(this, (Exception) item);
+        }
+    }
+
+    private void linkClosed(IOException reason) {
+        synchronized (writeLock) {
+            writeQueue.clear();
+            pendingBytes = 0L;
+            writeLock.notifyAll();
+        }
+        NioEventLoop currentLoop = loop;
+        if (currentLoop == null || currentLoop.inEventLoop()) {
+            deliver(reason);
+        } else {
+            final IOException error = reason;
+            currentLoop.execute(new Runnable() {
+                public void run() {
+                    deliver(error);
+                }
+            });
+        }
+    }
+
+    private void queueWrite(ByteBuffer buffer) throws IOException {
+        boolean queued = false;
+        try {
+            synchronized (writeLock) {
+                // Only the loop thread drains the queue, so it must never
+                // wait for room. Handlers that answer requests on the loop
+                // thread queue past the limit instead.
+                if (!inEventLoop()) {
+                    while (pendingBytes >= maxPendingBytes) {
+                        waitForWriter();
+                    }
+                }
+                SocketChannel current = channel;
+                if (current == null) {
+                    throw new IOException(LINK_CLOSED_ERR);
+                }
+                if (writeQueue.isEmpty()) {
+                    current.write(buffer);
+                    if (!buffer.hasRemaining()) {
+                        return;
+                    }
+                }
+                writeQueue.add(buffer);
+                queued = true;
+                pendingBytes += buffer.remaining();
+                if (writeQueue.size() == 1) {
+                    loop.execute(enableWriteTask);
+                }
+            }
+        } finally {
+            if (!queued) {
+                FrameEncoder.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Write as much of the queue as the socket will take, using a single
+     * gathering write. Called on the I/O thread.
+     */
+    private void writeQueued() throws IOException {
+        synchronized (writeLock) {
+            if (!writeQueue.isEmpty()) {
+                ByteBuffer[] buffers =
+                    writeQueue.toArray(new ByteBuffer[writeQueue.size()]);
+                pendingBytes -= ((SocketChannel) key.channel()).write(buffers);
+                while (!writeQueue.isEmpty() && !writeQueue.getFirst().hasRemaining()) {
+                    FrameEncoder.release(writeQueue.removeFirst());
+                }
+            }
+            if (writeQueue.isEmpty()) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            }
+            writeLock.notifyAll();
+        }
+    }
+
+    private boolean inEventLoop() {
+        NioEventLoop currentLoop = loop;
+        return currentLoop != null && currentLoop.inEventLoop();
+    }
+
+    /**
+     * Wait for the I/O thread to make progress on the write queue. Must
+     * be called holding the write lock.
+     */
+    private void waitForWriter() throws IOException {
+        if (channel == null) {
+            throw new IOException(LINK_CLOSED_ERR);
+        }
+        try {
+            writeLock.wait(1000L);
+        } catch (InterruptedException x) {
+            throw new InterruptedIOException("Interrupted waiting to write");
+        }
+    }
+
+    private void closeQuietly(SocketChannel toClose) {
+        try {
+            toClose.close();
+        } catch (IOException x) {
+            LOG.debug("Exception closing a channel quietly", x);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+
+/**
+ * Receives packets pushed up from a link that reads on its own threads,
+ * such as {@link NioLink}. Methods are called on the link&apos;s I/O thread
+ * and, for any one link, never concurrently.
+ */
+public interface PacketListener {
+    /**
+     * A packet has been read from the link.
+     * @param link The link the packet was read from.
+     * @param packet The decoded packet.
+     */
+    void packetReceived(SmscLink link, SMPPPacket packet);
+
+    /**
+     * No data has been read from the link for the link&apos;s configured
+     * timeout period.
+     * @param link The link that timed out.
+     */
+    void readTimeout(SmscLink link);
+
+    /**
+     * An error occurred reading from, or decoding a packet from, the link.
+     * @param link The link the error occurred on.
+     * @param error The exception. An <code>IOException</code> means the
+     * link has been closed.
+     */
+    void linkError(SmscLink link, Exception error);
+}
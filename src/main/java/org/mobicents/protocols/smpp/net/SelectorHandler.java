@@ -0,0 +1,52 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Callback interface for objects that own a channel registered with an
+ * {@link NioEventLoop}. All methods are called on the event loop's own
+ * thread, so implementations must never block.
+ */
+public interface SelectorHandler {
+    /**
+     * Called once the channel has been registered with the loop's selector.
+     * @param key The selection key for the channel.
+     */
+    void registered(SelectionKey key);
+
+    /**
+     * Called when the channel is ready for one or more of the operations
+     * in its interest set.
+     * @param key The selection key for the channel.
+     */
+    void ready(SelectionKey key);
+
+    /**
+     * Called periodically by the event loop, regardless of channel
+     * activity. Handlers use this to implement their timeouts.
+     * @param now The current value of {@link System#currentTimeMillis()}.
+     */
+    void tick(long now);
+}
@@ -22,7 +22,6 @@
 
 package org.mobicents.protocols.smpp.net;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -248,13 +247,14 @@ public class TcpLink extends AbstractStreamLink {
             sock.setSoTimeout(sockTimeout);
         }
         
-        setInputStream(new BufferedInputStream(sock.getInputStream()));
+        setInputStream(sock.getInputStream());
         setOutputStream(new BufferedOutputStream(sock.getOutputStream()));
     }
 
     public void disconnect() throws java.io.IOException {
         if (isConnected()) {
             LOG.info("Shutting down socket connection");
+            shutdownWriter();
             sock.close();
             sock = null;
         }
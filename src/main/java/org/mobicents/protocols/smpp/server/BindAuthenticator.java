@@ -0,0 +1,46 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.server;
+
+import org.mobicents.protocols.smpp.Session;
+import org.mobicents.protocols.smpp.message.Bind;
+
+/**
+ * Decides whether an ESME may bind to an {@link SmscServer}. Implementations
+ * are called on an I/O thread, so they should not block for long; an
+ * authenticator that needs to consult a remote store should cache.
+ */
+public interface BindAuthenticator {
+    /**
+     * Check a bind request.
+     * @param session The session the bind was received on.
+     * @param bindRequest The bind request. The session type can be
+     * determined from its command ID.
+     * @return The command status to return in the bind response:
+     * {@link org.mobicents.protocols.smpp.util.PacketStatus#OK} to accept
+     * the bind, or an error status such as
+     * {@link org.mobicents.protocols.smpp.util.PacketStatus#INVALID_PASSWORD}
+     * to reject it.
+     */
+    int authenticate(Session session, Bind bindRequest);
+}
@@ -0,0 +1,54 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.server;
+
+import org.mobicents.protocols.smpp.Session;
+import org.mobicents.protocols.smpp.message.Bind;
+
+/**
+ * Notified of the life cycle of the sessions accepted by an
+ * {@link SmscServer}. Methods are called on an I/O thread and must not
+ * block.
+ */
+public interface ServerSessionListener {
+    /**
+     * A connection has been accepted. Called before the session starts
+     * receiving, so this is the place to add observers to it.
+     * @param session The new session.
+     */
+    void sessionAccepted(Session session);
+
+    /**
+     * The ESME on a session has bound successfully.
+     * @param session The bound session.
+     * @param bindRequest The accepted bind request.
+     */
+    void sessionBound(Session session, Bind bindRequest);
+
+    /**
+     * A session has ended, either because the ESME unbound, the link
+     * failed or the server was stopped. Its link has been closed.
+     * @param session The closed session.
+     */
+    void sessionClosed(Session session);
+}
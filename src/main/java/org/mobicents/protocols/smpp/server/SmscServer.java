@@ -0,0 +1,407 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mobicents.protocols.smpp.BadCommandIDException;
+import org.mobicents.protocols.smpp.Session;
+import org.mobicents.protocols.smpp.SessionState;
+import org.mobicents.protocols.smpp.SessionType;
+import org.mobicents.protocols.smpp.event.PacketFilter;
+import org.mobicents.protocols.smpp.event.SMPPEvent;
+import org.mobicents.protocols.smpp.event.SessionObserver;
+import org.mobicents.protocols.smpp.message.Bind;
+import org.mobicents.protocols.smpp.message.BindResp;
+import org.mobicents.protocols.smpp.message.CommandId;
+import org.mobicents.protocols.smpp.message.GenericNack;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.net.NioEventLoopGroup;
+import org.mobicents.protocols.smpp.net.NioLink;
+import org.mobicents.protocols.smpp.net.SelectorHandler;
+import org.mobicents.protocols.smpp.util.PacketFactory;
+import org.mobicents.protocols.smpp.util.PacketStatus;
+
+/**
+ * Accepts inbound ESME connections and services each one as the SMSC side
+ * of a {@link Session}. Both the listening socket and every accepted
+ * connection are handled by the loops of a {@link NioEventLoopGroup}, so a
+ * handful of threads can hold many thousands of binds.
+ * <p>
+ * The server answers bind requests itself, using a {@link BindAuthenticator}
+ * to decide the response status. A rejected bind is answered and the
+ * connection closed. The server also answers <code>enquire_link</code> and
+ * <code>unbind</code> requests, and rejects any other request that arrives
+ * before the bind, or that the ESME&apos;s bind type does not allow, with
+ * <code>ESME_RINVBNDSTS</code>. Rejected requests are not passed on to
+ * the session&apos;s observers; all other packets are, and the remaining
+ * requests are left to them to answer. Observers are added from
+ * {@link ServerSessionListener#sessionAccepted(Session)}.
+ * </p>
+ * <p>
+ * The server does its own part of the protocol in a {@link PacketFilter},
+ * on the I/O thread before any observer sees the packet. Its responses are
+ * queued on the link without waiting for the socket to drain, so a slow
+ * ESME never holds up the other connections on the same loop.
+ * </p>
+ * <p>
+ * Observers are called on the I/O threads by default. Observers that may
+ * block should be used with an event dispatcher that hands events off to
+ * other threads, as described for {@link NioLink}.
+ * </p>
+ */
+public class SmscServer implements SelectorHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(SmscServer.class);
+    private static final int DEFAULT_BACKLOG = 1024;
+
+    private final InetSocketAddress address;
+    private final BindAuthenticator authenticator;
+    private final NioEventLoopGroup group;
+    private final ConcurrentMap<String, Session> sessions =
+        new ConcurrentHashMap<String, Session>();
+    private final ProtocolHandler protocolHandler = new ProtocolHandler();
+    private final PacketFactory packetFactory = new PacketFactory();
+    private volatile ServerSessionListener listener;
+    private volatile ServerSocketChannel serverChannel;
+    private String systemId = "SMSC";
+    private int backlog = DEFAULT_BACKLOG;
+
+    /**
+     * Create a server listening on all interfaces, using the default event
+     * loop group.
+     * @param port The port to listen on. Zero picks a free port.
+     * @param authenticator Decides which binds are accepted.
+     */
+    public SmscServer(int port, BindAuthenticator authenticator) {
+        this(new InetSocketAddress(port), authenticator, NioEventLoopGroup.getDefault());
+    }
+
+    /**
+     * Create a new server.
+     * @param address The address to listen on.
+     * @param authenticator Decides which binds are accepted.
+     * @param group The event loops to service the listening socket and the
+     * accepted connections from.
+     */
+    public SmscServer(InetSocketAddress address,
+            BindAuthenticator authenticator,
+            NioEventLoopGroup group) {
+        this.address = address;
+        this.authenticator = authenticator;
+        this.group = group;
+    }
+
+    public ServerSessionListener getListener() {
+        return listener;
+    }
+
+    public void setListener(ServerSessionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Get the system ID returned to ESMEs in bind responses.
+     * @return The SMSC system ID.
+     */
+    public String getSystemId() {
+        return systemId;
+    }
+
+    /**
+     * Set the system ID returned to ESMEs in bind responses.
+     * @param systemId The SMSC system ID.
+     */
+    public void setSystemId(String systemId) {
+        this.systemId = systemId;
+    }
+
+    /**
+     * Set the maximum number of connections the operating system queues
+     * before they are accepted. Only takes effect if set before
+     * {@link #start()}.
+     * @param backlog The accept backlog.
+     */
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * Start listening for connections.
+     * @throws IOException If the listening socket cannot be opened.
+     */
+    public synchronized void start() throws IOException {
+        if (serverChannel != null) {
+            throw new IllegalStateException("Server is already running");
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setReuseAddress(true);
+            channel.socket().bind(address, backlog);
+        } catch (IOException x) {
+            channel.close();
+            throw x;
+        }
+        LOG.info("SMSC server listening on {}", channel.socket().getLocalSocketAddress());
+        serverChannel = channel;
+        group.next().register(channel, SelectionKey.OP_ACCEPT, this);
+    }
+
+    /**
+     * Stop listening and close every session the server has accepted.
+     */
+    public synchronized void stop() {
+        ServerSocketChannel channel = serverChannel;
+        if (channel == null) {
+            return;
+        }
+        serverChannel = null;
+        try {
+            channel.close();
+        } catch (IOException x) {
+            LOG.debug("Error closing the server socket", x);
+        }
+        for (Session session : sessions.values()) {
+            close(session);
+        }
+    }
+
+    /**
+     * Determine if the server is listening for connections.
+     */
+    public boolean isRunning() {
+        return serverChannel != null;
+    }
+
+    /**
+     * Get the port the server is listening on.
+     * @return The local port, or -1 if the server is not running.
+     */
+    public int getLocalPort() {
+        ServerSocketChannel channel = serverChannel;
+        return channel != null ? channel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Get the sessions that are currently open.
+     * @return A snapshot of the open sessions.
+     */
+    public List<Session> getSessions() {
+        return new ArrayList<Session>(sessions.values());
+    }
+
+    /**
+     * Get the number of sessions that are currently open.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    public void registered(SelectionKey key) {
+    }
+
+    public void ready(SelectionKey key) {
+        if (!key.isValid() || !key.isAcceptable()) {
+            return;
+        }
+        ServerSocketChannel channel = (ServerSocketChannel) key.channel();
+        while (true) {
+            SocketChannel accepted;
+            try {
+                accepted = channel.accept();
+            } catch (IOException x) {
+                LOG.warn("Error accepting a connection", x);
+                return;
+            }
+            if (accepted == null) {
+                return;
+            }
+            sessionAccepted(accepted);
+        }
+    }
+
+    public void tick(long now) {
+    }
+
+    private void sessionAccepted(SocketChannel channel) {
+        Session session = null;
+        try {
+            channel.socket().setTcpNoDelay(true);
+            session = new Session(new NioLink(channel, group));
+            session.setPacketFilter(protocolHandler);
+            session.addObserver(protocolHandler);
+            sessions.put(session.getSessionId(), session);
+            LOG.debug("Accepted {} from {}", session.getSessionId(),
+                    channel.socket().getRemoteSocketAddress());
+            ServerSessionListener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.sessionAccepted(session);
+            }
+            session.accept();
+        } catch (Exception x) {
+            LOG.warn("Could not set up an accepted connection", x);
+            if (session != null) {
+                close(session);
+            } else {
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+            }
+        }
+    }
+
+    private void close(Session session) {
+        try {
+            session.getSmscLink().disconnect();
+        } catch (IOException x) {
+            LOG.debug("Error closing " + session.getSessionId(), x);
+        }
+    }
+
+    private void sessionClosed(Session session) {
+        if (sessions.remove(session.getSessionId()) != null) {
+            close(session);
+            ServerSessionListener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.sessionClosed(session);
+            }
+        }
+    }
+
+    private void bindReceived(Session session, Bind bindRequest) throws IOException {
+        int status;
+        if (session.getState() != SessionState.BINDING) {
+            status = PacketStatus.ALREADY_BOUND;
+        } else {
+            try {
+                status = authenticator.authenticate(session, bindRequest);
+            } catch (RuntimeException x) {
+                LOG.error("Bind authenticator failed", x);
+                status = PacketStatus.BIND_FAILED;
+            }
+        }
+        BindResp response = (BindResp) packetFactory.newResponse(bindRequest);
+        response.setCommandStatus(status);
+        response.setSystemId(systemId);
+        if (status == PacketStatus.OK && bindRequest.getVersion().isSupportTLV()) {
+            response.setTLV(Tag.SC_INTERFACE_VERSION,
+                    Integer.valueOf(session.getVersion().getVersionID()));
+        }
+        session.sendPacket(response);
+        if (status == PacketStatus.OK) {
+            ServerSessionListener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.sessionBound(session, bindRequest);
+            }
+        } else if (session.getState() == SessionState.BINDING) {
+            LOG.info("Rejected bind from {} with status {}",
+                    bindRequest.getSystemId(), Integer.valueOf(status));
+            close(session);
+        }
+    }
+
+    private boolean isAllowed(Session session, int commandId) {
+        switch (commandId) {
+        case CommandId.ENQUIRE_LINK:
+        case CommandId.UNBIND:
+        case CommandId.GENERIC_NACK:
+            return true;
+        default:
+        }
+        if (session.getState() != SessionState.BOUND) {
+            return false;
+        }
+        return session.getSessionType() != SessionType.RECEIVER;
+    }
+
+    private void rejectRequest(Session session, SMPPPacket request) throws IOException {
+        SMPPPacket response;
+        try {
+            response = packetFactory.newResponse(request);
+        } catch (BadCommandIDException x) {
+            response = new GenericNack(request);
+        }
+        response.setCommandStatus(PacketStatus.INVALID_BIND_STATUS);
+        session.sendPacket(response);
+    }
+
+    /**
+     * Handles the parts of the protocol the server takes care of for every
+     * session. Requests are handled as a packet filter so the server has
+     * answered them before, and instead of, the session&apos;s observers
+     * where appropriate.
+     */
+    private class ProtocolHandler implements PacketFilter, SessionObserver {
+        public boolean accept(Session source, SMPPPacket packet) {
+            if (!packet.isRequest()) {
+                return true;
+            }
+            try {
+                int commandId = packet.getCommandId();
+                switch (commandId) {
+                case CommandId.BIND_TRANSMITTER:
+                case CommandId.BIND_RECEIVER:
+                case CommandId.BIND_TRANSCEIVER:
+                    bindReceived(source, (Bind) packet);
+                    return true;
+                case CommandId.ENQUIRE_LINK:
+                case CommandId.UNBIND:
+                    source.sendPacket(packetFactory.newResponse(packet));
+                    return true;
+                default:
+                }
+                if (!isAllowed(source, commandId)) {
+                    rejectRequest(source, packet);
+                    return false;
+                }
+            } catch (IOException x) {
+                LOG.debug("Error answering " + source.getSessionId(), x);
+                close(source);
+                return false;
+            }
+            return true;
+        }
+
+        public void packetReceived(Session source, SMPPPacket packet) {
+        }
+
+        public void update(Session source, SMPPEvent event) {
+            if (event.getType() == SMPPEvent.RECEIVER_EXIT) {
+                sessionClosed(source);
+            }
+        }
+    }
+}
@@ -114,6 +114,91 @@ package org.mobicents.protocols.smpp.util;
  * </tr>
  * 
  * <tr>
+ * <td><code>smppapi.net.nio.io_threads</code></td>
+ * <td>Integer</td>
+ * <td>The number of I/O threads in the shared event loop group used by
+ * {@link org.mobicents.protocols.smpp.net.NioLink}. Defaults to the number
+ * of available processors, up to a maximum of 4.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.direct_buffers</code></td>
+ * <td>Boolean</td>
+ * <td>If true, links that read from a <code>SocketChannel</code>, such as
+ * {@link org.mobicents.protocols.smpp.net.NioLink}, use a direct
+ * <code>ByteBuffer</code> for incoming data. Defaults to false.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.lazy_decode</code></td>
+ * <td>Boolean</td>
+ * <td>If true, links read message packets such as <code>submit_sm</code>,
+ * <code>deliver_sm</code>, <code>data_sm</code> and their responses
+ * lazily: only the header is decoded when the packet is read, the rest
+ * being decoded on first access. An unmodified packet re-encodes from its
+ * original bytes. Defaults to false.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.cstring_cache.size</code></td>
+ * <td>Integer</td>
+ * <td>If greater than zero, each link looks up the C-strings it decodes
+ * in a {@link org.mobicents.protocols.smpp.util.CStringCache} with this
+ * many slots, so that repeated values such as service types and short
+ * codes share one <code>String</code> instance. Defaults to 0, which
+ * disables the cache.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.max_command_length</code></td>
+ * <td>Integer</td>
+ * <td>The largest <code>command_length</code> a link accepts from the
+ * SMSC. A larger value is treated as a framing error and the link is
+ * closed. Defaults to 131072.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.async_write</code></td>
+ * <td>Boolean</td>
+ * <td>If true, stream-based links such as <code>TcpLink</code> encode
+ * packets on the sending thread and hand them to a dedicated writer thread,
+ * which flushes the output stream itself. The <code>autoflush</code>
+ * setting is ignored for such links. Defaults to false.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.async_write.flush_bytes</code></td>
+ * <td>Integer</td>
+ * <td>The writer thread flushes once this many bytes have been written
+ * since the last flush, even if more packets are queued. Defaults to
+ * 8192.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.net.async_write.flush_delay</code></td>
+ * <td>Long</td>
+ * <td>The writer thread flushes once the oldest unflushed packet has been
+ * waiting this many milliseconds, even if more packets are queued. The
+ * writer always flushes as soon as its queue is empty. Defaults to 1.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.timer.tick_duration</code></td>
+ * <td>Long</td>
+ * <td>The tick, in milliseconds, of the shared
+ * {@link org.mobicents.protocols.smpp.util.HashedWheelTimer} that runs
+ * response timeouts, bind timeouts and periodic session tasks. Timeouts fire
+ * up to one tick late. Defaults to 10.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.timer.ticks_per_wheel</code></td>
+ * <td>Integer</td>
+ * <td>The number of buckets in the shared timer&apos;s wheel. Defaults to
+ * 512.</td>
+ * </tr>
+ * 
+ * <tr>
  * <td><code>smppapi.connection.bind_timeout</code></td>
  * <td>Long</td>
  * <td>The length of time, in milliseconds, to wait for a bind response packet
@@ -130,6 +215,55 @@ package org.mobicents.protocols.smpp.util;
  * </tr>
  * 
  * <tr>
+ * <td><code>smppapi.connection.window_size</code></td>
+ * <td>Integer</td>
+ * <td>The maximum number of requests sent with
+ * {@link org.mobicents.protocols.smpp.Session#sendRequest} that may be
+ * awaiting a response at once. Defaults to 100.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.connection.window_block</code></td>
+ * <td>Boolean</td>
+ * <td>If true (the default), sending a request when the window is full
+ * waits for a slot to free up. If false, it fails immediately with a
+ * {@link org.mobicents.protocols.smpp.WindowFullException}.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.connection.request_timeout</code></td>
+ * <td>Long</td>
+ * <td>The length of time, in milliseconds, to wait for the response to a
+ * request sent with {@link org.mobicents.protocols.smpp.Session#sendRequest}
+ * before failing it. A blocked sender also waits no longer than this for a
+ * window slot. Zero means wait indefinitely. Defaults to 60000.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.connection.enquire_link.interval</code></td>
+ * <td>Long</td>
+ * <td>If nothing has been received from the SMSC for this many
+ * milliseconds, a bound session sends an <code>enquire_link</code> to check
+ * the link. Zero (the default) disables the keepalive.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.connection.enquire_link.timeout</code></td>
+ * <td>Long</td>
+ * <td>The time, in milliseconds, to wait for an
+ * <code>enquire_link_resp</code> before the probe counts as missed. Defaults
+ * to the keepalive interval.</td>
+ * </tr>
+ * 
+ * <tr>
+ * <td><code>smppapi.connection.enquire_link.max_missed</code></td>
+ * <td>Integer</td>
+ * <td>After this many consecutive unanswered probes the link is declared
+ * dead and a {@link org.mobicents.protocols.smpp.event.LinkDeadEvent} is sent
+ * to the session&apos;s observers. Defaults to 3.</td>
+ * </tr>
+ * 
+ * <tr>
  * <td><code>smppapi.event.dispatcher</code></td>
  * <td>String</td>
  * <td>The name of a class, which implements
@@ -196,6 +330,46 @@ public interface APIConfig {
      */
     String LINK_TIMEOUT = "smppapi.net.link_timeout";
 
+    /**
+     * @see APIConfig
+     */
+    String NIO_IO_THREADS = "smppapi.net.nio.io_threads";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_DIRECT_BUFFERS = "smppapi.net.direct_buffers";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_LAZY_DECODE = "smppapi.net.lazy_decode";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_CSTRING_CACHE_SIZE = "smppapi.net.cstring_cache.size";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_MAX_COMMAND_LENGTH = "smppapi.net.max_command_length";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_ASYNC_WRITE = "smppapi.net.async_write";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_FLUSH_BYTES = "smppapi.net.async_write.flush_bytes";
+
+    /**
+     * @see APIConfig
+     */
+    String LINK_FLUSH_DELAY = "smppapi.net.async_write.flush_delay";
+
     /**
      * @see APIConfig
      */
@@ -217,6 +391,46 @@ public interface APIConfig {
      */
     String BIND_TIMEOUT ="smppapi.connection.bind_timeout";
 
+    /**
+     * @see APIConfig
+     */
+    String WINDOW_SIZE = "smppapi.connection.window_size";
+
+    /**
+     * @see APIConfig
+     */
+    String WINDOW_BLOCK = "smppapi.connection.window_block";
+
+    /**
+     * @see APIConfig
+     */
+    String REQUEST_TIMEOUT = "smppapi.connection.request_timeout";
+
+    /**
+     * @see APIConfig
+     */
+    String TIMER_TICK_DURATION = "smppapi.timer.tick_duration";
+
+    /**
+     * @see APIConfig
+     */
+    String ENQUIRE_LINK_INTERVAL = "smppapi.connection.enquire_link.interval";
+
+    /**
+     * @see APIConfig
+     */
+    String ENQUIRE_LINK_TIMEOUT = "smppapi.connection.enquire_link.timeout";
+
+    /**
+     * @see APIConfig
+     */
+    String ENQUIRE_LINK_MAX_MISSED = "smppapi.connection.enquire_link.max_missed";
+
+    /**
+     * @see APIConfig
+     */
+    String TIMER_TICKS_PER_WHEEL = "smppapi.timer.ticks_per_wheel";
+
     /**
      * @see APIConfig
      */
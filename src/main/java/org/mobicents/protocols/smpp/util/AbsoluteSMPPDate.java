@@ -22,20 +22,42 @@
 
 package org.mobicents.protocols.smpp.util;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.SimpleTimeZone;
 import java.util.TimeZone;
 
 /**
  * Implementation of {@link org.mobicents.protocols.smpp.util.SMPPDate} that represents an
  * absolute time specification.
- * 
+ * <p>
+ * The date fields are computed arithmetically from the time in
+ * milliseconds since the epoch, truncated to the tenth of a second, and
+ * the UTC offset in quarter hours, so that no <code>Calendar</code> is
+ * needed to encode or decode a date. For dates without timezone
+ * information the time is the local wall-clock time treated as if it were
+ * UTC.
+ * </p>
+ * <p>
+ * A date created from a calendar keeps it, and {@link #getCalendar}
+ * returns that calendar, so changes made to it are seen by the date. A
+ * decoded date has no calendar until one is asked for, after which it
+ * follows that calendar in the same way.
+ * </p>
  * @version $Id: AbsoluteSMPPDate.java 463 2009-06-16 12:07:19Z orank $
  */
 class AbsoluteSMPPDate extends SMPPDate {
     private static final long serialVersionUID = 2L;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final int MILLIS_PER_QUARTER_HOUR = 900000;
     
     private Calendar calendar;
     private boolean hasTimeZone;
+    private transient long time;
+    private transient int offset;
     
     AbsoluteSMPPDate(Calendar calendar) {
         this(calendar, true);
@@ -45,37 +67,95 @@ class AbsoluteSMPPDate extends SMPPDate {
         this.calendar = calendar;
         this.hasTimeZone = withTimeZone;
     }
+
+    AbsoluteSMPPDate(long time, int offset, boolean withTimeZone) {
+        if (offset < -48 || offset > 48 || (!withTimeZone && offset != 0)) {
+            throw new IllegalArgumentException("Invalid UTC offset: " + offset);
+        }
+        this.time = truncate(time);
+        this.offset = offset;
+        this.hasTimeZone = withTimeZone;
+    }
     
+    /**
+     * Get the calendar this date is read from. Changes made to the
+     * calendar change this date.
+     */
     public Calendar getCalendar() {
+        if (calendar == null) {
+            Calendar newCalendar;
+            if (hasTimeZone) {
+                newCalendar = new GregorianCalendar(getTimeZone());
+                newCalendar.setTimeInMillis(time);
+            } else {
+                int millis = (int) millisOfDay();
+                newCalendar = new GregorianCalendar();
+                newCalendar.clear();
+                newCalendar.set(getYear(), getMonth() - 1, getDay(), millis / 3600000,
+                        (millis / 60000) % 60, (millis / 1000) % 60);
+                newCalendar.set(Calendar.MILLISECOND, millis % 1000);
+            }
+            calendar = newCalendar;
+        }
         return calendar;
     }
 
+    /**
+     * Get the time of this date in milliseconds since the epoch. For dates
+     * without timezone information this is the local time, as if it
+     * were UTC.
+     * @return The time in milliseconds since the epoch.
+     */
+    long getTime() {
+        sync();
+        return time;
+    }
+
+    /**
+     * Get the local wall-clock time of this date, in milliseconds since
+     * the epoch as if the local time were UTC.
+     * @return The local time in milliseconds.
+     */
+    long getLocalTime() {
+        sync();
+        return time + (long) offset * MILLIS_PER_QUARTER_HOUR;
+    }
+    
+    /**
+     * Get the signed UTC offset in quarter hours.
+     * @return The UTC offset in quarter hours, negative if behind UTC.
+     */
+    int getSignedUtcOffset() {
+        sync();
+        return offset;
+    }
+    
     public int getDay() {
-        return calendar.get(Calendar.DAY_OF_MONTH);
+        return civilFromDays(floorDiv(getLocalTime(), MILLIS_PER_DAY)) % 100;
     }
 
     public int getHour() {
-        return calendar.get(Calendar.HOUR_OF_DAY);
+        return (int) (millisOfDay() / 3600000);
     }
 
     public int getMinute() {
-        return calendar.get(Calendar.MINUTE);
+        return (int) (millisOfDay() / 60000) % 60;
     }
 
     public int getMonth() {
-        return calendar.get(Calendar.MONTH) + 1;
+        return (civilFromDays(floorDiv(getLocalTime(), MILLIS_PER_DAY)) / 100) % 100;
     }
 
     public int getSecond() {
-        return calendar.get(Calendar.SECOND);
+        return (int) (millisOfDay() / 1000) % 60;
     }
 
     public int getYear() {
-        return calendar.get(Calendar.YEAR);
+        return civilFromDays(floorDiv(getLocalTime(), MILLIS_PER_DAY)) / 10000;
     }
 
     public int getTenth() {
-        return calendar.get(Calendar.MILLISECOND) / 100;
+        return (int) (millisOfDay() / 100) % 10;
     }
     
     public boolean hasTimezone() {
@@ -87,37 +167,32 @@ class AbsoluteSMPPDate extends SMPPDate {
     }
 
     public TimeZone getTimeZone() {
-        if (hasTimeZone) {
-            return calendar.getTimeZone();
-        } else {
+        if (!hasTimeZone) {
             return null;
         }
+        if (calendar != null) {
+            return calendar.getTimeZone();
+        }
+        int hours = Math.abs(offset) / 4;
+        int minutes = (Math.abs(offset) % 4) * 15;
+        StringBuffer id = new StringBuffer(9).append("UTC").append(getSign());
+        appendTwoDigits(id, hours).append(':');
+        appendTwoDigits(id, minutes);
+        return new SimpleTimeZone(offset * MILLIS_PER_QUARTER_HOUR, id.toString());
     }
     
     public int getUtcOffset() {
-        if (hasTimeZone) {
-            TimeZone tz = calendar.getTimeZone();
-            int offset = Math.abs(tz.getOffset(System.currentTimeMillis()));
-            // Divide by 900k to get the number of 15 minute intervals in the
-            // offset.
-            return offset / 900000;
-        } else {
-            return 0;
-        }
+        return Math.abs(getSignedUtcOffset());
     }
     
     public char getSign() {
         char sign;
         if (!hasTimeZone) {
             sign = (char) 0;
+        } else if (getSignedUtcOffset() >= 0) {
+            sign = '+';
         } else {
-            TimeZone tz = calendar.getTimeZone();
-            int offset = tz.getOffset(System.currentTimeMillis());
-            if (offset >= 0) {
-                sign = '+';
-            } else {
-                sign = '-';
-            }
+            sign = '-';
         }
         return sign;
     }
@@ -133,39 +208,118 @@ class AbsoluteSMPPDate extends SMPPDate {
         }
         AbsoluteSMPPDate other = (AbsoluteSMPPDate) obj;
         return hasTimeZone == other.hasTimeZone
-            && compareCalendarFields(this.calendar, other.calendar);
+            && getTime() == other.getTime()
+            && getSignedUtcOffset() == other.getSignedUtcOffset();
     }
     
     public int hashCode() {
-        int hc1 = calendar.hashCode();
+        long t = getTime();
+        int hc1 = (int) (t ^ (t >>> 32)) * 31 + getSignedUtcOffset();
         return hc1 + (hasTimeZone ? 6203 : 7907);
     }
     
     public String toString() {
-        return new StringBuffer(calendar.toString()).append(" hasTz=")
-        .append(hasTimeZone).toString();
+        StringBuffer buf = new StringBuffer(32);
+        buf.append(getYear()).append('-');
+        appendTwoDigits(buf, getMonth()).append('-');
+        appendTwoDigits(buf, getDay()).append(' ');
+        appendTwoDigits(buf, getHour()).append(':');
+        appendTwoDigits(buf, getMinute()).append(':');
+        appendTwoDigits(buf, getSecond()).append('.').append(getTenth());
+        if (hasTimeZone) {
+            buf.append(" UTC").append(getSign()).append(getUtcOffset()).append("/4h");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Get the number of days since 1970-01-01 for a date in the
+     * proleptic Gregorian calendar.
+     * @param year The full year.
+     * @param month The month, 1 - 12.
+     * @param day The day of the month. Values beyond the end of the month
+     * roll over into the following month.
+     * @return The number of days since the epoch.
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Get the date for a number of days since 1970-01-01 in the
+     * proleptic Gregorian calendar.
+     * @param days The number of days since the epoch.
+     * @return The date packed as <code>year * 10000 + month * 100 + day</code>.
+     */
+    static int civilFromDays(long days) {
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+                - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day;
+    }
+
+    static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            q--;
+        }
+        return q;
+    }
+
+    private static long truncate(long time) {
+        return floorDiv(time, 100) * 100;
     }
     
-    private boolean compareCalendarFields(Calendar calendar1, Calendar calendar2) {
-        boolean equal = true;
-        equal &= compareField(calendar1, calendar2, Calendar.YEAR);
-        equal &= compareField(calendar1, calendar2, Calendar.MONTH);
-        equal &= compareField(calendar1, calendar2, Calendar.DAY_OF_MONTH);
-        equal &= compareField(calendar1, calendar2, Calendar.HOUR_OF_DAY);
-        equal &= compareField(calendar1, calendar2, Calendar.MINUTE);
-        equal &= compareField(calendar1, calendar2, Calendar.SECOND);
-        int tenth1 = calendar1.get(Calendar.MILLISECOND) / 100;
-        int tenth2 = calendar2.get(Calendar.MILLISECOND) / 100;
-        equal &= tenth1 == tenth2;
+    private static StringBuffer appendTwoDigits(StringBuffer buf, int value) {
+        return buf.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Bring the time and offset up to date with the calendar, if there is
+     * one.
+     */
+    private void sync() {
+        Calendar current = calendar;
+        if (current == null) {
+            return;
+        }
+        long millis = current.getTimeInMillis();
+        int zoneOffset = current.getTimeZone().getOffset(millis);
+        long localTime = millis + zoneOffset;
         if (hasTimeZone) {
-            int rawOffset1 = calendar1.getTimeZone().getRawOffset();
-            int rawOffset2 = calendar2.getTimeZone().getRawOffset();
-            equal &= rawOffset1 == rawOffset2;
+            // Keep the calendar's own fields even if its zone is not a
+            // whole number of quarter hours away from UTC.
+            offset = zoneOffset / MILLIS_PER_QUARTER_HOUR;
+            time = truncate(localTime - (long) offset * MILLIS_PER_QUARTER_HOUR);
+        } else {
+            offset = 0;
+            time = truncate(localTime);
         }
-        return equal;
     }
-    
-    private boolean compareField(Calendar calendar1, Calendar calendar2, int field) {
-        return calendar1.get(field) == calendar2.get(field);
+
+    /**
+     * Make sure a decoded date has a calendar before it is serialized, as
+     * only the calendar is written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        getCalendar();
+        out.defaultWriteObject();
+    }
+
+    private long millisOfDay() {
+        long local = getLocalTime();
+        return local - floorDiv(local, MILLIS_PER_DAY) * MILLIS_PER_DAY;
     }
 }
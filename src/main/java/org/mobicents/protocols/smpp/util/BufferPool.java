@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of heap byte buffers in power-of-two size classes. Buffers of
+ * up to {@link #MAX_POOLED_CAPACITY} bytes are pooled. Larger requests are
+ * simply allocated, and released buffers are discarded once their size
+ * class holds <code>maxPerClass</code> buffers. The pool is safe for use by
+ * multiple threads.
+ */
+public class BufferPool {
+    /**
+     * Capacity of the smallest buffer handed out by the pool.
+     */
+    public static final int MIN_CAPACITY = 256;
+
+    /**
+     * Capacity of the largest buffer the pool will hold on to.
+     */
+    public static final int MAX_POOLED_CAPACITY = 65536;
+
+    private static final int MIN_SHIFT = 8;
+    private static final BufferPool SHARED = new BufferPool(64);
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] free;
+    private final AtomicInteger[] counts;
+    private final int maxPerClass;
+
+    /**
+     * Create a new buffer pool.
+     * @param maxPerClass The maximum number of idle buffers to keep in each
+     * size class.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxPerClass) {
+        this.maxPerClass = maxPerClass;
+        int classes = sizeClass(MAX_POOLED_CAPACITY) + 1;
+        free = (ConcurrentLinkedQueue<ByteBuffer>[])
+            new ConcurrentLinkedQueue<?>[classes];
+        counts = new AtomicInteger[classes];
+        for (int i = 0; i < classes; i++) {
+            free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            counts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Get the pool shared by the API&apos;s own encoders.
+     * @return The shared buffer pool.
+     */
+    public static BufferPool getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Get a buffer with at least the requested capacity. The buffer is
+     * cleared, ready to be written to.
+     * @param minCapacity The minimum capacity required.
+     * @return A buffer.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > MAX_POOLED_CAPACITY) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        int sizeClass = sizeClass(minCapacity);
+        ByteBuffer buffer = free[sizeClass].poll();
+        if (buffer == null) {
+            return ByteBuffer.allocate(MIN_CAPACITY << sizeClass);
+        }
+        counts[sizeClass].decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. The caller must not use the buffer
+     * after releasing it.
+     * @param buffer The buffer to release. May be <code>null</code>.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() || buffer.isReadOnly()) {
+            return;
+        }
+        int capacity = buffer.capacity();
+        if (capacity < MIN_CAPACITY || capacity > MAX_POOLED_CAPACITY
+                || Integer.bitCount(capacity) != 1 || buffer.arrayOffset() != 0) {
+            return;
+        }
+        int sizeClass = sizeClass(capacity);
+        if (counts[sizeClass].incrementAndGet() <= maxPerClass) {
+            free[sizeClass].offer(buffer);
+        } else {
+            counts[sizeClass].decrementAndGet();
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        if (capacity <= MIN_CAPACITY) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT;
+    }
+}
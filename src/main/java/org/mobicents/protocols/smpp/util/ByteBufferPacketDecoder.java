@@ -0,0 +1,226 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.nio.ByteBuffer;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.ErrorAddress;
+import org.mobicents.protocols.smpp.message.SMPPProtocolException;
+
+/**
+ * Packet decoder that reads straight out of a <code>ByteBuffer</code>,
+ * which may be direct. The parse position is the buffer&apos;s own
+ * position and decoding never reads past the buffer&apos;s limit, so a
+ * link can decode a single PDU in place by setting the limit to the end
+ * of the PDU.
+ * <p>
+ * Strings are built from a scratch character array owned by the decoder
+ * rather than going through an intermediate byte array. Instances are
+ * therefore not thread safe; a link should own its decoder.
+ * </p>
+ * <p>
+ * As with {@link PacketDecoderImpl}, reading past the limit throws an
+ * <code>ArrayIndexOutOfBoundsException</code> and leaves the position
+ * where it was.
+ * </p>
+ */
+public class ByteBufferPacketDecoder implements PacketDecoder {
+    private static final char REPLACEMENT_CHAR = '\ufffd';
+
+    private ByteBuffer buffer;
+    private char[] chars = new char[64];
+    private final byte[] dateBytes = new byte[SMPPDateCodec.MAX_LENGTH];
+    private CStringCache cStringCache;
+
+    public ByteBufferPacketDecoder() {
+    }
+
+    public ByteBufferPacketDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Get the cache C-strings are looked up in.
+     * @return The cache, or <code>null</code> if there is none.
+     */
+    public CStringCache getCStringCache() {
+        return cStringCache;
+    }
+
+    /**
+     * Set a cache to look C-strings up in, so that repeated values are
+     * returned as the same string instance.
+     * @param cStringCache The cache to use, or <code>null</code> to
+     * decode every string afresh.
+     */
+    public void setCStringCache(CStringCache cStringCache) {
+        this.cStringCache = cStringCache;
+    }
+
+    public int getParsePosition() {
+        return buffer.position();
+    }
+
+    public void setParsePosition(int parsePosition) {
+        buffer.position(parsePosition);
+    }
+
+    public int getAvailableBytes() {
+        return buffer.remaining();
+    }
+
+    public byte readByte() {
+        checkAvailable(1);
+        return buffer.get();
+    }
+
+    public String readCString() {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = start;
+        while (end < limit && buffer.get(end) != 0) {
+            end++;
+        }
+        if (end == limit) {
+            throw new ArrayIndexOutOfBoundsException(limit);
+        }
+        String value;
+        if (cStringCache != null) {
+            value = cStringCache.get(buffer, start, end - start);
+        } else {
+            value = toString(start, end - start);
+        }
+        buffer.position(end + 1);
+        return value;
+    }
+
+    public String readString(int length) {
+        int start = buffer.position();
+        checkAvailable(length);
+        String value = toString(start, length);
+        buffer.position(start + length);
+        return value;
+    }
+
+    public int readUInt1() {
+        checkAvailable(1);
+        return buffer.get() & 0xff;
+    }
+
+    public int readUInt2() {
+        checkAvailable(2);
+        return buffer.getShort() & 0xffff;
+    }
+
+    public long readUInt4() {
+        checkAvailable(4);
+        return buffer.getInt() & 0xffffffffL;
+    }
+
+    public long readInt8() {
+        checkAvailable(8);
+        return buffer.getLong();
+    }
+
+    public Address readAddress() {
+        Address address = new Address();
+        address.readFrom(this);
+        return address;
+    }
+
+    public ErrorAddress readErrorAddress() {
+        ErrorAddress errorAddress = new ErrorAddress();
+        errorAddress.readFrom(this);
+        return errorAddress;
+    }
+
+    public SMPPDate readDate() {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = start;
+        while (end < limit && buffer.get(end) != 0) {
+            end++;
+        }
+        if (end == limit) {
+            throw new ArrayIndexOutOfBoundsException(limit);
+        }
+        buffer.position(end + 1);
+        if (end == start) {
+            return null;
+        }
+        try {
+            if (buffer.hasArray()) {
+                return SMPPDateCodec.parse(
+                        buffer.array(), buffer.arrayOffset() + start, end - start);
+            }
+            int length = Math.min(end - start, dateBytes.length);
+            for (int i = 0; i < length; i++) {
+                dateBytes[i] = buffer.get(start + i);
+            }
+            return SMPPDateCodec.parse(dateBytes, 0, length);
+        } catch (InvalidDateFormatException x) {
+            throw new SMPPProtocolException(
+                    "Cannot parse date value: " + x.getDateString(), x);
+        }
+    }
+
+    public byte[] readBytes(int length) {
+        checkAvailable(length);
+        byte[] copy = new byte[length];
+        buffer.get(copy);
+        return copy;
+    }
+
+    private void checkAvailable(int length) {
+        if (length > buffer.remaining()) {
+            throw new ArrayIndexOutOfBoundsException(buffer.position() + length);
+        }
+    }
+
+    /**
+     * Decode <code>length</code> bytes from <code>offset</code> as
+     * US-ASCII, without moving the buffer position.
+     */
+    private String toString(int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(offset + i);
+            chars[i] = b < 0 ? REPLACEMENT_CHAR : (char) b;
+        }
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.ErrorAddress;
+import org.mobicents.protocols.smpp.UnsupportedOperationException;
+
+/**
+ * Packet encoder that writes straight into a <code>ByteBuffer</code>.
+ * Integers are written with a single buffer operation and strings are
+ * written a character at a time, so nothing is allocated per field. If the
+ * buffer fills up, it is replaced by a larger one from the encoder&apos;s
+ * {@link BufferPool}. The old one is released back to the pool only if the
+ * encoder took it from the pool itself; buffers passed in by the caller
+ * remain the caller&apos;s.
+ * <p>
+ * Used with
+ * {@link org.mobicents.protocols.smpp.message.SMPPPacket#writeTo(ByteBufferPacketEncoder, boolean)},
+ * a whole PDU is encoded in one pass and its <code>command_length</code>
+ * is filled in afterwards, rather than being calculated up front.
+ * </p>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+public class ByteBufferPacketEncoder implements PacketEncoder {
+    private static final byte UNMAPPABLE = (byte) '?';
+
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    /** Whether <code>buffer</code> was taken from the pool by this encoder. */
+    private boolean pooled;
+    private OutputStream stream;
+    private final byte[] dateBytes = new byte[SMPPDateCodec.MAX_LENGTH];
+
+    /**
+     * Create an encoder that writes to buffers from the shared pool.
+     */
+    public ByteBufferPacketEncoder() {
+        this(BufferPool.getShared());
+    }
+
+    /**
+     * Create an encoder that writes to buffers from the given pool.
+     * @param pool The pool to get buffers from.
+     */
+    public ByteBufferPacketEncoder(BufferPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Create an encoder that writes to the given buffer. If the buffer
+     * fills up, a larger one is taken from the shared pool. The given
+     * buffer itself is never released to the pool.
+     * @param buffer The buffer to write to.
+     */
+    public ByteBufferPacketEncoder(ByteBuffer buffer) {
+        this(BufferPool.getShared());
+        this.buffer = buffer;
+    }
+
+    /**
+     * Get the buffer being written to. This may not be the buffer the
+     * encoder started with if it has had to grow.
+     * @return The current buffer.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Set the buffer to write to. The buffer is not released to the pool
+     * if the encoder outgrows it.
+     * @param buffer The buffer to write to.
+     */
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.pooled = false;
+    }
+
+    /**
+     * Take a buffer of at least <code>minCapacity</code> bytes from the
+     * pool and start writing to it.
+     * @param minCapacity The minimum capacity of the buffer.
+     * @return The new buffer.
+     */
+    public ByteBuffer acquireBuffer(int minCapacity) {
+        buffer = pool.acquire(minCapacity);
+        pooled = true;
+        return buffer;
+    }
+
+    /**
+     * Get the position of the next byte to be written.
+     * @return The buffer&apos;s current position.
+     */
+    public int getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * Overwrite a 4-byte integer at an absolute position in the buffer.
+     * @param position The position to write the integer at.
+     * @param value The value to write.
+     */
+    public void putInt4(int position, int value) {
+        buffer.putInt(position, value);
+    }
+
+    /**
+     * Not supported: this encoder writes to a buffer, not a stream.
+     * @throws UnsupportedOperationException always.
+     */
+    public PacketEncoder setStream(OutputStream out) {
+        throw new UnsupportedOperationException(
+                "ByteBufferPacketEncoder does not write to a stream");
+    }
+
+    /**
+     * Get an output stream that writes into this encoder&apos;s buffer.
+     * @return An output stream view of this encoder.
+     */
+    public OutputStream getStream() {
+        if (stream == null) {
+            stream = new OutputStream() {
+                public void write(int b) {
+                    ensureCapacity(1);
+                    buffer.put((byte) b);
+                }
+
+                public void write(byte[] b, int off, int len) {
+                    ensureCapacity(len);
+                    buffer.put(b, off, len);
+                }
+            };
+        }
+        return stream;
+    }
+
+    public PacketEncoder writeCString(String value) throws IOException {
+        if (value != null) {
+            int length = value.length();
+            ensureCapacity(length + 1);
+            putChars(value, length);
+        } else {
+            ensureCapacity(1);
+        }
+        buffer.put((byte) 0);
+        return this;
+    }
+
+    public PacketEncoder writeString(String value, int length) throws IOException {
+        if (length > value.length()) {
+            throw new IndexOutOfBoundsException(String.valueOf(length));
+        }
+        ensureCapacity(length);
+        putChars(value, length);
+        return this;
+    }
+
+    public PacketEncoder writeUInt1(int value) throws IOException {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+        return this;
+    }
+
+    public PacketEncoder writeUInt2(int value) throws IOException {
+        ensureCapacity(2);
+        buffer.putShort((short) value);
+        return this;
+    }
+
+    public PacketEncoder writeUInt4(long value) throws IOException {
+        ensureCapacity(4);
+        buffer.putInt((int) value);
+        return this;
+    }
+
+    public PacketEncoder writeInt4(int value) throws IOException {
+        ensureCapacity(4);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public PacketEncoder writeInt8(long value) throws IOException {
+        ensureCapacity(8);
+        buffer.putLong(value);
+        return this;
+    }
+
+    public PacketEncoder writeAddress(Address address) throws IOException {
+        if (address != null) {
+            address.writeTo(this);
+        } else {
+            new Address().writeTo(this);
+        }
+        return this;
+    }
+
+    public PacketEncoder writeErrorAddress(ErrorAddress errorAddress) throws IOException {
+        if (errorAddress != null) {
+            errorAddress.writeTo(this);
+        } else {
+            new ErrorAddress().writeTo(this);
+        }
+        return this;
+    }
+
+    public PacketEncoder writeDate(SMPPDate date) throws IOException {
+        ensureCapacity(SMPPDateCodec.MAX_LENGTH + 1);
+        int length = SMPPDateCodec.format(date, dateBytes, 0);
+        buffer.put(dateBytes, 0, length);
+        buffer.put((byte) 0);
+        return this;
+    }
+
+    public PacketEncoder writeBytes(byte[] bytes) throws IOException {
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    public PacketEncoder writeBytes(byte[] bytes, int offset, int length) throws IOException {
+        if (bytes != null) {
+            ensureCapacity(length);
+            buffer.put(bytes, offset, length);
+        } else {
+            if (length != 0) {
+                throw new IndexOutOfBoundsException(Integer.toString(offset));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write up to <code>byteCount</code> bytes of a string as US-ASCII.
+     * Characters outside of ASCII are written as '?', with a surrogate pair
+     * counting as one character, exactly as
+     * <code>String.getBytes(&quot;US-ASCII&quot;)</code> would.
+     */
+    private void putChars(String value, int byteCount) {
+        int length = value.length();
+        int written = 0;
+        for (int i = 0; i < length && written < byteCount; i++, written++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else {
+                if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    i++;
+                }
+                buffer.put(UNMAPPABLE);
+            }
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (buffer == null) {
+            acquireBuffer(Math.max(count, BufferPool.MIN_CAPACITY));
+        } else if (buffer.remaining() < count) {
+            int required = buffer.position() + count;
+            ByteBuffer larger = pool.acquire(Math.max(required, buffer.capacity() * 2));
+            buffer.flip();
+            larger.put(buffer);
+            if (pooled) {
+                pool.release(buffer);
+            }
+            buffer = larger;
+            pooled = true;
+        }
+    }
+}
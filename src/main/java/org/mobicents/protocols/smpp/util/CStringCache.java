@@ -0,0 +1,250 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of decoded strings, keyed on their encoded bytes.
+ * <p>
+ * Fields such as <code>service_type</code>, <code>system_id</code>,
+ * source addresses and message IDs often repeat from one packet to the
+ * next. A decoder with a cache hashes the raw bytes of each C-string it
+ * reads and, if a string with the same characters is in the cache,
+ * returns that instance instead of allocating a new one.
+ * </p>
+ * <p>
+ * The cache is a fixed-size, direct-mapped table: each string has a
+ * single slot, chosen by its hash, and a miss replaces whatever was
+ * there. Strings longer than the maximum length are never cached, so
+ * that message content and the like does not churn the table. Bytes are
+ * decoded as US-ASCII, with any byte outside that range decoded as the
+ * Unicode replacement character, as the decoders themselves do.
+ * </p>
+ * <p>
+ * A cache can be shared by several decoders and used from several
+ * threads at once. Concurrent misses on the same slot may both allocate
+ * a string, but lookups always return a correct string.
+ * </p>
+ */
+public class CStringCache {
+    /**
+     * Default number of slots in the cache.
+     */
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * Default maximum length of string that is cached.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 32;
+
+    private static final char REPLACEMENT_CHAR = '\ufffd';
+
+    private final String[] table;
+    private final int mask;
+    private final int maxLength;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache with the default size and maximum string length.
+     */
+    public CStringCache() {
+        this(DEFAULT_SIZE, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Create a new cache.
+     * @param size The number of slots in the cache. This is rounded up to
+     * a power of two.
+     * @param maxLength The length of the longest string to cache.
+     */
+    public CStringCache(int size, int maxLength) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this.table = new String[capacity];
+        this.mask = capacity - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Get the string for a range of a byte array.
+     * @param bytes The array holding the encoded string.
+     * @param offset The offset of the first byte of the string.
+     * @param length The number of bytes in the string, not including any
+     * terminating nul.
+     * @return The decoded string, which may be a cached instance.
+     */
+    public String get(byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (length > maxLength) {
+            return decode(bytes, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = spread(hash) & mask;
+        String cached = table[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == toChar(bytes[offset + i])) {
+                i++;
+            }
+            if (i == length) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        String value = decode(bytes, offset, length);
+        table[slot] = value;
+        return value;
+    }
+
+    /**
+     * Get the string for a range of a buffer. The buffer&apos;s position
+     * is not changed.
+     * @param buffer The buffer holding the encoded string.
+     * @param offset The absolute index of the first byte of the string.
+     * @param length The number of bytes in the string, not including any
+     * terminating nul.
+     * @return The decoded string, which may be a cached instance.
+     */
+    public String get(ByteBuffer buffer, int offset, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (length > maxLength) {
+            return decode(buffer, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int slot = spread(hash) & mask;
+        String cached = table[slot];
+        if (cached != null && cached.length() == length) {
+            int i = 0;
+            while (i < length && cached.charAt(i) == toChar(buffer.get(offset + i))) {
+                i++;
+            }
+            if (i == length) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        String value = decode(buffer, offset, length);
+        table[slot] = value;
+        return value;
+    }
+
+    /**
+     * Get the number of lookups that returned a cached string.
+     * @return The number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of cacheable lookups that had to decode a new
+     * string. Strings longer than the maximum length are not counted.
+     * @return The number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the proportion of cacheable lookups that returned a cached
+     * string.
+     * @return The hit rate, between 0 and 1, or 0 if there have been no
+     * lookups.
+     */
+    public double getHitRate() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return total > 0L ? (double) hitCount / total : 0.0;
+    }
+
+    /**
+     * Get the number of slots in the cache.
+     * @return The cache size.
+     */
+    public int getSize() {
+        return table.length;
+    }
+
+    /**
+     * Get the length of the longest string that is cached.
+     * @return The maximum cached string length.
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Empty the cache and reset the hit and miss counts.
+     */
+    public void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = null;
+        }
+        hits.set(0L);
+        misses.set(0L);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static char toChar(byte b) {
+        return b < 0 ? REPLACEMENT_CHAR : (char) b;
+    }
+
+    private static String decode(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = toChar(bytes[offset + i]);
+        }
+        return new String(chars);
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = toChar(buffer.get(offset + i));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A thread safe hash map from primitive <code>long</code> keys to objects.
+ * Keys are never boxed. The map is split into segments, each an
+ * open-addressing table with linear probing guarded by its own lock, so
+ * threads working on different keys rarely contend and every operation is
+ * O(1) on average. Null values are not supported.
+ */
+public class ConcurrentLongHashMap<V> {
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    /**
+     * Create a new map sized for about 256 entries.
+     */
+    public ConcurrentLongHashMap() {
+        this(256, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Create a new map.
+     * @param expectedSize The number of entries the map is expected to
+     * hold. The map grows beyond this if needed.
+     * @param concurrency The number of segments. Rounded up to a power of
+     * two.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongHashMap(int expectedSize, int concurrency) {
+        int segmentCount = powerOfTwo(Math.max(1, concurrency));
+        int perSegment = Math.max(MIN_SEGMENT_CAPACITY,
+                powerOfTwo(expectedSize * 2 / segmentCount));
+        segments = (Segment<V>[]) new Segment<?>[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<V>(perSegment);
+        }
+        segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * Get the value mapped to a key.
+     * @param key The key.
+     * @return The value, or <code>null</code> if the key is not mapped.
+     */
+    public V get(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Map a key to a value, replacing any existing mapping.
+     * @param key The key.
+     * @param value The value. Must not be <code>null</code>.
+     * @return The value previously mapped to the key, or <code>null</code>.
+     */
+    public V put(long key, V value) {
+        checkValue(value);
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value, false);
+    }
+
+    /**
+     * Map a key to a value if it is not already mapped.
+     * @param key The key.
+     * @param value The value. Must not be <code>null</code>.
+     * @return The existing value if the key was already mapped, in which
+     * case the map is unchanged, or <code>null</code> if the new mapping was
+     * added.
+     */
+    public V putIfAbsent(long key, V value) {
+        checkValue(value);
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value, true);
+    }
+
+    /**
+     * Remove the mapping for a key.
+     * @param key The key.
+     * @return The value that was mapped to the key, or <code>null</code>.
+     */
+    public V remove(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).remove(key, hash, null);
+    }
+
+    /**
+     * Remove the mapping for a key only if it is mapped to the given value.
+     * @param key The key.
+     * @param value The value the key must be mapped to.
+     * @return <code>true</code> if the mapping was removed.
+     */
+    public boolean remove(long key, V value) {
+        checkValue(value);
+        int hash = hash(key);
+        return segmentFor(hash).remove(key, hash, value) != null;
+    }
+
+    /**
+     * Get the number of mappings. This is only a snapshot if other threads
+     * are updating the map.
+     * @return The number of mappings.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < segments.length; i++) {
+            size += segments[i].count;
+        }
+        return size;
+    }
+
+    /**
+     * Determine if the map is empty.
+     * @return <code>true</code> if the map has no mappings.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < segments.length; i++) {
+            if (segments[i].count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a copy of the values in the map. Later changes to the map are
+     * not reflected in the list.
+     * @return A new list of the map&apos;s values.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(size());
+        for (int i = 0; i < segments.length; i++) {
+            segments[i].copyValues(values);
+        }
+        return values;
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[(hash >>> 16) & segmentMask];
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not supported");
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int powerOfTwo(int value) {
+        if (value <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * One open-addressing table. A slot is empty when its value is
+     * <code>null</code>. Removal shifts later entries of the same probe
+     * sequence back, so no tombstones are needed.
+     */
+    private static final class Segment<V> {
+        private long[] keys;
+        private Object[] values;
+        private int mask;
+        private volatile int count;
+
+        Segment(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, int hash) {
+            for (int i = hash & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return (V) values[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long key, int hash, V value, boolean onlyIfAbsent) {
+            int i = hash & mask;
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    V old = (V) values[i];
+                    if (!onlyIfAbsent) {
+                        values[i] = value;
+                    }
+                    return old;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            int newCount = count + 1;
+            count = newCount;
+            if (newCount * 4 >= values.length * 3) {
+                resize();
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, int hash, V expected) {
+            int i = hash & mask;
+            for (; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    break;
+                }
+            }
+            V old = (V) values[i];
+            if (old == null || (expected != null && old != expected)) {
+                return null;
+            }
+            values[i] = null;
+            count = count - 1;
+            // Shift back any entries that probed past the freed slot.
+            int free = i;
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = ConcurrentLongHashMap.hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - free) & mask)) {
+                    keys[free] = keys[j];
+                    values[free] = values[j];
+                    values[j] = null;
+                    free = j;
+                }
+            }
+            return old;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void copyValues(List<V> target) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    target.add((V) values[i]);
+                }
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    int j = ConcurrentLongHashMap.hash(oldKeys[i]) & mask;
+                    while (values[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+
+/**
+ * Splits a stream of bytes arriving in arbitrary chunks into SMPP
+ * frames. Chunks are pushed in as they arrive, for instance after each
+ * non-blocking read from a channel, and every frame they complete is
+ * decoded and handed on before the call returns. The decoder never
+ * blocks and never reads past what it has been given.
+ * <p>
+ * Complete frames are decoded straight out of the chunk. Only a frame
+ * that is split across chunks is copied, into a buffer the decoder keeps
+ * until the rest of the frame arrives.
+ * </p>
+ * <p>
+ * A <code>command_length</code> below 16 or above the configured maximum
+ * means the stream can no longer be framed, so it is reported by
+ * throwing an <code>IOException</code>. After that the decoder must be
+ * {@link #reset} or discarded. A frame that is framed correctly but
+ * cannot be decoded is reported to the {@link Handler} and decoding
+ * carries on with the next frame.
+ * </p>
+ * <p>
+ * Instances are not thread safe; each connection should own one.
+ * </p>
+ */
+public class FrameDecoder {
+    /**
+     * The default maximum <code>command_length</code>. This leaves room
+     * for the largest <code>message_payload</code> plus a full
+     * <code>submit_multi</code> destination list.
+     */
+    public static final int DEFAULT_MAX_COMMAND_LENGTH = 131072;
+
+    private static final int HEADER_LENGTH = 16;
+    private static final int MIN_PENDING_CAPACITY = 256;
+
+    /**
+     * Receives the packets decoded by a {@link FrameDecoder}. Both
+     * methods are called on the thread that pushed the chunk in.
+     */
+    public interface Handler {
+        /**
+         * Called with each packet decoded from a complete frame.
+         * @param packet The decoded packet.
+         */
+        void packetDecoded(SMPPPacket packet);
+
+        /**
+         * Called when a complete frame could not be decoded, for instance
+         * because its command ID is unknown. Decoding continues with the
+         * next frame.
+         * @param x The exception thrown while decoding the frame.
+         */
+        void decodeFailed(RuntimeException x);
+    }
+
+    private final ByteBufferPacketDecoder decoder = new ByteBufferPacketDecoder();
+    private PacketFactory packetFactory = new PacketFactory();
+    private int maxCommandLength;
+    private boolean lazyDecode;
+    private ByteBuffer pending;
+
+    /**
+     * Create a frame decoder that accepts frames of up to
+     * {@link #DEFAULT_MAX_COMMAND_LENGTH} bytes.
+     */
+    public FrameDecoder() {
+        this(DEFAULT_MAX_COMMAND_LENGTH);
+    }
+
+    /**
+     * Create a frame decoder.
+     * @param maxCommandLength The largest <code>command_length</code> to
+     * accept.
+     * @throws IllegalArgumentException If <code>maxCommandLength</code> is
+     * less than 16.
+     */
+    public FrameDecoder(int maxCommandLength) {
+        setMaxCommandLength(maxCommandLength);
+    }
+
+    public int getMaxCommandLength() {
+        return maxCommandLength;
+    }
+
+    /**
+     * Set the largest <code>command_length</code> to accept.
+     * @param maxCommandLength The largest <code>command_length</code> to
+     * accept.
+     * @throws IllegalArgumentException If <code>maxCommandLength</code> is
+     * less than 16.
+     */
+    public void setMaxCommandLength(int maxCommandLength) {
+        if (maxCommandLength < HEADER_LENGTH) {
+            throw new IllegalArgumentException(
+                    "Maximum command length must be at least " + HEADER_LENGTH);
+        }
+        this.maxCommandLength = maxCommandLength;
+    }
+
+    public PacketFactory getPacketFactory() {
+        return packetFactory;
+    }
+
+    public void setPacketFactory(PacketFactory packetFactory) {
+        this.packetFactory = packetFactory;
+    }
+
+    public boolean isLazyDecode() {
+        return lazyDecode;
+    }
+
+    /**
+     * Enable or disable lazy decoding. When enabled, packet types that
+     * support it are read with {@link SMPPPacket#readLazily}.
+     * @param lazyDecode <code>true</code> to enable lazy decoding.
+     */
+    public void setLazyDecode(boolean lazyDecode) {
+        this.lazyDecode = lazyDecode;
+    }
+
+    public CStringCache getCStringCache() {
+        return decoder.getCStringCache();
+    }
+
+    public void setCStringCache(CStringCache cStringCache) {
+        decoder.setCStringCache(cStringCache);
+    }
+
+    /**
+     * Get the number of bytes held back from previous chunks because they
+     * do not yet make up a complete frame.
+     * @return The number of buffered bytes.
+     */
+    public int getBufferedBytes() {
+        return pending != null ? pending.position() : 0;
+    }
+
+    /**
+     * Discard any partial frame, ready to decode a new stream.
+     */
+    public void reset() {
+        if (pending != null) {
+            pending.clear();
+        }
+    }
+
+    /**
+     * Decode every frame completed by a chunk of bytes. The chunk is
+     * consumed entirely; any trailing partial frame is kept until the
+     * next call.
+     * @param chunk The bytes that have arrived, between the buffer&apos;s
+     * position and limit.
+     * @param handler The handler to pass decoded packets to.
+     * @return The number of frames completed by this chunk.
+     * @throws IOException If a <code>command_length</code> is invalid.
+     */
+    public int decode(ByteBuffer chunk, Handler handler) throws IOException {
+        return process(chunk, handler, null);
+    }
+
+    /**
+     * Split a chunk of bytes into raw frames without decoding them. The
+     * chunk is consumed entirely; any trailing partial frame is kept until
+     * the next call.
+     * @param chunk The bytes that have arrived, between the buffer&apos;s
+     * position and limit.
+     * @param frames The list to add a copy of each completed frame to.
+     * @return The number of frames completed by this chunk.
+     * @throws IOException If a <code>command_length</code> is invalid.
+     */
+    public int decodeFrames(ByteBuffer chunk, List<byte[]> frames) throws IOException {
+        return process(chunk, null, frames);
+    }
+
+    private int process(ByteBuffer chunk, Handler handler, List<byte[]> frames)
+            throws IOException {
+        int count = 0;
+        if (getBufferedBytes() > 0) {
+            if (!completePending(chunk)) {
+                return 0;
+            }
+            pending.flip();
+            emit(pending, 0, pending.limit(), handler, frames);
+            pending.clear();
+            count++;
+        }
+        while (chunk.remaining() >= 4) {
+            int start = chunk.position();
+            int commandLen = checkLength(chunk.getInt(start));
+            if (chunk.remaining() < commandLen) {
+                break;
+            }
+            emit(chunk, start, commandLen, handler, frames);
+            chunk.position(start + commandLen);
+            count++;
+        }
+        if (chunk.hasRemaining()) {
+            ensurePending(Math.max(chunk.remaining(), MIN_PENDING_CAPACITY));
+            pending.put(chunk);
+        }
+        return count;
+    }
+
+    /**
+     * Move bytes from the chunk to the pending buffer until it holds a
+     * complete frame or the chunk is exhausted.
+     * @return <code>true</code> if the pending buffer holds a complete
+     * frame.
+     */
+    private boolean completePending(ByteBuffer chunk) throws IOException {
+        while (pending.position() < 4 && chunk.hasRemaining()) {
+            pending.put(chunk.get());
+        }
+        if (pending.position() < 4) {
+            return false;
+        }
+        int commandLen = checkLength(pending.getInt(0));
+        ensurePending(commandLen);
+        int count = Math.min(commandLen - pending.position(), chunk.remaining());
+        int limit = chunk.limit();
+        chunk.limit(chunk.position() + count);
+        pending.put(chunk);
+        chunk.limit(limit);
+        return pending.position() == commandLen;
+    }
+
+    private void ensurePending(int capacity) {
+        if (pending == null) {
+            pending = ByteBuffer.allocate(capacity);
+        } else if (pending.capacity() < capacity) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(
+                    Math.max(capacity, pending.capacity() * 2));
+            pending.flip();
+            newBuffer.put(pending);
+            pending = newBuffer;
+        }
+    }
+
+    private int checkLength(int commandLen) throws IOException {
+        if (commandLen < HEADER_LENGTH || commandLen > maxCommandLength) {
+            throw new IOException("Invalid command_length " + commandLen);
+        }
+        return commandLen;
+    }
+
+    /**
+     * Pass on the frame at <code>start</code> in <code>buffer</code>,
+     * leaving the buffer&apos;s position and limit as they were.
+     */
+    private void emit(ByteBuffer buffer,
+            int start,
+            int commandLen,
+            Handler handler,
+            List<byte[]> frames) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        if (frames != null) {
+            byte[] frame = new byte[commandLen];
+            buffer.position(start);
+            buffer.get(frame);
+            buffer.position(position);
+            frames.add(frame);
+            return;
+        }
+        SMPPPacket packet;
+        try {
+            buffer.limit(start + commandLen);
+            buffer.position(start);
+            packet = packetFactory.newInstance(buffer.getInt(start + 4));
+            if (lazyDecode && packet.isLazyDecodingSupported()) {
+                byte[] frame = new byte[commandLen];
+                buffer.get(frame);
+                packet.readLazily(frame);
+            } else {
+                decoder.setBuffer(buffer);
+                packet.readFrom(decoder);
+            }
+        } catch (RuntimeException x) {
+            handler.decodeFailed(x);
+            return;
+        } finally {
+            decoder.setBuffer(null);
+            buffer.limit(limit);
+            buffer.position(position);
+        }
+        handler.packetDecoded(packet);
+    }
+}
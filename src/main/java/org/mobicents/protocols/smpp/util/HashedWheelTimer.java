@@ -0,0 +1,396 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer that can handle a very large number of pending timeouts
+ * cheaply. Tasks are hashed into the buckets of a wheel by their
+ * deadline. A single thread advances the wheel one bucket per tick and
+ * runs the tasks in that bucket whose deadline has arrived. Scheduling
+ * and cancelling are O(1) and never block. The trade off is precision:
+ * tasks run up to one tick after their deadline.
+ * <p>
+ * Tasks run on the timer&apos;s own thread, so they must be short and
+ * must never block. Work that might block should be handed to another
+ * thread.
+ * </p>
+ * <p>
+ * The API uses one shared timer, returned by {@link #getShared()}, for
+ * response timeouts, bind timeouts and periodic session tasks. Its tick
+ * and wheel size are set by the <code>smppapi.timer.tick_duration</code>
+ * and <code>smppapi.timer.ticks_per_wheel</code> API properties.
+ * </p>
+ */
+public class HashedWheelTimer {
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /**
+     * Most new tasks moved onto the wheel per tick, so that a flood of
+     * new tasks cannot hold up the ones already due.
+     */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static final int WORKER_INIT = 0;
+    private static final int WORKER_STARTED = 1;
+    private static final int WORKER_STOPPED = 2;
+
+    private static HashedWheelTimer shared;
+
+    private final String name;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Entry> additions =
+        new ConcurrentLinkedQueue<Entry>();
+    private final ConcurrentLinkedQueue<Entry> cancellations =
+        new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger workerState = new AtomicInteger(WORKER_INIT);
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile Thread worker;
+    private long startTime;
+    private long tick;
+
+    /**
+     * Create a new timer. Its thread is started when the first task is
+     * scheduled.
+     * @param name The name of the timer thread.
+     * @param tickDuration The length of one tick.
+     * @param unit The unit of <code>tickDuration</code>.
+     * @param ticksPerWheel The number of buckets in the wheel. Rounded up
+     * to a power of two.
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0L) {
+            throw new IllegalArgumentException("tickDuration must be positive");
+        }
+        if (ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("ticksPerWheel must be positive");
+        }
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.name = name;
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get the timer shared by all sessions. It runs on a single daemon
+     * thread and is never stopped.
+     * @return The shared timer.
+     */
+    public static synchronized HashedWheelTimer getShared() {
+        if (shared == null) {
+            APIConfig config = APIConfigFactory.getConfig();
+            long tickDuration = config.getLong(APIConfig.TIMER_TICK_DURATION, 10L);
+            int ticksPerWheel = config.getInt(APIConfig.TIMER_TICKS_PER_WHEEL, 512);
+            shared = new HashedWheelTimer("SMPP-Timer",
+                    tickDuration, TimeUnit.MILLISECONDS, ticksPerWheel);
+        }
+        return shared;
+    }
+
+    /**
+     * Run a task once after a delay.
+     * @param task The task to run.
+     * @param delay The delay before the task runs.
+     * @param unit The unit of <code>delay</code>.
+     * @return A handle that can be used to cancel the task.
+     * @throws IllegalStateException If the timer has been stopped.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(task, delay, 0L, unit);
+    }
+
+    /**
+     * Run a task repeatedly. Each run is scheduled <code>period</code>
+     * after the deadline of the previous one, not after it finished.
+     * @param task The task to run.
+     * @param initialDelay The delay before the first run.
+     * @param period The time between runs.
+     * @param unit The unit of <code>initialDelay</code> and
+     * <code>period</code>.
+     * @return A handle that can be used to stop the task.
+     * @throws IllegalStateException If the timer has been stopped.
+     */
+    public Timeout scheduleAtFixedRate(Runnable task,
+            long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0L) {
+            throw new IllegalArgumentException("period must be positive");
+        }
+        return add(task, initialDelay, period, unit);
+    }
+
+    /**
+     * Get the number of tasks waiting to run.
+     * @return The number of pending tasks.
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stop the timer thread. Pending tasks are discarded.
+     */
+    public void stop() {
+        if (workerState.getAndSet(WORKER_STOPPED) == WORKER_STARTED) {
+            Thread thread = worker;
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.interrupt();
+                try {
+                    thread.join();
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private Timeout add(Runnable task, long delay, long period, TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException("task");
+        }
+        start();
+        Entry entry = new Entry(task, System.nanoTime() + unit.toNanos(Math.max(0L, delay)),
+                unit.toNanos(period));
+        pending.incrementAndGet();
+        additions.add(entry);
+        return entry;
+    }
+
+    private void start() {
+        switch (workerState.get()) {
+        case WORKER_INIT:
+            if (workerState.compareAndSet(WORKER_INIT, WORKER_STARTED)) {
+                startTime = System.nanoTime();
+                Thread thread = new Thread(new Worker(), name);
+                thread.setDaemon(true);
+                worker = thread;
+                thread.start();
+            }
+            break;
+        case WORKER_STARTED:
+            break;
+        default:
+            throw new org.mobicents.protocols.smpp.IllegalStateException(
+                    "Timer has been stopped");
+        }
+    }
+
+    private final class Worker implements Runnable {
+        public void run() {
+            LOG.debug("Timer thread starting.");
+            while (workerState.get() == WORKER_STARTED) {
+                long now = waitForNextTick();
+                if (now < 0L) {
+                    break;
+                }
+                processCancellations();
+                transferAdditions();
+                wheel[(int) (tick & mask)].expire(now);
+                tick++;
+            }
+            LOG.debug("Timer thread exiting.");
+        }
+
+        /**
+         * Sleep until the end of the current tick.
+         * @return The current time, or -1 if the timer was stopped.
+         */
+        private long waitForNextTick() {
+            long deadline = startTime + tickNanos * (tick + 1);
+            while (true) {
+                long now = System.nanoTime();
+                long sleepMillis = (deadline - now + 999999L) / 1000000L;
+                if (sleepMillis <= 0L) {
+                    return now;
+                }
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException x) {
+                    if (workerState.get() == WORKER_STOPPED) {
+                        return -1L;
+                    }
+                }
+            }
+        }
+
+        private void processCancellations() {
+            Entry entry;
+            while ((entry = cancellations.poll()) != null) {
+                Bucket bucket = entry.bucket;
+                if (bucket != null) {
+                    bucket.remove(entry);
+                }
+            }
+        }
+
+        private void transferAdditions() {
+            for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+                Entry entry = additions.poll();
+                if (entry == null) {
+                    break;
+                }
+                if (entry.state.get() == Entry.CANCELLED) {
+                    continue;
+                }
+                long calculated = (entry.deadline - startTime) / tickNanos;
+                entry.remainingRounds = (calculated - tick) / wheel.length;
+                // Deadlines already in the past go in the current bucket.
+                long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(entry);
+            }
+        }
+    }
+
+    /**
+     * One slot of the wheel: a doubly linked list of entries, only ever
+     * touched by the timer thread.
+     */
+    private final class Bucket {
+        private Entry head;
+        private Entry tail;
+
+        void add(Entry entry) {
+            entry.bucket = this;
+            if (head == null) {
+                head = entry;
+                tail = entry;
+            } else {
+                tail.next = entry;
+                entry.prev = tail;
+                tail = entry;
+            }
+        }
+
+        void remove(Entry entry) {
+            Entry next = entry.next;
+            if (entry.prev != null) {
+                entry.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = entry.prev;
+            }
+            if (entry == head) {
+                head = next;
+            }
+            if (entry == tail) {
+                tail = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+            entry.bucket = null;
+        }
+
+        void expire(long now) {
+            Entry entry = head;
+            while (entry != null) {
+                Entry next = entry.next;
+                if (entry.remainingRounds <= 0L) {
+                    remove(entry);
+                    entry.expire();
+                } else {
+                    entry.remainingRounds--;
+                }
+                entry = next;
+            }
+        }
+    }
+
+    private final class Entry implements Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long period;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Entry prev;
+        private Entry next;
+
+        Entry(Runnable task, long deadline, long period) {
+            this.task = task;
+            this.deadline = deadline;
+            this.period = period;
+        }
+
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            cancellations.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        void expire() {
+            if (period == 0L) {
+                if (!state.compareAndSet(PENDING, EXPIRED)) {
+                    return;
+                }
+                pending.decrementAndGet();
+                runTask();
+            } else {
+                if (state.get() != PENDING) {
+                    return;
+                }
+                runTask();
+                if (state.get() == PENDING) {
+                    deadline += period;
+                    additions.add(this);
+                }
+            }
+        }
+
+        private void runTask() {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOG.warn("Timer task threw an exception", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+
+/**
+ * Creates instances of one packet type for a {@link PacketFactory}.
+ * Vendor packets can be registered with a creator instead of a class so
+ * that no reflection is needed to create them.
+ * @see PacketFactory#registerVendorPacket(int, PacketCreator, PacketCreator)
+ */
+public interface PacketCreator {
+    /**
+     * Create a new packet.
+     * @param request If a response is being created for a request, the
+     * request. Otherwise <code>null</code>. The factory sets the
+     * response&apos;s sequence number itself.
+     * @return A new packet.
+     */
+    SMPPPacket newPacket(SMPPPacket request);
+}
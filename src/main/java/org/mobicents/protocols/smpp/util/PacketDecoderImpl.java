@@ -22,7 +22,6 @@
 
 package org.mobicents.protocols.smpp.util;
 
-import java.text.ParseException;
 
 import org.mobicents.protocols.smpp.Address;
 import org.mobicents.protocols.smpp.ErrorAddress;
@@ -34,9 +33,9 @@ import org.mobicents.protocols.smpp.message.SMPPProtocolException;
  */
 public class PacketDecoderImpl implements PacketDecoder {
 
-    private static final SMPPDateFormat DATE_FORMAT = new SMPPDateFormat();
     private byte[] bytes;
     private int pos;
+    private CStringCache cStringCache;
     
     public PacketDecoderImpl() {
     }
@@ -58,6 +57,24 @@ public class PacketDecoderImpl implements PacketDecoder {
         this.bytes = bytes;
     }
 
+    /**
+     * Get the cache C-strings are looked up in.
+     * @return The cache, or <code>null</code> if there is none.
+     */
+    public CStringCache getCStringCache() {
+        return cStringCache;
+    }
+
+    /**
+     * Set a cache to look C-strings up in, so that repeated values are
+     * returned as the same string instance.
+     * @param cStringCache The cache to use, or <code>null</code> to
+     * decode every string afresh.
+     */
+    public void setCStringCache(CStringCache cStringCache) {
+        this.cStringCache = cStringCache;
+    }
+
     public int getParsePosition() {
         return pos;
     }
@@ -77,6 +94,15 @@ public class PacketDecoderImpl implements PacketDecoder {
     }
 
     public String readCString() {
+        if (cStringCache != null) {
+            int end = pos;
+            while (bytes[end] != 0) {
+                end++;
+            }
+            String str = cStringCache.get(bytes, pos, end - pos);
+            pos = end + 1;
+            return str;
+        }
         String str = SMPPIO.readCString(bytes, pos);
         pos += str.length() + 1;
         return str;
@@ -125,17 +151,21 @@ public class PacketDecoderImpl implements PacketDecoder {
     }
     
     public SMPPDate readDate() {
-        SMPPDate date = null;
-        String str = null;
+        int start = pos;
+        int end = start;
+        while (bytes[end] != 0) {
+            end++;
+        }
+        pos = end + 1;
+        if (end == start) {
+            return null;
+        }
         try {
-            str = readCString();
-            if (str.length() > 0) {
-                date = (SMPPDate) DATE_FORMAT.parseObject(str);
-            }
-        } catch (ParseException x) {
-            throw new SMPPProtocolException("Cannot parse date value: " + str, x);
+            return SMPPDateCodec.parse(bytes, start, end - start);
+        } catch (InvalidDateFormatException x) {
+            throw new SMPPProtocolException(
+                    "Cannot parse date value: " + x.getDateString(), x);
         }
-        return date;
     }
     
     public byte[] readBytes(int length) {
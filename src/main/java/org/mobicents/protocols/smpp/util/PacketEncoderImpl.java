@@ -35,8 +35,8 @@ import org.mobicents.protocols.smpp.ErrorAddress;
  */
 public class PacketEncoderImpl implements PacketEncoder {
 
-    private static final SMPPDateFormat DATE_FORMAT = new SMPPDateFormat();
     private OutputStream out;
+    private final byte[] dateBytes = new byte[SMPPDateCodec.MAX_LENGTH + 1];
     
     public PacketEncoderImpl() {
     }
@@ -129,8 +129,9 @@ public class PacketEncoderImpl implements PacketEncoder {
     }
     
     public PacketEncoder writeDate(SMPPDate date) throws IOException {
-        String str = DATE_FORMAT.format(date);
-        writeCString(str);
+        int length = SMPPDateCodec.format(date, dateBytes, 0);
+        dateBytes[length] = 0;
+        out.write(dateBytes, 0, length + 1);
         return this;
     }
     
@@ -23,12 +23,10 @@
 package org.mobicents.protocols.smpp.util;
 
 import java.lang.reflect.Constructor;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import org.mobicents.protocols.smpp.BadCommandIDException;
 import org.mobicents.protocols.smpp.SMPPRuntimeException;
 import org.mobicents.protocols.smpp.message.AlertNotification;
@@ -44,6 +42,7 @@ import org.mobicents.protocols.smpp.message.CancelBroadcastSM;
 import org.mobicents.protocols.smpp.message.CancelBroadcastSMResp;
 import org.mobicents.protocols.smpp.message.CancelSM;
 import org.mobicents.protocols.smpp.message.CancelSMResp;
+import org.mobicents.protocols.smpp.message.CommandId;
 import org.mobicents.protocols.smpp.message.DataSM;
 import org.mobicents.protocols.smpp.message.DataSMResp;
 import org.mobicents.protocols.smpp.message.DeliverSM;
@@ -74,38 +73,24 @@ import org.mobicents.protocols.smpp.message.UnbindResp;
 
 /**
  * Factory class for SMPP packets.
+ * <p>
+ * The packet types defined by the SMPP specification are created with a
+ * plain constructor call, selected by command ID, so a factory holds no
+ * per-instance state for them and is cheap to create. Vendor packets are
+ * registered separately on each factory, either with a
+ * {@link PacketCreator} or with their classes, whose constructors are
+ * looked up once at registration. Registration is safe while other
+ * threads are using the factory.
+ * </p>
  * @version $Id: PacketFactory.java 457 2009-01-15 17:37:42Z orank $
  */
 public final class PacketFactory {
-    private static final Logger LOG = LoggerFactory.getLogger(PacketFactory.class);
-    
-    private final Map<Integer, Class<? extends SMPPPacket>> commands =
-        new HashMap<Integer, Class<? extends SMPPPacket>>();
-    private final Map<Integer, Class<? extends SMPPPacket>> userCommands =
-        new HashMap<Integer, Class<? extends SMPPPacket>>();
+    private static final int RESPONSE_BIT = 0x80000000;
+
+    private volatile Map<Integer, PacketCreator> vendorPackets =
+        Collections.emptyMap();
     
     public PacketFactory() {
-        add(new AlertNotification());
-        add(new BindReceiver(), new BindReceiverResp());
-        add(new BindTransceiver(), new BindTransceiverResp());
-        add(new BindTransmitter(), new BindTransmitterResp());
-        add(new BroadcastSM(), new BroadcastSMResp());
-        add(new CancelBroadcastSM(), new CancelBroadcastSMResp());
-        add(new CancelSM(), new CancelSMResp());
-        add(new DataSM(), new DataSMResp());
-        add(new DeliverSM(), new DeliverSMResp());
-        add(new EnquireLink(), new EnquireLinkResp());
-        add(new GenericNack());
-        add(new Outbind());
-        add(new ParamRetrieve(), new ParamRetrieveResp());
-        add(new QueryBroadcastSM(), new QueryBroadcastSMResp());
-        add(new QueryLastMsgs(), new QueryLastMsgsResp());
-        add(new QueryMsgDetails(), new QueryMsgDetailsResp());
-        add(new QuerySM(), new QuerySMResp());
-        add(new ReplaceSM(), new ReplaceSMResp());
-        add(new SubmitMulti(), new SubmitMultiResp());
-        add(new SubmitSM(), new SubmitSMResp());
-        add(new Unbind(), new UnbindResp());
     }
 
     /**
@@ -120,7 +105,11 @@ public final class PacketFactory {
      *             if the command ID is not recognized.
      */
     public SMPPPacket newInstance(int id) {
-        return newInstance(id, null);
+        SMPPPacket packet = newStandardPacket(id);
+        if (packet == null) {
+            packet = newVendorPacket(id, null);
+        }
+        return packet;
     }
     
     /**
@@ -139,8 +128,11 @@ public final class PacketFactory {
             throw new SMPPRuntimeException(
                     "Cannot create a response to a response!");
         }
-        int id = packet.getCommandId();
-        SMPPPacket response = newInstance(id | 0x80000000, packet);
+        int id = packet.getCommandId() | RESPONSE_BIT;
+        SMPPPacket response = newStandardPacket(id);
+        if (response == null) {
+            response = newVendorPacket(id, packet);
+        }
         response.setSequenceNum(packet.getSequenceNum());
         return response;
     }
@@ -159,6 +151,11 @@ public final class PacketFactory {
      * the specification of such a case (<code>AlertNotification</code> has
      * no response packet).
      * </p>
+     * <p>
+     * The classes&apos; constructors are looked up once, here. A response
+     * class that has a constructor accepting an <code>SMPPPacket</code> is
+     * passed the request when created by {@link #newResponse(SMPPPacket)}.
+     * </p>
      * @param id The command ID of the request packet.
      * @param requestType The class which implements the vendor request packet.
      * @param responseType The class which implements the vendor response
@@ -167,11 +164,30 @@ public final class PacketFactory {
     public void registerVendorPacket(int id,
             Class<? extends SMPPPacket> requestType,
             Class<? extends SMPPPacket> responseType) {
-        userCommands.put(Integer.valueOf(id), requestType);
-        if (responseType != null) {
-            userCommands.put(
-                    Integer.valueOf(id | 0x80000000), responseType);
+        registerVendorPacket(id,
+                new ReflectiveCreator(requestType),
+                responseType != null ? new ReflectiveCreator(responseType) : null);
+    }
+
+    /**
+     * Register a vendor packet with the factory, supplying creators for
+     * the request and response packets.
+     * @param id The command ID of the request packet.
+     * @param request Creates the vendor request packet.
+     * @param response Creates the vendor response packet. May be
+     * <code>null</code> if the request has no response.
+     * @see #registerVendorPacket(int, Class, Class)
+     */
+    public synchronized void registerVendorPacket(int id,
+            PacketCreator request,
+            PacketCreator response) {
+        Map<Integer, PacketCreator> newPackets =
+            new HashMap<Integer, PacketCreator>(vendorPackets);
+        newPackets.put(Integer.valueOf(id), request);
+        if (response != null) {
+            newPackets.put(Integer.valueOf(id | RESPONSE_BIT), response);
         }
+        vendorPackets = newPackets;
     }
 
     /**
@@ -179,112 +195,170 @@ public final class PacketFactory {
      * @param id The ID of the vendor packet to remove. This will also
      * unregister the response packet if it exists.
      */
-    public void unregisterVendorPacket(int id) {
-        userCommands.remove(Integer.valueOf(id));
-        userCommands.remove(Integer.valueOf(id | 0x80000000));
+    public synchronized void unregisterVendorPacket(int id) {
+        Map<Integer, PacketCreator> newPackets =
+            new HashMap<Integer, PacketCreator>(vendorPackets);
+        newPackets.remove(Integer.valueOf(id));
+        newPackets.remove(Integer.valueOf(id | RESPONSE_BIT));
+        vendorPackets = newPackets;
     }
 
     /**
-     * Add an internal API-defined packet type.
-     * @param command The request packet to add.
-     */
-    private void add(SMPPPacket command) {
-        int commandId = command.getCommandId();
-        Class<? extends SMPPPacket> commandClass = command.getClass();
-        commands.put(Integer.valueOf(commandId), commandClass);
-        if (LOG.isDebugEnabled()) {
-            LOG.debug("Mapping id 0x{} to class {}",
-                    Integer.toHexString(commandId), commandClass.getName());
-        }
-    }
-    
-    /**
-     * Add an internal API-defined packet type.
-     * @param requestClass The request packet to add.
-     * @param responseClass The response packet to add.
+     * Create a packet defined by the SMPP specification.
+     * @param id The command ID of the packet.
+     * @return A new packet, or <code>null</code> if <code>id</code> is not
+     * a standard command ID.
      */
-    private void add(SMPPPacket request, SMPPPacket response) {
-        add(request);
-        if (response != null) {
-            add(response);
+    private static SMPPPacket newStandardPacket(int id) {
+        switch (id) {
+        case CommandId.GENERIC_NACK:
+            return new GenericNack();
+        case CommandId.BIND_RECEIVER:
+            return new BindReceiver();
+        case CommandId.BIND_RECEIVER_RESP:
+            return new BindReceiverResp();
+        case CommandId.BIND_TRANSMITTER:
+            return new BindTransmitter();
+        case CommandId.BIND_TRANSMITTER_RESP:
+            return new BindTransmitterResp();
+        case CommandId.QUERY_SM:
+            return new QuerySM();
+        case CommandId.QUERY_SM_RESP:
+            return new QuerySMResp();
+        case CommandId.SUBMIT_SM:
+            return new SubmitSM();
+        case CommandId.SUBMIT_SM_RESP:
+            return new SubmitSMResp();
+        case CommandId.DELIVER_SM:
+            return new DeliverSM();
+        case CommandId.DELIVER_SM_RESP:
+            return new DeliverSMResp();
+        case CommandId.UNBIND:
+            return new Unbind();
+        case CommandId.UNBIND_RESP:
+            return new UnbindResp();
+        case CommandId.REPLACE_SM:
+            return new ReplaceSM();
+        case CommandId.REPLACE_SM_RESP:
+            return new ReplaceSMResp();
+        case CommandId.CANCEL_SM:
+            return new CancelSM();
+        case CommandId.CANCEL_SM_RESP:
+            return new CancelSMResp();
+        case CommandId.BIND_TRANSCEIVER:
+            return new BindTransceiver();
+        case CommandId.BIND_TRANSCEIVER_RESP:
+            return new BindTransceiverResp();
+        case CommandId.OUTBIND:
+            return new Outbind();
+        case CommandId.ENQUIRE_LINK:
+            return new EnquireLink();
+        case CommandId.ENQUIRE_LINK_RESP:
+            return new EnquireLinkResp();
+        case CommandId.SUBMIT_MULTI:
+            return new SubmitMulti();
+        case CommandId.SUBMIT_MULTI_RESP:
+            return new SubmitMultiResp();
+        case CommandId.PARAM_RETRIEVE:
+            return new ParamRetrieve();
+        case CommandId.PARAM_RETRIEVE_RESP:
+            return new ParamRetrieveResp();
+        case CommandId.QUERY_LAST_MSGS:
+            return new QueryLastMsgs();
+        case CommandId.QUERY_LAST_MSGS_RESP:
+            return new QueryLastMsgsResp();
+        case CommandId.QUERY_MSG_DETAILS:
+            return new QueryMsgDetails();
+        case CommandId.QUERY_MSG_DETAILS_RESP:
+            return new QueryMsgDetailsResp();
+        case CommandId.ALERT_NOTIFICATION:
+            return new AlertNotification();
+        case CommandId.DATA_SM:
+            return new DataSM();
+        case CommandId.DATA_SM_RESP:
+            return new DataSMResp();
+        case CommandId.BROADCAST_SM:
+            return new BroadcastSM();
+        case CommandId.BROADCAST_SM_RESP:
+            return new BroadcastSMResp();
+        case CommandId.QUERY_BROADCAST_SM:
+            return new QueryBroadcastSM();
+        case CommandId.QUERY_BROADCAST_SM_RESP:
+            return new QueryBroadcastSMResp();
+        case CommandId.CANCEL_BROADCAST_SM:
+            return new CancelBroadcastSM();
+        case CommandId.CANCEL_BROADCAST_SM_RESP:
+            return new CancelBroadcastSMResp();
+        default:
+            return null;
         }
     }
 
     /**
-     * Get a new instance of an SMPP packet for the specified ID.
-     * @param id The command ID to get the packet object for.
-     * @param request If a response packet is being created, this parameter
-     * may be optionally supplied and an attempt will be made to call a
-     * constructor which accepts an SMPPPacket as its argument. All of the
-     * response packets that are supplied as part of the API have such
-     * a constructor.
-     * @return A new instance of the relevant SMPPPacket implementation.
-     * @throws BadCommandIDException If no matching class can be found for
+     * Create a registered vendor packet.
+     * @param id The command ID of the packet.
+     * @param request The request a response is being created for, if any.
+     * @return A new packet.
+     * @throws BadCommandIDException If no vendor packet is registered for
      * <code>id</code>.
-     * @throws SMPPRuntimeException If a packet&apos;s constructor throws
-     * an exception.
      */
-    private SMPPPacket newInstance(int id, SMPPPacket request) {
-        SMPPPacket response = null;
-        Class<? extends SMPPPacket> clazz = getClassForId(id);
-        if (clazz == null) {
+    private SMPPPacket newVendorPacket(int id, SMPPPacket request) {
+        PacketCreator creator = vendorPackets.get(Integer.valueOf(id));
+        if (creator == null) {
             throw new BadCommandIDException(
                     "Unrecognized command id " + Integer.toHexString(id), id);
         }
-        try {
-            if (request != null) {
-                response = constructWithPacketArg(clazz, request);
-            }
-            if (response == null) {
-                response = clazz.newInstance();
-            }
-        } catch (Exception x) {
-            throw new SMPPRuntimeException(
-                    "Packet constructor threw an exception.", x);
-        }
-        return response;
+        return creator.newPacket(request);
     }
-    
+
     /**
-     * Construct an SMPPPacket implementation class using a single-argument
-     * constructor which takes an SMPPPacket object as its argument.
-     * @param clazz The class to instantiate.
-     * @param request The object to pass to the constructor.
-     * @return The instantiated class, or <code>null</code> if the class does
-     * not implement a single-argument constructor which accepts an SMPPPacket.
-     * @throws Exception Any exception that is thrown by
-     * {@link Constructor#newInstance(java.lang.Object[])} can be thrown
-     * by this method.
+     * Creates vendor packets registered by class, using constructors
+     * resolved when the packet was registered.
      */
-    private SMPPPacket constructWithPacketArg(
-            Class<? extends SMPPPacket> clazz,
-            SMPPPacket request) throws Exception {
-        SMPPPacket packet = null;
-        try {
-            Constructor<? extends SMPPPacket> cons = clazz.getConstructor(
-                    new Class[] {SMPPPacket.class});
-            packet = cons.newInstance(
-                    new Object[] {request});
-        } catch (NoSuchMethodException x) {
-            LOG.debug("No SMPPPacket constructor; will fall back to default.");
+    private static final class ReflectiveCreator implements PacketCreator {
+        private final Class<? extends SMPPPacket> type;
+        private final Constructor<? extends SMPPPacket> defaultConstructor;
+        private final Constructor<? extends SMPPPacket> requestConstructor;
+
+        ReflectiveCreator(Class<? extends SMPPPacket> type) {
+            this.type = type;
+            this.defaultConstructor = findConstructor(type, new Class<?>[0]);
+            this.requestConstructor =
+                findConstructor(type, new Class<?>[] {SMPPPacket.class});
+            if (defaultConstructor == null && requestConstructor == null) {
+                throw new IllegalArgumentException(type.getName()
+                        + " has no usable constructor");
+            }
         }
-        return packet;
-    }
-    
-    /**
-     * Get the implementation class for SMPP <code>commandId</code>.
-     * The internally supplied SMPPPacket implementations will be queried
-     * first, followed by all registered vendor packets.
-     * @param commandId The command ID of the packet to get.
-     * @return The implementing class, or <code>null</code> if there is
-     * no class for the specified command ID.
-     */
-    private Class<? extends SMPPPacket> getClassForId(int commandId) {
-        Integer id = Integer.valueOf(commandId);
-        Class<? extends SMPPPacket> clazz = commands.get(id);
-        if (clazz == null) {
-            clazz = userCommands.get(id);
+
+        public SMPPPacket newPacket(SMPPPacket request) {
+            try {
+                if (request != null && requestConstructor != null) {
+                    return requestConstructor.newInstance(new Object[] {request});
+                }
+                if (defaultConstructor == null) {
+                    throw new SMPPRuntimeException(type.getName()
+                            + " can only be created as a response");
+                }
+                return defaultConstructor.newInstance(new Object[0]);
+            } catch (SMPPRuntimeException x) {
+                throw x;
+            } catch (Exception x) {
+                throw new SMPPRuntimeException(
+                        "Packet constructor threw an exception.", x);
+            }
+        }
+
+        private static Constructor<? extends SMPPPacket> findConstructor(
+                Class<? extends SMPPPacket> type, Class<?>[] args) {
+            try {
+                Constructor<? extends SMPPPacket> constructor =
+                    type.getDeclaredConstructor(args);
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (NoSuchMethodException x) {
+                return null;
+            }
         }
-        return clazz;
     }
 }
@@ -30,12 +30,13 @@ package org.mobicents.protocols.smpp.util;
  */
 class RelativeSMPPDate extends SMPPDate {
     private static final long serialVersionUID = 2L;
-    private int years;
-    private int months;
-    private int days;
-    private int hours;
-    private int minutes;
-    private int seconds;
+    private final int years;
+    private final int months;
+    private final int days;
+    private final int hours;
+    private final int minutes;
+    private final int seconds;
+    private transient String formatted;
 
     public RelativeSMPPDate(int years,
             int months,
@@ -51,6 +52,21 @@ class RelativeSMPPDate extends SMPPDate {
         this.seconds = seconds;
     }
 
+    /**
+     * Get the wire form of this date. Relative dates are usually a handful
+     * of validity periods reused across many messages, so the formatted
+     * string is kept once it has been built.
+     * @return The 16-character SMPP form of this date.
+     */
+    String getFormatted() {
+        String value = formatted;
+        if (value == null) {
+            value = SMPPDateCodec.formatRelative(this);
+            formatted = value;
+        }
+        return value;
+    }
+
     public int getDay() {
         return days;
     }
@@ -93,6 +93,23 @@ public abstract class SMPPDate implements java.io.Serializable {
         return new AbsoluteSMPPDate(calendar, withTz);
     }
     
+    /**
+     * Get a date object representing an absolute time with timezone
+     * information, without going through a <code>Calendar</code>.
+     * @param time The time in milliseconds since the epoch. Anything
+     * below a tenth of a second is discarded.
+     * @param utcOffset The offset from UTC in quarter hours, negative if
+     * the time is to be expressed behind UTC. Must be in the range -48
+     * to 48.
+     * @return An SMPPDate object representing the instant
+     * <code>time</code> as seen at the given offset from UTC.
+     * @throws IllegalArgumentException If <code>utcOffset</code> is out
+     * of range.
+     */
+    public static SMPPDate getAbsoluteInstance(long time, int utcOffset) {
+        return new AbsoluteSMPPDate(time, utcOffset, true);
+    }
+    
     /**
      * Get a date object representing a relative time.
      * @param years The number of years.
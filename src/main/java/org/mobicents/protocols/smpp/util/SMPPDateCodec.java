@@ -0,0 +1,326 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+/**
+ * Encodes and decodes SMPP time specifications directly to and from
+ * bytes. This does the same job as {@link SMPPDateFormat} but without
+ * regular expressions, <code>MessageFormat</code> or
+ * <code>Calendar</code>, and it keeps no mutable state, so the static
+ * methods can be used from any number of threads at once. The packet
+ * encoders and decoders use it for every date they handle.
+ * <p>
+ * Relative dates are usually one of a handful of validity periods, so
+ * their formatted form is kept by the date object and recently decoded
+ * relative dates are shared rather than being created anew for every
+ * packet.
+ * </p>
+ */
+public final class SMPPDateCodec {
+    /**
+     * The maximum number of characters in a formatted date, excluding the
+     * nul terminator.
+     */
+    public static final int MAX_LENGTH = 16;
+
+    private static final int RELATIVE_CACHE_SIZE = 64;
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private static final RelativeSMPPDate[] RELATIVE_CACHE =
+        new RelativeSMPPDate[RELATIVE_CACHE_SIZE];
+
+    private SMPPDateCodec() {
+    }
+
+    /**
+     * Format a date to a string, using the default year modifier.
+     * @param date The date to format.
+     * @return The formatted date, or the empty string if <code>date</code>
+     * is <code>null</code>.
+     * @throws IllegalArgumentException If a field of the date cannot be
+     * represented in two digits.
+     */
+    public static String format(SMPPDate date) {
+        if (date == null) {
+            return "";
+        }
+        if (date instanceof RelativeSMPPDate) {
+            return ((RelativeSMPPDate) date).getFormatted();
+        }
+        byte[] bytes = new byte[MAX_LENGTH];
+        int length = format(date, SMPPDateFormat.DEFAULT_YEAR_MODIFIER, bytes, 0);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) bytes[i];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Format a date into a byte array, using the default year modifier.
+     * No nul terminator is written.
+     * @param date The date to format.
+     * @param dest The array to write to. There must be room for at least
+     * {@link #MAX_LENGTH} bytes from <code>offset</code>.
+     * @param offset The index to start writing at.
+     * @return The number of bytes written, which is 0 if <code>date</code>
+     * is <code>null</code>.
+     * @throws IllegalArgumentException If a field of the date cannot be
+     * represented in two digits.
+     */
+    public static int format(SMPPDate date, byte[] dest, int offset) {
+        return format(date, SMPPDateFormat.DEFAULT_YEAR_MODIFIER, dest, offset);
+    }
+
+    /**
+     * Format a date into a byte array. No nul terminator is written.
+     * @param date The date to format.
+     * @param yearModifier The value subtracted from the year of an
+     * absolute date to get its two-digit form.
+     * @param dest The array to write to. There must be room for at least
+     * {@link #MAX_LENGTH} bytes from <code>offset</code>.
+     * @param offset The index to start writing at.
+     * @return The number of bytes written, which is 0 if <code>date</code>
+     * is <code>null</code>.
+     * @throws IllegalArgumentException If a field of the date cannot be
+     * represented in two digits.
+     */
+    public static int format(SMPPDate date, int yearModifier, byte[] dest, int offset) {
+        if (date == null) {
+            return 0;
+        }
+        if (date instanceof RelativeSMPPDate) {
+            String str = ((RelativeSMPPDate) date).getFormatted();
+            for (int i = 0; i < MAX_LENGTH; i++) {
+                dest[offset + i] = (byte) str.charAt(i);
+            }
+            return MAX_LENGTH;
+        }
+        if (date instanceof AbsoluteSMPPDate) {
+            return formatAbsolute((AbsoluteSMPPDate) date, yearModifier, dest, offset);
+        }
+        return formatFields(date, yearModifier, dest, offset);
+    }
+
+    /**
+     * Parse a date from a byte array, using the default year modifier.
+     * Only as much of the input as the date needs is read, so trailing
+     * characters are ignored.
+     * @param src The array to read from.
+     * @param offset The index of the first character of the date.
+     * @param length The number of characters available.
+     * @return The parsed date.
+     * @throws InvalidDateFormatException If the input does not hold a
+     * valid SMPP time specification.
+     */
+    public static SMPPDate parse(byte[] src, int offset, int length)
+            throws InvalidDateFormatException {
+        return parse(src, offset, length, SMPPDateFormat.DEFAULT_YEAR_MODIFIER);
+    }
+
+    /**
+     * Parse a date from a byte array. Only as much of the input as the
+     * date needs is read, so trailing characters are ignored.
+     * @param src The array to read from.
+     * @param offset The index of the first character of the date.
+     * @param length The number of characters available.
+     * @param yearModifier The value added to the two-digit year of an
+     * absolute date to get the full year.
+     * @return The parsed date.
+     * @throws InvalidDateFormatException If the input does not hold a
+     * valid SMPP time specification.
+     */
+    public static SMPPDate parse(byte[] src, int offset, int length, int yearModifier)
+            throws InvalidDateFormatException {
+        int digits = 0;
+        int limit = Math.min(length, 15);
+        while (digits < limit && isDigit(src[offset + digits])) {
+            digits++;
+        }
+        if (digits == 15 && length >= 16) {
+            byte sign = src[offset + 15];
+            if (sign == '+' || sign == '-') {
+                return parseAbsolute(src, offset, true, yearModifier);
+            } else if (sign == 'R') {
+                return parseRelative(src, offset);
+            }
+        }
+        if (digits >= 12) {
+            return parseAbsolute(src, offset, false, yearModifier);
+        }
+        throw invalid(src, offset, length);
+    }
+
+    /**
+     * Format the fields of a relative date.
+     */
+    static String formatRelative(RelativeSMPPDate date) {
+        char[] chars = new char[MAX_LENGTH];
+        putTwoDigits(chars, 0, date.getYear());
+        putTwoDigits(chars, 2, date.getMonth());
+        putTwoDigits(chars, 4, date.getDay());
+        putTwoDigits(chars, 6, date.getHour());
+        putTwoDigits(chars, 8, date.getMinute());
+        putTwoDigits(chars, 10, date.getSecond());
+        chars[12] = '0';
+        chars[13] = '0';
+        chars[14] = '0';
+        chars[15] = 'R';
+        return new String(chars);
+    }
+
+    private static int formatAbsolute(AbsoluteSMPPDate date,
+            int yearModifier,
+            byte[] dest,
+            int offset) {
+        long local = date.getLocalTime();
+        long days = AbsoluteSMPPDate.floorDiv(local, MILLIS_PER_DAY);
+        int civil = AbsoluteSMPPDate.civilFromDays(days);
+        int millis = (int) (local - days * MILLIS_PER_DAY);
+        putTwoDigits(dest, offset, civil / 10000 - yearModifier);
+        putTwoDigits(dest, offset + 2, (civil / 100) % 100);
+        putTwoDigits(dest, offset + 4, civil % 100);
+        putTwoDigits(dest, offset + 6, millis / 3600000);
+        putTwoDigits(dest, offset + 8, (millis / 60000) % 60);
+        putTwoDigits(dest, offset + 10, (millis / 1000) % 60);
+        if (!date.hasTimezone()) {
+            return 12;
+        }
+        dest[offset + 12] = (byte) ('0' + (millis / 100) % 10);
+        putTwoDigits(dest, offset + 13, date.getUtcOffset());
+        dest[offset + 15] = (byte) date.getSign();
+        return MAX_LENGTH;
+    }
+
+    private static int formatFields(SMPPDate date,
+            int yearModifier,
+            byte[] dest,
+            int offset) {
+        int year = date.getYear();
+        if (date.isAbsolute()) {
+            year -= yearModifier;
+        }
+        putTwoDigits(dest, offset, year);
+        putTwoDigits(dest, offset + 2, date.getMonth());
+        putTwoDigits(dest, offset + 4, date.getDay());
+        putTwoDigits(dest, offset + 6, date.getHour());
+        putTwoDigits(dest, offset + 8, date.getMinute());
+        putTwoDigits(dest, offset + 10, date.getSecond());
+        if (date.isAbsolute() && !date.hasTimezone()) {
+            return 12;
+        }
+        dest[offset + 12] = (byte) ('0' + date.getTenth());
+        putTwoDigits(dest, offset + 13, date.getUtcOffset());
+        dest[offset + 15] = (byte) date.getSign();
+        return MAX_LENGTH;
+    }
+
+    private static SMPPDate parseAbsolute(byte[] src,
+            int offset,
+            boolean hasTz,
+            int yearModifier) throws InvalidDateFormatException {
+        int year = twoDigits(src, offset);
+        int month = twoDigits(src, offset + 2);
+        int day = twoDigits(src, offset + 4);
+        int hour = twoDigits(src, offset + 6);
+        int minute = twoDigits(src, offset + 8);
+        int second = twoDigits(src, offset + 10);
+        int tenth = 0;
+        int utcOffset = 0;
+        if (hasTz) {
+            tenth = src[offset + 12] - '0';
+            utcOffset = twoDigits(src, offset + 13);
+            if (src[offset + 15] == '-') {
+                utcOffset = -utcOffset;
+            }
+        }
+        if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23
+                || minute > 59 || second > 59 || utcOffset < -48 || utcOffset > 48) {
+            throw invalid(src, offset, hasTz ? MAX_LENGTH : 12);
+        }
+        long days = AbsoluteSMPPDate.daysFromCivil(year + yearModifier, month, day);
+        long local = days * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L
+            + second * 1000L + tenth * 100L;
+        return new AbsoluteSMPPDate(local - utcOffset * 900000L, utcOffset, hasTz);
+    }
+
+    private static SMPPDate parseRelative(byte[] src, int offset) {
+        int years = twoDigits(src, offset);
+        int months = twoDigits(src, offset + 2);
+        int days = twoDigits(src, offset + 4);
+        int hours = twoDigits(src, offset + 6);
+        int minutes = twoDigits(src, offset + 8);
+        int seconds = twoDigits(src, offset + 10);
+        int index = (years * 31 + months * 17 + days * 7 + hours * 5 + minutes * 3 + seconds)
+            & (RELATIVE_CACHE_SIZE - 1);
+        // Entries are immutable, so a racy read at worst misses the cache.
+        RelativeSMPPDate date = RELATIVE_CACHE[index];
+        if (date == null
+                || date.getYear() != years
+                || date.getMonth() != months
+                || date.getDay() != days
+                || date.getHour() != hours
+                || date.getMinute() != minutes
+                || date.getSecond() != seconds) {
+            date = new RelativeSMPPDate(years, months, days, hours, minutes, seconds);
+            RELATIVE_CACHE[index] = date;
+        }
+        return date;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static int twoDigits(byte[] src, int offset) {
+        return (src[offset] - '0') * 10 + (src[offset + 1] - '0');
+    }
+
+    private static void putTwoDigits(byte[] dest, int offset, int value) {
+        checkTwoDigits(value);
+        dest[offset] = (byte) ('0' + value / 10);
+        dest[offset + 1] = (byte) ('0' + value % 10);
+    }
+
+    private static void putTwoDigits(char[] dest, int offset, int value) {
+        checkTwoDigits(value);
+        dest[offset] = (char) ('0' + value / 10);
+        dest[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static void checkTwoDigits(int value) {
+        if (value < 0 || value > 99) {
+            throw new IllegalArgumentException(
+                    "Date field cannot be represented in two digits: " + value);
+        }
+    }
+
+    private static InvalidDateFormatException invalid(byte[] src, int offset, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) (src[offset + i] & 0xff);
+        }
+        String str = new String(chars);
+        return new InvalidDateFormatException("Invalid SMPP date: " + str, str);
+    }
+}
@@ -23,11 +23,10 @@
 package org.mobicents.protocols.smpp.util;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +40,7 @@ import org.mobicents.protocols.smpp.message.BindReceiver;
 import org.mobicents.protocols.smpp.message.BindResp;
 import org.mobicents.protocols.smpp.message.BindTransceiver;
 import org.mobicents.protocols.smpp.message.BindTransmitter;
+import org.mobicents.protocols.smpp.message.GenericNack;
 import org.mobicents.protocols.smpp.message.SMPPPacket;
 import org.mobicents.protocols.smpp.message.Unbind;
 import org.mobicents.protocols.smpp.message.UnbindResp;
@@ -50,14 +50,23 @@ import org.mobicents.protocols.smpp.net.ReadTimeoutException;
  * Connection observer which mimics synchronous communications. This observer
  * provides methods which block the caller until the desired response packet
  * is available to be returned.
+ * <p>
+ * Each thread waiting on a response parks on a slot of its own, found by
+ * sequence number in a {@link ConcurrentLongHashMap}. Matching a response
+ * to its waiter is therefore O(1) and takes no lock shared with the
+ * other waiters. Timeouts are run by the shared {@link HashedWheelTimer}
+ * rather than by each waiting thread.
+ * </p>
  * @version $Id: SyncWrapper.java 457 2009-01-15 17:37:42Z orank $
  */
 public class SyncWrapper implements SessionObserver {
     private static final Logger LOG = LoggerFactory.getLogger(SyncWrapper.class);
     
     private Session connection;
-    private Map<Number, SMPPPacket> blockers = new HashMap<Number, SMPPPacket>();
-    private List<SMPPPacket> packetQueue = new ArrayList<SMPPPacket>();
+    private final ConcurrentLongHashMap<Waiter> blockers =
+        new ConcurrentLongHashMap<Waiter>();
+    private final LinkedBlockingQueue<SMPPPacket> packetQueue =
+        new LinkedBlockingQueue<SMPPPacket>();
     private long packetTimeout;
     
     private ConnectionCaller bindCaller = new ConnectionCaller() {
@@ -200,19 +209,11 @@ public class SyncWrapper implements SessionObserver {
                 LOG.debug("Response received: there are {} threads blocked.",
                         blockers.size());
             }
-            Number seq = null;
-            synchronized (blockers) {
-                seq = new Long(packet.getSequenceNum());
-                seq = getKeyObject(seq);
-                if (seq != null) {
-                    blockers.put(seq, packet);
-                    synchronized (seq) {
-                        seq.notify();
-                    }
-                } else {
-                    LOG.debug("No blocker thread waiting on packet {}", seq);
-                    addToQueue(packet);
-                }
+            long seq = packet.getSequenceNum();
+            Waiter waiter = blockers.get(seq);
+            if (waiter == null || !waiter.deliver(packet)) {
+                LOG.debug("No blocker thread waiting on packet {}", seq);
+                addToQueue(packet);
             }
         } else {
             addToQueue(packet);
@@ -231,7 +232,7 @@ public class SyncWrapper implements SessionObserver {
      * on a packet.
      */
     public boolean isPacketAvailable() {
-        return packetQueue.size() > 0;
+        return !packetQueue.isEmpty();
     }
 
     /**
@@ -255,12 +256,10 @@ public class SyncWrapper implements SessionObserver {
     public SMPPPacket readNextPacket(boolean block) throws IOException {
         SMPPPacket packet = null;
         try {
-            synchronized (packetQueue) {
-                if (packetQueue.size() < 1 && block) {
-                    packetQueue.wait();
-                } else {
-                    packet = packetQueue.remove(0);
-                }
+            if (block) {
+                packet = packetQueue.take();
+            } else {
+                packet = packetQueue.poll();
             }
         } catch (InterruptedException x) {
             LOG.info("Thread interrupted while blocked waiting on a packet.");
@@ -291,31 +290,13 @@ public class SyncWrapper implements SessionObserver {
      * packet to give up waiting on the response and return. 
      */
     public void interruptAllBlocked() {
-        synchronized (blockers) {
-            for (Iterator<Number> iter = blockers.keySet().iterator(); iter.hasNext();) {
-                Number seq = iter.next();
-                synchronized (seq) {
-                    seq.notify();
-                }
-            }
+        for (Waiter waiter : blockers.values()) {
+            waiter.abandon();
         }
     }
     
-    private Number getKeyObject(Number seq) {
-        for (Iterator<Number> iter = blockers.keySet().iterator(); iter.hasNext();) {
-            Number value = iter.next();
-            if (value.equals(seq)) {
-                return value;
-            }
-        }
-        return null;
-    }
-    
     private void addToQueue(SMPPPacket packet) {
-        synchronized (packetQueue) {
-            packetQueue.add(packet);
-            packetQueue.notify();
-        }
+        packetQueue.add(packet);
     }
     
     private long getBindTimeout() {
@@ -326,41 +307,83 @@ public class SyncWrapper implements SessionObserver {
     private SMPPPacket sendAndWait(SMPPPacket packet,
             ConnectionCaller caller,
             long timeout) throws IOException {
-        Long seq;
+        long seq;
         if (packet.getSequenceNum() < 0L) {
-            long nextSeq = connection.getSequenceNumberScheme().nextNumber();
-            seq = new Long(nextSeq);
+            seq = connection.getSequenceNumberScheme().nextNumber();
         } else {
-            seq = new Long(packet.getSequenceNum());
+            seq = packet.getSequenceNum();
         }
-        synchronized (blockers) {
-            if (blockers.containsKey(seq)) {
-                throw new org.mobicents.protocols.smpp.IllegalStateException(
-                        "Got a duplicate sequence number!");
-            }
-            blockers.put(seq, null);
+        final Waiter waiter = new Waiter();
+        if (blockers.putIfAbsent(seq, waiter) != null) {
+            throw new org.mobicents.protocols.smpp.IllegalStateException(
+                    "Got a duplicate sequence number!");
         }
-        packet.setSequenceNum(seq.longValue());
-        SMPPPacket response = null;
+        packet.setSequenceNum(seq);
+        Timeout timeoutTask = null;
         try {
-            synchronized (seq) {
-                caller.execute(connection, packet);
-                seq.wait(timeout);
+            if (timeout > 0L) {
+                timeoutTask = HashedWheelTimer.getShared().schedule(new Runnable() {
+                    public void run() {
+                        waiter.abandon();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
             }
-        } catch (InterruptedException x) {
-            LOG.debug("Thread interrupted while waiting on response packet {}.",
-                    seq);
+            caller.execute(connection, packet);
+            return waiter.await();
         } finally {
+            if (timeoutTask != null) {
+                timeoutTask.cancel();
+            }
             // Done in finally because the sequence number should be removed
             // from the map whether or not a response was received.
-            synchronized (blockers) {
-                response = blockers.remove(seq);
-            }
+            blockers.remove(seq, waiter);
         }
-        return response;
     }
     
     private interface ConnectionCaller {
         void execute(Session connection, SMPPPacket packet) throws IOException;
     }
+
+    /**
+     * A slot that one thread parks on while it waits for its response. The
+     * slot moves from empty to holding either the response or a marker
+     * saying the waiter gave up, exactly once, so a response can never be
+     * lost between a waiter timing out and the receiver handing it over.
+     */
+    private static final class Waiter {
+        private static final SMPPPacket ABANDONED = new GenericNack();
+
+        private final Thread thread = Thread.currentThread();
+        private final AtomicReference<SMPPPacket> result =
+            new AtomicReference<SMPPPacket>();
+
+        boolean deliver(SMPPPacket response) {
+            if (result.compareAndSet(null, response)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        void abandon() {
+            if (result.compareAndSet(null, ABANDONED)) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        SMPPPacket await() {
+            while (result.get() == null) {
+                if (Thread.interrupted()) {
+                    LOG.debug("Thread interrupted while waiting on a response packet.");
+                    break;
+                }
+                LockSupport.park();
+            }
+            // Close the slot. If the response arrived at the last moment it
+            // is still returned.
+            result.compareAndSet(null, ABANDONED);
+            SMPPPacket response = result.get();
+            return response == ABANDONED ? null : response;
+        }
+    }
 }
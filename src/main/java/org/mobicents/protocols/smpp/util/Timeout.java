@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+/**
+ * Handle to a task scheduled with a {@link HashedWheelTimer}.
+ */
+public interface Timeout {
+    /**
+     * Cancel the task. A one-shot task that has already started to run
+     * cannot be cancelled. A periodic task is not run again once it has
+     * been cancelled.
+     * @return <code>true</code> if this call cancelled the task,
+     * <code>false</code> if it had already run or been cancelled.
+     */
+    boolean cancel();
+
+    /**
+     * Determine if the task has been cancelled.
+     * @return <code>true</code> if the task was cancelled.
+     */
+    boolean isCancelled();
+
+    /**
+     * Determine if a one-shot task has run. Always <code>false</code> for
+     * periodic tasks.
+     * @return <code>true</code> if the task has run.
+     */
+    boolean isExpired();
+}
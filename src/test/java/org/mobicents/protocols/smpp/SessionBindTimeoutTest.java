@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.event.ReceiverExitEvent;
+import org.mobicents.protocols.smpp.event.SMPPEvent;
+import org.mobicents.protocols.smpp.event.SessionObserver;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.NioLink;
+import org.mobicents.protocols.smpp.net.SmscLink;
+import org.mobicents.protocols.smpp.net.TcpLink;
+import org.mobicents.protocols.smpp.util.APIConfig;
+import org.mobicents.protocols.smpp.util.APIConfigFactory;
+import org.mobicents.protocols.smpp.util.PropertiesAPIConfig;
+
+@Test
+public class SessionBindTimeoutTest {
+    private ServerSocket server;
+    private Socket accepted;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        PropertiesAPIConfig cfg = new PropertiesAPIConfig();
+        cfg.initialise();
+        cfg.setProperty(APIConfig.BIND_TIMEOUT, "200");
+        APIConfigFactory.setCachedConfig(cfg);
+        server = new ServerSocket(0);
+        final ServerSocket listening = server;
+        // Accept the connection but never answer the bind.
+        Thread acceptor = new Thread() {
+            public void run() {
+                try {
+                    accepted = listening.accept();
+                } catch (Exception x) {
+                    // test is over.
+                }
+            }
+        };
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        APIConfigFactory.reset();
+        if (accepted != null) {
+            accepted.close();
+        }
+        server.close();
+    }
+
+    public void testBindTimeoutOverTcpLink() throws Exception {
+        checkBindTimesOut(new TcpLink(InetAddress.getLocalHost(), server.getLocalPort()));
+    }
+
+    public void testBindTimeoutOverNioLink() throws Exception {
+        checkBindTimesOut(new NioLink(InetAddress.getLocalHost(), server.getLocalPort()));
+    }
+
+    private void checkBindTimesOut(SmscLink link) throws Exception {
+        final BlockingQueue<SMPPEvent> events = new LinkedBlockingQueue<SMPPEvent>();
+        Session session = new Session(link);
+        session.addObserver(new SessionObserver() {
+            public void packetReceived(Session source, SMPPPacket packet) {
+            }
+
+            public void update(Session source, SMPPEvent event) {
+                events.add(event);
+            }
+        });
+        session.bind(SessionType.TRANSCEIVER, "sysId", "secret", "test");
+        SMPPEvent event = events.poll(5L, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertTrue(event instanceof ReceiverExitEvent);
+        assertEquals(((ReceiverExitEvent) event).getReason(), ReceiverExitEvent.BIND_TIMEOUT);
+        assertEquals(session.getState(), SessionState.UNBOUND);
+    }
+}
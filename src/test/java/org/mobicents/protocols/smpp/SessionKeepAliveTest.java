@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.event.LinkDeadEvent;
+import org.mobicents.protocols.smpp.event.SMPPEventAdapter;
+import org.mobicents.protocols.smpp.message.BindTransceiver;
+import org.mobicents.protocols.smpp.message.BindTransceiverResp;
+import org.mobicents.protocols.smpp.message.DeliverSM;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.EnquireLinkResp;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.SmscLink;
+
+@Test
+public class SessionKeepAliveTest {
+    private ProbeLink link;
+    private Session session;
+    private CountDownLatch linkDead;
+    private volatile LinkDeadEvent linkDeadEvent;
+    private volatile Thread linkDeadThread;
+
+    @BeforeMethod
+    public void setUp() {
+        link = new ProbeLink();
+        session = new Session(link);
+        link.session = session;
+        session.setValidating(false);
+        session.setReceiver(new IdleReceiver());
+        linkDead = new CountDownLatch(1);
+        session.addObserver(new SMPPEventAdapter() {
+            public void linkDead(Session source, LinkDeadEvent lde) {
+                linkDeadEvent = lde;
+                linkDeadThread = Thread.currentThread();
+                linkDead.countDown();
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        session.receiverExited(null);
+    }
+
+    public void testDisabledByDefault() throws Exception {
+        bind();
+        Thread.sleep(200L);
+        assertEquals(link.probeCount(), 0);
+        assertEquals(session.getEnquireLinkLatency(), -1L);
+    }
+
+    public void testIdleLinkIsProbed() throws Exception {
+        session.setEnquireLinkInterval(50L);
+        link.answer = true;
+        bind();
+        assertTrue(link.probed.await(5L, TimeUnit.SECONDS));
+        assertTrue(session.getEnquireLinkLatency() >= 0L);
+        assertEquals(linkDead.getCount(), 1L);
+    }
+
+    public void testTrafficSuppressesProbes() throws Exception {
+        session.setEnquireLinkInterval(200L);
+        bind();
+        long end = System.currentTimeMillis() + 500L;
+        while (System.currentTimeMillis() < end) {
+            session.processReceivedPacket(new DeliverSM());
+            Thread.sleep(20L);
+        }
+        assertEquals(link.probeCount(), 0);
+    }
+
+    public void testUnansweredProbesDeclareLinkDead() throws Exception {
+        session.setEnquireLinkInterval(50L);
+        session.setEnquireLinkTimeout(50L);
+        session.setEnquireLinkMaxMissed(2);
+        bind();
+        assertTrue(linkDead.await(5L, TimeUnit.SECONDS));
+        assertEquals(linkDeadEvent.getMissedCount(), 2);
+        assertEquals(linkDeadEvent.getLastLatency(), -1L);
+        assertTrue(linkDeadEvent.getSource() == session);
+        int probes = link.probeCount();
+        Thread.sleep(200L);
+        assertEquals(link.probeCount(), probes);
+    }
+
+    public void testLinkDeadIsNotDeliveredOnTimerThread() throws Exception {
+        session.setEnquireLinkInterval(50L);
+        session.setEnquireLinkTimeout(50L);
+        session.setEnquireLinkMaxMissed(1);
+        bind();
+        assertTrue(linkDead.await(5L, TimeUnit.SECONDS));
+        assertEquals(linkDeadThread.getName(), "SMPP-KeepAlive");
+    }
+
+    public void testUnansweredProbesWithoutSequenceNumbers() throws Exception {
+        session.setSequenceNumberScheme(null);
+        session.setEnquireLinkInterval(50L);
+        session.setEnquireLinkTimeout(50L);
+        session.setEnquireLinkMaxMissed(2);
+        bind();
+        assertTrue(linkDead.await(5L, TimeUnit.SECONDS));
+        assertEquals(linkDeadEvent.getMissedCount(), 2);
+    }
+
+    public void testBlockedProbeIsNotMissedOrHoldingUpOthers() throws Exception {
+        session.setEnquireLinkInterval(50L);
+        session.setEnquireLinkTimeout(50L);
+        session.setEnquireLinkMaxMissed(1);
+        link.blocked = new CountDownLatch(1);
+        bind();
+        ProbeLink otherLink = new ProbeLink();
+        Session other = new Session(otherLink);
+        otherLink.session = other;
+        otherLink.answer = true;
+        other.setValidating(false);
+        other.setReceiver(new IdleReceiver());
+        other.setEnquireLinkInterval(50L);
+        try {
+            bind(other);
+            assertTrue(otherLink.probed.await(5L, TimeUnit.SECONDS));
+            assertEquals(link.probeCount(), 1);
+            assertEquals(linkDead.getCount(), 1L);
+            link.blocked.countDown();
+            assertTrue(linkDead.await(5L, TimeUnit.SECONDS));
+        } finally {
+            link.blocked.countDown();
+            other.receiverExited(null);
+        }
+    }
+
+    public void testReceiverExitStopsKeepAlive() throws Exception {
+        session.setEnquireLinkInterval(50L);
+        link.answer = true;
+        bind();
+        session.receiverExited(null);
+        int probes = link.probeCount();
+        Thread.sleep(200L);
+        assertEquals(link.probeCount(), probes);
+    }
+
+    private void bind() throws Exception {
+        bind(session);
+    }
+
+    private void bind(Session target) throws Exception {
+        BindTransceiver bind = new BindTransceiver();
+        target.bind(bind);
+        BindTransceiverResp response = new BindTransceiverResp(bind);
+        target.processReceivedPacket(response);
+        assertEquals(target.getState(), SessionState.BOUND);
+    }
+
+    private class ProbeLink implements SmscLink {
+        private final List<SMPPPacket> probes = new ArrayList<SMPPPacket>();
+        private final CountDownLatch probed = new CountDownLatch(2);
+        private volatile Session session;
+        private volatile boolean answer;
+        private volatile CountDownLatch blocked;
+
+        public void connect() {
+        }
+
+        public void disconnect() {
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public void write(SMPPPacket packet, boolean withOptionalParams) {
+            if (packet instanceof EnquireLink) {
+                synchronized (probes) {
+                    probes.add(packet);
+                }
+                probed.countDown();
+                CountDownLatch currentBlock = blocked;
+                if (currentBlock != null) {
+                    try {
+                        currentBlock.await();
+                    } catch (InterruptedException x) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                if (answer) {
+                    session.processReceivedPacket(
+                            new EnquireLinkResp((EnquireLink) packet));
+                }
+            }
+        }
+
+        public void flush() {
+        }
+
+        public SMPPPacket read() {
+            return null;
+        }
+
+        public int getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(int timeout) {
+        }
+
+        public boolean isTimeoutSupported() {
+            return false;
+        }
+
+        private int probeCount() {
+            synchronized (probes) {
+                return probes.size();
+            }
+        }
+    }
+
+    private static class IdleReceiver implements Receiver {
+        private String name;
+        private Session session;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public void setSession(Session session) {
+            this.session = session;
+        }
+
+        public boolean isStarted() {
+            return false;
+        }
+
+        public void start() {
+        }
+
+        public void stop() {
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.event.LinkDeadEvent;
+import org.mobicents.protocols.smpp.message.Bind;
+import org.mobicents.protocols.smpp.message.BindTransceiver;
+import org.mobicents.protocols.smpp.message.BindTransceiverResp;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.EnquireLinkResp;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.SmscLink;
+
+@Test
+public class SessionPoolTest {
+    private PoolLink[] links;
+    private List<Session> sessions;
+    private SessionPool pool;
+
+    @BeforeMethod
+    public void setUp() {
+        links = new PoolLink[3];
+        sessions = new ArrayList<Session>();
+        for (int i = 0; i < links.length; i++) {
+            links[i] = new PoolLink();
+            Session session = new Session(links[i]);
+            session.setValidating(false);
+            session.setRequestTimeout(0L);
+            session.setReceiver(new IdleReceiver());
+            links[i].session = session;
+            sessions.add(session);
+        }
+        BindTransceiver template = new BindTransceiver();
+        template.setSystemId("pooled");
+        template.setPassword("secret");
+        pool = new SessionPool(sessions, template);
+    }
+
+    public void testBindSendsTemplateOnEverySession() throws Exception {
+        assertEquals(pool.bind(), 3);
+        for (PoolLink link : links) {
+            Bind bind = (Bind) link.written.get(0);
+            assertEquals(bind.getSystemId(), "pooled");
+            assertEquals(bind.getPassword(), "secret");
+        }
+        assertEquals(pool.getAvailableCount(), 0);
+        bindResponse(0);
+        bindResponse(1);
+        bindResponse(2);
+        assertEquals(pool.getAvailableCount(), 3);
+        // Already bound sessions are left alone.
+        assertEquals(pool.bind(), 0);
+    }
+
+    public void testLeastPendingSpreadsRequests() throws Exception {
+        bindAll();
+        for (int i = 0; i < 9; i++) {
+            pool.sendRequest(new EnquireLink());
+        }
+        for (Session session : sessions) {
+            assertEquals(session.getPendingRequestCount(), 3);
+        }
+        assertEquals(pool.getPendingRequestCount(), 9);
+        assertEquals(pool.getRequestCount(), 9L);
+    }
+
+    public void testLeastPendingPrefersIdleSession() throws Exception {
+        bindAll();
+        links[0].answer = true;
+        for (int i = 0; i < 10; i++) {
+            pool.sendRequest(new EnquireLink());
+        }
+        assertEquals(sessions.get(1).getPendingRequestCount(), 1);
+        assertEquals(sessions.get(2).getPendingRequestCount(), 1);
+        assertEquals(pool.getResponseCount(), 8L);
+    }
+
+    public void testUnboundSessionsAreSkipped() throws Exception {
+        pool.bind();
+        bindResponse(0);
+        bindResponse(2);
+        for (int i = 0; i < 4; i++) {
+            pool.sendRequest(new EnquireLink());
+        }
+        assertEquals(sessions.get(0).getPendingRequestCount(), 2);
+        assertEquals(sessions.get(1).getPendingRequestCount(), 0);
+        assertEquals(sessions.get(2).getPendingRequestCount(), 2);
+    }
+
+    public void testNoBoundSessionRejects() throws Exception {
+        try {
+            pool.sendRequest(new EnquireLink());
+            fail("no session is bound");
+        } catch (IllegalStateException x) {
+            // success!
+        }
+        assertEquals(pool.getRejectedCount(), 1L);
+    }
+
+    public void testLowestLatencyPrefersAnsweringSession() throws Exception {
+        bindAll();
+        pool.setPolicy(SessionPool.Policy.LOWEST_LATENCY);
+        links[1].answer = true;
+        for (int i = 0; i < 30; i++) {
+            pool.sendRequest(new EnquireLink());
+        }
+        assertTrue(sessions.get(0).getPendingRequestCount() <= 2);
+        assertTrue(sessions.get(2).getPendingRequestCount() <= 2);
+        assertTrue(pool.getLatency(sessions.get(1)) >= 0L);
+        assertEquals(pool.getLatency(sessions.get(0)), -1L);
+    }
+
+    public void testCancelledRequestCountsAsFailed() throws Exception {
+        bindAll();
+        ResponseFuture future = pool.sendRequest(new EnquireLink());
+        future.cancel(false);
+        assertEquals(pool.getFailedCount(), 1L);
+        assertEquals(pool.getResponseCount(), 0L);
+    }
+
+    public void testDeadLinkIsRemoved() throws Exception {
+        bindAll();
+        Session dead = sessions.get(1);
+        dead.getEventDispatcher().notifyObservers(dead, new LinkDeadEvent(dead, 3, -1L));
+        assertTrue(links[1].disconnected);
+        assertEquals(pool.getAvailableCount(), 2);
+        for (int i = 0; i < 4; i++) {
+            pool.sendRequest(new EnquireLink());
+        }
+        assertEquals(dead.getPendingRequestCount(), 0);
+    }
+
+    private void bindAll() throws IOException {
+        pool.bind();
+        for (int i = 0; i < links.length; i++) {
+            bindResponse(i);
+        }
+    }
+
+    private void bindResponse(int index) {
+        PoolLink link = links[index];
+        link.session.processReceivedPacket(
+                new BindTransceiverResp(link.written.get(0)));
+        assertEquals(link.session.getState(), SessionState.BOUND);
+    }
+
+    private static class PoolLink implements SmscLink {
+        private final List<SMPPPacket> written = new ArrayList<SMPPPacket>();
+        private Session session;
+        private volatile boolean answer;
+        private volatile boolean disconnected;
+
+        public void connect() {
+        }
+
+        public void disconnect() {
+            disconnected = true;
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public void write(SMPPPacket packet, boolean withOptionalParams) {
+            written.add(packet);
+            if (answer && packet instanceof EnquireLink) {
+                session.processReceivedPacket(new EnquireLinkResp(packet));
+            }
+        }
+
+        public void flush() {
+        }
+
+        public SMPPPacket read() {
+            return null;
+        }
+
+        public int getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(int timeout) {
+        }
+
+        public boolean isTimeoutSupported() {
+            return false;
+        }
+    }
+
+    private static class IdleReceiver implements Receiver {
+        private String name;
+        private Session session;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public void setSession(Session session) {
+            this.session = session;
+        }
+
+        public boolean isStarted() {
+            return false;
+        }
+
+        public void start() {
+        }
+
+        public void stop() {
+        }
+    }
+}
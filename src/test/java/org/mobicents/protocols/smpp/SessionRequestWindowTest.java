@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.EnquireLinkResp;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.ReadTimeoutException;
+import org.mobicents.protocols.smpp.net.SmscLink;
+
+@Test
+public class SessionRequestWindowTest {
+    private RecordingLink link;
+    private Session session;
+
+    @BeforeMethod
+    public void setUp() {
+        link = new RecordingLink();
+        session = new Session(link);
+        session.setRequestTimeout(0L);
+    }
+
+    public void testResponseCompletesMatchingFuture() throws Exception {
+        ResponseFuture first = session.sendRequest(new EnquireLink());
+        ResponseFuture second = session.sendRequest(new EnquireLink());
+        assertEquals(link.written.size(), 2);
+        assertEquals(session.getPendingRequestCount(), 2);
+
+        SMPPPacket response = respondTo(second.getRequest());
+        assertTrue(second.isDone());
+        assertFalse(first.isDone());
+        assertSame(second.get(), response);
+        assertEquals(session.getPendingRequestCount(), 1);
+        try {
+            first.get(10L, TimeUnit.MILLISECONDS);
+            fail("first request should still be outstanding");
+        } catch (TimeoutException x) {
+            // success!
+        }
+    }
+
+    public void testListenerIsCalledOnCompletion() throws Exception {
+        ResponseFuture future = session.sendRequest(new EnquireLink());
+        final List<ResponseFuture> completed = new ArrayList<ResponseFuture>();
+        future.addListener(new ResponseListener() {
+            public void requestComplete(ResponseFuture f) {
+                completed.add(f);
+            }
+        });
+        respondTo(future.getRequest());
+        assertEquals(completed.size(), 1);
+        assertSame(completed.get(0), future);
+    }
+
+    public void testFailFastWhenWindowFull() throws Exception {
+        session.setWindowSize(2);
+        session.setBlockWhenWindowFull(false);
+        ResponseFuture first = session.sendRequest(new EnquireLink());
+        session.sendRequest(new EnquireLink());
+        try {
+            session.sendRequest(new EnquireLink());
+            fail("window should have been full");
+        } catch (WindowFullException x) {
+            // success!
+        }
+        assertEquals(link.written.size(), 2);
+        respondTo(first.getRequest());
+        session.sendRequest(new EnquireLink());
+        assertEquals(link.written.size(), 3);
+    }
+
+    public void testBlockedSenderProceedsWhenSlotFrees() throws Exception {
+        session.setWindowSize(1);
+        final ResponseFuture first = session.sendRequest(new EnquireLink());
+        final CountDownLatch sent = new CountDownLatch(1);
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        Thread sender = new Thread() {
+            public void run() {
+                try {
+                    session.sendRequest(new EnquireLink());
+                } catch (Throwable x) {
+                    errors.add(x);
+                } finally {
+                    sent.countDown();
+                }
+            }
+        };
+        sender.start();
+        awaitBlocked(sender);
+        assertEquals(sent.getCount(), 1L);
+        assertEquals(link.written.size(), 1);
+        respondTo(first.getRequest());
+        assertTrue(sent.await(5L, TimeUnit.SECONDS));
+        assertTrue(errors.isEmpty(), errors.toString());
+        assertEquals(link.written.size(), 2);
+    }
+
+    public void testRequestTimesOut() throws Exception {
+        session.setRequestTimeout(50L);
+        ResponseFuture future = session.sendRequest(new EnquireLink());
+        try {
+            future.get(5L, TimeUnit.SECONDS);
+            fail("request should have timed out");
+        } catch (ExecutionException x) {
+            assertTrue(x.getCause() instanceof ReadTimeoutException);
+        }
+        assertEquals(session.getPendingRequestCount(), 0);
+        // A late response is ignored.
+        respondTo(future.getRequest());
+    }
+
+    public void testPerRequestTimeoutOverridesSessionTimeout() throws Exception {
+        ResponseFuture quick = session.sendRequest(new EnquireLink(), 50L);
+        try {
+            quick.get(5L, TimeUnit.SECONDS);
+            fail("request should have timed out");
+        } catch (ExecutionException x) {
+            assertTrue(x.getCause() instanceof ReadTimeoutException);
+        }
+        session.setRequestTimeout(50L);
+        ResponseFuture patient = session.sendRequest(new EnquireLink(), 0L);
+        try {
+            patient.get(200L, TimeUnit.MILLISECONDS);
+            fail("request should still be outstanding");
+        } catch (TimeoutException x) {
+            // success!
+        }
+        assertFalse(patient.isDone());
+    }
+
+    public void testTimeoutStartsAfterWrite() throws Exception {
+        link.writeDelay = 200L;
+        ResponseFuture future = session.sendRequest(new EnquireLink(), 100L);
+        SMPPPacket response = respondTo(future.getRequest());
+        assertSame(future.get(), response);
+    }
+
+    public void testCancelFreesSlot() throws Exception {
+        session.setWindowSize(1);
+        session.setBlockWhenWindowFull(false);
+        ResponseFuture future = session.sendRequest(new EnquireLink());
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        try {
+            future.get();
+            fail("future should have been cancelled");
+        } catch (CancellationException x) {
+            // success!
+        }
+        session.sendRequest(new EnquireLink());
+    }
+
+    public void testWriteFailureFailsFutureAndFreesSlot() throws Exception {
+        session.setWindowSize(1);
+        session.setBlockWhenWindowFull(false);
+        link.failWrites = true;
+        try {
+            session.sendRequest(new EnquireLink());
+            fail("write should have failed");
+        } catch (IOException x) {
+            // success!
+        }
+        assertEquals(session.getPendingRequestCount(), 0);
+        link.failWrites = false;
+        session.sendRequest(new EnquireLink());
+    }
+
+    public void testReceiverExitFailsOutstandingRequests() throws Exception {
+        ResponseFuture future = session.sendRequest(new EnquireLink());
+        session.receiverExited(null);
+        try {
+            future.get();
+            fail("request should have failed");
+        } catch (ExecutionException x) {
+            assertTrue(x.getCause() instanceof IOException);
+        }
+        assertEquals(session.getPendingRequestCount(), 0);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testResponsesCannotBeSentAsynchronously() throws Exception {
+        session.sendRequest(new EnquireLinkResp());
+    }
+
+    private void awaitBlocked(Thread thread) {
+        long end = System.currentTimeMillis() + 5000L;
+        while (thread.getState() != Thread.State.WAITING
+                && System.currentTimeMillis() < end) {
+            Thread.yield();
+        }
+        assertEquals(thread.getState(), Thread.State.WAITING);
+    }
+
+    private SMPPPacket respondTo(SMPPPacket request) {
+        EnquireLinkResp response = new EnquireLinkResp();
+        response.setSequenceNum(request.getSequenceNum());
+        session.processReceivedPacket(response);
+        return response;
+    }
+
+    private static class RecordingLink implements SmscLink {
+        private final List<SMPPPacket> written = new ArrayList<SMPPPacket>();
+        private volatile boolean failWrites;
+        private volatile long writeDelay;
+
+        public void connect() {
+        }
+
+        public void disconnect() {
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public synchronized void write(SMPPPacket packet, boolean withOptionalParams)
+                throws IOException {
+            if (failWrites) {
+                throw new IOException("Write failed");
+            }
+            if (writeDelay > 0L) {
+                try {
+                    Thread.sleep(writeDelay);
+                } catch (InterruptedException x) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            written.add(packet);
+        }
+
+        public void flush() {
+        }
+
+        public SMPPPacket read() {
+            return null;
+        }
+
+        public int getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(int timeout) {
+        }
+
+        public boolean isTimeoutSupported() {
+            return false;
+        }
+    }
+}
@@ -25,8 +25,12 @@ package org.mobicents.protocols.smpp.encoding;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 
 import org.mobicents.protocols.smpp.encoding.AlphabetEncoding;
 import org.testng.annotations.Test;
@@ -120,6 +124,69 @@ public abstract class BaseAlphabetEncodingTest<T extends AlphabetEncoding> {
         assertEquals(encoding.getEncodedSize(null), 0);
     }
     
+    @Test
+    public void testEncodedSizeMatchesEncodedLength() throws Exception {
+        AlphabetEncoding encoding = getEncodingToTest();
+        TestData testData = getPartiallySupportedStringToEncode();
+        assertEquals(encoding.getEncodedSize(testData.string),
+                testData.bytes.length);
+    }
+    
+    @Test
+    public void testEncodeIntoBuffer() throws Exception {
+        AlphabetEncoding encoding = getEncodingToTest();
+        TestData testData = getPartiallySupportedStringToEncode();
+        ByteBuffer buffer = ByteBuffer.allocate(testData.bytes.length + 2);
+        buffer.put((byte) 0x7f);
+        assertEquals(encoding.encode(testData.string, buffer), testData.bytes.length);
+        assertEquals(buffer.position(), testData.bytes.length + 1);
+        byte[] encoded = new byte[testData.bytes.length];
+        buffer.flip();
+        buffer.get();
+        buffer.get(encoded);
+        assertEquals(encoded, testData.getBytes());
+    }
+    
+    @Test
+    public void testEncodeIntoFullBuffer() throws Exception {
+        AlphabetEncoding encoding = getEncodingToTest();
+        TestData testData = getFullySupportedStringToEncode();
+        ByteBuffer buffer = ByteBuffer.allocate(testData.bytes.length - 1);
+        try {
+            encoding.encode(testData.string, buffer);
+            fail("Expected a buffer overflow");
+        } catch (BufferOverflowException x) {
+            assertEquals(buffer.position(), 0);
+        }
+    }
+    
+    @Test
+    public void testDecodeIntoBuffer() throws Exception {
+        AlphabetEncoding encoding = getEncodingToTest();
+        TestData testData = getArrayToDecode();
+        ByteBuffer src = ByteBuffer.wrap(testData.getBytes());
+        CharBuffer dest = CharBuffer.allocate(testData.string.length() + 2);
+        assertEquals(encoding.decode(src, dest), testData.string.length());
+        assertEquals(src.remaining(), 0);
+        dest.flip();
+        assertEquals(dest.toString(), testData.string);
+    }
+    
+    @Test
+    public void testDecodeIntoFullBuffer() throws Exception {
+        AlphabetEncoding encoding = getEncodingToTest();
+        TestData testData = getArrayToDecode();
+        ByteBuffer src = ByteBuffer.wrap(testData.getBytes());
+        CharBuffer dest = CharBuffer.allocate(testData.string.length() - 1);
+        try {
+            encoding.decode(src, dest);
+            fail("Expected a buffer overflow");
+        } catch (BufferOverflowException x) {
+            assertEquals(src.position(), 0);
+            assertEquals(dest.position(), 0);
+        }
+    }
+    
     protected abstract T getEncodingToTest() throws UnsupportedEncodingException;
     
     protected abstract TestData getArrayToDecode();
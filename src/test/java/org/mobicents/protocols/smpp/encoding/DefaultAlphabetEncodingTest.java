@@ -27,6 +27,7 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 import org.mobicents.protocols.smpp.encoding.DefaultAlphabetEncoding;
 import org.testng.annotations.Test;
@@ -277,6 +278,79 @@ public class DefaultAlphabetEncodingTest extends BaseAlphabetEncodingTest<Defaul
         assertEquals(s, "A*");
     }
     
+    public void testEncodePackedMatchesPackedEncoding() throws Exception {
+        DefaultAlphabetEncoding encoding = getEncodingToTest();
+        for (int length = 0; length <= ALPHABET.length(); length++) {
+            String text = ALPHABET.substring(0, length);
+            byte[] expected = encoding.pack(encoding.encode(text));
+            byte[] actual = new byte[expected.length + 1];
+            int septets = encoding.encodePacked(text, actual, 1);
+            assertEquals(septets, encoding.countSeptets(text));
+            assertEquals(DefaultAlphabetEncoding.getPackedLength(septets), expected.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(actual[i + 1], expected[i]);
+            }
+        }
+    }
+
+    public void testEncodePackedIntoBuffers() throws Exception {
+        DefaultAlphabetEncoding encoding = getEncodingToTest();
+        byte[] expected = encoding.pack(encoding.encode(ALPHABET));
+        ByteBuffer[] buffers = {
+                ByteBuffer.allocate(expected.length),
+                ByteBuffer.allocateDirect(expected.length),
+        };
+        for (ByteBuffer buffer : buffers) {
+            assertEquals(encoding.encodePacked(ALPHABET, buffer), BYTES.length);
+            assertEquals(buffer.position(), expected.length);
+            byte[] actual = new byte[expected.length];
+            buffer.flip();
+            buffer.get(actual);
+            assertEquals(actual, expected);
+        }
+    }
+
+    public void testDecodePacked() throws Exception {
+        DefaultAlphabetEncoding encoding = getEncodingToTest();
+        byte[] packed = encoding.pack(encoding.encode(ALPHABET));
+        char[] chars = new char[BYTES.length + 1];
+        int count = encoding.decodePacked(packed, 0, BYTES.length, chars, 1);
+        assertEquals(new String(chars, 1, count), ALPHABET);
+    }
+
+    public void testPackedWordsAroundEscapes() throws Exception {
+        DefaultAlphabetEncoding encoding = getEncodingToTest();
+        String body = "The quick brown fox jumps over the lazy dog 0123456789";
+        // Move an escaped and an unknown character through every position
+        // of the body so that plain runs start at every septet alignment.
+        for (int i = 0; i <= body.length(); i++) {
+            String text = body.substring(0, i) + "\u20ac" + body.substring(i)
+                + "\u4e2d" + body;
+            byte[] unpacked = encoding.encode(text);
+            byte[] expected = encoding.pack(unpacked);
+            byte[] actual = new byte[expected.length];
+            assertEquals(encoding.encodePacked(text, actual, 0), unpacked.length);
+            assertEquals(actual, expected);
+            char[] chars = new char[unpacked.length];
+            int count = encoding.decodePacked(actual, 0, unpacked.length, chars, 0);
+            assertEquals(new String(chars, 0, count), encoding.decode(unpacked));
+        }
+    }
+
+    public void testDecodeIntoCharArray() throws Exception {
+        DefaultAlphabetEncoding encoding = getEncodingToTest();
+        byte[] bytes = encoding.encode("a{b}");
+        char[] chars = new char[bytes.length];
+        assertEquals(encoding.decode(bytes, 0, bytes.length, chars, 0), 4);
+        assertEquals(new String(chars, 0, 4), "a{b}");
+    }
+
+    public void testEncodedSizeCountsEscapes() throws Exception {
+        DefaultAlphabetEncoding encoding = getEncodingToTest();
+        assertEquals(encoding.getEncodedSize("\u20ac5 [x]"), 9);
+        assertEquals(encoding.getEncodedSize(null), 0);
+    }
+
     public void testCharacterSize() throws Exception {
         DefaultAlphabetEncoding encoding = getEncodingToTest();
         assertEquals(encoding.getCharSize(), 7);
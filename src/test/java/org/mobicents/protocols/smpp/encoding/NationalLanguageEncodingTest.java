@@ -0,0 +1,182 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.encoding;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+@Test
+public class NationalLanguageEncodingTest {
+
+    public void testDefaultTablesMatchDefaultAlphabet() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.DEFAULT, NationalLanguageEncoding.DEFAULT);
+        DefaultAlphabetEncoding gsm = new DefaultAlphabetEncoding();
+        StringBuilder text = new StringBuilder();
+        for (char c = 0; c < 0x400; c++) {
+            text.append(c);
+        }
+        text.append("\u20ac\u0393\u03a9");
+        String s = text.toString();
+        assertEquals(encoding.encode(s), gsm.encode(s));
+        assertEquals(encoding.countSeptets(s), gsm.countSeptets(s));
+    }
+
+    public void testTurkishLockingShift() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.TURKISH, NationalLanguageEncoding.DEFAULT);
+        String text = "\u011f\u015f\u0131\u0130\u00e7\u20ac";
+        byte[] encoded = encoding.encode(text);
+        assertEquals(encoded, new byte[] {0x0c, 0x1d, 0x07, 0x40, 0x60, 0x04});
+        assertEquals(encoding.decode(encoded), text);
+        assertEquals(encoding.getSeptetCount('\u00e8'), 0);
+        assertEquals(encoding.getSeptetCount('{'), 2);
+    }
+
+    public void testTurkishSingleShift() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.DEFAULT, NationalLanguageEncoding.TURKISH);
+        String text = "a\u011fb\u0131";
+        byte[] encoded = encoding.encode(text);
+        assertEquals(encoded, new byte[] {0x61, 0x1b, 0x67, 0x62, 0x1b, 0x69});
+        assertEquals(encoding.decode(encoded), text);
+        assertEquals(encoding.countSeptets(text), 6);
+        assertEquals(encoding.getSeptetCount('\u00e8'), 1);
+    }
+
+    public void testHindiRoundTrip() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.HINDI, NationalLanguageEncoding.HINDI);
+        // "Namaste" in the locking shift table, a danda in the single
+        // shift table.
+        String text = "\u0928\u092e\u0938\u094d\u0924\u0947\u0964";
+        byte[] encoded = encoding.encode(text);
+        assertEquals(encoded, new byte[] {
+                0x2f, 0x42, 0x4c, 0x5f, 0x27, 0x59, 0x1b, 0x19});
+        assertEquals(encoding.decode(encoded), text);
+        assertRoundTrip(encoding, "SMS \u0915\u0940 \u0915\u0940\u092e\u0924 "
+                + "\u0968\u0966 \u0930\u0941\u092a\u092f\u0947 \u0939\u0948\u0965");
+    }
+
+    public void testBengaliRoundTrip() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.BENGALI, NationalLanguageEncoding.BENGALI);
+        String text = "\u0986\u09ae\u09bf \u09ac\u09be\u0982\u09b2\u09be\u09af\u09bc";
+        byte[] encoded = encoding.encode(text);
+        assertEquals(encoded, new byte[] {
+                0x04, 0x42, 0x51, 0x20, 0x40, 0x50, 0x01, 0x46, 0x50, 0x43, 0x4e});
+        assertEquals(encoding.decode(encoded), text);
+        assertRoundTrip(encoding, "\u0997\u09be\u09a8 \u0997\u09be\u0987\u0964 "
+                + "\u09e7\u09e8\u09e9 \u099f\u09be\u0995\u09be \u09f3");
+    }
+
+    public void testTamilRoundTrip() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.TAMIL, NationalLanguageEncoding.TAMIL);
+        String text = "\u0bb5\u0ba3\u0b95\u0bcd\u0b95\u0bae\u0bcd "
+            + "\u0b89\u0bb2\u0b95\u0bae\u0bcd";
+        byte[] encoded = encoding.encode(text);
+        assertEquals(encoded, new byte[] {
+                0x49, 0x26, 0x15, 0x5f, 0x15, 0x42, 0x5f, 0x20,
+                0x07, 0x46, 0x15, 0x42, 0x5f});
+        assertEquals(encoding.decode(encoded), text);
+        assertRoundTrip(encoding, text + " \u0be7\u0be6 \u0bb0\u0bc2\u0baa\u0bbe\u0baf\u0bcd\u0964");
+        // U+0B96 is unassigned in the Tamil block, so it has no code point.
+        assertEquals(encoding.getSeptetCount('\u0b96'), 0);
+    }
+
+    public void testIndicTablesAreConsistent() throws Exception {
+        for (int language = NationalLanguageEncoding.BENGALI;
+                language <= NationalLanguageEncoding.URDU; language++) {
+            NationalLanguageEncoding encoding =
+                new NationalLanguageEncoding(language, language);
+            for (int code = 0; code < 0x80; code++) {
+                if (code == DefaultAlphabetEncoding.EXTENDED_ESCAPE) {
+                    continue;
+                }
+                char c = encoding.decode(new byte[] {(byte) code}).charAt(0);
+                if (c != 0) {
+                    assertEquals(encoding.encode(String.valueOf(c)),
+                            new byte[] {(byte) code}, "language " + language);
+                }
+            }
+            // Latin capitals come from the single shift table.
+            assertEquals(encoding.encode("A"), new byte[] {0x1b, 0x41});
+        }
+    }
+
+    public void testBaseTableTakesPrecedenceOverSingleShift() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.PORTUGUESE, NationalLanguageEncoding.PORTUGUESE);
+        // Both Portuguese tables hold these characters.
+        assertEquals(encoding.encode("\u00ea\u00c1\u20ac"),
+                new byte[] {0x04, 0x0e, 0x18});
+        assertEquals(encoding.decode(new byte[] {0x1b, 0x12}), "\u03a6");
+    }
+
+    public void testPackedRoundTrip() throws Exception {
+        NationalLanguageEncoding encoding = new NationalLanguageEncoding(
+                NationalLanguageEncoding.DEFAULT, NationalLanguageEncoding.SPANISH);
+        String text = "Ma\u00f1ana ser\u00e1 m\u00e1s f\u00e1cil";
+        byte[] packed = new byte[DefaultAlphabetEncoding.getPackedLength(
+                encoding.countSeptets(text))];
+        int septets = encoding.encodePacked(text, packed, 0);
+        char[] decoded = new char[text.length()];
+        int length = encoding.decodePacked(packed, 0, septets, decoded, 0);
+        assertEquals(new String(decoded, 0, length), text);
+    }
+
+    public void testSupportedTables() throws Exception {
+        assertTrue(NationalLanguageEncoding.isLockingShiftSupported(
+                NationalLanguageEncoding.TURKISH));
+        assertFalse(NationalLanguageEncoding.isLockingShiftSupported(
+                NationalLanguageEncoding.SPANISH));
+        assertTrue(NationalLanguageEncoding.isSingleShiftSupported(
+                NationalLanguageEncoding.SPANISH));
+        assertTrue(NationalLanguageEncoding.isLockingShiftSupported(
+                NationalLanguageEncoding.URDU));
+        assertTrue(NationalLanguageEncoding.isSingleShiftSupported(
+                NationalLanguageEncoding.URDU));
+        assertFalse(NationalLanguageEncoding.isLockingShiftSupported(14));
+        assertFalse(NationalLanguageEncoding.isSingleShiftSupported(14));
+    }
+
+    private static void assertRoundTrip(NationalLanguageEncoding encoding,
+            String text) {
+        byte[] packed = new byte[DefaultAlphabetEncoding.getPackedLength(
+                encoding.countSeptets(text))];
+        int septets = encoding.encodePacked(text, packed, 0);
+        char[] decoded = new char[text.length()];
+        int length = encoding.decodePacked(packed, 0, septets, decoded, 0);
+        assertEquals(new String(decoded, 0, length), text);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedLockingShift() throws Exception {
+        new NationalLanguageEncoding(NationalLanguageEncoding.SPANISH,
+                NationalLanguageEncoding.DEFAULT);
+    }
+}
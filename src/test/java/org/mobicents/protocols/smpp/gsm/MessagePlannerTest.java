@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.gsm;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.gsm.MessagePlanner.Alphabet;
+
+@Test
+public class MessagePlannerTest {
+
+    public void testEmptyMessageIsOneGsmSegment() throws Exception {
+        MessagePlanner planner = new MessagePlanner().plan("");
+        assertEquals(planner.getAlphabet(), Alphabet.GSM7);
+        assertEquals(planner.getEncodedLength(), 0);
+        assertEquals(planner.getSegmentCount(), 1);
+    }
+
+    public void testGsmSegmentLimits() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        assertPlan(planner.plan(repeat('a', 160)), Alphabet.GSM7, 160, 1, 1);
+        assertPlan(planner.plan(repeat('a', 161)), Alphabet.GSM7, 161, 2, 2);
+        assertPlan(planner.plan(repeat('a', 306)), Alphabet.GSM7, 306, 2, 3);
+        assertPlan(planner.plan(repeat('a', 307)), Alphabet.GSM7, 307, 3, 3);
+    }
+
+    public void testEscapesAreNotSplitAcrossSegments() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        // 152 septets, then an escape sequence that would straddle the
+        // end of the first 153-septet segment.
+        String text = repeat('a', 152) + "\u20ac" + repeat('a', 10);
+        assertPlan(planner.plan(text), Alphabet.GSM7, 164, 2, 2);
+        text = repeat('a', 152) + "\u20ac" + repeat('a', 152);
+        assertEquals(planner.plan(text).getSegmentCount(), 3);
+        assertEquals(planner.plan(text).getSegmentCount(true), 3);
+        assertEquals(planner.plan(repeat('{', 80)).getEncodedLength(), 160);
+        assertEquals(planner.plan(repeat('{', 80)).getSegmentCount(), 1);
+    }
+
+    public void testLatin1IsChosenWhenGsmCannotRepresentText() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        assertPlan(planner.plan("caf\u00e9 \u00e2"), Alphabet.LATIN1, 6, 1, 1);
+        assertEquals(planner.getDataCoding(), 3);
+        assertPlan(planner.plan(repeat('\u00e2', 141)), Alphabet.LATIN1, 141, 2, 2);
+        planner.setLatin1Allowed(false);
+        assertPlan(planner.plan("caf\u00e9 \u00e2"), Alphabet.UCS2, 12, 1, 1);
+    }
+
+    public void testLatin1IsChosenWhenCheaperThanGsm() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        assertPlan(planner.plan(repeat('{', 100)), Alphabet.LATIN1, 100, 1, 1);
+    }
+
+    public void testUcs2SegmentLimits() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        assertPlan(planner.plan(repeat('\u0416', 70)), Alphabet.UCS2, 140, 1, 1);
+        assertPlan(planner.plan(repeat('\u0416', 71)), Alphabet.UCS2, 142, 2, 2);
+        assertPlan(planner.plan(repeat('\u0416', 134)), Alphabet.UCS2, 268, 2, 3);
+        assertEquals(planner.getDataCoding(), 8);
+    }
+
+    public void testSurrogatePairsAreNotSplitAcrossSegments() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        String text = repeat('\u0416', 66) + "\ud83d\ude00" + repeat('\u0416', 3);
+        assertPlan(planner.plan(text), Alphabet.UCS2, 142, 2, 2);
+    }
+
+    public void testHeaderLengthReducesCapacity() throws Exception {
+        MessagePlanner planner = new MessagePlanner();
+        // Port addressing with 16-bit ports: a 6-octet element plus the
+        // header length octet, which leaves 152 septets.
+        planner.setHeaderLength(6);
+        assertEquals(planner.plan(repeat('a', 152)).getSegmentCount(), 1);
+        assertEquals(planner.plan(repeat('a', 153)).getSegmentCount(), 2);
+        // Adding the concatenation element leaves 12 octets of header.
+        assertEquals(planner.plan(repeat('a', 292)).getSegmentCount(), 2);
+        assertEquals(planner.plan(repeat('a', 293)).getSegmentCount(), 3);
+    }
+
+    @Test(expectedExceptions = {IllegalArgumentException.class})
+    public void testNegativeHeaderLengthIsRejected() throws Exception {
+        new MessagePlanner().setHeaderLength(-1);
+    }
+
+    private void assertPlan(MessagePlanner planner, Alphabet alphabet,
+            int length, int segments8, int segments16) {
+        assertEquals(planner.getAlphabet(), alphabet);
+        assertEquals(planner.getEncodedLength(), length);
+        assertEquals(planner.getSegmentCount(), segments8);
+        assertEquals(planner.getSegmentCount(false), segments8);
+        assertEquals(planner.getSegmentCount(true), segments16);
+    }
+
+    private String repeat(char c, int count) {
+        StringBuilder buffer = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            buffer.append(c);
+        }
+        return buffer.toString();
+    }
+}
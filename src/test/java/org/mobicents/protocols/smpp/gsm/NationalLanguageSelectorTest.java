@@ -0,0 +1,136 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.gsm;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.mobicents.protocols.smpp.encoding.NationalLanguageEncoding;
+import org.testng.annotations.Test;
+
+@Test
+public class NationalLanguageSelectorTest {
+
+    public void testDefaultAlphabetIsPreferred() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.TURKISH);
+        NationalLanguageEncoding encoding = selector.select("Hello world");
+        assertEquals(encoding.getLockingShift(), NationalLanguageEncoding.DEFAULT);
+        assertEquals(encoding.getSingleShift(), NationalLanguageEncoding.DEFAULT);
+        assertEquals(selector.getSegmentCount(), 1);
+        assertEquals(selector.getEncodedLength(), 11);
+    }
+
+    public void testSingleShiftForFewNationalCharacters() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.TURKISH);
+        NationalLanguageEncoding encoding = selector.select("Te\u015fekk\u00fcrler");
+        assertEquals(encoding.getLockingShift(), NationalLanguageEncoding.DEFAULT);
+        assertEquals(encoding.getSingleShift(), NationalLanguageEncoding.TURKISH);
+        assertEquals(selector.getEncodedLength(), 12);
+    }
+
+    public void testLockingShiftWhenItSavesSegments() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.TURKISH);
+        // 100 escaped characters need 200 septets with the single shift
+        // table but only 100 with the locking shift table.
+        String text = repeat('\u015f', 100);
+        NationalLanguageEncoding encoding = selector.select(text);
+        assertEquals(encoding.getLockingShift(), NationalLanguageEncoding.TURKISH);
+        assertEquals(encoding.getSingleShift(), NationalLanguageEncoding.DEFAULT);
+        assertEquals(selector.getSegmentCount(), 1);
+        assertEquals(selector.getEncodedLength(), 100);
+    }
+
+    public void testBothShiftsWhenNeeded() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.PORTUGUESE);
+        // The locking table lacks the Greek capitals, the single shift
+        // table lacks the ordinal indicators.
+        NationalLanguageEncoding encoding = selector.select("\u00aa\u03a6");
+        assertEquals(encoding.getLockingShift(), NationalLanguageEncoding.PORTUGUESE);
+        assertEquals(encoding.getSingleShift(), NationalLanguageEncoding.PORTUGUESE);
+    }
+
+    public void testIndicTextUsesNationalTables() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.HINDI);
+        NationalLanguageEncoding encoding =
+            selector.select("\u0928\u092e\u0938\u094d\u0924\u0947");
+        assertEquals(encoding.getLockingShift(), NationalLanguageEncoding.HINDI);
+        assertEquals(encoding.getSingleShift(), NationalLanguageEncoding.DEFAULT);
+        assertEquals(selector.getEncodedLength(), 6);
+        // The danda is only in the single shift table.
+        encoding = selector.select("\u0928\u092e\u0938\u094d\u0924\u0947\u0964");
+        assertEquals(encoding.getLockingShift(), NationalLanguageEncoding.HINDI);
+        assertEquals(encoding.getSingleShift(), NationalLanguageEncoding.HINDI);
+        assertEquals(selector.getEncodedLength(), 8);
+    }
+
+    public void testShiftHeadersReduceCapacity() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.TURKISH);
+        // A single shift header leaves room for 155 septets in one
+        // segment. The Turkish locking shift table has no e-grave.
+        selector.select("\u00e8\u015f" + repeat('a', 152));
+        assertEquals(selector.getEncoding().getSingleShift(),
+                NationalLanguageEncoding.TURKISH);
+        assertEquals(selector.getEncodedLength(), 155);
+        assertEquals(selector.getSegmentCount(), 1);
+        selector.select("\u00e8\u015f" + repeat('a', 153));
+        assertEquals(selector.getSegmentCount(), 2);
+    }
+
+    public void testUnrepresentableText() throws Exception {
+        NationalLanguageSelector selector =
+            new NationalLanguageSelector(NationalLanguageEncoding.SPANISH);
+        assertNull(selector.select("\u4e2d\u6587"));
+        assertNull(selector.getEncoding());
+        assertEquals(selector.getSegmentCount(), 0);
+    }
+
+    public void testAddNationalLanguageShifts() throws Exception {
+        UserData userData = new UserDataImpl();
+        userData.setData(new byte[] {1, 2, 3});
+        UserDataUtil.addNationalLanguageShifts(userData,
+                new NationalLanguageEncoding(NationalLanguageEncoding.TURKISH,
+                        NationalLanguageEncoding.SPANISH));
+        byte[] header = new byte[7];
+        System.arraycopy(userData.toSingleSms(), 0, header, 0, header.length);
+        assertEquals(header, new byte[] {6, 0x25, 1, 1, 0x24, 1, 2});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnsupportedLanguage() throws Exception {
+        new NationalLanguageSelector(42);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
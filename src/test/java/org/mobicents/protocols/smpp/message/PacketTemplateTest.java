@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.message.tlv.CompactTLVTable;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.util.SMPPDate;
+import org.mobicents.protocols.smpp.version.SMPPVersion;
+import org.mobicents.protocols.smpp.version.VersionException;
+
+@Test
+public class PacketTemplateTest {
+
+    public void testFrameMatchesEncodedSubmitSM() throws Exception {
+        SubmitSM prototype = newSubmitSM();
+        PacketTemplate template = new PacketTemplate(prototype, SMPPVersion.VERSION_3_4);
+        Address destination = new Address(1, 1, "447700900123");
+
+        prototype.setDestination(destination);
+        prototype.setSequenceNum(42L);
+        assertTrue(Arrays.equals(template.newFrame(42L, destination), encode(prototype)));
+    }
+
+    public void testFrameMatchesEncodedDataSM() throws Exception {
+        DataSM prototype = new DataSM();
+        prototype.setServiceType("WAP");
+        prototype.setSource(new Address(5, 0, "Shop"));
+        prototype.setDataCoding(8);
+        prototype.setTLV(Tag.MESSAGE_PAYLOAD, new byte[] {1, 2, 3});
+        PacketTemplate template = new PacketTemplate(prototype, SMPPVersion.VERSION_3_4);
+        Address destination = new Address(1, 1, "3538712345");
+
+        prototype.setDestination(destination);
+        prototype.setSequenceNum(7L);
+        assertTrue(Arrays.equals(template.newFrame(7L, destination), encode(prototype)));
+    }
+
+    public void testExtraTLVsAreAppended() throws Exception {
+        SubmitSM prototype = newSubmitSM();
+        PacketTemplate template = new PacketTemplate(prototype, SMPPVersion.VERSION_3_4);
+        Address destination = new Address(1, 1, "447700900124");
+        CompactTLVTable tlvs = new CompactTLVTable();
+        tlvs.put(Tag.USER_MESSAGE_REFERENCE, 99);
+
+        SubmitSM packet = (SubmitSM) template.newPacket(destination, tlvs);
+        assertEquals(packet.getDestination(), destination);
+        assertEquals(packet.getTLV(Tag.USER_MESSAGE_REFERENCE), new Integer(99));
+        assertEquals(packet.getTLV(Tag.SOURCE_PORT), new Integer(2948));
+        assertEquals(packet.getMessage(), prototype.getMessage());
+    }
+
+    public void testPacketIsWrittenFromFrame() throws Exception {
+        SubmitSM prototype = newSubmitSM();
+        PacketTemplate template = new PacketTemplate(prototype, SMPPVersion.VERSION_3_4);
+        Address destination = new Address(1, 1, "447700900125");
+
+        SMPPPacket packet = template.newPacket(destination);
+        assertEquals(packet.getSequenceNum(), -1L);
+        packet.setSequenceNum(1234L);
+        packet.validate(SMPPVersion.VERSION_3_4);
+        assertTrue(packet.isFrameIntact());
+        assertTrue(Arrays.equals(encode(packet), template.newFrame(1234L, destination)));
+    }
+
+    public void testChangesToPrototypeDoNotAffectTemplate() throws Exception {
+        SubmitSM prototype = newSubmitSM();
+        PacketTemplate template = new PacketTemplate(prototype, SMPPVersion.VERSION_3_4);
+        prototype.setServiceType("OTHER");
+        SubmitSM packet = (SubmitSM) template.newPacket(new Address(1, 1, "1"));
+        assertEquals(packet.getServiceType(), "CMT");
+    }
+
+    public void testInvalidDestinationIsRejected() throws Exception {
+        PacketTemplate template =
+            new PacketTemplate(newSubmitSM(), SMPPVersion.VERSION_3_4);
+        StringBuilder address = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            address.append('1');
+        }
+        try {
+            template.newFrame(1L, new Address(1, 1, address.toString()));
+            fail("Accepted an address that is too long");
+        } catch (VersionException x) {
+        }
+    }
+
+    public void testTLVsAreDroppedForVersionsWithoutThem() throws Exception {
+        SubmitSM prototype = newSubmitSM();
+        PacketTemplate template = new PacketTemplate(prototype, SMPPVersion.VERSION_3_3);
+        SubmitSM packet = (SubmitSM) template.newPacket(new Address(1, 1, "1"));
+        assertFalse(packet.isSet(Tag.SOURCE_PORT));
+    }
+
+    private SubmitSM newSubmitSM() {
+        SubmitSM packet = new SubmitSM();
+        packet.setServiceType("CMT");
+        packet.setSource(new Address(5, 0, "Campaign"));
+        packet.setEsmClass(0x40);
+        packet.setRegistered(1);
+        packet.setExpiryTime(SMPPDate.getRelativeInstance(0, 0, 1, 0, 0, 0));
+        packet.setMessage("Spring sale, 20% off".getBytes());
+        packet.setTLV(Tag.SOURCE_PORT, new Integer(2948));
+        return packet;
+    }
+
+    private byte[] encode(SMPPPacket packet) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packet.writeTo(new PacketEncoderImpl(out));
+        return out.toByteArray();
+    }
+}
@@ -25,8 +25,10 @@ package org.mobicents.protocols.smpp.message;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
 import java.util.Random;
 
 import org.testng.annotations.BeforeClass;
@@ -120,6 +122,19 @@ public abstract class PacketTests<T extends SMPPPacket> {
         assertEquals(original, decodedPacket);
     }
     
+    @Test
+    public void testLazilyReadPacketMatchesOriginal() throws Exception {
+        T original = getInitialisedPacket();
+        setCommonFields(original);
+        byte[] frame = encode(original);
+        T lazyPacket = getPacketType().newInstance();
+        lazyPacket.readLazily(frame);
+        assertEquals(lazyPacket.getLength(), frame.length);
+        assertTrue(Arrays.equals(encode(lazyPacket), frame));
+        assertEquals(lazyPacket, original);
+        assertEquals(lazyPacket.getTLV(Tag.DEST_ADDR_SUBUNIT), new Integer(234));
+    }
+    
     protected abstract Class<T> getPacketType();
     
     protected abstract T getInitialisedPacket();
@@ -129,7 +144,7 @@ public abstract class PacketTests<T extends SMPPPacket> {
         random = new Random();
     }
     
-    private void setCommonFields(SMPPPacket packet) {
+    protected void setCommonFields(SMPPPacket packet) {
         packet.setSequenceNum((long) random.nextInt(Integer.MAX_VALUE));
         packet.setCommandStatus(0);
         // Add a couple of TLVs
@@ -137,6 +152,12 @@ public abstract class PacketTests<T extends SMPPPacket> {
         packet.setTLV(Tag.ITS_SESSION_INFO, new byte[] {1, 2});
     }
     
+    protected byte[] encode(SMPPPacket packet) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packet.writeTo(new PacketEncoderImpl(out));
+        return out.toByteArray();
+    }
+    
     /**
      * Test an individual packet. This method serializes the packet to a byte
      * array and then deserializes a second packet from that byte array. It then
@@ -22,12 +22,21 @@
 
 package org.mobicents.protocols.smpp.message;
 
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
 import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.testng.annotations.Test;
 
 import org.mobicents.protocols.smpp.Address;
 import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
 import org.mobicents.protocols.smpp.util.SMPPDate;
 
 @Test
@@ -56,4 +65,87 @@ public class SubmitSMTest extends PacketTests<SubmitSM> {
         packet.setMessage(new byte[] {1, 2, 3, 4, 5, 6});
         return packet;
     }
+
+    public void testLazyPacketKeepsFrameUntilModified() throws Exception {
+        SubmitSM original = getInitialisedPacket();
+        setCommonFields(original);
+        byte[] frame = encode(original);
+        SubmitSM packet = new SubmitSM();
+        packet.readLazily(frame);
+        assertEquals(packet.getDestination(), new Address(0, 0, "8748746987"));
+        assertTrue(packet.isSet(Tag.ITS_SESSION_INFO));
+        assertTrue(packet.isFrameIntact());
+        
+        packet.setSequenceNum(original.getSequenceNum() + 1);
+        byte[] forwarded = encode(packet);
+        assertTrue(packet.isFrameIntact());
+        assertEquals(forwarded.length, frame.length);
+        for (int i = 16; i < frame.length; i++) {
+            assertEquals(forwarded[i], frame[i]);
+        }
+        
+        packet.setDestination(new Address(1, 1, "1234"));
+        assertFalse(packet.isFrameIntact());
+        SubmitSM decoded = new SubmitSM();
+        decoded.readLazily(encode(packet));
+        assertEquals(decoded.getDestination(), new Address(1, 1, "1234"));
+        assertEquals(decoded.getSource(), original.getSource());
+        assertEquals(decoded.getTLV(Tag.DEST_ADDR_SUBUNIT), new Integer(234));
+        assertEquals(decoded.getLength(), packet.getLength());
+    }
+
+    public void testTLVTableChangesAreWrittenWithFrame() throws Exception {
+        SubmitSM original = getInitialisedPacket();
+        setCommonFields(original);
+        SubmitSM packet = new SubmitSM();
+        packet.readLazily(encode(original));
+        packet.getTLVTable();
+        assertTrue(packet.isFrameIntact());
+        packet.getTLVTable().remove(Tag.ITS_SESSION_INFO);
+        packet.getTLVTable().put(Tag.USER_MESSAGE_REFERENCE, new Integer(99));
+        assertTrue(packet.isFrameIntact());
+        byte[] written = encode(packet);
+        assertEquals(written.length, packet.getLength());
+        SubmitSM decoded = new SubmitSM();
+        decoded.readFrom(new PacketDecoderImpl(written));
+        assertEquals(decoded.getDestination(), original.getDestination());
+        assertFalse(decoded.isSet(Tag.ITS_SESSION_INFO));
+        assertEquals(decoded.getTLV(Tag.USER_MESSAGE_REFERENCE), new Integer(99));
+        assertEquals(decoded.getTLV(Tag.DEST_ADDR_SUBUNIT), new Integer(234));
+    }
+
+    public void testLazyDecodeIsSafeAcrossThreads() throws Exception {
+        SubmitSM original = getInitialisedPacket();
+        setCommonFields(original);
+        byte[] frame = encode(original);
+        final Address destination = original.getDestination();
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            final SubmitSM packet = new SubmitSM();
+            packet.readLazily(frame);
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(4);
+            for (int t = 0; t < 4; t++) {
+                new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            if (!destination.equals(packet.getDestination())
+                                    || !new Integer(234).equals(
+                                            packet.getTLV(Tag.DEST_ADDR_SUBUNIT))) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Throwable x) {
+                            failures.incrementAndGet();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            start.countDown();
+            assertTrue(done.await(5L, TimeUnit.SECONDS));
+        }
+        assertEquals(failures.get(), 0);
+    }
 }
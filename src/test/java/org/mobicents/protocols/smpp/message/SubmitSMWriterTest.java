@@ -0,0 +1,243 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.IllegalStateException;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.net.FrameLink;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.util.SMPPDate;
+import org.mobicents.protocols.smpp.version.SMPPVersion;
+import org.mobicents.protocols.smpp.version.VersionException;
+
+@Test
+public class SubmitSMWriterTest {
+    private static final byte[] TEXT = "Spring sale, 20% off".getBytes();
+
+    public void testFrameMatchesEncodedSubmitSM() throws Exception {
+        SMPPDate expiry = SMPPDate.getRelativeInstance(0, 0, 1, 0, 0, 0);
+        SMPPDate schedule = SMPPDate.getAbsoluteInstance(1300000000000L, -20);
+        SubmitSM packet = new SubmitSM();
+        packet.setSequenceNum(42L);
+        packet.setServiceType("CMT");
+        packet.setSource(new Address(5, 0, "Campaign"));
+        packet.setDestination(new Address(1, 1, "447700900123"));
+        packet.setEsmClass(0x40);
+        packet.setProtocolID(0x7f);
+        packet.setPriority(2);
+        packet.setDeliveryTime(schedule);
+        packet.setExpiryTime(expiry);
+        packet.setRegistered(1);
+        packet.setReplaceIfPresent(1);
+        packet.setDataCoding(8);
+        packet.setDefaultMsg(3);
+        packet.setMessage(TEXT);
+        packet.setTLV(Tag.SOURCE_PORT, new Integer(2948));
+        packet.setTLV(Tag.MESSAGE_PAYLOAD, new byte[] {1, 2, 3});
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int length = new SubmitSMWriter(SMPPVersion.VERSION_3_4).wrap(buffer)
+            .serviceType("CMT")
+            .source(5, 0, "Campaign")
+            .destination(1, 1, "447700900123")
+            .esmClass(0x40)
+            .protocolId(0x7f)
+            .priority(2)
+            .scheduleDeliveryTime(schedule)
+            .validityPeriod(expiry)
+            .registeredDelivery(1)
+            .replaceIfPresent(1)
+            .dataCoding(8)
+            .defaultMsg(3)
+            .message(TEXT, 0, TEXT.length)
+            .tlv(Tag.SOURCE_PORT, 2948)
+            .tlv(Tag.MESSAGE_PAYLOAD, new byte[] {1, 2, 3}, 0, 3)
+            .finish(42L);
+        assertEquals(buffer.position(), length);
+        assertTrue(Arrays.equals(toArray(buffer), encode(packet)));
+    }
+
+    public void testSkippedFieldsAreWrittenAsDefaults() throws Exception {
+        SubmitSM packet = new SubmitSM();
+        packet.setSequenceNum(7L);
+        packet.setDestination(new Address(1, 1, "3538712345"));
+        packet.setRegistered(1);
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        new SubmitSMWriter(SMPPVersion.VERSION_3_4).wrap(buffer)
+            .destination(1, 1, "3538712345")
+            .registeredDelivery(1)
+            .finish(7L);
+        assertTrue(Arrays.equals(toArray(buffer), encode(packet)));
+    }
+
+    public void testFramesAreWrittenBackToBack() throws Exception {
+        SubmitSMWriter writer = new SubmitSMWriter(SMPPVersion.VERSION_3_4);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int first = writer.wrap(buffer).destination(1, 1, "1").finish(1L);
+        int second = writer.wrap(buffer).destination(1, 1, "22").finish(2L);
+        assertEquals(buffer.position(), first + second);
+        buffer.flip();
+
+        SubmitSM packet = new SubmitSM();
+        byte[] frame = new byte[second];
+        buffer.position(first);
+        buffer.get(frame);
+        packet.readLazily(frame);
+        assertEquals(packet.getSequenceNum(), 2L);
+        assertEquals(packet.getDestination(), new Address(1, 1, "22"));
+    }
+
+    public void testFieldsMustBeWrittenInOrder() throws Exception {
+        SubmitSMWriter writer = new SubmitSMWriter(SMPPVersion.VERSION_3_4);
+        writer.wrap(ByteBuffer.allocate(256)).destination(1, 1, "1");
+        try {
+            writer.source(1, 1, "2");
+            fail("Wrote source_addr after destination_addr");
+        } catch (IllegalStateException x) {
+        }
+        try {
+            writer.destination(1, 1, "2");
+            fail("Wrote destination_addr twice");
+        } catch (IllegalStateException x) {
+        }
+        writer.finish(1L);
+        try {
+            writer.esmClass(0);
+            fail("Wrote a field after the frame was finished");
+        } catch (IllegalStateException x) {
+        }
+    }
+
+    public void testFieldsAreCheckedAgainstVersion() throws Exception {
+        SubmitSMWriter writer = new SubmitSMWriter(SMPPVersion.VERSION_3_4);
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        writer.wrap(buffer);
+        try {
+            writer.serviceType("TOOLONG");
+            fail("Accepted a service type that is too long");
+        } catch (VersionException x) {
+        }
+        try {
+            writer.destination(1, 1, "123456789012345678901");
+            fail("Accepted an address that is too long");
+        } catch (VersionException x) {
+        }
+        try {
+            writer.message(new byte[255], 0, 255);
+            fail("Accepted a message that is too long");
+        } catch (VersionException x) {
+        }
+        assertEquals(buffer.position(), 16);
+
+        writer = new SubmitSMWriter(SMPPVersion.VERSION_3_3);
+        writer.wrap(buffer);
+        try {
+            writer.tlv(Tag.SOURCE_PORT, 1);
+            fail("Wrote a TLV for a version that does not support them");
+        } catch (VersionException x) {
+        }
+    }
+
+    public void testFrameIsWrittenToLink() throws Exception {
+        SubmitSMWriter writer = new SubmitSMWriter(SMPPVersion.VERSION_3_4);
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        writer.wrap(buffer).destination(1, 1, "447700900123")
+            .message(TEXT, 0, TEXT.length).finish(9L);
+        byte[] expected = toArray(buffer);
+
+        RecordingLink link = new RecordingLink();
+        writer.writeTo(link);
+        assertEquals(buffer.position(), expected.length);
+        assertEquals(link.frames.size(), 1);
+        assertTrue(Arrays.equals(link.frames.get(0), expected));
+    }
+
+    private byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, array, 0, array.length);
+        return array;
+    }
+
+    private byte[] encode(SMPPPacket packet) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packet.writeTo(new PacketEncoderImpl(out));
+        return out.toByteArray();
+    }
+
+    private static class RecordingLink implements FrameLink {
+        private final List<byte[]> frames = new ArrayList<byte[]>();
+
+        public void writeFrame(ByteBuffer frame) throws IOException {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.duplicate().get(bytes);
+            frames.add(bytes);
+        }
+
+        public void connect() throws IOException {
+        }
+
+        public void disconnect() throws IOException {
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public void write(SMPPPacket packet, boolean withOptionalParams) throws IOException {
+            throw new IOException("Packet written instead of frame");
+        }
+
+        public void flush() throws IOException {
+        }
+
+        public SMPPPacket read() throws IOException {
+            throw new IOException("Not readable");
+        }
+
+        public int getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(int timeout) {
+        }
+
+        public boolean isTimeoutSupported() {
+            return false;
+        }
+    }
+}
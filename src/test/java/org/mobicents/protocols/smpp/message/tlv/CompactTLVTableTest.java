@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message.tlv;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+
+@Test
+public class CompactTLVTableTest {
+    private static final int UNKNOWN_TAG = 0x7acf;
+
+    public void testEmptyTableIsImmutable() throws Exception {
+        assertEquals(CompactTLVTable.EMPTY.size(), 0);
+        assertEquals(CompactTLVTable.EMPTY.getLength(), 0);
+        assertNull(CompactTLVTable.EMPTY.remove(Tag.DEST_ADDR_SUBUNIT));
+        try {
+            CompactTLVTable.EMPTY.put(Tag.DEST_ADDR_SUBUNIT, 1);
+            fail("Modified the shared empty table");
+        } catch (UnsupportedOperationException x) {
+        }
+    }
+
+    public void testPutReplacesAndReturnsPreviousValue() throws Exception {
+        CompactTLVTable table = new CompactTLVTable();
+        assertNull(table.put(Tag.DEST_ADDR_SUBUNIT, 3));
+        assertEquals(table.put(Tag.DEST_ADDR_SUBUNIT, new Integer(4)), new Integer(3));
+        assertEquals(table.getInt(Tag.DEST_ADDR_SUBUNIT), 4);
+        assertEquals(table.get(Tag.DEST_ADDR_SUBUNIT), new Integer(4));
+        assertEquals(table.size(), 1);
+        assertEquals(table.getInt(Tag.DEST_TELEMATICS_ID), -1);
+    }
+
+    public void testLengthIsMaintained() throws Exception {
+        CompactTLVTable table = new CompactTLVTable();
+        table.put(Tag.DEST_ADDR_SUBUNIT, 1);
+        table.put(Tag.ADDITIONAL_STATUS_INFO_TEXT, "info");
+        table.put(Tag.CALLBACK_NUM_ATAG, new byte[] {1, 2, 3});
+        assertEquals(table.getLength(), encode(table).length);
+        table.put(Tag.ADDITIONAL_STATUS_INFO_TEXT, "more info");
+        assertEquals(table.getLength(), encode(table).length);
+        table.remove(Tag.DEST_ADDR_SUBUNIT);
+        assertEquals(table.getLength(), encode(table).length);
+        table.clear();
+        assertEquals(table.getLength(), 0);
+    }
+
+    public void testToStringClosesEachParameter() throws Exception {
+        CompactTLVTable table = new CompactTLVTable();
+        table.put(Tag.DEST_ADDR_SUBUNIT, 1);
+        assertEquals(table.toString(), "{5,1,1}");
+    }
+
+    public void testInvalidValuesAreRejected() throws Exception {
+        CompactTLVTable table = new CompactTLVTable();
+        try {
+            table.put(Tag.SOURCE_SUBADDRESS, new byte[1]);
+            fail("Set an OctetValue that was too short.");
+        } catch (InvalidSizeForValueException x) {
+        }
+        try {
+            table.put(Tag.RECEIPTED_MESSAGE_ID, null);
+            fail("Set a null value.");
+        } catch (BadValueTypeException x) {
+        }
+        assertTrue(table.isEmpty());
+    }
+
+    public void testTableSerialize() throws Exception {
+        CompactTLVTable table = new CompactTLVTable();
+        BitSet bitSet = new BitSet();
+        bitSet.set(3);
+        table.put(Tag.DEST_ADDR_SUBUNIT, 0x56);
+        table.put(Tag.DEST_TELEMATICS_ID, 0xe2e1);
+        table.put(Tag.QOS_TIME_TO_LIVE, new Long(Integer.MAX_VALUE));
+        table.put(Tag.ADDITIONAL_STATUS_INFO_TEXT, "Test info");
+        table.put(Tag.CALLBACK_NUM_ATAG, new byte[] {0x56, 0x67, 0x69});
+        table.put(Tag.MS_MSG_WAIT_FACILITIES, bitSet);
+        byte[] encoded = encode(table);
+
+        CompactTLVTable decoded = new CompactTLVTable();
+        PacketDecoderImpl decoder = new PacketDecoderImpl(encoded);
+        decoded.readFrom(decoder, encoded.length);
+        assertEquals(decoder.getParsePosition(), encoded.length);
+        assertEquals(decoded.getLength(), encoded.length);
+        assertEquals(decoded.getInt(Tag.DEST_ADDR_SUBUNIT), 0x56);
+        assertEquals(decoded.getInt(Tag.DEST_TELEMATICS_ID), 0xe2e1);
+        assertEquals(decoded.getLong(Tag.QOS_TIME_TO_LIVE), (long) Integer.MAX_VALUE);
+        assertEquals(decoded.getString(Tag.ADDITIONAL_STATUS_INFO_TEXT), "Test info");
+        assertEquals(decoded.getBytes(Tag.CALLBACK_NUM_ATAG), new byte[] {0x56, 0x67, 0x69});
+        assertEquals(decoded.getBitmask(Tag.MS_MSG_WAIT_FACILITIES), bitSet);
+    }
+
+    public void testUnknownTagsAreNotDefined() throws Exception {
+        byte[] encoded = new byte[] {0x7a, (byte) 0xcf, 0, 2, 5, 6};
+        CompactTLVTable table = new CompactTLVTable();
+        table.readFrom(new PacketDecoderImpl(encoded), encoded.length);
+        assertEquals((byte[]) table.get(UNKNOWN_TAG), new byte[] {5, 6});
+        assertFalse(Tag.isTagDefined(UNKNOWN_TAG));
+    }
+
+    public void testIteratorPreservesOrderAndRemoves() throws Exception {
+        CompactTLVTable table = new CompactTLVTable();
+        table.put(Tag.DEST_TELEMATICS_ID, 2);
+        table.put(Tag.DEST_ADDR_SUBUNIT, 1);
+        table.put(Tag.RECEIPTED_MESSAGE_ID, "id");
+        Iterator<Map.Entry<Tag, Object>> iterator = table.entrySet().iterator();
+        assertEquals(iterator.next().getKey(), Tag.DEST_TELEMATICS_ID);
+        assertEquals(iterator.next().getKey(), Tag.DEST_ADDR_SUBUNIT);
+        iterator.remove();
+        assertEquals(iterator.next().getKey(), Tag.RECEIPTED_MESSAGE_ID);
+        assertFalse(iterator.hasNext());
+        assertEquals(table.size(), 2);
+        assertFalse(table.containsKey(Tag.DEST_ADDR_SUBUNIT));
+        assertEquals(table.getLength(), encode(table).length);
+    }
+
+    private byte[] encode(TLVTable table) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.writeTo(new PacketEncoderImpl(out));
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.message.tlv;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+
+@Test
+public class LazyTLVTableTest {
+    private static final int UNKNOWN_TAG = 0x7ace;
+
+    public void testValuesAreDecodedOnRequest() throws Exception {
+        byte[] encoded = encodeSample();
+        LazyTLVTable table = new LazyTLVTable();
+        table.readFrom(new PacketDecoderImpl(encoded), encoded.length);
+        assertEquals(table.size(), 3);
+        assertEquals(table.getLength(), encoded.length);
+        assertTrue(table.containsKey(Tag.DEST_TELEMATICS_ID));
+        assertEquals(table.get(Tag.DEST_TELEMATICS_ID), new Integer(0xbcad));
+        assertEquals(table.getString(Tag.ADDITIONAL_STATUS_INFO_TEXT), "info");
+        assertEquals(table.size(), 3);
+        assertNull(table.get(Tag.DEST_ADDR_SUBUNIT));
+    }
+
+    public void testUnknownTagsAreNotDefined() throws Exception {
+        byte[] encoded = encodeSample();
+        LazyTLVTable table = new LazyTLVTable();
+        table.readFrom(new PacketDecoderImpl(encoded), encoded.length);
+        assertEquals((byte[]) table.get(UNKNOWN_TAG), new byte[] {1, 2, 3});
+        assertEquals(table.keySet().size(), 3);
+        assertFalse(Tag.isTagDefined(UNKNOWN_TAG));
+        table.remove(UNKNOWN_TAG);
+        assertEquals(table.size(), 2);
+        assertFalse(Tag.isTagDefined(UNKNOWN_TAG));
+    }
+
+    public void testUntouchedParametersAreCopied() throws Exception {
+        byte[] encoded = encodeSample();
+        LazyTLVTable table = new LazyTLVTable();
+        table.readFrom(new PacketDecoderImpl(encoded), encoded.length);
+        assertTrue(Arrays.equals(encode(table), encoded));
+
+        table.put(Tag.DEST_ADDR_SUBUNIT, new Integer(5));
+        table.remove(Tag.ADDITIONAL_STATUS_INFO_TEXT);
+        byte[] modified = encode(table);
+        assertEquals(modified.length, table.getLength());
+        LazyTLVTable decoded = new LazyTLVTable();
+        decoded.readFrom(new PacketDecoderImpl(modified), modified.length);
+        assertEquals(decoded.size(), 3);
+        assertEquals(decoded.getInt(Tag.DEST_ADDR_SUBUNIT), 5);
+        assertEquals(decoded.getInt(Tag.DEST_TELEMATICS_ID), 0xbcad);
+        assertFalse(decoded.containsKey(Tag.ADDITIONAL_STATUS_INFO_TEXT));
+        assertEquals((byte[]) decoded.get(UNKNOWN_TAG), new byte[] {1, 2, 3});
+    }
+
+    public void testConcurrentReadsDecodeOnce() throws Exception {
+        byte[] encoded = encodeSample();
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            final LazyTLVTable table = new LazyTLVTable();
+            table.readFrom(new PacketDecoderImpl(encoded), encoded.length);
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(4);
+            for (int t = 0; t < 4; t++) {
+                new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            if (table.getInt(Tag.DEST_TELEMATICS_ID) != 0xbcad
+                                    || !"info".equals(table.getString(
+                                            Tag.ADDITIONAL_STATUS_INFO_TEXT))) {
+                                failures.incrementAndGet();
+                            }
+                        } catch (Throwable x) {
+                            failures.incrementAndGet();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            start.countDown();
+            assertTrue(done.await(5L, TimeUnit.SECONDS));
+            assertEquals(table.size(), 3);
+        }
+        assertEquals(failures.get(), 0);
+    }
+
+    public void testRepeatedTagKeepsLastValue() throws Exception {
+        TLVTableImpl first = new TLVTableImpl();
+        first.put(Tag.DEST_ADDR_SUBUNIT, new Integer(1));
+        TLVTableImpl second = new TLVTableImpl();
+        second.put(Tag.DEST_ADDR_SUBUNIT, new Integer(2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PacketEncoderImpl encoder = new PacketEncoderImpl(out);
+        first.writeTo(encoder);
+        second.writeTo(encoder);
+        byte[] encoded = out.toByteArray();
+        LazyTLVTable table = new LazyTLVTable();
+        table.readFrom(new PacketDecoderImpl(encoded), encoded.length);
+        assertEquals(table.size(), 1);
+        assertEquals(table.getInt(Tag.DEST_ADDR_SUBUNIT), 2);
+    }
+
+    private byte[] encodeSample() throws Exception {
+        TLVTableImpl table = new TLVTableImpl();
+        table.put(Tag.DEST_TELEMATICS_ID, new Integer(0xbcad));
+        table.put(Tag.ADDITIONAL_STATUS_INFO_TEXT, "info");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PacketEncoderImpl encoder = new PacketEncoderImpl(out);
+        table.writeTo(encoder);
+        encoder.writeBytes(new byte[] {0x7a, (byte) 0xce, 0, 3, 1, 2, 3});
+        return out.toByteArray();
+    }
+
+    private byte[] encode(TLVTable table) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.writeTo(new PacketEncoderImpl(out));
+        return out.toByteArray();
+    }
+}
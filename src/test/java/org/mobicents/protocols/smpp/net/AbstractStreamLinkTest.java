@@ -0,0 +1,152 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.message.DeliverSM;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitSMResp;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+
+@Test
+public class AbstractStreamLinkTest {
+
+    public void testReadDecodesConsecutivePackets() throws Exception {
+        SMPPPacket[] packets = createPackets();
+        StreamLink link = new StreamLink(new ByteArrayInputStream(encode(packets)));
+        for (SMPPPacket packet : packets) {
+            assertEquals(link.read(), packet);
+        }
+    }
+
+    public void testReadHandlesStreamReturningOneByteAtATime() throws Exception {
+        SMPPPacket[] packets = createPackets();
+        final InputStream source = new ByteArrayInputStream(encode(packets));
+        InputStream trickle = new InputStream() {
+            public int read() throws IOException {
+                return source.read();
+            }
+            public int read(byte[] b, int off, int len) throws IOException {
+                return source.read(b, off, Math.min(1, len));
+            }
+        };
+        StreamLink link = new StreamLink(trickle);
+        for (SMPPPacket packet : packets) {
+            SMPPPacket read = link.read();
+            assertEquals(read, packet);
+            assertEquals(read.getLength(), packet.getLength());
+        }
+    }
+
+    public void testReadGrowsBufferForLargePackets() throws Exception {
+        DeliverSM deliver = new DeliverSM();
+        deliver.setSequenceNum(7);
+        deliver.setTLV(Tag.MESSAGE_PAYLOAD, new byte[60000]);
+        StreamLink link = new StreamLink(new ByteArrayInputStream(encode(deliver)));
+        SMPPPacket packet = link.read();
+        assertEquals(packet, deliver);
+        assertEquals(((byte[]) packet.getTLV(Tag.MESSAGE_PAYLOAD)).length, 60000);
+    }
+
+    public void testReadThrowsEOFExceptionOnTruncatedPacket() throws Exception {
+        byte[] bytes = encode(createPackets());
+        byte[] truncated = new byte[20];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        StreamLink link = new StreamLink(new ByteArrayInputStream(truncated));
+        link.read();
+        try {
+            link.read();
+        } catch (EOFException x) {
+            return;
+        }
+        assertTrue(false, "Expected an EOFException");
+    }
+
+    private SMPPPacket[] createPackets() {
+        EnquireLink enquireLink = new EnquireLink();
+        enquireLink.setSequenceNum(1);
+        DeliverSM deliver = new DeliverSM();
+        deliver.setSequenceNum(2);
+        deliver.setSource(new Address(1, 1, "447700900123"));
+        deliver.setMessage("Hello".getBytes());
+        SubmitSMResp resp = new SubmitSMResp();
+        resp.setSequenceNum(3);
+        resp.setMessageId("msg1");
+        return new SMPPPacket[] { enquireLink, deliver, resp };
+    }
+
+    private byte[] encode(SMPPPacket... packets) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PacketEncoderImpl encoder = new PacketEncoderImpl(out);
+        for (SMPPPacket packet : packets) {
+            packet.writeTo(encoder, true);
+        }
+        return out.toByteArray();
+    }
+
+    private static class StreamLink extends AbstractStreamLink {
+        private boolean connected;
+
+        StreamLink(InputStream in) {
+            setInputStream(in);
+            setOutputStream(new ByteArrayOutputStream());
+            connected = true;
+        }
+
+        public void connect() {
+        }
+
+        public void disconnect() throws IOException {
+            super.disconnect();
+            connected = false;
+        }
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public int getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(int timeout) {
+        }
+
+        public boolean isTimeoutSupported() {
+            return false;
+        }
+    }
+}
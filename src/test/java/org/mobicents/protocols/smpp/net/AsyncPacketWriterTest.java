@@ -0,0 +1,204 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.util.SMPPIO;
+
+@Test
+public class AsyncPacketWriterTest {
+
+    public void testPacketsFromManyThreadsAreWrittenWhole() throws Exception {
+        final CountingStream out = new CountingStream();
+        final AsyncPacketWriter writer = new AsyncPacketWriter(out, 8192, 1L, "test");
+        Thread[] senders = new Thread[4];
+        for (int i = 0; i < senders.length; i++) {
+            final int base = i * 1000;
+            senders[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int seq = base; seq < base + 1000; seq++) {
+                            EnquireLink packet = new EnquireLink();
+                            packet.setSequenceNum(seq);
+                            writer.write(packet, true);
+                        }
+                        writer.flush();
+                    } catch (IOException x) {
+                        throw new RuntimeException(x);
+                    }
+                }
+            };
+            senders[i].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        byte[] bytes = out.toByteArray();
+        assertEquals(bytes.length, 4000 * 16);
+        Set<Long> sequenceNumbers = new HashSet<Long>();
+        for (int pos = 0; pos < bytes.length; pos += 16) {
+            assertEquals(SMPPIO.readInt4(bytes, pos), 16);
+            assertEquals(SMPPIO.readInt4(bytes, pos + 4), 0x15);
+            sequenceNumbers.add(SMPPIO.readUInt4(bytes, pos + 12));
+        }
+        assertEquals(sequenceNumbers.size(), 4000);
+        assertTrue(out.flushes < 4000, "Expected flushes to be coalesced");
+        writer.shutdown(1000L);
+    }
+
+    public void testShutdownWritesQueuedPackets() throws Exception {
+        CountingStream out = new CountingStream();
+        AsyncPacketWriter writer = new AsyncPacketWriter(out, 8192, 1000L, "test");
+        for (int i = 0; i < 100; i++) {
+            writer.write(new EnquireLink(), true);
+        }
+        writer.shutdown(5000L);
+        assertEquals(out.size(), 1600);
+        try {
+            writer.write(new EnquireLink(), true);
+            fail("Should not write after shutdown");
+        } catch (IOException x) {
+            // success
+        }
+    }
+
+    public void testWriteFailsOnceStreamFails() throws Exception {
+        OutputStream broken = new OutputStream() {
+            public void write(int b) throws IOException {
+                throw new IOException("broken");
+            }
+        };
+        AsyncPacketWriter writer = new AsyncPacketWriter(broken, 8192, 1L, "test");
+        writer.write(new EnquireLink(), true);
+        try {
+            writer.flush();
+            fail("flush should report the failure");
+        } catch (IOException x) {
+            // success
+        }
+        try {
+            writer.write(new EnquireLink(), true);
+            fail("write should report the failure");
+        } catch (IOException x) {
+            // success
+        }
+    }
+
+    public void testFlushWaitsOnlyForOwnFrames() throws Exception {
+        BlockingStream out = new BlockingStream();
+        final AsyncPacketWriter writer = new AsyncPacketWriter(out, 8192, 1L, "test");
+        try {
+            Thread other = new Thread() {
+                public void run() {
+                    try {
+                        writer.write(new EnquireLink(), true);
+                    } catch (IOException x) {
+                        throw new RuntimeException(x);
+                    }
+                }
+            };
+            other.start();
+            other.join();
+            assertTrue(out.entered.await(5L, TimeUnit.SECONDS));
+            // The other thread's frame is stuck in the stream, but this
+            // thread has queued nothing to wait for.
+            writer.flush();
+            long ticket = writer.write(new EnquireLink(), true);
+            out.release.countDown();
+            writer.flush(ticket);
+            assertEquals(out.size(), 32);
+        } finally {
+            out.release.countDown();
+            writer.shutdown(1000L);
+        }
+    }
+
+    public void testBlockedSenderFailsOnShutdown() throws Exception {
+        BlockingStream out = new BlockingStream();
+        final AsyncPacketWriter writer = new AsyncPacketWriter(out, 8192, 1L, "test");
+        final ByteBuffer frame = ByteBuffer.allocate(1024 * 1024);
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        Thread sender = new Thread() {
+            public void run() {
+                try {
+                    writer.write(frame.duplicate());
+                    writer.write(frame.duplicate());
+                } catch (Throwable x) {
+                    errors.add(x);
+                }
+            }
+        };
+        sender.start();
+        long end = System.currentTimeMillis() + 5000L;
+        while (sender.getState() != Thread.State.WAITING
+                && System.currentTimeMillis() < end) {
+            Thread.yield();
+        }
+        assertEquals(sender.getState(), Thread.State.WAITING);
+        writer.shutdown(1L);
+        sender.join(5000L);
+        assertEquals(errors.size(), 1);
+        assertTrue(errors.get(0) instanceof IOException);
+        out.release.countDown();
+    }
+
+    private static class BlockingStream extends ByteArrayOutputStream {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        public synchronized void write(byte[] b, int off, int len) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            super.write(b, off, len);
+        }
+    }
+
+    private static class CountingStream extends ByteArrayOutputStream {
+        private volatile int flushes;
+
+        public void flush() {
+            flushes++;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.SubmitSMResp;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+import org.mobicents.protocols.smpp.util.PacketDecoderImpl;
+import org.mobicents.protocols.smpp.util.PacketEncoderImpl;
+import org.mobicents.protocols.smpp.util.PacketFactory;
+
+public class NioLinkTest {
+
+    private NioEventLoopGroup group;
+    private ServerSocket server;
+    private Socket peer;
+    private NioLink link;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        group = new NioEventLoopGroup(1, "NioLinkTest");
+        server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        link = new NioLink(server.getInetAddress(), server.getLocalPort(), group);
+        link.setTimeout(5000);
+        link.connect();
+        peer = server.accept();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        link.disconnect();
+        peer.close();
+        server.close();
+        group.shutdown();
+    }
+
+    @Test
+    public void testReadDecodesPacketsSplitAcrossWrites() throws Exception {
+        SubmitSM submit = new SubmitSM();
+        submit.setSequenceNum(1);
+        submit.setDestination(new Address(1, 1, "447700900123"));
+        submit.setMessage(new byte[140]);
+        submit.setTLV(Tag.MESSAGE_PAYLOAD, new byte[20000]);
+        byte[] bytes = encode(submit, new EnquireLink());
+        OutputStream out = peer.getOutputStream();
+        for (int i = 0; i < bytes.length; i += 1000) {
+            out.write(bytes, i, Math.min(1000, bytes.length - i));
+            out.flush();
+        }
+        SMPPPacket packet = link.read();
+        assertEquals(packet, submit);
+        assertEquals(((byte[]) packet.getTLV(Tag.MESSAGE_PAYLOAD)).length, 20000);
+        assertTrue(link.read() instanceof EnquireLink);
+    }
+
+    @Test
+    public void testWriteReachesPeer() throws Exception {
+        SubmitSMResp resp = new SubmitSMResp();
+        resp.setSequenceNum(99);
+        resp.setMessageId("abc123");
+        link.write(resp, true);
+        link.flush();
+        DataInputStream in = new DataInputStream(peer.getInputStream());
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes, 4, bytes.length - 4);
+        SMPPPacket packet = new PacketFactory().newInstance(0x80000004);
+        bytes[0] = (byte) (bytes.length >>> 24);
+        bytes[1] = (byte) (bytes.length >>> 16);
+        bytes[2] = (byte) (bytes.length >>> 8);
+        bytes[3] = (byte) bytes.length;
+        packet.readFrom(new PacketDecoderImpl(bytes));
+        assertEquals(packet, resp);
+        assertEquals(((SubmitSMResp) packet).getMessageId(), "abc123");
+    }
+
+    @Test
+    public void testListenerReceivesQueuedPacketsInOrder() throws Exception {
+        List<SMPPPacket> sent = new ArrayList<SMPPPacket>();
+        for (int i = 1; i <= 10; i++) {
+            EnquireLink enquireLink = new EnquireLink();
+            enquireLink.setSequenceNum(i);
+            sent.add(enquireLink);
+        }
+        peer.getOutputStream().write(
+                encode(sent.subList(0, 5).toArray(new SMPPPacket[0])));
+        Thread.sleep(200L);
+        RecordingListener listener = new RecordingListener();
+        link.setPacketListener(listener);
+        peer.getOutputStream().write(
+                encode(sent.subList(5, 10).toArray(new SMPPPacket[0])));
+        for (int i = 0; i < sent.size(); i++) {
+            Object received = listener.events.poll(5, TimeUnit.SECONDS);
+            assertEquals(received, sent.get(i));
+        }
+    }
+
+    @Test
+    public void testWritesFromListenerNeverWaitForRoom() throws Exception {
+        // The peer does not read, so the listener's responses fill the
+        // socket and then the write queue well past its limit. They are
+        // written on the loop thread, which must not wait for itself.
+        final BlockingQueue<Object> done = new LinkedBlockingQueue<Object>();
+        link.setPacketListener(new PacketListener() {
+            public void packetReceived(SmscLink source, SMPPPacket packet) {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        SubmitSM submit = new SubmitSM();
+                        submit.setSequenceNum(i + 1);
+                        submit.setTLV(Tag.MESSAGE_PAYLOAD, new byte[20000]);
+                        source.write(submit, true);
+                    }
+                    source.flush();
+                    done.add("written");
+                } catch (IOException x) {
+                    done.add(x);
+                }
+            }
+
+            public void readTimeout(SmscLink source) {
+            }
+
+            public void linkError(SmscLink source, Exception error) {
+            }
+        });
+        peer.getOutputStream().write(encode(new EnquireLink()));
+        assertEquals(done.poll(10, TimeUnit.SECONDS), "written");
+    }
+
+    @Test(expectedExceptions = ReadTimeoutException.class)
+    public void testReadThrowsExceptionAfterTimeout() throws Exception {
+        link.setTimeout(200);
+        link.read();
+    }
+
+    @Test
+    public void testListenerIsToldOfReadTimeout() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        link.setTimeout(300);
+        link.setPacketListener(listener);
+        assertEquals(listener.events.poll(5, TimeUnit.SECONDS), "timeout");
+    }
+
+    @Test
+    public void testPeerCloseIsReportedAsIOException() throws Exception {
+        peer.close();
+        try {
+            link.read();
+        } catch (IOException x) {
+            assertFalse(link.isConnected());
+            return;
+        }
+        throw new AssertionError("Expected an IOException");
+    }
+
+    private byte[] encode(SMPPPacket... packets) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PacketEncoderImpl encoder = new PacketEncoderImpl(out);
+        for (SMPPPacket packet : packets) {
+            packet.writeTo(encoder, true);
+        }
+        return out.toByteArray();
+    }
+
+    private static class RecordingListener implements PacketListener {
+        private BlockingQueue<Object> events = new LinkedBlockingQueue<Object>();
+
+        public void packetReceived(SmscLink link, SMPPPacket packet) {
+            events.add(packet);
+        }
+
+        public void readTimeout(SmscLink link) {
+            events.add("timeout");
+        }
+
+        public void linkError(SmscLink link, Exception error) {
+            events.add(error);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.server;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.Session;
+import org.mobicents.protocols.smpp.SessionState;
+import org.mobicents.protocols.smpp.SessionType;
+import org.mobicents.protocols.smpp.event.SMPPEvent;
+import org.mobicents.protocols.smpp.event.SessionObserver;
+import org.mobicents.protocols.smpp.message.Bind;
+import org.mobicents.protocols.smpp.message.BindReceiver;
+import org.mobicents.protocols.smpp.message.BindTransmitter;
+import org.mobicents.protocols.smpp.message.BindTransceiver;
+import org.mobicents.protocols.smpp.message.CommandId;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.SubmitSMResp;
+import org.mobicents.protocols.smpp.net.NioEventLoopGroup;
+import org.mobicents.protocols.smpp.net.NioLink;
+import org.mobicents.protocols.smpp.util.PacketStatus;
+
+@Test
+public class SmscServerTest {
+    private NioEventLoopGroup group;
+    private SmscServer server;
+    private RecordingListener listener;
+    private Session client;
+    private BlockingQueue<SMPPPacket> clientReceived;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        group = new NioEventLoopGroup(2, "SmscServerTest");
+        InetSocketAddress address =
+            new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0);
+        server = new SmscServer(address, new BindAuthenticator() {
+            public int authenticate(Session session, Bind bindRequest) {
+                if ("secret".equals(bindRequest.getPassword())) {
+                    return PacketStatus.OK;
+                }
+                return PacketStatus.INVALID_PASSWORD;
+            }
+        }, group);
+        listener = new RecordingListener();
+        server.setListener(listener);
+        server.start();
+        client = new Session(new NioLink(
+                InetAddress.getByName("127.0.0.1"), server.getLocalPort(), group));
+        client.setValidating(false);
+        clientReceived = new LinkedBlockingQueue<SMPPPacket>();
+        client.addObserver(new SessionObserver() {
+            public void packetReceived(Session source, SMPPPacket packet) {
+                clientReceived.add(packet);
+            }
+
+            public void update(Session source, SMPPEvent event) {
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        server.stop();
+        group.shutdown();
+    }
+
+    public void testBindIsAccepted() throws Exception {
+        bind("secret");
+        awaitResponse(CommandId.BIND_TRANSCEIVER_RESP, SessionState.BOUND);
+        Session serverSession = listener.bound.poll(5L, TimeUnit.SECONDS);
+        assertTrue(serverSession != null);
+        assertTrue(serverSession.isSmscSide());
+        assertEquals(serverSession.getState(), SessionState.BOUND);
+        assertEquals(serverSession.getSessionType(), SessionType.TRANSCEIVER);
+        assertEquals(server.getSessionCount(), 1);
+    }
+
+    public void testBindIsRejected() throws Exception {
+        bind("wrong");
+        awaitResponse(CommandId.BIND_TRANSCEIVER_RESP, SessionState.UNBOUND);
+        assertTrue(listener.closed.poll(5L, TimeUnit.SECONDS) != null);
+        assertEquals(listener.bound.size(), 0);
+        assertEquals(server.getSessionCount(), 0);
+    }
+
+    public void testEnquireLinkIsAnswered() throws Exception {
+        bind("secret");
+        awaitResponse(CommandId.BIND_TRANSCEIVER_RESP, SessionState.BOUND);
+        SMPPPacket response =
+            client.sendRequest(new EnquireLink()).get(5L, TimeUnit.SECONDS);
+        assertEquals(response.getCommandStatus(), 0);
+    }
+
+    public void testRequestsGoToObservers() throws Exception {
+        bind("secret");
+        awaitResponse(CommandId.BIND_TRANSCEIVER_RESP, SessionState.BOUND);
+        SubmitSM submit = new SubmitSM();
+        submit.setDestination(new Address(1, 1, "447700900123"));
+        submit.setMessage(new byte[] {'h', 'i'});
+        SubmitSMResp response = (SubmitSMResp)
+            client.sendRequest(submit).get(5L, TimeUnit.SECONDS);
+        assertEquals(response.getMessageId(), "msg-1");
+        assertTrue(listener.errors.isEmpty(), listener.errors.toString());
+    }
+
+    public void testRequestBeforeBindIsRejected() throws Exception {
+        NioLink link = new NioLink(
+                InetAddress.getByName("127.0.0.1"), server.getLocalPort(), group);
+        link.setTimeout(5000);
+        link.connect();
+        try {
+            SubmitSM submit = new SubmitSM();
+            submit.setSequenceNum(7);
+            link.write(submit, true);
+            SMPPPacket response = link.read();
+            assertTrue(response instanceof SubmitSMResp);
+            assertEquals(response.getSequenceNum(), 7L);
+            assertEquals(response.getCommandStatus(), PacketStatus.INVALID_BIND_STATUS);
+        } finally {
+            link.disconnect();
+        }
+    }
+
+    public void testRejectedRequestIsNotDelivered() throws Exception {
+        NioLink link = new NioLink(
+                InetAddress.getByName("127.0.0.1"), server.getLocalPort(), group);
+        link.setTimeout(5000);
+        link.connect();
+        try {
+            SubmitSM submit = new SubmitSM();
+            submit.setSequenceNum(1);
+            link.write(submit, true);
+            assertEquals(link.read().getCommandStatus(), PacketStatus.INVALID_BIND_STATUS);
+            EnquireLink enquireLink = new EnquireLink();
+            enquireLink.setSequenceNum(2);
+            link.write(enquireLink, true);
+            assertEquals(link.read().getSequenceNum(), 2L);
+            // Packets reach observers in the order received, so the submit
+            // would be seen before the enquire_link had it been delivered.
+            SMPPPacket delivered = listener.received.poll(5L, TimeUnit.SECONDS);
+            assertTrue(delivered instanceof EnquireLink);
+        } finally {
+            link.disconnect();
+        }
+    }
+
+    public void testRejectedRebindKeepsSessionType() throws Exception {
+        NioLink link = new NioLink(
+                InetAddress.getByName("127.0.0.1"), server.getLocalPort(), group);
+        link.setTimeout(5000);
+        link.connect();
+        try {
+            BindTransmitter bind = new BindTransmitter();
+            bind.setSequenceNum(1);
+            bind.setSystemId("esme");
+            bind.setPassword("secret");
+            link.write(bind, true);
+            assertEquals(link.read().getCommandStatus(), PacketStatus.OK);
+            Session serverSession = listener.bound.poll(5L, TimeUnit.SECONDS);
+            assertTrue(serverSession != null);
+            BindReceiver rebind = new BindReceiver();
+            rebind.setSequenceNum(2);
+            rebind.setSystemId("esme");
+            rebind.setPassword("secret");
+            link.write(rebind, true);
+            assertEquals(link.read().getCommandStatus(), PacketStatus.ALREADY_BOUND);
+            assertEquals(serverSession.getSessionType(), SessionType.TRANSMITTER);
+        } finally {
+            link.disconnect();
+        }
+    }
+
+    public void testUnbindClosesSession() throws Exception {
+        bind("secret");
+        awaitResponse(CommandId.BIND_TRANSCEIVER_RESP, SessionState.BOUND);
+        client.unbind();
+        awaitResponse(CommandId.UNBIND_RESP, SessionState.UNBOUND);
+        assertTrue(listener.closed.poll(5L, TimeUnit.SECONDS) != null);
+        assertEquals(server.getSessionCount(), 0);
+    }
+
+    private void bind(String password) throws Exception {
+        BindTransceiver bind = new BindTransceiver();
+        bind.setSystemId("esme");
+        bind.setPassword(password);
+        client.bind(bind);
+    }
+
+    private void awaitResponse(int commandId, SessionState state) throws Exception {
+        // The client session processes a packet before its observers see it.
+        SMPPPacket packet;
+        do {
+            packet = clientReceived.poll(5L, TimeUnit.SECONDS);
+            assertTrue(packet != null, "No response received");
+        } while (packet.getCommandId() != commandId);
+        assertEquals(client.getState(), state);
+    }
+
+    private static class RecordingListener implements ServerSessionListener {
+        private final BlockingQueue<Session> bound = new LinkedBlockingQueue<Session>();
+        private final BlockingQueue<Session> closed = new LinkedBlockingQueue<Session>();
+        private final BlockingQueue<SMPPPacket> received =
+            new LinkedBlockingQueue<SMPPPacket>();
+        private final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+
+        public void sessionAccepted(Session session) {
+            session.addObserver(new SessionObserver() {
+                public void packetReceived(Session source, SMPPPacket packet) {
+                    received.add(packet);
+                    if (packet instanceof SubmitSM && source.getState() == SessionState.BOUND) {
+                        SubmitSMResp response = new SubmitSMResp(packet);
+                        response.setMessageId("msg-1");
+                        try {
+                            source.sendPacket(response);
+                        } catch (Exception x) {
+                            errors.add(x);
+                        }
+                    }
+                }
+
+                public void update(Session source, SMPPEvent event) {
+                }
+            });
+        }
+
+        public void sessionBound(Session session, Bind bindRequest) {
+            bound.add(session);
+        }
+
+        public void sessionClosed(Session session) {
+            closed.add(session);
+        }
+    }
+}
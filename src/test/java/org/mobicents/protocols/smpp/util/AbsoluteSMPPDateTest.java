@@ -141,4 +141,14 @@ public class AbsoluteSMPPDateTest {
         assertFalse(now1WithTz.hashCode() == otherWithTz.hashCode());
         assertFalse(now2WithTz.hashCode() == otherWithTz.hashCode());
     }
+
+    public void testGetCalendarReturnsBackingCalendar() {
+        Calendar cal = new GregorianCalendar(UTC);
+        cal.set(2009, Calendar.JUNE, 16, 10, 30, 0);
+        SMPPDate d = SMPPDate.getAbsoluteInstance(cal, true);
+        assertTrue(d.getCalendar() == cal);
+        cal.set(Calendar.DAY_OF_MONTH, 20);
+        assertEquals(d.getDay(), 20);
+        assertEquals(d.getHour(), 10);
+    }
 }
@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+
+@Test
+public class ByteBufferPacketDecoderTest {
+    /**
+     * ASCII string containing "ABCD!~<nul>E".
+     */
+    private static final byte[] asciiBytes = {
+            0x41, 0x42, 0x43, 0x44, 0x21, 0x7e, 0, 0x45,
+    };
+
+    public void testReadCStringSucceedsAtNonZero() throws Exception {
+        ByteBufferPacketDecoder decoder = newDecoder(asciiBytes, 4);
+        String s = decoder.readCString();
+        assertEquals(s, "!~");
+        assertEquals(decoder.getParsePosition(), 7);
+    }
+    
+    public void testReadCStringParsesAZeroLengthString() throws Exception {
+        ByteBufferPacketDecoder decoder = newDecoder(asciiBytes, 6);
+        assertEquals(decoder.readCString(), "");
+        assertEquals(decoder.getParsePosition(), 7);
+    }
+    
+    public void testReadCStringStopsAtLimit() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(asciiBytes);
+        buffer.limit(6);
+        ByteBufferPacketDecoder decoder = new ByteBufferPacketDecoder(buffer);
+        try {
+            decoder.readCString();
+            fail("should have failed with ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException x) {
+            // success!
+        }
+    }
+    
+    public void testReadCStringReplacesNonAsciiBytes() throws Exception {
+        byte[] bytes = new byte[] { 0x41, (byte) 0xe9, 0x42, 0 };
+        ByteBufferPacketDecoder decoder = newDecoder(bytes, 0);
+        assertEquals(decoder.readCString(), new String(bytes, 0, 3, "US-ASCII"));
+    }
+    
+    public void testReadStringParsesNulByte() throws Exception {
+        ByteBufferPacketDecoder decoder = newDecoder(asciiBytes, 2);
+        String s = decoder.readString(6);
+        assertEquals(s, "CD!~\u0000E");
+        assertEquals(decoder.getParsePosition(), 8);
+    }
+    
+    public void testReadStringExceptionsWhenNotEnoughBytes() throws Exception {
+        ByteBufferPacketDecoder decoder = newDecoder(asciiBytes, 1);
+        try {
+            decoder.readString(9);
+            fail("should have thrown ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException x) {
+            // success
+        }
+    }
+    
+    public void testReadIntegersSucceed() throws Exception {
+        byte[] bytes = new byte[] {
+                (byte) 0xa2, (byte) 0xa2, (byte) 0x94, (byte) 0xff, 0x23, 0x1a, (byte) 0x8a,
+        };
+        ByteBufferPacketDecoder decoder = newDecoder(bytes, 0);
+        assertEquals(decoder.readUInt1(), 0xa2);
+        assertEquals(decoder.readUInt2(), 0xa294);
+        assertEquals(decoder.readUInt4(), 0xff231a8aL);
+        assertEquals(decoder.getParsePosition(), 7);
+    }
+    
+    public void testReadUInt4ThrowsExceptionOnInsufficientBytes() throws Exception {
+        try {
+            ByteBufferPacketDecoder decoder =
+                newDecoder(new byte[] { 0, 0, 0x73, 0x1a, 0x2b }, 2);
+            decoder.readUInt4();
+            fail("should have thrown ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException x) {
+            // success
+        }
+    }
+    
+    public void testReadBytesThrowsExceptionOnInsufficientBytes() throws Exception {
+        ByteBufferPacketDecoder decoder = newDecoder(asciiBytes, 2);
+        try {
+            decoder.readBytes(asciiBytes.length);
+            fail("should have thrown ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException x) {
+            // success
+        }
+        assertEquals(decoder.getParsePosition(), 2);
+    }
+    
+    public void testReadAddressSucceeds() throws Exception {
+        byte[] bytes = new byte[] { 1, 2, 0x31, 0x32, 0x33, 0 };
+        ByteBufferPacketDecoder decoder = newDecoder(bytes, 0);
+        Address address = decoder.readAddress();
+        assertEquals(address, new Address(1, 2, "123"));
+        assertEquals(decoder.getParsePosition(), 6);
+    }
+    
+    public void testReadDateSucceeds() throws Exception {
+        byte[] bytes = new byte[17];
+        System.arraycopy("080118161504000+".getBytes("US-ASCII"), 0, bytes, 0, 16);
+        ByteBufferPacketDecoder decoder = newDecoder(bytes, 0);
+        SMPPDate date = decoder.readDate();
+        assertNotNull(date);
+        assertEquals(date, new PacketDecoderImpl(bytes).readDate());
+        assertEquals(decoder.getParsePosition(), 17);
+    }
+    
+    public void testReadNullDateSucceeds() throws Exception {
+        ByteBufferPacketDecoder decoder = newDecoder(new byte[] { 1, 2, 3, 0 }, 3);
+        assertNull(decoder.readDate());
+    }
+    
+    public void testReadBytesCopiesFromDirectBuffer() throws Exception {
+        byte[] bytes = new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 0 };
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        ByteBufferPacketDecoder decoder = new ByteBufferPacketDecoder(buffer);
+        decoder.setParsePosition(4);
+        byte[] parsedArray = decoder.readBytes(4);
+        assertEquals(parsedArray, new byte[] { 5, 6, 7, 8 });
+        assertEquals(decoder.getParsePosition(), 8);
+        assertEquals(decoder.getAvailableBytes(), 2);
+    }
+
+    private ByteBufferPacketDecoder newDecoder(byte[] bytes, int position) {
+        ByteBufferPacketDecoder decoder =
+            new ByteBufferPacketDecoder(ByteBuffer.wrap(bytes));
+        decoder.setParsePosition(position);
+        return decoder;
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.tlv.Tag;
+
+@Test
+public class ByteBufferPacketEncoderTest {
+
+    public void testWriteIntegers() throws Exception {
+        ByteBufferPacketEncoder encoder =
+            new ByteBufferPacketEncoder(ByteBuffer.allocate(32));
+        encoder.writeUInt1(0xfe);
+        encoder.writeUInt2(0xabcd);
+        encoder.writeUInt4(0xf1f2f3f4L);
+        encoder.writeInt8(0x0102030405060708L);
+        assertEquals(toArray(encoder.getBuffer()), new byte[] {
+                (byte) 0xfe, (byte) 0xab, (byte) 0xcd,
+                (byte) 0xf1, (byte) 0xf2, (byte) 0xf3, (byte) 0xf4,
+                1, 2, 3, 4, 5, 6, 7, 8,
+        });
+    }
+
+    public void testWriteCStringWritesNulTerminator() throws Exception {
+        ByteBufferPacketEncoder encoder = new ByteBufferPacketEncoder();
+        encoder.writeCString("abc");
+        encoder.writeCString(null);
+        assertEquals(toArray(encoder.getBuffer()), new byte[] {0x61, 0x62, 0x63, 0, 0});
+    }
+
+    public void testNonAsciiCharactersMatchGetBytes() throws Exception {
+        String value = "a\u00e9b\ud83d\ude00c";
+        ByteBufferPacketEncoder encoder = new ByteBufferPacketEncoder();
+        encoder.writeCString(value);
+        byte[] expected = (value + "\u0000").getBytes("US-ASCII");
+        assertEquals(toArray(encoder.getBuffer()), expected);
+    }
+
+    public void testWriteStringWritesRequestedLength() throws Exception {
+        ByteBufferPacketEncoder encoder = new ByteBufferPacketEncoder();
+        encoder.writeString("abcdef", 4);
+        assertEquals(toArray(encoder.getBuffer()), "abcd".getBytes("US-ASCII"));
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testWriteStringFailsWhenLengthTooLong() throws Exception {
+        new ByteBufferPacketEncoder().writeString("abc", 4);
+    }
+
+    public void testBufferGrowsWhenFull() throws Exception {
+        ByteBuffer initial = ByteBuffer.allocate(4);
+        ByteBufferPacketEncoder encoder = new ByteBufferPacketEncoder(initial);
+        encoder.writeInt4(1);
+        encoder.writeBytes(new byte[1000]);
+        assertFalse(encoder.getBuffer() == initial);
+        assertTrue(encoder.getBuffer().capacity() >= 1004);
+        assertEquals(encoder.getPosition(), 1004);
+        assertEquals(encoder.getBuffer().getInt(0), 1);
+    }
+
+    public void testCallerBufferIsNotReleasedToPool() throws Exception {
+        BufferPool pool = new BufferPool(2);
+        ByteBufferPacketEncoder encoder = new ByteBufferPacketEncoder(pool);
+        ByteBuffer own = ByteBuffer.allocate(BufferPool.MIN_CAPACITY);
+        encoder.setBuffer(own);
+        encoder.writeBytes(new byte[BufferPool.MIN_CAPACITY + 1]);
+        assertFalse(encoder.getBuffer() == own);
+        assertFalse(pool.acquire(BufferPool.MIN_CAPACITY) == own);
+
+        ByteBuffer acquired = encoder.acquireBuffer(BufferPool.MIN_CAPACITY);
+        encoder.writeBytes(new byte[BufferPool.MIN_CAPACITY + 1]);
+        assertSame(pool.acquire(BufferPool.MIN_CAPACITY), acquired);
+    }
+
+    public void testPacketMatchesPacketEncoderImpl() throws Exception {
+        SubmitSM packet = newSubmitSM();
+        assertEquals(encode(packet, true), encodeWithStream(packet, true));
+        assertEquals(encode(packet, false), encodeWithStream(packet, false));
+    }
+
+    public void testCommandLengthIsBackPatched() throws Exception {
+        SubmitSM packet = newSubmitSM();
+        packet.setTLV(Tag.MESSAGE_PAYLOAD, new byte[3000]);
+        byte[] bytes = encode(packet, true);
+        assertEquals(bytes.length, packet.getLength());
+        assertEquals(ByteBuffer.wrap(bytes).getInt(0), packet.getLength());
+        assertEquals(bytes, encodeWithStream(packet, true));
+    }
+
+    public void testPoolReusesReleasedBuffers() throws Exception {
+        BufferPool pool = new BufferPool(2);
+        ByteBuffer buffer = pool.acquire(300);
+        assertEquals(buffer.capacity(), 512);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire(400);
+        assertSame(reused, buffer);
+        assertEquals(reused.position(), 0);
+        assertEquals(pool.acquire(10).capacity(), BufferPool.MIN_CAPACITY);
+    }
+
+    private SubmitSM newSubmitSM() {
+        SubmitSM packet = new SubmitSM();
+        packet.setSequenceNum(42L);
+        packet.setServiceType("CMT");
+        packet.setSource(new Address(1, 1, "447700900123"));
+        packet.setDestination(new Address(1, 1, "447700900456"));
+        packet.setExpiryTime(SMPPDate.getAbsoluteInstance(Calendar.getInstance()));
+        packet.setMessage("Hello, world".getBytes());
+        packet.setTLV(Tag.SOURCE_PORT, new Integer(1234));
+        return packet;
+    }
+
+    private byte[] encode(SMPPPacket packet, boolean withOptional) throws Exception {
+        ByteBufferPacketEncoder encoder = new ByteBufferPacketEncoder(new BufferPool(1));
+        encoder.acquireBuffer(BufferPool.MIN_CAPACITY);
+        packet.writeTo(encoder, withOptional);
+        return toArray(encoder.getBuffer());
+    }
+
+    private byte[] encodeWithStream(SMPPPacket packet, boolean withOptional) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        packet.writeTo(new PacketEncoderImpl(out), withOptional);
+        return out.toByteArray();
+    }
+
+    private byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, array, 0, array.length);
+        return array;
+    }
+}
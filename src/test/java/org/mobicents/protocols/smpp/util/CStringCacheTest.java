@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+@Test
+public class CStringCacheTest {
+
+    public void testRepeatedStringIsShared() throws Exception {
+        CStringCache cache = new CStringCache(16, 8);
+        byte[] bytes = "xCMTxCMT".getBytes("US-ASCII");
+        String first = cache.get(bytes, 1, 3);
+        String second = cache.get(bytes, 5, 3);
+        assertEquals(first, "CMT");
+        assertSame(second, first);
+        assertEquals(cache.getHitCount(), 1L);
+        assertEquals(cache.getMissCount(), 1L);
+        assertEquals(cache.getHitRate(), 0.5, 0.0001);
+    }
+
+    public void testBufferAndArrayLookupsAgree() throws Exception {
+        CStringCache cache = new CStringCache(16, 8);
+        byte[] bytes = "12345".getBytes("US-ASCII");
+        String fromArray = cache.get(bytes, 0, bytes.length);
+        String fromBuffer = cache.get(ByteBuffer.wrap(bytes), 0, bytes.length);
+        assertSame(fromBuffer, fromArray);
+    }
+
+    public void testLongStringsAreNotCached() throws Exception {
+        CStringCache cache = new CStringCache(16, 4);
+        byte[] bytes = "abcdefgh".getBytes("US-ASCII");
+        String first = cache.get(bytes, 0, bytes.length);
+        assertEquals(first, "abcdefgh");
+        assertNotSame(cache.get(bytes, 0, bytes.length), first);
+        assertEquals(cache.getMissCount(), 0L);
+    }
+
+    public void testCollisionReplacesEntry() throws Exception {
+        CStringCache cache = new CStringCache(1, 8);
+        byte[] bytes = "ab".getBytes("US-ASCII");
+        assertEquals(cache.get(bytes, 0, 1), "a");
+        assertEquals(cache.get(bytes, 1, 1), "b");
+        assertEquals(cache.get(bytes, 0, 1), "a");
+        assertEquals(cache.getMissCount(), 3L);
+        cache.clear();
+        assertEquals(cache.getMissCount(), 0L);
+    }
+
+    public void testNonAsciiBytesMatchDecoder() throws Exception {
+        CStringCache cache = new CStringCache(16, 8);
+        byte[] bytes = new byte[] {0x41, (byte) 0xe9, 0x42, 0};
+        PacketDecoderImpl decoder = new PacketDecoderImpl(bytes);
+        String expected = decoder.readCString();
+        decoder.setParsePosition(0);
+        decoder.setCStringCache(cache);
+        assertEquals(decoder.readCString(), expected);
+        assertEquals(decoder.getParsePosition(), 4);
+        assertEquals(cache.get(bytes, 0, 3), expected);
+        assertEquals(cache.getHitCount(), 1L);
+    }
+
+    public void testByteBufferDecoderUsesCache() throws Exception {
+        CStringCache cache = new CStringCache(16, 8);
+        ByteBuffer buffer = ByteBuffer.wrap("SMS\0SMS\0".getBytes("US-ASCII"));
+        ByteBufferPacketDecoder decoder = new ByteBufferPacketDecoder(buffer);
+        decoder.setCStringCache(cache);
+        String first = decoder.readCString();
+        assertSame(decoder.readCString(), first);
+        assertEquals(buffer.position(), 8);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+@Test
+public class ConcurrentLongHashMapTest {
+
+    public void testPutGetRemove() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<String>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(1L, "one"));
+        assertNull(map.putIfAbsent(-5L, "minus five"));
+        assertEquals(map.putIfAbsent(1L, "uno"), "one");
+        assertEquals(map.get(1L), "one");
+        assertEquals(map.put(1L, "uno"), "one");
+        assertEquals(map.get(-5L), "minus five");
+        assertEquals(map.size(), 2);
+        assertFalse(map.remove(1L, "one"));
+        assertTrue(map.remove(1L, "uno"));
+        assertNull(map.get(1L));
+        assertEquals(map.remove(-5L), "minus five");
+        assertNull(map.remove(-5L));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expectedExceptions = NullPointerException.class)
+    public void testNullValuesAreRejected() {
+        new ConcurrentLongHashMap<String>().put(1L, null);
+    }
+
+    public void testMatchesHashMapUnderRandomOperations() {
+        // A small map with one segment forces collisions, resizing and
+        // back-shifting on removal.
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<Long>(4, 1);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(42L);
+        for (int i = 0; i < 100000; i++) {
+            long key = random.nextInt(500);
+            if (random.nextBoolean()) {
+                assertEquals(map.put(key, Long.valueOf(i)), expected.put(key, Long.valueOf(i)));
+            } else {
+                assertEquals(map.remove(key), expected.remove(key));
+            }
+        }
+        assertEquals(map.size(), expected.size());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(map.get(entry.getKey().longValue()), entry.getValue());
+        }
+        // TestNG compares collections in iteration order, so compare the
+        // sets with equals.
+        assertTrue(new HashSet<Long>(map.values()).equals(
+                new HashSet<Long>(expected.values())));
+    }
+
+    public void testConcurrentUpdates() throws Exception {
+        final ConcurrentLongHashMap<Object> map = new ConcurrentLongHashMap<Object>();
+        final int threads = 4;
+        final int perThread = 20000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads; t++) {
+            final long base = (long) t * perThread;
+            new Thread() {
+                public void run() {
+                    Object value = new Object();
+                    for (long key = base; key < base + perThread; key++) {
+                        if (map.putIfAbsent(key, value) != null || map.get(key) != value) {
+                            failures.incrementAndGet();
+                        }
+                        if (key % 2 == 0 && !map.remove(key, value)) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+        assertEquals(failures.get(), 0);
+        assertEquals(map.size(), threads * perThread / 2);
+    }
+}
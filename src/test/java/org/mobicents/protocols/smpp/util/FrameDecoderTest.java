@@ -0,0 +1,172 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mobicents.protocols.smpp.Address;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.message.SubmitSM;
+import org.mobicents.protocols.smpp.message.SubmitSMResp;
+import org.testng.annotations.Test;
+
+@Test
+public class FrameDecoderTest {
+
+    public void testStreamSplitAtEveryOffset() throws Exception {
+        List<SMPPPacket> expected = packets();
+        byte[] stream = encode(expected);
+        for (int split = 0; split <= stream.length; split++) {
+            for (int lazy = 0; lazy < 2; lazy++) {
+                FrameDecoder decoder = new FrameDecoder();
+                decoder.setLazyDecode(lazy == 1);
+                Collector collector = new Collector();
+                decoder.decode(ByteBuffer.wrap(stream, 0, split), collector);
+                decoder.decode(ByteBuffer.wrap(stream, split, stream.length - split),
+                        collector);
+                assertEquals(collector.packets, expected);
+                assertEquals(collector.failures.size(), 0);
+                assertEquals(decoder.getBufferedBytes(), 0);
+            }
+        }
+    }
+
+    public void testStreamFedOneByteAtATime() throws Exception {
+        List<SMPPPacket> expected = packets();
+        byte[] stream = encode(expected);
+        FrameDecoder decoder = new FrameDecoder();
+        Collector collector = new Collector();
+        int frames = 0;
+        for (int i = 0; i < stream.length; i++) {
+            frames += decoder.decode(ByteBuffer.wrap(stream, i, 1), collector);
+        }
+        assertEquals(frames, expected.size());
+        assertEquals(collector.packets, expected);
+    }
+
+    public void testRawFrames() throws Exception {
+        List<SMPPPacket> expected = packets();
+        byte[] stream = encode(expected);
+        FrameDecoder decoder = new FrameDecoder();
+        List<byte[]> frames = new ArrayList<byte[]>();
+        int split = stream.length / 2 + 3;
+        decoder.decodeFrames(ByteBuffer.wrap(stream, 0, split), frames);
+        decoder.decodeFrames(ByteBuffer.wrap(stream, split, stream.length - split), frames);
+        assertEquals(frames.size(), expected.size());
+        int offset = 0;
+        for (byte[] frame : frames) {
+            for (int i = 0; i < frame.length; i++) {
+                assertEquals(frame[i], stream[offset + i]);
+            }
+            offset += frame.length;
+        }
+        assertEquals(offset, stream.length);
+    }
+
+    public void testCommandLengthAboveMaximumIsRejected() throws Exception {
+        List<SMPPPacket> packets = new ArrayList<SMPPPacket>();
+        SubmitSM submit = new SubmitSM();
+        submit.setDestination(new Address(1, 1, "447700900123"));
+        submit.setMessage(new byte[100]);
+        packets.add(submit);
+        byte[] stream = encode(packets);
+        FrameDecoder decoder = new FrameDecoder(64);
+        try {
+            // Only the header has arrived, but it is enough to reject the frame.
+            decoder.decode(ByteBuffer.wrap(stream, 0, 4), new Collector());
+            fail("Frame longer than the maximum was accepted.");
+        } catch (IOException x) {
+            assertTrue(x.getMessage().indexOf(String.valueOf(stream.length)) >= 0);
+        }
+        try {
+            decoder.decode(ByteBuffer.wrap(new byte[] {0, 0, 0, 8}), new Collector());
+            fail("Frame shorter than a header was accepted.");
+        } catch (IOException x) {
+            // Pass
+        }
+    }
+
+    public void testUndecodableFrameIsReportedAndSkipped() throws Exception {
+        List<SMPPPacket> expected = packets();
+        byte[] good = encode(expected);
+        byte[] stream = new byte[good.length + 16];
+        // A header-only frame with an unknown command ID.
+        stream[3] = 16;
+        stream[4] = 0x7f;
+        System.arraycopy(good, 0, stream, 16, good.length);
+        FrameDecoder decoder = new FrameDecoder();
+        Collector collector = new Collector();
+        assertEquals(decoder.decode(ByteBuffer.wrap(stream), collector), expected.size() + 1);
+        assertEquals(collector.failures.size(), 1);
+        assertEquals(collector.packets, expected);
+    }
+
+    private List<SMPPPacket> packets() {
+        List<SMPPPacket> packets = new ArrayList<SMPPPacket>();
+        EnquireLink enquireLink = new EnquireLink();
+        enquireLink.setSequenceNum(1);
+        packets.add(enquireLink);
+        SubmitSM submit = new SubmitSM();
+        submit.setSequenceNum(2);
+        submit.setSource(new Address(1, 1, "12345"));
+        submit.setDestination(new Address(1, 1, "447700900123"));
+        submit.setMessage("Hello, world".getBytes());
+        packets.add(submit);
+        SubmitSMResp resp = new SubmitSMResp();
+        resp.setSequenceNum(3);
+        resp.setMessageId("abc123");
+        packets.add(resp);
+        return packets;
+    }
+
+    private byte[] encode(List<SMPPPacket> packets) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PacketEncoderImpl encoder = new PacketEncoderImpl(out);
+        for (SMPPPacket packet : packets) {
+            packet.writeTo(encoder);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Collector implements FrameDecoder.Handler {
+        private final List<SMPPPacket> packets = new ArrayList<SMPPPacket>();
+        private final List<RuntimeException> failures = new ArrayList<RuntimeException>();
+
+        public void packetDecoded(SMPPPacket packet) {
+            packets.add(packet);
+        }
+
+        public void decodeFailed(RuntimeException x) {
+            failures.add(x);
+        }
+    }
+}
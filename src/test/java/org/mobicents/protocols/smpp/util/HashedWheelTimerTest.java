@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class HashedWheelTimerTest {
+    private HashedWheelTimer timer;
+
+    @BeforeMethod
+    public void setUp() {
+        timer = new HashedWheelTimer("test-timer", 5L, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        timer.stop();
+    }
+
+    public void testTaskRunsAfterDelay() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, 100L, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5L, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100L));
+        waitForPending(0);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    public void testCancelledTaskDoesNotRun() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 50L, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertEquals(timer.getPendingCount(), 0);
+        Thread.sleep(150L);
+        assertEquals(runs.get(), 0);
+    }
+
+    public void testDelaysLongerThanOneRotation() throws Exception {
+        // 8 buckets of 5ms: a 200ms delay goes round the wheel five times.
+        final CountDownLatch ran = new CountDownLatch(1);
+        long start = System.nanoTime();
+        timer.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, 200L, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5L, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200L));
+    }
+
+    public void testPeriodicTaskRunsUntilCancelled() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch ranThreeTimes = new CountDownLatch(3);
+        Timeout timeout = timer.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+                ranThreeTimes.countDown();
+            }
+        }, 10L, 20L, TimeUnit.MILLISECONDS);
+        assertTrue(ranThreeTimes.await(5L, TimeUnit.SECONDS));
+        assertTrue(timeout.cancel());
+        Thread.sleep(30L);
+        int afterCancel = runs.get();
+        Thread.sleep(100L);
+        assertEquals(runs.get(), afterCancel);
+        assertFalse(timeout.isExpired());
+    }
+
+    public void testManyTimeouts() throws Exception {
+        final int count = 20000;
+        final CountDownLatch ran = new CountDownLatch(count / 2);
+        Runnable task = new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        };
+        Timeout[] timeouts = new Timeout[count];
+        for (int i = 0; i < count; i++) {
+            timeouts[i] = timer.schedule(task, 500L + (i % 100), TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(timeouts[i].cancel());
+        }
+        assertTrue(ran.await(5L, TimeUnit.SECONDS));
+        waitForPending(0);
+        for (int i = 1; i < count; i += 2) {
+            assertTrue(timeouts[i].isExpired());
+        }
+    }
+
+    public void testExceptionInTaskDoesNotStopTimer() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        timer.schedule(new Runnable() {
+            public void run() {
+                throw new RuntimeException("expected");
+            }
+        }, 10L, TimeUnit.MILLISECONDS);
+        timer.schedule(new Runnable() {
+            public void run() {
+                ran.countDown();
+            }
+        }, 20L, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5L, TimeUnit.SECONDS));
+    }
+
+    private void waitForPending(int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && timer.getPendingCount() != expected; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(timer.getPendingCount(), expected);
+    }
+}
@@ -142,6 +142,46 @@ public class PacketFactoryTest {
         assertTrue(response instanceof VendorResponse);
         assertEquals(response.getSequenceNum(), 101);
     }
+
+    public void testCustomCommandWithCreator() throws Exception {
+        PacketFactory packetFactory = new PacketFactory();
+        packetFactory.registerVendorPacket(VENDOR_ID, new PacketCreator() {
+            public SMPPPacket newPacket(SMPPPacket request) {
+                return new VendorRequest();
+            }
+        }, new PacketCreator() {
+            public SMPPPacket newPacket(SMPPPacket request) {
+                return request != null
+                    ? new VendorResponse(request) : new VendorResponse();
+            }
+        });
+        SMPPPacket packet = packetFactory.newInstance(VENDOR_ID);
+        assertTrue(packet instanceof VendorRequest);
+        packet.setSequenceNum(55);
+        SMPPPacket response = packetFactory.newResponse(packet);
+        assertTrue(response instanceof VendorResponse);
+        assertEquals(response.getSequenceNum(), 55);
+
+        packetFactory.unregisterVendorPacket(VENDOR_ID);
+        try {
+            packetFactory.newInstance(VENDOR_ID | 0x80000000);
+            fail("Vendor response should have been unregistered.");
+        } catch (BadCommandIDException x) {
+            // Pass
+        }
+    }
+
+    public void testVendorPacketsAreNotShared() throws Exception {
+        PacketFactory packetFactory = new PacketFactory();
+        packetFactory.registerVendorPacket(
+                VENDOR_ID, VendorRequest.class, VendorResponse.class);
+        try {
+            new PacketFactory().newInstance(VENDOR_ID);
+            fail("Vendor ID should only be known to the factory it was registered with.");
+        } catch (BadCommandIDException x) {
+            // Pass
+        }
+    }
 }
 
 class VendorRequest extends SMPPPacket {
@@ -0,0 +1,130 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.testng.annotations.Test;
+
+@Test
+public class SMPPDateCodecTest {
+
+    public void testFormatAbsoluteFromEpochMillis() throws Exception {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(2024, 1, 29, 23, 45, 10);
+        cal.set(Calendar.MILLISECOND, 760);
+        // 2 hours ahead of UTC rolls over into March.
+        SMPPDate date = SMPPDate.getAbsoluteInstance(cal.getTimeInMillis(), 8);
+        assertEquals(SMPPDateCodec.format(date), "240301014510708+");
+        assertEquals(date.getYear(), 2024);
+        assertEquals(date.getMonth(), 3);
+        assertEquals(date.getDay(), 1);
+        assertEquals(date.getTenth(), 7);
+
+        date = SMPPDate.getAbsoluteInstance(cal.getTimeInMillis(), -5);
+        assertEquals(SMPPDateCodec.format(date), "240229223010705-");
+        assertEquals(date.getTimeZone().getID(), "UTC-01:15");
+    }
+
+    public void testParseAbsolute() throws Exception {
+        byte[] bytes = "xx061217153023304-".getBytes("US-ASCII");
+        SMPPDate date = SMPPDateCodec.parse(bytes, 2, bytes.length - 2);
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        cal.clear();
+        cal.set(2006, 11, 17, 16, 30, 23);
+        cal.set(Calendar.MILLISECOND, 300);
+        assertEquals(date, SMPPDate.getAbsoluteInstance(cal.getTimeInMillis(), -4));
+        assertEquals(date.getCalendar().getTimeInMillis(), cal.getTimeInMillis());
+        assertEquals(date.getLength(), 17);
+
+        bytes = "030912131313".getBytes("US-ASCII");
+        date = SMPPDateCodec.parse(bytes, 0, bytes.length);
+        assertEquals(date.hasTimezone(), false);
+        assertEquals(date.getLength(), 13);
+        assertEquals(SMPPDateCodec.format(date), "030912131313");
+    }
+
+    public void testRoundTripMatchesCalendar() throws Exception {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        Calendar cal = new GregorianCalendar(utc);
+        byte[] bytes = new byte[SMPPDateCodec.MAX_LENGTH];
+        long start = new GregorianCalendar(2000, 0, 1).getTimeInMillis();
+        for (long time = start; time < start + 100L * 366 * 86400000L; time += 86400000L * 7 + 3601700L) {
+            cal.setTimeInMillis(time);
+            SMPPDate date = SMPPDate.getAbsoluteInstance(time, 0);
+            assertEquals(date.getYear(), cal.get(Calendar.YEAR));
+            assertEquals(date.getMonth(), cal.get(Calendar.MONTH) + 1);
+            assertEquals(date.getDay(), cal.get(Calendar.DAY_OF_MONTH));
+            assertEquals(date.getHour(), cal.get(Calendar.HOUR_OF_DAY));
+            assertEquals(date.getMinute(), cal.get(Calendar.MINUTE));
+            assertEquals(date.getSecond(), cal.get(Calendar.SECOND));
+            if (date.getYear() < 2100) {
+                int length = SMPPDateCodec.format(date, bytes, 0);
+                assertEquals(SMPPDateCodec.parse(bytes, 0, length), date);
+            }
+        }
+    }
+
+    public void testRelativeDatesAreCached() throws Exception {
+        SMPPDate date = SMPPDate.getRelativeInstance(0, 0, 1, 12, 0, 0);
+        String str = SMPPDateCodec.format(date);
+        assertEquals(str, "000001120000000R");
+        assertSame(SMPPDateCodec.format(date), str);
+
+        byte[] bytes = str.getBytes("US-ASCII");
+        SMPPDate parsed = SMPPDateCodec.parse(bytes, 0, bytes.length);
+        assertEquals(parsed, date);
+        assertSame(SMPPDateCodec.parse(bytes, 0, bytes.length), parsed);
+    }
+
+    public void testParseFailsOnInvalidInput() throws Exception {
+        String[] invalid = {"12345", "abcdefghijklmnop", "999999999999999-",
+                "061317153023304+", "061217153023349+", "0612171530"};
+        for (int i = 0; i < invalid.length; i++) {
+            byte[] bytes = invalid[i].getBytes("US-ASCII");
+            try {
+                SMPPDateCodec.parse(bytes, 0, bytes.length);
+                fail("Should not have parsed " + invalid[i]);
+            } catch (InvalidDateFormatException x) {
+                assertEquals(x.getDateString().length() > 0, true);
+            }
+        }
+    }
+
+    public void testFormatRejectsYearOutOfRange() throws Exception {
+        Calendar cal = new GregorianCalendar(1999, 11, 31);
+        try {
+            SMPPDateCodec.format(SMPPDate.getAbsoluteInstance(cal));
+            fail("Should not have formatted a year before 2000.");
+        } catch (IllegalArgumentException x) {
+            // Pass
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat, Inc. and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.mobicents.protocols.smpp.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.mobicents.protocols.smpp.Session;
+import org.mobicents.protocols.smpp.message.DeliverSM;
+import org.mobicents.protocols.smpp.message.EnquireLink;
+import org.mobicents.protocols.smpp.message.EnquireLinkResp;
+import org.mobicents.protocols.smpp.message.SMPPPacket;
+import org.mobicents.protocols.smpp.net.ReadTimeoutException;
+import org.mobicents.protocols.smpp.net.SmscLink;
+
+@Test
+public class SyncWrapperTest {
+    private Session session;
+    private SyncWrapper wrapper;
+    private ResponderLink link;
+
+    @BeforeMethod
+    public void setUp() {
+        link = new ResponderLink();
+        session = new Session(link);
+        wrapper = new SyncWrapper(session);
+        link.wrapper = wrapper;
+        link.session = session;
+    }
+
+    public void testSendPacketReturnsMatchingResponse() throws Exception {
+        SMPPPacket response = wrapper.sendPacket(new EnquireLink());
+        assertTrue(response instanceof EnquireLinkResp);
+        assertFalse(wrapper.isPacketAvailable());
+    }
+
+    public void testManyConcurrentCallers() throws Exception {
+        final int threads = 8;
+        final int perThread = 500;
+        final Thread[] callers = new Thread[threads];
+        final int[] errors = new int[1];
+        for (int t = 0; t < threads; t++) {
+            callers[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            EnquireLink request = new EnquireLink();
+                            SMPPPacket response = wrapper.sendPacket(request);
+                            if (response.getSequenceNum() != request.getSequenceNum()) {
+                                synchronized (errors) {
+                                    errors[0]++;
+                                }
+                            }
+                        }
+                    } catch (Exception x) {
+                        synchronized (errors) {
+                            errors[0]++;
+                        }
+                    }
+                }
+            };
+            callers[t].start();
+        }
+        for (int t = 0; t < threads; t++) {
+            callers[t].join();
+        }
+        assertEquals(errors[0], 0);
+    }
+
+    public void testTimeoutThrowsAndLateResponseIsQueued() throws Exception {
+        link.respond = false;
+        wrapper.setPacketTimeout(50L);
+        EnquireLink request = new EnquireLink();
+        try {
+            wrapper.sendPacket(request);
+            fail("should have timed out");
+        } catch (ReadTimeoutException x) {
+            // success!
+        }
+        EnquireLinkResp late = new EnquireLinkResp();
+        late.setSequenceNum(request.getSequenceNum());
+        wrapper.packetReceived(session, late);
+        assertTrue(wrapper.isPacketAvailable());
+        assertSame(wrapper.readNextPacket(false), late);
+    }
+
+    public void testRequestsAreQueuedForReadNextPacket() throws Exception {
+        assertNull(wrapper.readNextPacket(false));
+        DeliverSM deliver = new DeliverSM();
+        wrapper.packetReceived(session, deliver);
+        assertSame(wrapper.readNextPacket(true), deliver);
+    }
+
+    public void testInterruptAllBlockedReleasesWaiters() throws Exception {
+        link.respond = false;
+        final Exception[] result = new Exception[1];
+        Thread caller = new Thread() {
+            public void run() {
+                try {
+                    wrapper.sendPacket(new EnquireLink());
+                } catch (Exception x) {
+                    result[0] = x;
+                }
+            }
+        };
+        caller.start();
+        Thread.sleep(100L);
+        wrapper.interruptAllBlocked();
+        caller.join(5000L);
+        assertFalse(caller.isAlive());
+        assertTrue(result[0] instanceof ReadTimeoutException);
+    }
+
+    /**
+     * Link that answers every enquire_link on a separate thread, as a
+     * receiver would.
+     */
+    private static class ResponderLink implements SmscLink {
+        private volatile SyncWrapper wrapper;
+        private volatile Session session;
+        private volatile boolean respond = true;
+
+        public void connect() {
+        }
+
+        public void disconnect() {
+        }
+
+        public boolean isConnected() {
+            return true;
+        }
+
+        public void write(SMPPPacket packet, boolean withOptionalParams) throws IOException {
+            if (!respond) {
+                return;
+            }
+            final EnquireLinkResp response = new EnquireLinkResp();
+            response.setSequenceNum(packet.getSequenceNum());
+            new Thread() {
+                public void run() {
+                    wrapper.packetReceived(session, response);
+                }
+            }.start();
+        }
+
+        public void flush() {
+        }
+
+        public SMPPPacket read() {
+            return null;
+        }
+
+        public int getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(int timeout) {
+        }
+
+        public boolean isTimeoutSupported() {
+            return false;
+        }
+    }
+}